@@ -35,10 +35,38 @@ public class AddressAndAmount extends BaseClass {
 
 	private String address;
 	private BigDecimal amount;
+	private long amountSatoshis;
 
 	public AddressAndAmount(String address, BigDecimal amount) {
 		this.address = address;
 		this.amount = amount.setScale(BitcoindClient.SCALE);
+		this.amountSatoshis = Satoshi.valueOf(amount);
+	}
+
+
+	/**
+	 * Constructor taking the amount in satoshis.
+	 * 
+	 * @param address
+	 * @param satoshis
+	 */
+	public AddressAndAmount(String address, long satoshis) {
+		this.address = address;
+		this.amount = Satoshi.toBigDecimal(satoshis);
+		this.amountSatoshis = satoshis;
+	}
+
+
+	/**
+	 * Gets the amount in satoshis.
+	 * <p>
+	 * Converted once, when constructed, so requests can be written without
+	 * converting amounts again.
+	 * 
+	 * @return amount in satoshis.
+	 */
+	public long getAmountSatoshis() {
+		return amountSatoshis;
 	}
 
 }
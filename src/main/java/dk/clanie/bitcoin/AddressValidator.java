@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin;
+
+import static dk.clanie.collections.CollectionFactory.newArrayList;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import dk.clanie.bitcoin.exception.BitcoinException;
+
+/**
+ * Validates bitcoin addresses locally.
+ * <p>
+ * An address is valid if it is Base58Check encoded, has a valid checksum,
+ * holds a 20 byte hash and has the pay-to-pubkey-hash or
+ * pay-to-script-hash version byte of the network. This is the same check
+ * bitcoind makes, without a round trip to bitcoind. Whether the address
+ * belongs to the wallet can of course only be told by bitcoind.
+ * <p>
+ * Instances are immutable and thread safe.
+ * 
+ * @author Claus Nielsen
+ */
+public class AddressValidator {
+
+	private static final int HASH_LENGTH = 20;
+
+	// Addresses per task when validating in parallel.
+	private static final int CHUNK_SIZE = 1024;
+
+	private final Network network;
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param network - network which addresses must belong to.
+	 */
+	public AddressValidator(Network network) {
+		this.network = network;
+	}
+
+
+	public Network getNetwork() {
+		return network;
+	}
+
+
+	/**
+	 * Tells if the given address is a valid address on the network.
+	 * 
+	 * @param address
+	 * @return boolean
+	 */
+	public boolean isValid(String address) {
+		int version = version(address);
+		return version == network.getPubKeyHashVersion() || version == network.getScriptHashVersion();
+	}
+
+
+	/**
+	 * Tells if the given address is a valid pay-to-script-hash address on
+	 * the network.
+	 * 
+	 * @param address
+	 * @return boolean
+	 */
+	public boolean isScriptHash(String address) {
+		return version(address) == network.getScriptHashVersion();
+	}
+
+
+	/**
+	 * Decodes the given address once and gets its version byte.
+	 * 
+	 * @param address
+	 * @return version, or -1 if the address isn't Base58Check encoded or
+	 *         doesn't hold a hash.
+	 */
+	private static int version(String address) {
+		if (address == null || address.length() < 26 || address.length() > 35) return -1;
+		byte[] payload = Base58.decodeChecked(address);
+		if (payload == null || payload.length != 1 + HASH_LENGTH) return -1;
+		return payload[0] & 0xff;
+	}
+
+
+	/**
+	 * Validates the given addresses, in parallel using the given executor.
+	 * <p>
+	 * The addresses are split into chunks validated by separate tasks, so
+	 * an executor with a thread per core validates large lists using all
+	 * cores.
+	 * 
+	 * @param addresses
+	 * @param executor
+	 * @return validity of each address, in the same order as the addresses.
+	 */
+	public boolean[] validate(final List<String> addresses, ExecutorService executor) {
+		final boolean[] valid = new boolean[addresses.size()];
+		List<Future<?>> futures = newArrayList();
+		for (int start = 0; start < valid.length; start += CHUNK_SIZE) {
+			final int from = start;
+			final int to = Math.min(valid.length, start + CHUNK_SIZE);
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i = from; i < to; i++) valid[i] = isValid(addresses.get(i));
+					return null;
+				}
+			}));
+		}
+		try {
+			// Future.get() makes the results written by the tasks visible.
+			for (Future<?> future : futures) future.get();
+		} catch (InterruptedException e) {
+			for (Future<?> future : futures) future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new BitcoinException("Interrupted validating addresses.", e);
+		} catch (ExecutionException e) {
+			for (Future<?> future : futures) future.cancel(true);
+			throw new BitcoinException("Validating addresses failed.", e);
+		}
+		return valid;
+	}
+
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin;
+
+import java.util.Arrays;
+
+/**
+ * Base58 and Base58Check encoding, as used by bitcoin addresses.
+ * 
+ * @author Claus Nielsen
+ */
+public final class Base58 {
+
+	private static final char[] ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".toCharArray();
+	private static final int[] INDEXES = new int[128];
+
+	static {
+		Arrays.fill(INDEXES, -1);
+		for (int i = 0; i < ALPHABET.length; i++) INDEXES[ALPHABET[i]] = i;
+	}
+
+	private Base58() {
+	}
+
+
+	/**
+	 * Encodes bytes as Base58.
+	 * 
+	 * @param input
+	 * @return Base58 string
+	 */
+	public static String encode(byte[] input) {
+		int zeroes = 0;
+		while (zeroes < input.length && input[zeroes] == 0) zeroes++;
+		// Each byte adds log(256) / log(58), about 1.366, characters.
+		byte[] digits = new byte[input.length * 1366 / 1000 + 1];
+		int digitsStart = digits.length;
+		for (int i = zeroes; i < input.length; i++) {
+			// digits = digits * 256 + input[i]
+			int carry = input[i] & 0xff;
+			int j = digits.length - 1;
+			for (; j >= digitsStart || carry != 0; j--) {
+				carry += 256 * digits[j];
+				digits[j] = (byte) (carry % 58);
+				carry /= 58;
+			}
+			digitsStart = j + 1;
+		}
+		char[] output = new char[zeroes + digits.length - digitsStart];
+		Arrays.fill(output, 0, zeroes, ALPHABET[0]);
+		for (int i = digitsStart; i < digits.length; i++) output[zeroes + i - digitsStart] = ALPHABET[digits[i]];
+		return new String(output);
+	}
+
+
+	/**
+	 * Encodes bytes as Base58Check, appending a checksum.
+	 * 
+	 * @param payload - including the version byte.
+	 * @return Base58Check string
+	 */
+	public static String encodeChecked(byte[] payload) {
+		byte[] hash = Hashes.doubleSha256(payload, 0, payload.length);
+		byte[] input = Arrays.copyOf(payload, payload.length + 4);
+		System.arraycopy(hash, 0, input, payload.length, 4);
+		return encode(input);
+	}
+
+
+	/**
+	 * Decodes a Base58 string.
+	 * 
+	 * @param input
+	 * @return decoded bytes, or null if the input contains characters not
+	 *         in the Base58 alphabet.
+	 */
+	public static byte[] decode(String input) {
+		int length = input.length();
+		// Each character adds log(58) / log(256), about 0.733, bytes.
+		byte[] output = new byte[length * 733 / 1000 + 1];
+		int outputStart = output.length;
+		int zeroes = 0;
+		while (zeroes < length && input.charAt(zeroes) == '1') zeroes++;
+		for (int i = zeroes; i < length; i++) {
+			char c = input.charAt(i);
+			int digit = c < 128 ? INDEXES[c] : -1;
+			if (digit < 0) return null;
+			// output = output * 58 + digit
+			int carry = digit;
+			int j = output.length - 1;
+			for (; j >= outputStart || carry != 0; j--) {
+				carry += 58 * (output[j] & 0xff);
+				output[j] = (byte) carry;
+				carry >>>= 8;
+			}
+			outputStart = j + 1;
+		}
+		byte[] result = new byte[zeroes + output.length - outputStart];
+		System.arraycopy(output, outputStart, result, zeroes, output.length - outputStart);
+		return result;
+	}
+
+
+	/**
+	 * Decodes a Base58Check string, verifying and removing the checksum.
+	 * 
+	 * @param input
+	 * @return payload, including the version byte, or null if the input
+	 *         isn't valid Base58 or the checksum doesn't match.
+	 */
+	public static byte[] decodeChecked(String input) {
+		byte[] decoded = decode(input);
+		if (decoded == null || decoded.length < 4) return null;
+		int payloadLength = decoded.length - 4;
+		byte[] hash = Hashes.doubleSha256(decoded, 0, payloadLength);
+		for (int i = 0; i < 4; i++) {
+			if (hash[i] != decoded[payloadLength + i]) return null;
+		}
+		return Arrays.copyOf(decoded, payloadLength);
+	}
+
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The hash functions used by bitcoin.
+ * 
+ * @author Claus Nielsen
+ */
+public final class Hashes {
+
+	private static final ThreadLocal<MessageDigest> sha256 = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 not supported.", e);
+			}
+		}
+	};
+
+
+	private Hashes() {
+	}
+
+
+	/**
+	 * Computes SHA-256 of SHA-256 of the given bytes, as used for
+	 * transaction and block hashes and Base58Check checksums.
+	 * 
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return hash
+	 */
+	public static byte[] doubleSha256(byte[] bytes, int offset, int length) {
+		MessageDigest digest = sha256.get();
+		digest.update(bytes, offset, length);
+		return digest.digest(digest.digest());
+	}
+
+
+	/**
+	 * Computes SHA-256 of SHA-256 of the remaining bytes in the given buffer,
+	 * without copying them.
+	 * <p>
+	 * The buffer's position is not changed.
+	 * 
+	 * @param buffer
+	 * @return hash
+	 */
+	public static byte[] doubleSha256(ByteBuffer buffer) {
+		MessageDigest digest = sha256.get();
+		digest.update(buffer.duplicate());
+		return digest.digest(digest.digest());
+	}
+
+
+	/**
+	 * Computes RIPEMD-160 of SHA-256 of the given bytes, as used for
+	 * addresses.
+	 * 
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @return hash
+	 */
+	public static byte[] hash160(byte[] bytes, int offset, int length) {
+		MessageDigest digest = sha256.get();
+		digest.update(bytes, offset, length);
+		return Ripemd160.digest(digest.digest());
+	}
+
+
+}
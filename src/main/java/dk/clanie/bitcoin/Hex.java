@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Hexadecimal encoding and decoding.
+ * 
+ * @author Claus Nielsen
+ */
+public final class Hex {
+
+	private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+	private static final byte[] VALUES = new byte[128];
+
+	static {
+		Arrays.fill(VALUES, (byte) -1);
+		for (int i = 0; i < 10; i++) VALUES['0' + i] = (byte) i;
+		for (int i = 0; i < 6; i++) {
+			VALUES['a' + i] = (byte) (10 + i);
+			VALUES['A' + i] = (byte) (10 + i);
+		}
+	}
+
+
+	private Hex() {
+	}
+
+
+	/**
+	 * Encodes bytes as lower case hex.
+	 * 
+	 * @param bytes
+	 * @return hex string
+	 */
+	public static String encode(byte[] bytes) {
+		return encode(bytes, 0, bytes.length, false);
+	}
+
+
+	/**
+	 * Encodes a range of bytes as lower case hex.
+	 * 
+	 * @param bytes
+	 * @param offset
+	 * @param length
+	 * @param reversed - true to encode the bytes in reverse order, as
+	 *        bitcoin displays hashes.
+	 * @return hex string
+	 */
+	public static String encode(byte[] bytes, int offset, int length, boolean reversed) {
+		char[] chars = new char[length * 2];
+		for (int i = 0; i < length; i++) {
+			int b = bytes[reversed ? offset + length - 1 - i : offset + i];
+			chars[2 * i] = DIGITS[(b >> 4) & 0xf];
+			chars[2 * i + 1] = DIGITS[b & 0xf];
+		}
+		return new String(chars);
+	}
+
+
+	/**
+	 * Encodes a range of bytes in a buffer as lower case hex, without
+	 * copying them.
+	 * <p>
+	 * The buffer's position is not changed.
+	 * 
+	 * @param buffer
+	 * @param offset - absolute offset in the buffer.
+	 * @param length
+	 * @param reversed - true to encode the bytes in reverse order, as
+	 *        bitcoin displays hashes.
+	 * @return hex string
+	 */
+	public static String encode(ByteBuffer buffer, int offset, int length, boolean reversed) {
+		char[] chars = new char[length * 2];
+		for (int i = 0; i < length; i++) {
+			int b = buffer.get(reversed ? offset + length - 1 - i : offset + i);
+			chars[2 * i] = DIGITS[(b >> 4) & 0xf];
+			chars[2 * i + 1] = DIGITS[b & 0xf];
+		}
+		return new String(chars);
+	}
+
+
+	/**
+	 * Decodes a hex string.
+	 * 
+	 * @param hex - upper or lower case.
+	 * @return bytes
+	 * @throws IllegalArgumentException if the string isn't valid hex.
+	 */
+	public static byte[] decode(CharSequence hex) {
+		int length = hex.length();
+		if (length % 2 != 0) throw new IllegalArgumentException("Odd number of hex digits.");
+		byte[] bytes = new byte[length / 2];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) (digit(hex.charAt(2 * i)) << 4 | digit(hex.charAt(2 * i + 1)));
+		}
+		return bytes;
+	}
+
+
+	/**
+	 * Gets the value of a hex digit.
+	 * 
+	 * @param c - upper or lower case hex digit.
+	 * @return value, 0-15
+	 * @throws IllegalArgumentException if c isn't a hex digit.
+	 */
+	public static int digit(char c) {
+		int value = c < 128 ? VALUES[c] : -1;
+		if (value < 0) throw new IllegalArgumentException("Invalid hex digit '" + c + "'.");
+		return value;
+	}
+
+
+	/**
+	 * Gets the lower case hex digit for the given value.
+	 * 
+	 * @param value - 0-15
+	 * @return hex digit
+	 */
+	static char toDigit(int value) {
+		return DIGITS[value & 0xf];
+	}
+
+
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A raw transaction in the bitcoin wire format.
+ * <p>
+ * Parsing only locates the inputs and outputs; the transaction is not
+ * copied, and fields are read from the underlying buffer when requested.
+ * This makes it cheap to parse many transactions, eg. all transactions of a
+ * block, and only look at the parts needed. Scripts are returned as buffers
+ * sharing the underlying bytes, so the bytes must not be modified while the
+ * transaction is in use.
+ * <p>
+ * Instances are immutable and thread safe, as long as the underlying bytes
+ * aren't modified.
+ * 
+ * @author Claus Nielsen
+ */
+public class RawTransaction {
+
+	private static final int MIN_INPUT_SIZE = 32 + 4 + 1 + 4;
+	private static final int MIN_OUTPUT_SIZE = 8 + 1;
+	private static final long COINBASE_VOUT = 0xffffffffL;
+
+	private final ByteBuffer bytes;
+	private final int[] inputOffsets;
+	private final int[] outputOffsets;
+	private final int lockTimeOffset;
+	private volatile Sha256Hash txId;
+
+
+	private RawTransaction(ByteBuffer bytes, int[] inputOffsets, int[] outputOffsets, int lockTimeOffset) {
+		this.bytes = bytes;
+		this.inputOffsets = inputOffsets;
+		this.outputOffsets = outputOffsets;
+		this.lockTimeOffset = lockTimeOffset;
+	}
+
+
+	/**
+	 * Parses a hex encoded transaction.
+	 * 
+	 * @param hex
+	 * @return RawTransaction
+	 * @throws IllegalArgumentException if the transaction is malformed.
+	 */
+	public static RawTransaction parse(String hex) {
+		return parse(Hex.decode(hex));
+	}
+
+
+	/**
+	 * Parses a transaction, without copying it.
+	 * 
+	 * @param bytes - exactly one transaction.
+	 * @return RawTransaction
+	 * @throws IllegalArgumentException if the transaction is malformed.
+	 */
+	public static RawTransaction parse(byte[] bytes) {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		RawTransaction transaction = parse(buffer);
+		if (buffer.hasRemaining()) throw new IllegalArgumentException("Unexpected data after transaction.");
+		return transaction;
+	}
+
+
+	/**
+	 * Parses the transaction at the buffer's position, without copying it.
+	 * <p>
+	 * The buffer's position is advanced past the transaction, so
+	 * consecutive transactions can be parsed by calling this repeatedly.
+	 * 
+	 * @param buffer
+	 * @return RawTransaction
+	 * @throws IllegalArgumentException if the transaction is malformed.
+	 */
+	public static RawTransaction parse(ByteBuffer buffer) {
+		ByteBuffer bytes = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			int position = 4; // version
+			long inputCount = varInt(bytes, position);
+			position += varIntSize(bytes, position);
+			if (inputCount > (bytes.limit() - position) / MIN_INPUT_SIZE) throw truncated();
+			int[] inputOffsets = new int[(int) inputCount];
+			for (int i = 0; i < inputOffsets.length; i++) {
+				inputOffsets[i] = position;
+				position += 36;
+				position = skipScript(bytes, position);
+				position += 4; // sequence
+			}
+			long outputCount = varInt(bytes, position);
+			position += varIntSize(bytes, position);
+			if (outputCount > (bytes.limit() - position) / MIN_OUTPUT_SIZE) throw truncated();
+			int[] outputOffsets = new int[(int) outputCount];
+			for (int i = 0; i < outputOffsets.length; i++) {
+				outputOffsets[i] = position;
+				position += 8;
+				position = skipScript(bytes, position);
+			}
+			int lockTimeOffset = position;
+			position += 4;
+			if (position > bytes.limit()) throw truncated();
+			bytes.limit(position);
+			buffer.position(buffer.position() + position);
+			return new RawTransaction(bytes.slice().order(ByteOrder.LITTLE_ENDIAN), inputOffsets, outputOffsets, lockTimeOffset);
+		} catch (IndexOutOfBoundsException e) {
+			throw truncated();
+		}
+	}
+
+
+	/**
+	 * Gets the transaction id: the double SHA-256 hash of the transaction.
+	 * <p>
+	 * The id is computed when first requested.
+	 * 
+	 * @return transaction id
+	 */
+	public Sha256Hash getTxId() {
+		Sha256Hash txId = this.txId;
+		if (txId == null) {
+			txId = Sha256Hash.fromBytes(Hashes.doubleSha256(bytes.duplicate()), 0, true);
+			this.txId = txId;
+		}
+		return txId;
+	}
+
+
+	/**
+	 * Gets the serialized transaction.
+	 * 
+	 * @return buffer sharing the bytes of this transaction.
+	 */
+	public ByteBuffer getBytes() {
+		return bytes.duplicate();
+	}
+
+
+	public int getSize() {
+		return bytes.limit();
+	}
+
+
+	public int getVersion() {
+		return bytes.getInt(0);
+	}
+
+
+	public long getLockTime() {
+		return bytes.getInt(lockTimeOffset) & 0xffffffffL;
+	}
+
+
+	public int getInputCount() {
+		return inputOffsets.length;
+	}
+
+
+	public int getOutputCount() {
+		return outputOffsets.length;
+	}
+
+
+	/**
+	 * Tells if this is a coinbase transaction, which has a single input not
+	 * spending any previous output.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isCoinbase() {
+		if (inputOffsets.length != 1 || getInputVout(0) != COINBASE_VOUT) return false;
+		int offset = inputOffsets[0];
+		for (int i = 0; i < 32; i++) {
+			if (bytes.get(offset + i) != 0) return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * Gets the id of the transaction holding the output spent by an input.
+	 * 
+	 * @param input - input number.
+	 * @return transaction id
+	 */
+	public Sha256Hash getInputTxId(int input) {
+		return Sha256Hash.fromBytes(bytes, inputOffsets[input], true);
+	}
+
+
+	/**
+	 * Gets the number of the output spent by an input.
+	 * 
+	 * @param input - input number.
+	 * @return output number
+	 */
+	public long getInputVout(int input) {
+		return bytes.getInt(inputOffsets[input] + 32) & 0xffffffffL;
+	}
+
+
+	/**
+	 * Gets the signature script of an input, or the coinbase data of a
+	 * coinbase transaction.
+	 * 
+	 * @param input - input number.
+	 * @return buffer sharing the bytes of this transaction.
+	 */
+	public ByteBuffer getInputScript(int input) {
+		return script(inputOffsets[input] + 36);
+	}
+
+
+	public long getInputSequence(int input) {
+		ByteBuffer script = getInputScript(input);
+		int end = inputOffsets[input] + 36 + varIntSize(bytes, inputOffsets[input] + 36) + script.remaining();
+		return bytes.getInt(end) & 0xffffffffL;
+	}
+
+
+	/**
+	 * Gets the value of an output.
+	 * 
+	 * @param output - output number.
+	 * @return value in satoshis.
+	 */
+	public long getOutputValue(int output) {
+		return bytes.getLong(outputOffsets[output]);
+	}
+
+
+	/**
+	 * Gets the public key script of an output.
+	 * 
+	 * @param output - output number.
+	 * @return buffer sharing the bytes of this transaction.
+	 */
+	public ByteBuffer getOutputScript(int output) {
+		return script(outputOffsets[output] + 8);
+	}
+
+
+	@Override
+	public String toString() {
+		return getTxId().toString();
+	}
+
+
+	private ByteBuffer script(int offset) {
+		int start = offset + varIntSize(bytes, offset);
+		ByteBuffer script = bytes.duplicate();
+		script.limit(start + (int) varInt(bytes, offset));
+		script.position(start);
+		return script.slice();
+	}
+
+
+	private static int skipScript(ByteBuffer bytes, int position) {
+		long length = varInt(bytes, position);
+		position += varIntSize(bytes, position);
+		if (length > bytes.limit() - position) throw truncated();
+		return position + (int) length;
+	}
+
+
+	private static long varInt(ByteBuffer bytes, int position) {
+		int first = bytes.get(position) & 0xff;
+		if (first < 0xfd) return first;
+		if (first == 0xfd) return bytes.getShort(position + 1) & 0xffffL;
+		if (first == 0xfe) return bytes.getInt(position + 1) & 0xffffffffL;
+		long value = bytes.getLong(position + 1);
+		if (value < 0) throw new IllegalArgumentException("Invalid length in transaction.");
+		return value;
+	}
+
+
+	private static int varIntSize(ByteBuffer bytes, int position) {
+		int first = bytes.get(position) & 0xff;
+		if (first < 0xfd) return 1;
+		if (first == 0xfd) return 3;
+		if (first == 0xfe) return 5;
+		return 9;
+	}
+
+
+	private static IllegalArgumentException truncated() {
+		return new IllegalArgumentException("Transaction is truncated.");
+	}
+
+
+}
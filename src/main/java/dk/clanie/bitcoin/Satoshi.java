@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin;
+
+import java.math.BigDecimal;
+
+/**
+ * Conversion of bitcoin amounts to and from satoshis held in a long.
+ * <p>
+ * Amounts are parsed exactly from their decimal text, as found in JSON
+ * number tokens, without creating a BigDecimal, and are formatted the way
+ * bitcoind formats them - with 8 decimals.
+ * 
+ * @author Claus Nielsen
+ */
+public final class Satoshi {
+
+	/**
+	 * Number of satoshis in one bitcoin.
+	 */
+	public static final long COIN = 100000000L;
+
+	/**
+	 * Number of decimals in amounts in bitcoins.
+	 */
+	public static final int SCALE = 8;
+
+	/**
+	 * Maximum number of characters written by {@link #format(long, char[], int)}.
+	 */
+	public static final int MAX_LENGTH = 21;
+
+	private static final long[] POWERS_OF_TEN = new long[19];
+
+	static {
+		POWERS_OF_TEN[0] = 1L;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+
+
+	private Satoshi() {
+	}
+
+
+	/**
+	 * Parses an amount in bitcoins.
+	 * 
+	 * @param amount - decimal number, as in JSON, eg. "0.01000000" or "1.0E-5".
+	 * @return amount in satoshis.
+	 * @throws NumberFormatException if the amount isn't a decimal number.
+	 * @throws ArithmeticException if the amount isn't a whole number of
+	 *         satoshis, or doesn't fit in a long.
+	 */
+	public static long parse(CharSequence amount) {
+		int length = amount.length();
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) chars[i] = amount.charAt(i);
+		return parse(chars, 0, length);
+	}
+
+
+	/**
+	 * Parses an amount in bitcoins from a range of a char array, such as the
+	 * text buffer of a JSON parser.
+	 * 
+	 * @param chars
+	 * @param offset
+	 * @param length
+	 * @return amount in satoshis.
+	 * @throws NumberFormatException if the range isn't a decimal number.
+	 * @throws ArithmeticException if the amount isn't a whole number of
+	 *         satoshis, or doesn't fit in a long.
+	 */
+	public static long parse(char[] chars, int offset, int length) {
+		int i = offset;
+		int end = offset + length;
+		boolean negative = false;
+		if (i < end && (chars[i] == '-' || chars[i] == '+')) negative = chars[i++] == '-';
+		long value = 0;
+		int scale = 0;
+		int zeros = 0;
+		boolean digits = false;
+		boolean point = false;
+		for (; i < end; i++) {
+			char c = chars[i];
+			if (c >= '0' && c <= '9') {
+				digits = true;
+				int digit = c - '0';
+				if (!point) {
+					value = add(multiply(value, 1), digit);
+				} else if (digit == 0) {
+					// Trailing zeros in the fraction don't change the value.
+					zeros++;
+				} else {
+					value = add(multiply(value, zeros + 1), digit);
+					scale += zeros + 1;
+					zeros = 0;
+				}
+			} else if (c == '.' && !point) {
+				point = true;
+			} else if (c == 'e' || c == 'E') {
+				break;
+			} else {
+				throw invalid(chars, offset, length);
+			}
+		}
+		if (!digits) throw invalid(chars, offset, length);
+		int exponent = 0;
+		if (i < end) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < end && (chars[i] == '-' || chars[i] == '+')) negativeExponent = chars[i++] == '-';
+			if (i == end) throw invalid(chars, offset, length);
+			for (; i < end; i++) {
+				char c = chars[i];
+				if (c < '0' || c > '9') throw invalid(chars, offset, length);
+				if (exponent < 1000) exponent = exponent * 10 + (c - '0');
+			}
+			if (negativeExponent) exponent = -exponent;
+		}
+		int shift = SCALE - scale + exponent;
+		if (value == 0) return 0;
+		if (shift > 0) {
+			value = multiply(value, shift);
+		} else {
+			for (; shift < 0; shift++) {
+				if (value % 10 != 0) throw new ArithmeticException("Amount " + new String(chars, offset, length) + " has more than " + SCALE + " decimals.");
+				value /= 10;
+			}
+		}
+		return negative ? -value : value;
+	}
+
+
+	/**
+	 * Converts an amount in bitcoins to satoshis.
+	 * 
+	 * @param amount
+	 * @return amount in satoshis.
+	 * @throws ArithmeticException if the amount isn't a whole number of
+	 *         satoshis, or doesn't fit in a long.
+	 */
+	public static long valueOf(BigDecimal amount) {
+		return amount.movePointRight(SCALE).longValueExact();
+	}
+
+
+	/**
+	 * Converts an amount in satoshis to bitcoins.
+	 * 
+	 * @param satoshis
+	 * @return amount in bitcoins, with 8 decimals.
+	 */
+	public static BigDecimal toBigDecimal(long satoshis) {
+		return BigDecimal.valueOf(satoshis, SCALE);
+	}
+
+
+	/**
+	 * Formats an amount in satoshis as bitcoins with 8 decimals, eg.
+	 * "-0.01000000".
+	 * 
+	 * @param satoshis
+	 * @param dest - must have room for {@link #MAX_LENGTH} chars after offset.
+	 * @param offset
+	 * @return number of chars written.
+	 */
+	public static int format(long satoshis, char[] dest, int offset) {
+		// Works on the negated value, which can hold Long.MIN_VALUE.
+		long negated = satoshis < 0 ? satoshis : -satoshis;
+		long coins = -(negated / COIN);
+		long fraction = -(negated % COIN);
+		int pos = offset;
+		if (satoshis < 0) dest[pos++] = '-';
+		int coinDigits = 1;
+		while (coinDigits < 19 && coins >= POWERS_OF_TEN[coinDigits]) coinDigits++;
+		for (int i = coinDigits - 1; i >= 0; i--) {
+			dest[pos + i] = (char) ('0' + coins % 10);
+			coins /= 10;
+		}
+		pos += coinDigits;
+		dest[pos++] = '.';
+		for (int i = SCALE - 1; i >= 0; i--) {
+			dest[pos + i] = (char) ('0' + fraction % 10);
+			fraction /= 10;
+		}
+		return pos + SCALE - offset;
+	}
+
+
+	/**
+	 * Formats an amount in satoshis as bitcoins with 8 decimals.
+	 * 
+	 * @param satoshis
+	 * @return amount, eg. "-0.01000000".
+	 */
+	public static String toString(long satoshis) {
+		char[] chars = new char[MAX_LENGTH];
+		return new String(chars, 0, format(satoshis, chars, 0));
+	}
+
+
+	private static long multiply(long value, int powerOfTen) {
+		if (powerOfTen >= POWERS_OF_TEN.length || value > Long.MAX_VALUE / POWERS_OF_TEN[powerOfTen]) {
+			throw new ArithmeticException("Amount out of range.");
+		}
+		return value * POWERS_OF_TEN[powerOfTen];
+	}
+
+
+	private static long add(long value, int digit) {
+		if (value > Long.MAX_VALUE - digit) throw new ArithmeticException("Amount out of range.");
+		return value + digit;
+	}
+
+
+	private static NumberFormatException invalid(char[] chars, int offset, int length) {
+		return new NumberFormatException("Invalid amount \"" + new String(chars, offset, length) + "\".");
+	}
+
+
+}
@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin;
+
+import static dk.clanie.collections.CollectionFactory.newArrayList;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Parsing, disassembly and classification of transaction scripts.
+ * <p>
+ * Scripts are read from {@link ByteBuffer}s, from their position to their
+ * limit, without copying. Disassembly and classification follow bitcoind,
+ * so the results match those of decodeRawTransaction.
+ * 
+ * @author Claus Nielsen
+ */
+public final class Script {
+
+	public static final int OP_0 = 0x00;
+	public static final int OP_PUSHDATA1 = 0x4c;
+	public static final int OP_PUSHDATA2 = 0x4d;
+	public static final int OP_PUSHDATA4 = 0x4e;
+	public static final int OP_1NEGATE = 0x4f;
+	public static final int OP_1 = 0x51;
+	public static final int OP_16 = 0x60;
+	public static final int OP_RETURN = 0x6a;
+	public static final int OP_DUP = 0x76;
+	public static final int OP_EQUAL = 0x87;
+	public static final int OP_EQUALVERIFY = 0x88;
+	public static final int OP_HASH160 = 0xa9;
+	public static final int OP_CHECKSIG = 0xac;
+	public static final int OP_CHECKMULTISIG = 0xae;
+
+	// Names of the opcodes from OP_NOP (0x61) to OP_NOP10 (0xb9).
+	private static final String[] OP_NAMES = (
+			"OP_NOP OP_VER OP_IF OP_NOTIF OP_VERIF OP_VERNOTIF OP_ELSE OP_ENDIF OP_VERIFY OP_RETURN "
+			+ "OP_TOALTSTACK OP_FROMALTSTACK OP_2DROP OP_2DUP OP_3DUP OP_2OVER OP_2ROT OP_2SWAP OP_IFDUP "
+			+ "OP_DEPTH OP_DROP OP_DUP OP_NIP OP_OVER OP_PICK OP_ROLL OP_ROT OP_SWAP OP_TUCK "
+			+ "OP_CAT OP_SUBSTR OP_LEFT OP_RIGHT OP_SIZE OP_INVERT OP_AND OP_OR OP_XOR OP_EQUAL "
+			+ "OP_EQUALVERIFY OP_RESERVED1 OP_RESERVED2 OP_1ADD OP_1SUB OP_2MUL OP_2DIV OP_NEGATE "
+			+ "OP_ABS OP_NOT OP_0NOTEQUAL OP_ADD OP_SUB OP_MUL OP_DIV OP_MOD OP_LSHIFT OP_RSHIFT "
+			+ "OP_BOOLAND OP_BOOLOR OP_NUMEQUAL OP_NUMEQUALVERIFY OP_NUMNOTEQUAL OP_LESSTHAN "
+			+ "OP_GREATERTHAN OP_LESSTHANOREQUAL OP_GREATERTHANOREQUAL OP_MIN OP_MAX OP_WITHIN "
+			+ "OP_RIPEMD160 OP_SHA1 OP_SHA256 OP_HASH160 OP_HASH256 OP_CODESEPARATOR OP_CHECKSIG "
+			+ "OP_CHECKSIGVERIFY OP_CHECKMULTISIG OP_CHECKMULTISIGVERIFY OP_NOP1 OP_NOP2 OP_NOP3 "
+			+ "OP_NOP4 OP_NOP5 OP_NOP6 OP_NOP7 OP_NOP8 OP_NOP9 OP_NOP10").split(" ");
+
+	// Largest data pushed by a standard null data output.
+	private static final int MAX_NULL_DATA = 80;
+
+
+	/**
+	 * Standard script types, named like bitcoind names them.
+	 */
+	public enum Type {
+		NONSTANDARD, PUBKEY, PUBKEYHASH, SCRIPTHASH, MULTISIG, NULLDATA;
+
+		@Override
+		public String toString() {
+			return name().toLowerCase();
+		}
+	}
+
+
+	private Script() {
+	}
+
+
+	/**
+	 * Disassembles a script, like bitcoind shows it as "asm".
+	 * <p>
+	 * Data pushes of up to 4 bytes are shown as numbers, longer pushes as
+	 * hex. A truncated push is shown as "[error]".
+	 * 
+	 * @param script
+	 * @return disassembled script
+	 */
+	public static String toAsm(ByteBuffer script) {
+		StringBuilder asm = new StringBuilder();
+		int position = script.position();
+		int limit = script.limit();
+		while (position < limit) {
+			if (asm.length() > 0) asm.append(' ');
+			int opcode = script.get(position++) & 0xff;
+			if (opcode > OP_PUSHDATA4) {
+				asm.append(opName(opcode));
+				continue;
+			}
+			int size = pushSize(script, opcode, position);
+			if (size < 0) {
+				asm.append("[error]");
+				break;
+			}
+			position += pushSizeBytes(opcode);
+			if (size <= 4) asm.append(toNumber(script, position, size));
+			else asm.append(Hex.encode(script, position, size, false));
+			position += size;
+		}
+		return asm.toString();
+	}
+
+
+	/**
+	 * Parses a script into its operations.
+	 * 
+	 * @param script
+	 * @return operations, or null if the script is malformed.
+	 */
+	public static List<Op> parse(ByteBuffer script) {
+		List<Op> ops = newArrayList();
+		int position = script.position();
+		int limit = script.limit();
+		while (position < limit) {
+			int opcode = script.get(position++) & 0xff;
+			if (opcode > OP_PUSHDATA4) {
+				ops.add(new Op(opcode, null));
+				continue;
+			}
+			int size = pushSize(script, opcode, position);
+			if (size < 0) return null;
+			position += pushSizeBytes(opcode);
+			ByteBuffer data = script.duplicate();
+			data.position(position);
+			data.limit(position + size);
+			ops.add(new Op(opcode, data.slice()));
+			position += size;
+		}
+		return ops;
+	}
+
+
+	/**
+	 * Classifies a script, like bitcoind does.
+	 * 
+	 * @param ops - see {@link #parse(ByteBuffer)}, may be null.
+	 * @return Type
+	 */
+	public static Type getType(List<Op> ops) {
+		if (ops == null || ops.isEmpty()) return Type.NONSTANDARD;
+		int size = ops.size();
+		if (size == 3 && ops.get(0).is(OP_HASH160) && ops.get(1).isPush(20, 20) && ops.get(1).opcode == 20 && ops.get(2).is(OP_EQUAL)) {
+			return Type.SCRIPTHASH;
+		}
+		if (size == 2 && ops.get(0).isPush(33, 120) && ops.get(1).is(OP_CHECKSIG)) return Type.PUBKEY;
+		if (size == 5 && ops.get(0).is(OP_DUP) && ops.get(1).is(OP_HASH160) && ops.get(2).isPush(20, 20)
+				&& ops.get(3).is(OP_EQUALVERIFY) && ops.get(4).is(OP_CHECKSIG)) {
+			return Type.PUBKEYHASH;
+		}
+		if (size >= 4 && ops.get(size - 1).is(OP_CHECKMULTISIG)) {
+			int required = ops.get(0).smallInteger();
+			int keys = ops.get(size - 2).smallInteger();
+			boolean valid = required >= 1 && keys >= required && keys == size - 3;
+			for (int i = 1; valid && i < size - 2; i++) valid = ops.get(i).isPush(33, 120);
+			if (valid) return Type.MULTISIG;
+		}
+		if (ops.get(0).is(OP_RETURN) && (size == 1 || (size == 2 && ops.get(1).isPush(0, MAX_NULL_DATA)))) {
+			return Type.NULLDATA;
+		}
+		return Type.NONSTANDARD;
+	}
+
+
+	/**
+	 * Gets the name of an opcode, as shown by bitcoind.
+	 * 
+	 * @param opcode
+	 * @return name
+	 */
+	public static String opName(int opcode) {
+		if (opcode == OP_0) return "0";
+		if (opcode == OP_PUSHDATA1) return "OP_PUSHDATA1";
+		if (opcode == OP_PUSHDATA2) return "OP_PUSHDATA2";
+		if (opcode == OP_PUSHDATA4) return "OP_PUSHDATA4";
+		if (opcode == OP_1NEGATE) return "-1";
+		if (opcode == 0x50) return "OP_RESERVED";
+		if (opcode >= OP_1 && opcode <= OP_16) return Integer.toString(opcode - OP_1 + 1);
+		if (opcode > OP_16 && opcode - OP_16 - 1 < OP_NAMES.length) return OP_NAMES[opcode - OP_16 - 1];
+		switch (opcode) {
+		case 0xfa: return "OP_SMALLINTEGER";
+		case 0xfb: return "OP_PUBKEYS";
+		case 0xfd: return "OP_PUBKEYHASH";
+		case 0xfe: return "OP_PUBKEY";
+		case 0xff: return "OP_INVALIDOPCODE";
+		default: return "OP_UNKNOWN";
+		}
+	}
+
+
+	/**
+	 * Gets the size of the data pushed by a push opcode.
+	 * 
+	 * @return size, or -1 if the script is truncated.
+	 */
+	private static int pushSize(ByteBuffer script, int opcode, int position) {
+		int remaining = script.limit() - position;
+		long size;
+		if (opcode < OP_PUSHDATA1) {
+			size = opcode;
+		} else if (opcode == OP_PUSHDATA1) {
+			if (remaining < 1) return -1;
+			size = script.get(position) & 0xff;
+		} else if (opcode == OP_PUSHDATA2) {
+			if (remaining < 2) return -1;
+			size = (script.get(position) & 0xff) | (script.get(position + 1) & 0xff) << 8;
+		} else {
+			if (remaining < 4) return -1;
+			size = ((script.get(position) & 0xff) | (script.get(position + 1) & 0xff) << 8
+					| (script.get(position + 2) & 0xff) << 16 | (long) (script.get(position + 3) & 0xff) << 24);
+		}
+		if (size > remaining - pushSizeBytes(opcode)) return -1;
+		return (int) size;
+	}
+
+
+	private static int pushSizeBytes(int opcode) {
+		if (opcode < OP_PUSHDATA1) return 0;
+		if (opcode == OP_PUSHDATA1) return 1;
+		if (opcode == OP_PUSHDATA2) return 2;
+		return 4;
+	}
+
+
+	/**
+	 * Decodes a script number: little endian with the sign in the most
+	 * significant bit.
+	 */
+	private static long toNumber(ByteBuffer script, int position, int size) {
+		if (size == 0) return 0;
+		long value = 0;
+		for (int i = 0; i < size; i++) value |= (long) (script.get(position + i) & 0xff) << (8 * i);
+		long signBit = 0x80L << (8 * (size - 1));
+		if ((value & signBit) != 0) return -(value & ~signBit);
+		return value;
+	}
+
+
+	/**
+	 * One operation in a script: an opcode, and the data pushed by push
+	 * operations.
+	 */
+	public static class Op {
+
+		private final int opcode;
+		private final ByteBuffer data;
+
+		private Op(int opcode, ByteBuffer data) {
+			this.opcode = opcode;
+			this.data = data;
+		}
+
+		public int getOpcode() {
+			return opcode;
+		}
+
+		/**
+		 * Gets the data pushed.
+		 * 
+		 * @return data, or null if this isn't a push operation.
+		 */
+		public ByteBuffer getData() {
+			return data == null ? null : data.duplicate();
+		}
+
+		/**
+		 * Gets the data pushed as a byte array.
+		 * 
+		 * @return data, or null if this isn't a push operation.
+		 */
+		public byte[] getBytes() {
+			if (data == null) return null;
+			byte[] bytes = new byte[data.remaining()];
+			data.duplicate().get(bytes);
+			return bytes;
+		}
+
+		private boolean is(int opcode) {
+			return this.opcode == opcode;
+		}
+
+		private boolean isPush(int minSize, int maxSize) {
+			return data != null && data.remaining() >= minSize && data.remaining() <= maxSize;
+		}
+
+		/**
+		 * Gets the value of OP_0 to OP_16.
+		 * 
+		 * @return value, or -1 for other operations.
+		 */
+		private int smallInteger() {
+			if (opcode == OP_0) return 0;
+			if (opcode >= OP_1 && opcode <= OP_16) return opcode - OP_1 + 1;
+			return -1;
+		}
+
+	}
+
+
+}
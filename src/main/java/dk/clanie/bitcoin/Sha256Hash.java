@@ -0,0 +1,286 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import dk.clanie.bitcoin.json.Sha256HashDeserializer;
+import dk.clanie.bitcoin.json.Sha256HashSerializer;
+
+/**
+ * A 32 byte hash, such as a transaction id or a block hash.
+ * <p>
+ * Holds the hash as four longs instead of a 64 character hex string, which
+ * takes up about a fifth of the memory, and makes equals and hashCode
+ * cheap - the hashCode is simply taken from the last bytes of the hash,
+ * which are as random as any.
+ * <p>
+ * Bytes are kept in the order in which bitcoind displays them, ie. reversed
+ * compared to the order in which they are hashed and serialized in blocks
+ * and transactions.
+ * <p>
+ * Serialized to and from json as a lower case hex string.
+ * 
+ * @author Claus Nielsen
+ */
+@SuppressWarnings("serial")
+@JsonSerialize(using = Sha256HashSerializer.class)
+@JsonDeserialize(using = Sha256HashDeserializer.class)
+public final class Sha256Hash implements Comparable<Sha256Hash>, Serializable {
+
+	/**
+	 * Number of bytes in a hash.
+	 */
+	public static final int LENGTH = 32;
+
+	/**
+	 * Number of hex digits in a hash.
+	 */
+	public static final int HEX_LENGTH = 2 * LENGTH;
+
+	/**
+	 * The all-zero hash, used eg. as the previous block of the genesis block
+	 * and the previous transaction of coinbase inputs.
+	 */
+	public static final Sha256Hash ZERO = new Sha256Hash(0L, 0L, 0L, 0L);
+
+	private final long w0;
+	private final long w1;
+	private final long w2;
+	private final long w3;
+
+
+	private Sha256Hash(long w0, long w1, long w2, long w3) {
+		this.w0 = w0;
+		this.w1 = w1;
+		this.w2 = w2;
+		this.w3 = w3;
+	}
+
+
+	/**
+	 * Parses a hash from hex, as displayed by bitcoind.
+	 * 
+	 * @param hex - 64 hex digits, upper or lower case.
+	 * @return Sha256Hash, or null if hex is null.
+	 * @throws IllegalArgumentException if hex isn't a valid hash.
+	 */
+	public static Sha256Hash valueOf(String hex) {
+		if (hex == null) return null;
+		if (hex.length() != HEX_LENGTH) throw invalidLength(hex.length());
+		return new Sha256Hash(
+				parseWord(hex, 0),
+				parseWord(hex, 16),
+				parseWord(hex, 32),
+				parseWord(hex, 48));
+	}
+
+
+	/**
+	 * Parses a hash from a range of hex digits in a char array, without
+	 * creating a String first.
+	 * 
+	 * @param chars
+	 * @param offset
+	 * @param length - must be 64.
+	 * @return Sha256Hash
+	 * @throws IllegalArgumentException if the range isn't a valid hash.
+	 */
+	public static Sha256Hash fromHex(char[] chars, int offset, int length) {
+		if (length != HEX_LENGTH) throw invalidLength(length);
+		return new Sha256Hash(
+				parseWord(chars, offset),
+				parseWord(chars, offset + 16),
+				parseWord(chars, offset + 32),
+				parseWord(chars, offset + 48));
+	}
+
+
+	/**
+	 * Creates a hash from 32 bytes.
+	 * 
+	 * @param bytes
+	 * @param offset
+	 * @param reversed - true if the bytes are in internal order, as output by
+	 *        {@link Hashes#doubleSha256(byte[], int, int)} and found in serialized blocks
+	 *        and transactions; false if they are in display order.
+	 * @return Sha256Hash
+	 */
+	public static Sha256Hash fromBytes(byte[] bytes, int offset, boolean reversed) {
+		if (bytes.length - offset < LENGTH) throw new IllegalArgumentException("A hash must be " + LENGTH + " bytes.");
+		long[] words = new long[4];
+		for (int i = 0; i < LENGTH; i++) {
+			int b = bytes[reversed ? offset + LENGTH - 1 - i : offset + i] & 0xff;
+			words[i >> 3] = words[i >> 3] << 8 | b;
+		}
+		return new Sha256Hash(words[0], words[1], words[2], words[3]);
+	}
+
+
+	/**
+	 * Creates a hash from 32 bytes in a buffer, eg. a serialized transaction,
+	 * without copying them.
+	 * 
+	 * @param buffer
+	 * @param offset - absolute position of the first byte.
+	 * @param reversed - true if the bytes are in internal order, false if
+	 *        they are in display order.
+	 * @return Sha256Hash
+	 */
+	public static Sha256Hash fromBytes(ByteBuffer buffer, int offset, boolean reversed) {
+		if (buffer.limit() - offset < LENGTH) throw new IllegalArgumentException("A hash must be " + LENGTH + " bytes.");
+		long[] words = new long[4];
+		for (int i = 0; i < LENGTH; i++) {
+			int b = buffer.get(reversed ? offset + LENGTH - 1 - i : offset + i) & 0xff;
+			words[i >> 3] = words[i >> 3] << 8 | b;
+		}
+		return new Sha256Hash(words[0], words[1], words[2], words[3]);
+	}
+
+
+	/**
+	 * Creates a hash from 32 bytes in display order.
+	 * 
+	 * @param bytes
+	 * @return Sha256Hash
+	 */
+	public static Sha256Hash fromBytes(byte[] bytes) {
+		return fromBytes(bytes, 0, false);
+	}
+
+
+	/**
+	 * Gets the bytes of this hash.
+	 * 
+	 * @param reversed - true to get the bytes in internal order, false for
+	 *        display order.
+	 * @return new array of 32 bytes.
+	 */
+	public byte[] getBytes(boolean reversed) {
+		byte[] bytes = new byte[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			bytes[reversed ? LENGTH - 1 - i : i] = (byte) (word(i >> 3) >>> (56 - 8 * (i & 7)));
+		}
+		return bytes;
+	}
+
+
+	/**
+	 * Writes this hash as 64 lower case hex digits.
+	 * 
+	 * @param dest
+	 * @param offset
+	 */
+	public void writeHex(char[] dest, int offset) {
+		writeWord(w0, dest, offset);
+		writeWord(w1, dest, offset + 16);
+		writeWord(w2, dest, offset + 32);
+		writeWord(w3, dest, offset + 48);
+	}
+
+
+	@Override
+	public String toString() {
+		char[] chars = new char[HEX_LENGTH];
+		writeHex(chars, 0);
+		return new String(chars);
+	}
+
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) return true;
+		if (!(obj instanceof Sha256Hash)) return false;
+		Sha256Hash other = (Sha256Hash) obj;
+		return w3 == other.w3 && w2 == other.w2 && w1 == other.w1 && w0 == other.w0;
+	}
+
+
+	@Override
+	public int hashCode() {
+		return (int) w3;
+	}
+
+
+	/**
+	 * Compares hashes as unsigned 256 bit numbers, which is also the order
+	 * of their hex representation.
+	 */
+	@Override
+	public int compareTo(Sha256Hash other) {
+		int result = compareUnsigned(w0, other.w0);
+		if (result == 0) result = compareUnsigned(w1, other.w1);
+		if (result == 0) result = compareUnsigned(w2, other.w2);
+		if (result == 0) result = compareUnsigned(w3, other.w3);
+		return result;
+	}
+
+
+	private long word(int index) {
+		switch (index) {
+		case 0: return w0;
+		case 1: return w1;
+		case 2: return w2;
+		default: return w3;
+		}
+	}
+
+
+	private static int compareUnsigned(long a, long b) {
+		a += Long.MIN_VALUE;
+		b += Long.MIN_VALUE;
+		return a < b ? -1 : a == b ? 0 : 1;
+	}
+
+
+	private static long parseWord(CharSequence hex, int offset) {
+		long word = 0;
+		for (int i = offset; i < offset + 16; i++) {
+			word = word << 4 | Hex.digit(hex.charAt(i));
+		}
+		return word;
+	}
+
+
+	private static long parseWord(char[] hex, int offset) {
+		long word = 0;
+		for (int i = offset; i < offset + 16; i++) {
+			word = word << 4 | Hex.digit(hex[i]);
+		}
+		return word;
+	}
+
+
+	private static void writeWord(long word, char[] dest, int offset) {
+		for (int i = 15; i >= 0; i--) {
+			dest[offset + i] = Hex.toDigit((int) word);
+			word >>>= 4;
+		}
+	}
+
+
+	private static IllegalArgumentException invalidLength(int length) {
+		return new IllegalArgumentException("A hash must be " + HEX_LENGTH + " hex digits, got " + length + ".");
+	}
+
+
+}
@@ -41,7 +41,7 @@ import dk.clanie.core.BaseClass;
 public class TransactionOutputRef extends BaseClass {
 
 	@JsonProperty("txid")
-	private String txId;
+	private Sha256Hash txId;
 	
 	@JsonProperty("vout")
 	private Integer vout;
@@ -52,10 +52,21 @@ public class TransactionOutputRef extends BaseClass {
 	 * @param txId - transaction id.
 	 * @param vout - output number.
 	 */
-	public TransactionOutputRef(@JsonProperty("txid") String txId, @JsonProperty("vout") Integer vout) {
+	public TransactionOutputRef(@JsonProperty("txid") Sha256Hash txId, @JsonProperty("vout") Integer vout) {
 		this.txId = txId;
 		this.vout = vout;
 	}
 
+
+	/**
+	 * Constructor taking the transaction id in hex.
+	 * 
+	 * @param txId - transaction id.
+	 * @param vout - output number.
+	 */
+	public TransactionOutputRef(String txId, Integer vout) {
+		this(Sha256Hash.valueOf(txId), vout);
+	}
+
 	
 }
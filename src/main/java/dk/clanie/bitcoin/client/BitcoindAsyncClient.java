@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Required;
+
+import dk.clanie.bitcoin.AddressAndAmount;
+import dk.clanie.bitcoin.SignatureHashAlgorithm;
+import dk.clanie.bitcoin.TransactionOutputRef;
+import dk.clanie.bitcoin.client.request.AddNodeAction;
+import dk.clanie.bitcoin.client.request.TemplateRequest;
+import dk.clanie.bitcoin.client.response.BigDecimalResponse;
+import dk.clanie.bitcoin.client.response.BooleanResponse;
+import dk.clanie.bitcoin.client.response.CreateMultiSigResponse;
+import dk.clanie.bitcoin.client.response.DecodeRawTransactionResponse;
+import dk.clanie.bitcoin.client.response.GetAddedNodeInfoResponse;
+import dk.clanie.bitcoin.client.response.GetBlockResponse;
+import dk.clanie.bitcoin.client.response.GetBlockTemplateResponse;
+import dk.clanie.bitcoin.client.response.GetInfoResponse;
+import dk.clanie.bitcoin.client.response.GetMiningInfoResponse;
+import dk.clanie.bitcoin.client.response.GetPeerInfoResponse;
+import dk.clanie.bitcoin.client.response.GetRawTransactionResponse;
+import dk.clanie.bitcoin.client.response.GetTransactionResponse;
+import dk.clanie.bitcoin.client.response.GetTxOutResponse;
+import dk.clanie.bitcoin.client.response.GetTxOutSetInfoResponse;
+import dk.clanie.bitcoin.client.response.GetWorkResponse;
+import dk.clanie.bitcoin.client.response.IntegerResponse;
+import dk.clanie.bitcoin.client.response.ListAccountsResponse;
+import dk.clanie.bitcoin.client.response.ListAddressGroupingsResponse;
+import dk.clanie.bitcoin.client.response.ListLockUnspentResponse;
+import dk.clanie.bitcoin.client.response.ListReceivedByAccountResponse;
+import dk.clanie.bitcoin.client.response.ListReceivedByAddressResponse;
+import dk.clanie.bitcoin.client.response.ListTransactionsResponse;
+import dk.clanie.bitcoin.client.response.ListUnspentResponse;
+import dk.clanie.bitcoin.client.response.LongResponse;
+import dk.clanie.bitcoin.client.response.SignRawTransactionResponse;
+import dk.clanie.bitcoin.client.response.StringArrayResponse;
+import dk.clanie.bitcoin.client.response.StringResponse;
+import dk.clanie.bitcoin.client.response.ValidateAddressResponse;
+import dk.clanie.bitcoin.client.response.VoidResponse;
+
+/**
+ * Asynchronous bitcoind client.
+ * <p>
+ * Has the same methods as {@link BitcoindClient}, but instead of waiting for
+ * the response each method returns a {@link BitcoindFuture}, which is
+ * completed when the response arrives. Requests are sent using non-blocking
+ * I/O, so a single thread can have many calls in flight.
+ * <p>
+ * When the call fails the future is completed with the same
+ * {@link dk.clanie.bitcoin.exception.BitcoinException} the blocking client
+ * would have thrown.
+ * 
+ * @author Claus Nielsen
+ */
+public interface BitcoindAsyncClient {
+
+	/**
+	 * Sets url for calling bitcoind.
+	 * 
+	 * @param url
+	 */
+	@Required
+	void setUrl(String url);
+
+	/**
+	 * See {@link BitcoindClient#addMultiSigAddress(int, List, String)}.
+	 */
+	BitcoindFuture<StringResponse> addMultiSigAddress(int nrequired, List<String> keys, String account);
+
+	/**
+	 * See {@link BitcoindClient#addNode(String, AddNodeAction)}.
+	 */
+	BitcoindFuture<VoidResponse> addNode(String node, AddNodeAction action);
+
+	/**
+	 * See {@link BitcoindClient#backupWallet(String)}.
+	 */
+	BitcoindFuture<VoidResponse> backupWallet(String destination);
+
+	/**
+	 * See {@link BitcoindClient#createMultiSig(Integer, String[])}.
+	 */
+	BitcoindFuture<CreateMultiSigResponse> createMultiSig(Integer nRequired, String[] keys);
+
+	/**
+	 * See {@link BitcoindClient#createRawTransaction(List, AddressAndAmount...)}.
+	 */
+	BitcoindFuture<StringResponse> createRawTransaction(List<TransactionOutputRef> txOutputs, AddressAndAmount... addressAndAmount);
+
+	/**
+	 * See {@link BitcoindClient#decodeRawTransaction(String)}.
+	 */
+	BitcoindFuture<DecodeRawTransactionResponse> decodeRawTransaction(String rawTransaction);
+
+	/**
+	 * See {@link BitcoindClient#dumpPrivateKey(String)}.
+	 */
+	BitcoindFuture<StringResponse> dumpPrivateKey(String bitcoinAddress);
+
+	/**
+	 * See {@link BitcoindClient#encryptWallet(String)}.
+	 */
+	BitcoindFuture<VoidResponse> encryptWallet(String passPhrase);
+
+	/**
+	 * See {@link BitcoindClient#getAccount(String)}.
+	 */
+	BitcoindFuture<StringResponse> getAccount(String bitcoinAddress);
+
+	/**
+	 * See {@link BitcoindClient#getAccountAddress(String)}.
+	 */
+	BitcoindFuture<StringResponse> getAccountAddress(String account);
+
+	/**
+	 * See {@link BitcoindClient#getAddedNodeInfo(Boolean, String)}.
+	 */
+	BitcoindFuture<GetAddedNodeInfoResponse> getAddedNodeInfo(Boolean dns, String node);
+
+	/**
+	 * See {@link BitcoindClient#getAddressesByAccount(String)}.
+	 */
+	BitcoindFuture<StringArrayResponse> getAddressesByAccount(String account);
+
+	/**
+	 * See {@link BitcoindClient#getBalance(String, Integer)}.
+	 */
+	BitcoindFuture<BigDecimalResponse> getBalance(String account, Integer minConf);
+
+	/**
+	 * See {@link BitcoindClient#getBlock(String)}.
+	 */
+	BitcoindFuture<GetBlockResponse> getBlock(String hash);
+
+	/**
+	 * See {@link BitcoindClient#getBlockCount()}.
+	 */
+	BitcoindFuture<LongResponse> getBlockCount();
+
+	/**
+	 * See {@link BitcoindClient#getBlockHash(Long)}.
+	 */
+	BitcoindFuture<StringResponse> getBlockHash(Long index);
+
+	/**
+	 * See {@link BitcoindClient#getBlockTemplate(TemplateRequest)}.
+	 */
+	BitcoindFuture<GetBlockTemplateResponse> getBlockTemplate(TemplateRequest templateRequest);
+
+	/**
+	 * See {@link BitcoindClient#getConnectionCount()}.
+	 */
+	BitcoindFuture<IntegerResponse> getConnectionCount();
+
+	/**
+	 * See {@link BitcoindClient#getDifficulty()}.
+	 */
+	BitcoindFuture<IntegerResponse> getDifficulty();
+
+	/**
+	 * See {@link BitcoindClient#getGenerate()}.
+	 */
+	BitcoindFuture<BooleanResponse> getGenerate();
+
+	/**
+	 * See {@link BitcoindClient#getHashesPerSecond()}.
+	 */
+	BitcoindFuture<LongResponse> getHashesPerSecond();
+
+	/**
+	 * See {@link BitcoindClient#getInfo()}.
+	 */
+	BitcoindFuture<GetInfoResponse> getInfo();
+
+	/**
+	 * See {@link BitcoindClient#getMiningInfo()}.
+	 */
+	BitcoindFuture<GetMiningInfoResponse> getMiningInfo();
+
+	/**
+	 * See {@link BitcoindClient#getNewAddress(String)}.
+	 */
+	BitcoindFuture<StringResponse> getNewAddress(String account);
+
+	/**
+	 * See {@link BitcoindClient#getPeerInfo()}.
+	 */
+	BitcoindFuture<GetPeerInfoResponse> getPeerInfo();
+
+	/**
+	 * See {@link BitcoindClient#getRawMemPool()}.
+	 */
+	BitcoindFuture<StringArrayResponse> getRawMemPool();
+
+	/**
+	 * See {@link BitcoindClient#getRawTransaction(String)}.
+	 */
+	BitcoindFuture<StringResponse> getRawTransaction(String txId);
+
+	/**
+	 * See {@link BitcoindClient#getRawTransaction_verbose(String)}.
+	 */
+	BitcoindFuture<GetRawTransactionResponse> getRawTransaction_verbose(String txId);
+
+	/**
+	 * See {@link BitcoindClient#getReceivedByAccount(String, Integer)}.
+	 */
+	BitcoindFuture<BigDecimalResponse> getReceivedByAccount(String account, Integer minConf);
+
+	/**
+	 * See {@link BitcoindClient#getReceivedByAddress(String, Integer)}.
+	 */
+	BitcoindFuture<BigDecimalResponse> getReceivedByAddress(String address, Integer minConf);
+
+	/**
+	 * See {@link BitcoindClient#getTransaction(String)}.
+	 */
+	BitcoindFuture<GetTransactionResponse> getTransaction(String txId);
+
+	/**
+	 * See {@link BitcoindClient#getTxOut(String, Integer, Boolean)}.
+	 */
+	BitcoindFuture<GetTxOutResponse> getTxOut(String txId, Integer n, Boolean includeMemoryPool);
+
+	/**
+	 * See {@link BitcoindClient#getTxOutSetInfo()}.
+	 */
+	BitcoindFuture<GetTxOutSetInfoResponse> getTxOutSetInfo();
+
+	/**
+	 * See {@link BitcoindClient#getWork()}.
+	 */
+	BitcoindFuture<GetWorkResponse> getWork();
+
+	/**
+	 * See {@link BitcoindClient#getWork(String)}.
+	 */
+	BitcoindFuture<BooleanResponse> getWork(String data);
+
+	/**
+	 * See {@link BitcoindClient#help(String)}.
+	 */
+	BitcoindFuture<StringResponse> help(String command);
+
+	/**
+	 * See {@link BitcoindClient#importPrivateKey(String, String, Boolean)}.
+	 */
+	BitcoindFuture<VoidResponse> importPrivateKey(String key, String label, Boolean rescan);
+
+	/**
+	 * See {@link BitcoindClient#keyPoolRefill()}.
+	 */
+	BitcoindFuture<VoidResponse> keyPoolRefill();
+
+	/**
+	 * See {@link BitcoindClient#listAccounts(Integer)}.
+	 */
+	BitcoindFuture<ListAccountsResponse> listAccounts(Integer minConf);
+
+	/**
+	 * See {@link BitcoindClient#listAddressGroupings()}.
+	 */
+	BitcoindFuture<ListAddressGroupingsResponse> listAddressGroupings();
+
+	/**
+	 * See {@link BitcoindClient#listLockUnspent()}.
+	 */
+	BitcoindFuture<ListLockUnspentResponse> listLockUnspent();
+
+	/**
+	 * See {@link BitcoindClient#listReceivedByAccount(Integer, Boolean)}.
+	 */
+	BitcoindFuture<ListReceivedByAccountResponse> listReceivedByAccount(Integer minConf, Boolean includeEmpty);
+
+	/**
+	 * See {@link BitcoindClient#listReceivedByAddress(Integer, Boolean)}.
+	 */
+	BitcoindFuture<ListReceivedByAddressResponse> listReceivedByAddress(Integer minConf, Boolean includeEmpty);
+
+	/**
+	 * See {@link BitcoindClient#listTransactions(String, Integer, Integer)}.
+	 */
+	BitcoindFuture<ListTransactionsResponse> listTransactions(String account, Integer count, Integer from);
+
+	/**
+	 * See {@link BitcoindClient#listUnspent(Integer, Integer, String...)}.
+	 */
+	BitcoindFuture<ListUnspentResponse> listUnspent(Integer minConf, Integer maxConf, String... address);
+
+	/**
+	 * See {@link BitcoindClient#lockUnspent(Boolean, TransactionOutputRef[])}.
+	 */
+	BitcoindFuture<BooleanResponse> lockUnspent(Boolean unlock, TransactionOutputRef[] txOutputs);
+
+	/**
+	 * See {@link BitcoindClient#move(String, String, BigDecimal, Integer, String)}.
+	 */
+	BitcoindFuture<BooleanResponse> move(String fromAccount, String toAccount, BigDecimal amount, Integer minConf, String comment);
+
+	/**
+	 * See {@link BitcoindClient#sendFrom(String, String, BigDecimal, Integer, String, String)}.
+	 */
+	BitcoindFuture<StringResponse> sendFrom(String account, String address, BigDecimal amount, Integer minConf, String comment, String commentTo);
+
+	/**
+	 * See {@link BitcoindClient#sendMany(String, AddressAndAmount[], Integer, String)}.
+	 */
+	BitcoindFuture<StringResponse> sendMany(String fromAccount, AddressAndAmount[] addressesAndAmounts, Integer minConf, String commment);
+
+	/**
+	 * See {@link BitcoindClient#sendRawTransaction(String)}.
+	 */
+	BitcoindFuture<StringResponse> sendRawTransaction(String hex);
+
+	/**
+	 * See {@link BitcoindClient#sendToAddress(String, BigDecimal, String, String)}.
+	 */
+	BitcoindFuture<StringResponse> sendToAddress(String address, BigDecimal amount, String comment, String commentTo);
+
+	/**
+	 * See {@link BitcoindClient#setAccount(String, String)}.
+	 */
+	BitcoindFuture<VoidResponse> setAccount(String address, String account);
+
+	/**
+	 * See {@link BitcoindClient#setGenerate(Boolean, Integer)}.
+	 */
+	BitcoindFuture<VoidResponse> setGenerate(Boolean generate, Integer genProcLimit);
+
+	/**
+	 * See {@link BitcoindClient#setTxFee(BigDecimal)}.
+	 */
+	BitcoindFuture<BooleanResponse> setTxFee(BigDecimal amount);
+
+	/**
+	 * See {@link BitcoindClient#signMessage(String, String)}.
+	 */
+	BitcoindFuture<StringResponse> signMessage(String address, String message);
+
+	/**
+	 * See {@link BitcoindClient#signRawTransaction(String, Object[], String[], SignatureHashAlgorithm)}.
+	 */
+	BitcoindFuture<SignRawTransactionResponse> signRawTransaction(String hex, Object[] requiredTxOuts, String[] privKeys, SignatureHashAlgorithm sigHash);
+
+	/**
+	 * See {@link BitcoindClient#stop()}.
+	 */
+	BitcoindFuture<VoidResponse> stop();
+
+	/**
+	 * See {@link BitcoindClient#validateAddress(String)}.
+	 */
+	BitcoindFuture<ValidateAddressResponse> validateAddress(String address);
+
+	/**
+	 * See {@link BitcoindClient#verifyMessage(String, String, String)}.
+	 */
+	BitcoindFuture<BooleanResponse> verifyMessage(String address, String signature, String message);
+
+	/**
+	 * See {@link BitcoindClient#walletLock()}.
+	 */
+	BitcoindFuture<VoidResponse> walletLock();
+
+	/**
+	 * See {@link BitcoindClient#walletPassPhrase(String, int)}.
+	 */
+	BitcoindFuture<VoidResponse> walletPassPhrase(String passPhrase, int timeout);
+
+	/**
+	 * See {@link BitcoindClient#walletPassPhraseChange(String, String)}.
+	 */
+	BitcoindFuture<VoidResponse> walletPassPhraseChange(String oldPassPhrase, String newPassPhrase);
+
+	/**
+	 * See {@link BitcoindClient#executeBatch(BitcoindBatch)}.
+	 * <p>
+	 * The returned future is completed with the given batch when all calls in
+	 * it have been completed.
+	 */
+	BitcoindFuture<BitcoindBatch> executeBatch(BitcoindBatch batch);
+
+}
@@ -0,0 +1,753 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static dk.clanie.bitcoin.client.BitcoindJsonRpcErrorHandler.clientException;
+import static dk.clanie.bitcoin.client.BitcoindJsonRpcErrorHandler.parseErrorResponse;
+import static dk.clanie.bitcoin.client.BitcoindJsonRpcErrorHandler.serverException;
+import static java.util.Collections.EMPTY_LIST;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.springframework.beans.factory.annotation.Required;
+import org.springframework.util.FileCopyUtils;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import dk.clanie.bitcoin.AddressAndAmount;
+import dk.clanie.bitcoin.SignatureHashAlgorithm;
+import dk.clanie.bitcoin.TransactionOutputRef;
+import dk.clanie.bitcoin.client.request.AddNodeAction;
+import dk.clanie.bitcoin.client.request.BitcoindJsonRpcRequest;
+import dk.clanie.bitcoin.client.request.TemplateRequest;
+import dk.clanie.bitcoin.client.response.BigDecimalResponse;
+import dk.clanie.bitcoin.client.response.BitcoindErrorResponse;
+import dk.clanie.bitcoin.client.response.BooleanResponse;
+import dk.clanie.bitcoin.client.response.CreateMultiSigResponse;
+import dk.clanie.bitcoin.client.response.DecodeRawTransactionResponse;
+import dk.clanie.bitcoin.client.response.GetAddedNodeInfoResponse;
+import dk.clanie.bitcoin.client.response.GetBlockResponse;
+import dk.clanie.bitcoin.client.response.GetBlockTemplateResponse;
+import dk.clanie.bitcoin.client.response.GetInfoResponse;
+import dk.clanie.bitcoin.client.response.GetMiningInfoResponse;
+import dk.clanie.bitcoin.client.response.GetPeerInfoResponse;
+import dk.clanie.bitcoin.client.response.GetRawTransactionResponse;
+import dk.clanie.bitcoin.client.response.GetTransactionResponse;
+import dk.clanie.bitcoin.client.response.GetTxOutResponse;
+import dk.clanie.bitcoin.client.response.GetTxOutSetInfoResponse;
+import dk.clanie.bitcoin.client.response.GetWorkResponse;
+import dk.clanie.bitcoin.client.response.IntegerResponse;
+import dk.clanie.bitcoin.client.response.ListAccountsResponse;
+import dk.clanie.bitcoin.client.response.ListAddressGroupingsResponse;
+import dk.clanie.bitcoin.client.response.ListLockUnspentResponse;
+import dk.clanie.bitcoin.client.response.ListReceivedByAccountResponse;
+import dk.clanie.bitcoin.client.response.ListReceivedByAddressResponse;
+import dk.clanie.bitcoin.client.response.ListSinceBlockResponse;
+import dk.clanie.bitcoin.client.response.ListTransactionsResponse;
+import dk.clanie.bitcoin.client.response.ListUnspentResponse;
+import dk.clanie.bitcoin.client.response.LongResponse;
+import dk.clanie.bitcoin.client.response.SignRawTransactionResponse;
+import dk.clanie.bitcoin.client.response.StringArrayResponse;
+import dk.clanie.bitcoin.client.response.StringResponse;
+import dk.clanie.bitcoin.client.response.ValidateAddressResponse;
+import dk.clanie.bitcoin.client.response.VoidResponse;
+import dk.clanie.bitcoin.exception.BitcoinException;
+import dk.clanie.bitcoin.exception.BitcoinHttpException;
+
+/**
+ * Asynchronous bitcoind client using non-blocking HTTP.
+ * <p>
+ * At most <code>maxInFlightRequests</code> requests are sent to bitcoind at
+ * a time. Calls made while that many requests are in flight are queued, and
+ * sent as soon as earlier requests complete, so calling methods on this
+ * client never blocks.
+ * <p>
+ * Requests are built and responses parsed like {@link BitcoindClientImpl}
+ * does. Responses are parsed, and the futures completed, on the given
+ * callback executor rather than on the I/O reactor thread, so slow parsing
+ * or slow callbacks don't hold up other requests.
+ * 
+ * @author Claus Nielsen
+ */
+public class BitcoindAsyncClientImpl implements BitcoindAsyncClient {
+
+	// [Configuration]
+	private String url;
+	private Header authorization;
+
+
+	// [Collaborators]
+	private final HttpAsyncClient httpClient;
+	private final Executor callbackExecutor;
+
+
+	// [State]
+	private final BitcoindJsonRpcCodec codec = new BitcoindJsonRpcCodec();
+	private final Semaphore inFlightPermits;
+	private final Queue<PendingCall<?>> pendingCalls = new ConcurrentLinkedQueue<PendingCall<?>>();
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param httpClient - started HTTP client used for calling bitcoind.
+	 * @param maxInFlightRequests - maximum number of concurrent requests.
+	 * @param callbackExecutor - parses responses and completes the futures.
+	 */
+	public BitcoindAsyncClientImpl(HttpAsyncClient httpClient, int maxInFlightRequests, Executor callbackExecutor) {
+		this.httpClient = httpClient;
+		this.callbackExecutor = callbackExecutor;
+		this.inFlightPermits = new Semaphore(maxInFlightRequests);
+	}
+
+
+	/**
+	 * Sets url for calling bitcoind.
+	 * 
+	 * @param url
+	 */
+	@Override
+	@Required
+	public void setUrl(String url) {
+		this.url = url;
+	}
+
+
+	/**
+	 * Sets user and password for authenticating with bitcoind.
+	 * <p>
+	 * The credentials are sent preemptively with every request.
+	 * 
+	 * @param user
+	 * @param password
+	 */
+	public void setCredentials(String user, String password) {
+		this.authorization = BasicScheme.authenticate(new UsernamePasswordCredentials(user, password), "UTF-8", false);
+	}
+
+
+	/**
+	 * Enables strict JSON mode, in which unknown fields in responses are
+	 * skipped instead of being captured in otherFields - see
+	 * {@link dk.clanie.bitcoin.json.StrictModule}.
+	 * <p>
+	 * Use it when responses don't have to serialize back to the exact JSON
+	 * received. Should be set before the client is used.
+	 * <p>
+	 * Default is false.
+	 * 
+	 * @param strictJson
+	 */
+	public void setStrictJson(boolean strictJson) {
+		codec.setStrict(strictJson);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringResponse> addMultiSigAddress(int nrequired, List<String> keys, String account) {
+		return jsonRpc("addmultisigaddress", BitcoindParams.addMultiSigAddress(nrequired, keys, account), StringResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<VoidResponse> addNode(String node, AddNodeAction action) {
+		return jsonRpc("addnode", BitcoindParams.addNode(node, action), VoidResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<VoidResponse> backupWallet(String destination) {
+		return jsonRpc("backupwallet", BitcoindParams.backupWallet(destination), VoidResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<CreateMultiSigResponse> createMultiSig(Integer nRequired, String[] keys) {
+		return jsonRpc("createmultisig", BitcoindParams.createMultiSig(nRequired, keys), CreateMultiSigResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringResponse> createRawTransaction(List<TransactionOutputRef> txOutputs, AddressAndAmount ... addressAndAmount) {
+		return jsonRpc("createrawtransaction", BitcoindParams.createRawTransaction(txOutputs, addressAndAmount), StringResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<DecodeRawTransactionResponse> decodeRawTransaction(String rawTransaction) {
+		return jsonRpc("decoderawtransaction", BitcoindParams.decodeRawTransaction(rawTransaction), DecodeRawTransactionResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringResponse> dumpPrivateKey(String bitcoinAddress) {
+		return jsonRpc("dumpprivkey", BitcoindParams.dumpPrivateKey(bitcoinAddress), StringResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<VoidResponse> encryptWallet(String passPhrase) {
+		return jsonRpc("encryptwallet", BitcoindParams.encryptWallet(passPhrase), VoidResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringResponse> getAccount(String bitcoinAddress) {
+		return jsonRpc("getaccount", BitcoindParams.getAccount(bitcoinAddress), StringResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringResponse> getAccountAddress(String account) {
+		return jsonRpc("getaccountaddress", BitcoindParams.getAccountAddress(account), StringResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<GetAddedNodeInfoResponse> getAddedNodeInfo(Boolean dns, String node) {
+		// TODO When calling with dns=false an object is returned; when calling with dns=true an array is returned.
+		// TODO Currently only the array case (dns=true) is handled - see  https://github.com/bitcoin/bitcoin/issues/2467
+		// TODO If bitcoind isn't changed (bug 2467) implement special serialization of the response in _GetAddedNodeInfoResponse_dnsArgFalse.json
+		return jsonRpc("getaddednodeinfo", BitcoindParams.getAddedNodeInfo(dns, node), GetAddedNodeInfoResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringArrayResponse> getAddressesByAccount(String account) {
+		return jsonRpc("getaddressesbyaccount", BitcoindParams.getAddressesByAccount(account), StringArrayResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<BigDecimalResponse> getBalance(String account, Integer minConf) {
+		return jsonRpc("getbalance", BitcoindParams.getBalance(account, minConf), BigDecimalResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<GetBlockResponse> getBlock(String hash) {
+		return jsonRpc("getblock", BitcoindParams.getBlock(hash), GetBlockResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<LongResponse> getBlockCount() {
+		return jsonRpc("getblockcount", EMPTY_LIST, LongResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringResponse> getBlockHash(Long index) {
+		return jsonRpc("getblockhash", BitcoindParams.getBlockHash(index), StringResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<GetBlockTemplateResponse> getBlockTemplate(TemplateRequest templateRequest) {
+		return jsonRpc("getblocktemplate", BitcoindParams.getBlockTemplate(templateRequest), GetBlockTemplateResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<IntegerResponse> getConnectionCount() {
+		return jsonRpc("getconnectioncount", EMPTY_LIST, IntegerResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<IntegerResponse> getDifficulty() {
+		return jsonRpc("getdifficulty", EMPTY_LIST, IntegerResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<BooleanResponse> getGenerate() {
+		return jsonRpc("getgenerate", EMPTY_LIST, BooleanResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<LongResponse> getHashesPerSecond() {
+		return jsonRpc("gethashespersec", EMPTY_LIST, LongResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<GetInfoResponse> getInfo() {
+		return jsonRpc("getinfo", EMPTY_LIST, GetInfoResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<GetMiningInfoResponse> getMiningInfo() {
+		return jsonRpc("getmininginfo", EMPTY_LIST, GetMiningInfoResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringResponse> getNewAddress(String account) {
+		return jsonRpc("getnewaddress", BitcoindParams.getNewAddress(account), StringResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<GetPeerInfoResponse> getPeerInfo() {
+		return jsonRpc("getpeerinfo", EMPTY_LIST, GetPeerInfoResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringArrayResponse> getRawMemPool() {
+		return jsonRpc("getrawmempool", EMPTY_LIST, StringArrayResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringResponse> getRawTransaction(String txId) {
+		return jsonRpc("getrawtransaction", BitcoindParams.getRawTransaction(txId), StringResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<GetRawTransactionResponse> getRawTransaction_verbose(String txId) {
+		return jsonRpc("getrawtransaction", BitcoindParams.getRawTransaction_verbose(txId), GetRawTransactionResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<BigDecimalResponse> getReceivedByAccount(String account, Integer minConf) {
+		return jsonRpc("getreceivedbyaccount", BitcoindParams.getReceivedByAccount(account, minConf), BigDecimalResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<BigDecimalResponse> getReceivedByAddress(String address, Integer minConf) {
+		return jsonRpc("getreceivedbyaddress", BitcoindParams.getReceivedByAddress(address, minConf), BigDecimalResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<GetTransactionResponse> getTransaction(String txId) {
+		return jsonRpc("gettransaction", BitcoindParams.getTransaction(txId), GetTransactionResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<GetTxOutResponse> getTxOut(String txId, Integer n, Boolean includeMemoryPool) {
+		return jsonRpc("gettxout", BitcoindParams.getTxOut(txId, n, includeMemoryPool), GetTxOutResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<GetTxOutSetInfoResponse> getTxOutSetInfo() {
+		return jsonRpc("gettxoutsetinfo", EMPTY_LIST, GetTxOutSetInfoResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<GetWorkResponse> getWork() {
+		return jsonRpc("getwork", EMPTY_LIST, GetWorkResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<BooleanResponse> getWork(String data) {
+		return jsonRpc("getwork", BitcoindParams.getWork(data), BooleanResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringResponse> help(String command) {
+		return jsonRpc("help", BitcoindParams.help(command), StringResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<VoidResponse> importPrivateKey(String key, String label, Boolean rescan) {
+		return jsonRpc("importprivkey", BitcoindParams.importPrivateKey(key, label, rescan), VoidResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<VoidResponse> keyPoolRefill() {
+		return jsonRpc("keypoolrefill", EMPTY_LIST, VoidResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<ListAccountsResponse> listAccounts(Integer minConf) {
+		return jsonRpc("listaccounts", BitcoindParams.listAccounts(minConf), ListAccountsResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<ListAddressGroupingsResponse> listAddressGroupings() {
+		return jsonRpc("listaddressgroupings", EMPTY_LIST, ListAddressGroupingsResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<ListLockUnspentResponse> listLockUnspent() {
+		return jsonRpc("listlockunspent", EMPTY_LIST, ListLockUnspentResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<ListReceivedByAccountResponse> listReceivedByAccount(Integer minConf, Boolean includeEmpty) {
+		return jsonRpc("listreceivedbyaccount", BitcoindParams.listReceivedByAccount(minConf, includeEmpty), ListReceivedByAccountResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<ListReceivedByAddressResponse> listReceivedByAddress(Integer minConf, Boolean includeEmpty) {
+		return jsonRpc("listreceivedbyaddress", BitcoindParams.listReceivedByAddress(minConf, includeEmpty), ListReceivedByAddressResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<ListTransactionsResponse> listTransactions(String account, Integer count, Integer from) {
+		return jsonRpc("listtransactions", BitcoindParams.listTransactions(account, count, from), ListTransactionsResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<ListUnspentResponse> listUnspent(Integer minConf, Integer maxConf, String ... address) {
+		return jsonRpc("listunspent", BitcoindParams.listUnspent(minConf, maxConf, address), ListUnspentResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<BooleanResponse> lockUnspent(Boolean unlock, TransactionOutputRef[] txOutputs) {
+		return jsonRpc("lockunspent", BitcoindParams.lockUnspent(unlock, txOutputs), BooleanResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<BooleanResponse> move(String fromAccount, String toAccount, BigDecimal amount, Integer minConf, String comment) {
+		return jsonRpc("move", BitcoindParams.move(fromAccount, toAccount, amount, minConf, comment), BooleanResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringResponse> sendFrom(String account, String address, BigDecimal amount, Integer minConf, String comment, String commentTo) {
+		return jsonRpc("sendfrom", BitcoindParams.sendFrom(account, address, amount, minConf, comment, commentTo), StringResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringResponse> sendMany(String fromAccount, AddressAndAmount[] addressesAndAmounts, Integer minConf, String commment) {
+		return jsonRpc("sendmany", BitcoindParams.sendMany(fromAccount, addressesAndAmounts, minConf, commment), StringResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringResponse> sendRawTransaction(String hex) {
+		return jsonRpc("sendrawtransaction", BitcoindParams.sendRawTransaction(hex), StringResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringResponse> sendToAddress(String address, BigDecimal amount, String comment, String commentTo) {
+		return jsonRpc("sendtoaddress", BitcoindParams.sendToAddress(address, amount, comment, commentTo), StringResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<VoidResponse> setAccount(String address, String account) {
+		return jsonRpc("setaccount", BitcoindParams.setAccount(address, account), VoidResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<VoidResponse> setGenerate(Boolean generate, Integer genProcLimit) {
+		return jsonRpc("setgenerate", BitcoindParams.setGenerate(generate, genProcLimit), VoidResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<BooleanResponse> setTxFee(BigDecimal amount) {
+		return jsonRpc("settxfee", BitcoindParams.setTxFee(amount), BooleanResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<StringResponse> signMessage(String address, String message) {
+		return jsonRpc("signmessage", BitcoindParams.signMessage(address, message), StringResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<SignRawTransactionResponse> signRawTransaction(String hex, Object[] requiredTxOuts, String[] privKeys, SignatureHashAlgorithm sigHash) {
+		return jsonRpc("signrawtransaction", BitcoindParams.signRawTransaction(hex, requiredTxOuts, privKeys, sigHash), SignRawTransactionResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<VoidResponse> stop() {
+		return jsonRpc("stop", EMPTY_LIST, VoidResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<ValidateAddressResponse> validateAddress(String address) {
+		return jsonRpc("validateaddress", BitcoindParams.validateAddress(address), ValidateAddressResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<BooleanResponse> verifyMessage(String address, String signature, String message) {
+		return jsonRpc("verifymessage", BitcoindParams.verifyMessage(address, signature, message), BooleanResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<VoidResponse> walletLock() {
+		return jsonRpc("walletlock", EMPTY_LIST, VoidResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<VoidResponse> walletPassPhrase(String passPhrase, int timeout) {
+		return jsonRpc("walletpassphrase", BitcoindParams.walletPassPhrase(passPhrase, timeout), VoidResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<VoidResponse> walletPassPhraseChange(String oldPassPhrase, String newPassPhrase) {
+		return jsonRpc("walletpassphrasechange", BitcoindParams.walletPassPhraseChange(oldPassPhrase, newPassPhrase), VoidResponse.class);
+	}
+
+
+	@Override
+	public BitcoindFuture<BitcoindBatch> executeBatch(final BitcoindBatch batch) {
+		if (batch.isExecuted()) throw new IllegalStateException("Batch has already been executed.");
+		if (batch.size() == 0) {
+			batch.markExecuted();
+			BitcoindFuture<BitcoindBatch> future = new BitcoindFuture<BitcoindBatch>();
+			future.completed(batch);
+			return future;
+		}
+		return submit(new PendingCall<BitcoindBatch>(batch.getRequests()) {
+			@Override
+			BitcoindBatch parse(InputStream in) throws IOException {
+				batch.complete(FileCopyUtils.copyToByteArray(in), codec);
+				batch.markExecuted();
+				return batch;
+			}
+		});
+	}
+
+
+	/**
+	 * Queues a JSON-RPC call specifying the given method and parameters and
+	 * returning a response of the given type.
+	 * 
+	 * @param method
+	 * @param params
+	 * @param responseType
+	 * @return future json response converted to the given type
+	 */
+	private <T> BitcoindFuture<T> jsonRpc(String method, List<?> params, final Class<T> responseType) {
+		return submit(new PendingCall<T>(new BitcoindJsonRpcRequest(method, params)) {
+			@Override
+			T parse(InputStream in) throws IOException {
+				return codec.reader(responseType).readValue(in);
+			}
+		});
+	}
+
+
+	private <T> BitcoindFuture<T> submit(PendingCall<T> call) {
+		try {
+			call.body = codec.writeRequest(call.request);
+		} catch (JsonProcessingException e) {
+			call.future.failed(new BitcoinException(e));
+			return call.future;
+		}
+		pendingCalls.add(call);
+		dispatch();
+		return call.future;
+	}
+
+
+	/**
+	 * Sends pending calls for as long as there are free in-flight permits.
+	 * <p>
+	 * Called whenever a call is queued and whenever a request completes, so
+	 * no call is left in the queue while a permit is free.
+	 */
+	private void dispatch() {
+		while (!pendingCalls.isEmpty() && inFlightPermits.tryAcquire()) {
+			PendingCall<?> call = pendingCalls.poll();
+			if (call == null || call.future.isCancelled()) {
+				inFlightPermits.release();
+				continue;
+			}
+			send(call);
+		}
+	}
+
+
+	private void release() {
+		inFlightPermits.release();
+		dispatch();
+	}
+
+
+	private <T> void send(final PendingCall<T> call) {
+		HttpPost post = new HttpPost(url);
+		post.setEntity(new ByteArrayEntity(call.body, ContentType.APPLICATION_JSON));
+		if (authorization != null) post.addHeader(authorization);
+		try {
+			Future<HttpResponse> httpFuture = httpClient.execute(post, new FutureCallback<HttpResponse>() {
+				@Override
+				public void completed(final HttpResponse response) {
+					complete(call, new Runnable() {
+						@Override
+						public void run() {
+							try {
+								call.future.completed(handleResponse(response, call));
+							} catch (BitcoinException e) {
+								call.future.failed(e);
+							} catch (IOException e) {
+								call.future.failed(new BitcoinException("Response parsing failed.", e));
+							}
+						}
+					});
+				}
+				@Override
+				public void failed(final Exception ex) {
+					complete(call, new Runnable() {
+						@Override
+						public void run() {
+							call.future.failed(new BitcoinException(ex));
+						}
+					});
+				}
+				@Override
+				public void cancelled() {
+					complete(call, new Runnable() {
+						@Override
+						public void run() {
+							call.future.cancel(false);
+						}
+					});
+				}
+			});
+			call.future.setUnderlying(httpFuture);
+		} catch (RuntimeException e) {
+			call.future.failed(new BitcoinException(e));
+			release();
+		}
+	}
+
+
+	/**
+	 * Runs the given completion of the call on the callback executor, and
+	 * releases the call's in-flight permit when done.
+	 * <p>
+	 * If the executor rejects the task the call is failed instead.
+	 */
+	private void complete(final PendingCall<?> call, final Runnable completion) {
+		try {
+			callbackExecutor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						completion.run();
+					} finally {
+						release();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			call.future.failed(new BitcoinException("Callback executor rejected the response.", e));
+			release();
+		}
+	}
+
+
+	/**
+	 * Converts the HTTP response to the call's result type or, if it is an
+	 * error response, to the same exception BitcoindClient would throw.
+	 */
+	private <T> T handleResponse(HttpResponse response, PendingCall<T> call) throws IOException {
+		StatusLine statusLine = response.getStatusLine();
+		int status = statusLine.getStatusCode();
+		HttpEntity entity = response.getEntity();
+		if (entity == null) {
+			throw new BitcoinHttpException(status, "Received an HTTP " + status + " " + statusLine.getReasonPhrase() + " without a body.");
+		}
+		InputStream in = entity.getContent();
+		try {
+			if (status >= 200 && status < 300) return call.parse(in);
+			if (status < 400 || status >= 600) {
+				throw new BitcoinHttpException(status, "Received an HTTP " + status + " " + statusLine.getReasonPhrase() + ".");
+			}
+			BitcoindErrorResponse errorResponse = parseErrorResponse(in, status, statusLine.getReasonPhrase());
+			throw status >= 500 ? serverException(errorResponse) : clientException(errorResponse);
+		} finally {
+			in.close();
+		}
+	}
+
+
+	/**
+	 * A call waiting to be sent, or in flight.
+	 *
+	 * @param <T> result type.
+	 */
+	private static abstract class PendingCall<T> {
+
+		final Object request;
+		final BitcoindFuture<T> future = new BitcoindFuture<T>();
+		byte[] body;
+
+		PendingCall(Object request) {
+			this.request = request;
+		}
+
+		/**
+		 * Parses a successful response.
+		 */
+		abstract T parse(InputStream in) throws IOException;
+
+	}
+
+
+}
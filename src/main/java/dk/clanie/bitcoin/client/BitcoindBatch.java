@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static dk.clanie.collections.CollectionFactory.newArrayList;
+import static dk.clanie.collections.CollectionFactory.newHashMap;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import dk.clanie.bitcoin.client.request.BitcoindJsonRpcRequest;
+import dk.clanie.bitcoin.client.response.BitcoindErrorResponse;
+import dk.clanie.bitcoin.client.response.BitcoindJsonRpcResponse;
+import dk.clanie.bitcoin.exception.BitcoinException;
+
+/**
+ * A batch of JSON RPC calls to be sent to bitcoind in one HTTP request.
+ * <p>
+ * Add calls with one of the <code>add</code> methods, and pass the batch to
+ * {@link BitcoindClient#executeBatch(BitcoindBatch)}. When the batch has been
+ * executed each {@link Call} holds either the response or the exception for
+ * that particular call, so one failing call does not fail the whole batch.
+ * <p>
+ * Example:
+ * <pre>
+ * BitcoindBatch batch = new BitcoindBatch();
+ * List&lt;BitcoindBatch.Call&lt;StringResponse&gt;&gt; calls = newArrayList();
+ * for (String txId : txIds) {
+ *     calls.add(batch.add("getrawtransaction", Arrays.asList(txId), StringResponse.class));
+ * }
+ * bitcoindClient.executeBatch(batch);
+ * for (BitcoindBatch.Call&lt;StringResponse&gt; call : calls) {
+ *     if (call.isSuccess()) process(call.getResponse());
+ * }
+ * </pre>
+ * A batch can only be executed once, and is not thread safe.
+ *
+ * @author Claus Nielsen
+ */
+public class BitcoindBatch {
+
+	private final List<Call<?>> calls = newArrayList();
+	private final Map<String, Call<?>> callsById = newHashMap();
+	private int nextId = 1;
+	private boolean executed = false;
+
+
+	/**
+	 * Adds a call to the batch.
+	 *
+	 * @param method - bitcoind JSON RPC method name, eg. "getrawtransaction".
+	 * @param params - method parameters.
+	 * @param responseType - type to deserialize the response into.
+	 * @return {@link Call} which will hold the outcome when the batch has been executed.
+	 */
+	public <T extends BitcoindJsonRpcResponse<?>> Call<T> add(String method, List<?> params, Class<T> responseType) {
+		return add(new BitcoindJsonRpcRequest(method, params, nextFreeId()), responseType);
+	}
+
+
+	/**
+	 * Adds a call to the batch.
+	 * <p>
+	 * If the request doesn't have an id one is assigned.
+	 *
+	 * @param request
+	 * @param responseType - type to deserialize the response into.
+	 * @return {@link Call} which will hold the outcome when the batch has been executed.
+	 * @throws IllegalArgumentException if the batch already holds a request with the same id.
+	 */
+	public <T extends BitcoindJsonRpcResponse<?>> Call<T> add(BitcoindJsonRpcRequest request, Class<T> responseType) {
+		if (executed) throw new IllegalStateException("Batch has already been executed.");
+		if (request.getId() == null) {
+			request = new BitcoindJsonRpcRequest(request.getMethod(), request.getParams(), nextFreeId());
+		}
+		if (callsById.containsKey(request.getId())) {
+			throw new IllegalArgumentException("Batch already contains a request with id " + request.getId() + ".");
+		}
+		Call<T> call = new Call<T>(request, responseType);
+		calls.add(call);
+		callsById.put(request.getId(), call);
+		return call;
+	}
+
+
+	/**
+	 * Gets the calls in this batch, in the order they were added.
+	 *
+	 * @return List of {@link Call}s.
+	 */
+	public List<Call<?>> getCalls() {
+		return Collections.unmodifiableList(calls);
+	}
+
+
+	/**
+	 * Gets the number of calls in this batch.
+	 *
+	 * @return number of calls
+	 */
+	public int size() {
+		return calls.size();
+	}
+
+
+	/**
+	 * Tells if the batch has been executed.
+	 *
+	 * @return true when all calls in the batch have a response or an exception.
+	 */
+	public boolean isExecuted() {
+		return executed;
+	}
+
+
+	/**
+	 * Gets the requests to send.
+	 */
+	List<BitcoindJsonRpcRequest> getRequests() {
+		List<BitcoindJsonRpcRequest> requests = newArrayList();
+		for (Call<?> call : calls) requests.add(call.getRequest());
+		return requests;
+	}
+
+
+	/**
+	 * Tells if all calls in this batch are to read-only methods.
+	 */
+	boolean isReadOnly() {
+		for (Call<?> call : calls) {
+			if (!BitcoindMethods.isReadOnly(call.getRequest().getMethod())) return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * Tells if all calls in this batch are to idempotent methods, so the
+	 * batch may safely be sent again.
+	 */
+	boolean isIdempotent() {
+		for (Call<?> call : calls) {
+			if (!BitcoindMethods.isIdempotent(call.getRequest().getMethod())) return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * Tells if all calls in this batch are to node independent methods.
+	 */
+	boolean isNodeIndependent() {
+		for (Call<?> call : calls) {
+			if (!BitcoindMethods.isNodeIndependent(call.getRequest().getMethod())) return false;
+		}
+		return true;
+	}
+
+
+	/**
+	 * Completes the calls in this batch with the given responses.
+	 * <p>
+	 * Responses are matched to calls by id. Responses with an id not in this
+	 * batch are ignored.
+	 * <p>
+	 * Each response is read straight into the response type of its call,
+	 * with the same reader as when the call is made on its own, so amounts
+	 * are parsed exactly and strict mode applies. As bitcoind puts the id
+	 * last the array is scanned first, to find the id and extent of each
+	 * response.
+	 *
+	 * @param responses - the JSON array returned by bitcoind.
+	 * @param codec - for reading the responses.
+	 * @throws IOException if the array can't be parsed.
+	 */
+	void complete(byte[] responses, BitcoindJsonRpcCodec codec) throws IOException {
+		JsonParser parser = codec.createParser(responses);
+		try {
+			if (parser.nextToken() != JsonToken.START_ARRAY) {
+				throw new JsonParseException("Expected an array of JSON RPC responses.", parser.getCurrentLocation());
+			}
+			while (parser.nextToken() == JsonToken.START_OBJECT) {
+				int start = (int) parser.getTokenLocation().getByteOffset();
+				String id = null;
+				boolean error = false;
+				while (parser.nextToken() == JsonToken.FIELD_NAME) {
+					String field = parser.getCurrentName();
+					JsonToken token = parser.nextToken();
+					if ("id".equals(field)) {
+						if (token != JsonToken.VALUE_NULL) id = parser.getText();
+					} else if ("error".equals(field)) {
+						error = token != JsonToken.VALUE_NULL;
+					}
+					parser.skipChildren();
+				}
+				int end = (int) parser.getCurrentLocation().getByteOffset();
+				Call<?> call = id == null ? null : callsById.get(id);
+				if (call != null) complete(call, responses, start, end - start, error, codec);
+			}
+		} finally {
+			parser.close();
+		}
+	}
+
+
+	private <T extends BitcoindJsonRpcResponse<?>> void complete(Call<T> call, byte[] json, int offset, int length,
+			boolean error, BitcoindJsonRpcCodec codec) {
+		try {
+			if (error) {
+				BitcoindErrorResponse errorResponse = codec.reader(BitcoindErrorResponse.class).readValue(json, offset, length);
+				call.fail(BitcoindJsonRpcErrorHandler.toException(errorResponse));
+			} else {
+				T response = codec.reader(call.getResponseType()).readValue(json, offset, length);
+				call.complete(response);
+			}
+		} catch (IOException ioe) {
+			call.fail(new BitcoinException("Parsing response to request with id " + call.getRequest().getId() + " failed.", ioe));
+		}
+	}
+
+
+	/**
+	 * Marks the batch as executed.
+	 * <p>
+	 * Calls for which no response was received are failed.
+	 */
+	void markExecuted() {
+		for (Call<?> call : calls) {
+			if (!call.isDone()) {
+				call.fail(new BitcoinException("No response received for request with id " + call.getRequest().getId() + "."));
+			}
+		}
+		executed = true;
+	}
+
+
+	private String nextFreeId() {
+		String id;
+		do {
+			id = Integer.toString(nextId++);
+		} while (callsById.containsKey(id));
+		return id;
+	}
+
+
+	/**
+	 * One call in a batch.
+	 *
+	 * @param <T> response type.
+	 */
+	public static class Call<T extends BitcoindJsonRpcResponse<?>> {
+
+		private final BitcoindJsonRpcRequest request;
+		private final Class<T> responseType;
+		private T response;
+		private BitcoinException exception;
+
+
+		private Call(BitcoindJsonRpcRequest request, Class<T> responseType) {
+			this.request = request;
+			this.responseType = responseType;
+		}
+
+
+		public BitcoindJsonRpcRequest getRequest() {
+			return request;
+		}
+
+
+		public Class<T> getResponseType() {
+			return responseType;
+		}
+
+
+		/**
+		 * Gets the response.
+		 *
+		 * @return response
+		 * @throws BitcoinException if this call failed.
+		 * @throws IllegalStateException if the batch hasn't been executed yet.
+		 */
+		public T getResponse() {
+			if (exception != null) throw exception;
+			if (response == null) throw new IllegalStateException("Batch has not been executed.");
+			return response;
+		}
+
+
+		/**
+		 * Gets the exception describing why this call failed.
+		 *
+		 * @return BitcoinException, or null if the call succeeded or hasn't been executed.
+		 */
+		public BitcoinException getException() {
+			return exception;
+		}
+
+
+		/**
+		 * Tells if this call succeeded.
+		 *
+		 * @return true if a (non-error) response was received.
+		 */
+		public boolean isSuccess() {
+			return response != null;
+		}
+
+
+		boolean isDone() {
+			return response != null || exception != null;
+		}
+
+
+		void complete(T response) {
+			this.response = response;
+		}
+
+
+		void fail(BitcoinException exception) {
+			this.exception = exception;
+		}
+
+	}
+
+
+}
@@ -7,6 +7,7 @@ import org.springframework.beans.factory.annotation.Required;
 
 import dk.clanie.bitcoin.AddressAndAmount;
 import dk.clanie.bitcoin.SignatureHashAlgorithm;
+import dk.clanie.bitcoin.Sha256Hash;
 import dk.clanie.bitcoin.TransactionOutputRef;
 import dk.clanie.bitcoin.client.request.AddNodeAction;
 import dk.clanie.bitcoin.client.request.TemplateRequest;
@@ -37,6 +38,7 @@ import dk.clanie.bitcoin.client.response.LongResponse;
 import dk.clanie.bitcoin.client.response.SignRawTransactionResponse;
 import dk.clanie.bitcoin.client.response.StringArrayResponse;
 import dk.clanie.bitcoin.client.response.StringResponse;
+import dk.clanie.bitcoin.client.response.UnspentOutputs;
 import dk.clanie.bitcoin.client.response.ValidateAddressResponse;
 import dk.clanie.bitcoin.client.response.VoidResponse;
 
@@ -490,7 +492,9 @@ public interface BitcoindClient {
 	/**
 	 * Returns up to <code>count</code> most recent transactions skipping the
 	 * first <code>from</code> transactions for account <code>account</code>.
-	 * 
+	 * <p>
+	 * To go through the whole history use a {@link TransactionScanner}.
+	 *
 	 * @param account
 	 *            - optional (may be null). If not provided will return recent
 	 *            transaction from all accounts.
@@ -505,6 +509,48 @@ public interface BitcoindClient {
 	ListTransactionsResponse listTransactions(String account, Integer count,
 			Integer from);
 
+	/**
+	 * Streaming variant of {@link #listTransactions(String, Integer, Integer)}.
+	 * <p>
+	 * Transactions are handed to the consumer one at a time while the
+	 * response is being parsed, so memory use doesn't depend on the number
+	 * of transactions. See also {@link TransactionDataIterator}.
+	 * 
+	 * @param account
+	 *            - optional (may be null). If not provided will return recent
+	 *            transaction from all accounts.
+	 * @param count
+	 *            - optional (may be null). Maximum number of transaction to
+	 *            return. Default 10.
+	 * @param from
+	 *            - optional (may be null). Number of transactions to skip.
+	 *            Default 0.
+	 * @param consumer
+	 *            - receives the transactions.
+	 */
+	void listTransactions(String account, Integer count, Integer from,
+			TransactionDataConsumer consumer);
+
+	/**
+	 * Gets all transactions in blocks since block <code>blockhash</code>, or
+	 * all transactions if omitted, streaming them to the given consumer.
+	 * <p>
+	 * Transactions are handed to the consumer one at a time while the
+	 * response is being parsed, so memory use doesn't depend on the number
+	 * of transactions. See also {@link TransactionDataIterator}.
+	 * 
+	 * @param blockHash
+	 *            - optional (may be null)
+	 * @param targetConfirmations
+	 *            - optional (may be null)
+	 * @param consumer
+	 *            - receives the transactions.
+	 * @return hash of the last block - pass it to the next call to get the
+	 *         transactions since.
+	 */
+	Sha256Hash listSinceBlock(String blockHash, Integer targetConfirmations,
+			TransactionDataConsumer consumer);
+
 	/**
 	 * Lists unspent transaction outputs with between minConf and maxConf
 	 * (inclusive) confirmations. Optionally filtered to only include transaction
@@ -523,6 +569,25 @@ public interface BitcoindClient {
 	ListUnspentResponse listUnspent(Integer minConf, Integer maxConf,
 			String... address);
 
+	/**
+	 * Lists unspent transaction outputs like
+	 * {@link #listUnspent(Integer, Integer, String...)}, but stores them in
+	 * primitive columns, which can be filtered and sorted without creating an
+	 * object per output.
+	 * 
+	 * @param minConf
+	 *            - optional minimum number of confirmations. Default 1.
+	 * @param maxConf
+	 *            - optional maximum number of confirmations. Default 999999.
+	 * @param address
+	 *            - optional address(es) limiting the output to transaction
+	 *            outputs paid to those addresses.
+	 * 
+	 * @return {@link UnspentOutputs}
+	 */
+	UnspentOutputs listUnspentOutputs(Integer minConf, Integer maxConf,
+			String... address);
+
 	/**
 	 * Updates list of temporarily unspendable outputs.
 	 * 
@@ -760,4 +825,15 @@ public interface BitcoindClient {
 	VoidResponse walletPassPhraseChange(String oldPassPhrase,
 			String newPassPhrase);
 
+	/**
+	 * Executes all calls in the given batch in one HTTP request.
+	 * <p>
+	 * Responses are matched to calls by request id. Calls which bitcoind
+	 * answered with an error, or for which no response was received, are
+	 * failed individually - see {@link BitcoindBatch.Call#getException()}.
+	 * 
+	 * @param batch
+	 */
+	void executeBatch(BitcoindBatch batch);
+
 }
\ No newline at end of file
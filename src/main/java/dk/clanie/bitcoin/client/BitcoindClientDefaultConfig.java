@@ -17,15 +17,39 @@
  */
 package dk.clanie.bitcoin.client;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PreDestroy;
+
+import org.apache.http.Header;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.HttpClient;
+import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.nio.client.DefaultHttpAsyncClient;
+import org.apache.http.impl.nio.conn.PoolingClientAsyncConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.HttpContext;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
 import org.springframework.http.client.ClientHttpRequestFactory;
@@ -33,6 +57,16 @@ import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestTemplate;
 
+import dk.clanie.bitcoin.AddressValidator;
+import dk.clanie.bitcoin.Network;
+import dk.clanie.bitcoin.client.cache.BlockCache;
+import dk.clanie.bitcoin.client.cache.HeaderIndex;
+import dk.clanie.bitcoin.client.cache.SegmentStore;
+import dk.clanie.bitcoin.client.cache.TipScopedCache;
+import dk.clanie.bitcoin.client.cache.TipWatcher;
+import dk.clanie.bitcoin.client.cache.TransactionCache;
+import dk.clanie.bitcoin.client.metrics.BitcoindClientMetrics;
+
 /**
  * Default BitcoindClient configuration.
  * <p>
@@ -43,6 +77,67 @@ import org.springframework.web.client.RestTemplate;
  * <li>bitcoind.client.user</li>
  * <li>bitcoind.client.passwor</li>
  * </bl>
+ * <p>
+ * Optional transport properties (defaults in parenthesis):
+ * <bl>
+ * <li>bitcoind.client.connections.maxTotal (20)</li>
+ * <li>bitcoind.client.connections.maxPerRoute (20)</li>
+ * <li>bitcoind.client.connections.idleTimeout - milliseconds (30000)</li>
+ * <li>bitcoind.client.connectTimeout - milliseconds (5000)</li>
+ * <li>bitcoind.client.socketTimeout - milliseconds (60000)</li>
+ * <li>bitcoind.client.async.maxInFlight - maximum number of concurrent
+ * requests from the {@link BitcoindAsyncClient} (100)</li>
+ * <li>bitcoind.client.async.callbackThreads - threads parsing responses and
+ * completing futures for the {@link BitcoindAsyncClient} (4)</li>
+ * <li>bitcoind.client.retry.maxAttempts - 1 disables retries (3)</li>
+ * <li>bitcoind.client.retry.initialBackoff - milliseconds (100)</li>
+ * <li>bitcoind.client.retry.maxBackoff - milliseconds (2000)</li>
+ * <li>bitcoind.client.circuitBreaker.failureThreshold (5)</li>
+ * <li>bitcoind.client.circuitBreaker.openTime - milliseconds (30000)</li>
+ * <li>bitcoind.client.metrics - record per-method metrics, including
+ * request and response sizes, which costs a few small objects per call
+ * (false)</li>
+ * <li>bitcoind.client.metrics.jmx - export the metrics over JMX, if
+ * recorded (true)</li>
+ * <li>bitcoind.client.singleFlight.methods - comma separated names of
+ * methods for which identical concurrent calls are coalesced
+ * (getinfo,getblockcount,getmininginfo,getdifficulty,getconnectioncount)</li>
+ * <li>bitcoind.client.cache.blocks.maxBytes - memory for caching getBlock
+ * results, 0 disables the cache (0)</li>
+ * <li>bitcoind.client.cache.transactions.maxBytes - memory for caching
+ * getRawTransaction results, 0 disables the cache (0)</li>
+ * <li>bitcoind.client.cache.minConfirmations - confirmations needed before
+ * results are cached (6)</li>
+ * <li>bitcoind.client.cache.directory - directory for persisting cached
+ * blocks and transactions across restarts, empty disables persistence ()</li>
+ * <li>bitcoind.client.maxTipAge - milliseconds the chain height is used for
+ * computing confirmations of cached results before getBlockCount is called
+ * again, unless the tip watcher is enabled (1000)</li>
+ * <li>bitcoind.client.capabilities.probe - probe the methods supported by
+ * the server, so calls to unsupported methods fail without calling bitcoind
+ * (false)</li>
+ * <li>bitcoind.client.network - MAIN or TEST, enables validating addresses
+ * locally, so invalid addresses are rejected without calling bitcoind ()</li>
+ * <li>bitcoind.client.decodeRawTransaction.local - decode raw transactions
+ * without calling bitcoind, requires bitcoind.client.network (false)</li>
+ * <li>bitcoind.client.tipWatcher.interval - milliseconds between polls for
+ * a new chain tip, 0 disables the tip watcher and the tip-scoped cache (0)</li>
+ * <li>bitcoind.client.cache.tipScoped.methods - comma separated names of
+ * methods cached until the tip or the wallet changes
+ * (getbalance,listunspent,getmininginfo,gettxoutsetinfo,getdifficulty)</li>
+ * <li>bitcoind.client.cache.tipScoped.maxEntries - maximum number of results
+ * held by the tip-scoped cache (1000)</li>
+ * <li>bitcoind.client.headerIndex - index block hashes by height, so
+ * getBlockHash is answered locally; requires the tip watcher (false)</li>
+ * <li>bitcoind.client.json.strict - skip unknown fields in responses
+ * instead of capturing them in otherFields (false)</li>
+ * </bl>
+ * Connections are pooled and kept alive between calls. Basic authentication
+ * is sent preemptively, so new connections don't have to go through an
+ * authentication challenge first.
+ * <p>
+ * The {@link BitcoindAsyncClient} and its I/O threads are only created when
+ * requested.
  * 
  * @author Claus Nielsen
  */
@@ -62,15 +157,238 @@ public class BitcoindClientDefaultConfig {
 	@Value("${bitcoind.client.password}")
 	private String password;
 
+	@Value("${bitcoind.client.connections.maxTotal:20}")
+	private int maxTotalConnections;
+
+	@Value("${bitcoind.client.connections.maxPerRoute:20}")
+	private int maxConnectionsPerRoute;
+
+	@Value("${bitcoind.client.connections.idleTimeout:30000}")
+	private long idleConnectionTimeout;
+
+	@Value("${bitcoind.client.connectTimeout:5000}")
+	private int connectTimeout;
+
+	@Value("${bitcoind.client.socketTimeout:60000}")
+	private int socketTimeout;
+
+	@Value("${bitcoind.client.async.maxInFlight:100}")
+	private int maxInFlightRequests;
+
+	@Value("${bitcoind.client.async.callbackThreads:4}")
+	private int asyncCallbackThreads;
+
+	@Value("${bitcoind.client.retry.maxAttempts:3}")
+	private int retryMaxAttempts;
+
+	@Value("${bitcoind.client.retry.initialBackoff:100}")
+	private long retryInitialBackoff;
+
+	@Value("${bitcoind.client.retry.maxBackoff:2000}")
+	private long retryMaxBackoff;
+
+	@Value("${bitcoind.client.circuitBreaker.failureThreshold:5}")
+	private int circuitBreakerFailureThreshold;
+
+	@Value("${bitcoind.client.circuitBreaker.openTime:30000}")
+	private long circuitBreakerOpenTime;
+
+	@Value("${bitcoind.client.metrics:false}")
+	private boolean recordMetrics;
+
+	@Value("${bitcoind.client.metrics.jmx:true}")
+	private boolean exportMetrics;
+
+	@Value("${bitcoind.client.singleFlight.methods:getinfo,getblockcount,getmininginfo,getdifficulty,getconnectioncount}")
+	private String[] singleFlightMethods;
+
+	@Value("${bitcoind.client.cache.blocks.maxBytes:0}")
+	private long blockCacheMaxBytes;
+
+	@Value("${bitcoind.client.cache.transactions.maxBytes:0}")
+	private long transactionCacheMaxBytes;
+
+	@Value("${bitcoind.client.cache.minConfirmations:6}")
+	private int cacheMinConfirmations;
+
+	@Value("${bitcoind.client.cache.directory:}")
+	private String cacheDirectory;
+
+	@Value("${bitcoind.client.maxTipAge:1000}")
+	private long maxTipAge;
+
+	@Value("${bitcoind.client.capabilities.probe:false}")
+	private boolean probeCapabilities;
+
+	@Value("${bitcoind.client.network:}")
+	private String network;
+
+	@Value("${bitcoind.client.decodeRawTransaction.local:false}")
+	private boolean decodeRawTransactionLocally;
+
+	@Value("${bitcoind.client.tipWatcher.interval:0}")
+	private long tipWatcherInterval;
+
+	@Value("${bitcoind.client.cache.tipScoped.methods:getbalance,listunspent,getmininginfo,gettxoutsetinfo,getdifficulty}")
+	private String[] tipScopedCacheMethods;
+
+	@Value("${bitcoind.client.cache.tipScoped.maxEntries:1000}")
+	private int tipScopedCacheMaxEntries;
+
+	@Value("${bitcoind.client.headerIndex:false}")
+	private boolean headerIndex;
+
+	@Value("${bitcoind.client.json.strict:false}")
+	private boolean strictJson;
+
+	private SegmentStore blockStore;
+	private SegmentStore transactionStore;
+
 
 	@Bean
-	public BitcoindClient bitcoindClient() {
-		BitcoindClient bitcoindClient = new BitcoindClientImpl();
+	public BitcoindClientImpl bitcoindClient() throws IOException {
+		BitcoindClientImpl bitcoindClient = new BitcoindClientImpl();
 		bitcoindClient.setUrl("http://" + host + ":" + port);
+		bitcoindClient.setRetryPolicy(retryPolicy());
+		bitcoindClient.setCircuitBreaker(circuitBreaker());
+		if (recordMetrics) bitcoindClient.setMetrics(bitcoindClientMetrics());
+		bitcoindClient.setSingleFlight(singleFlight());
+		bitcoindClient.setMaxTipAge(maxTipAge);
+		bitcoindClient.setProbeCapabilities(probeCapabilities);
+		bitcoindClient.setStrictJson(strictJson);
+		if (blockCacheMaxBytes > 0) {
+			BlockCache blockCache = new BlockCache(blockCacheMaxBytes);
+			blockCache.setMinConfirmations(cacheMinConfirmations);
+			if (cacheDirectory.trim().length() > 0) {
+				blockStore = new SegmentStore(new File(cacheDirectory.trim(), "blocks"));
+				blockCache.setStore(blockStore);
+			}
+			bitcoindClient.setBlockCache(blockCache);
+		}
+		if (transactionCacheMaxBytes > 0) {
+			TransactionCache transactionCache = new TransactionCache(transactionCacheMaxBytes);
+			transactionCache.setMinConfirmations(cacheMinConfirmations);
+			if (cacheDirectory.trim().length() > 0) {
+				transactionStore = new SegmentStore(new File(cacheDirectory.trim(), "transactions"));
+				transactionCache.setStore(transactionStore);
+			}
+			bitcoindClient.setTransactionCache(transactionCache);
+		}
+		if (tipWatcherInterval > 0) {
+			bitcoindClient.setTipScopedCache(tipScopedCache());
+			if (headerIndex) bitcoindClient.setHeaderIndex(new HeaderIndex(bitcoindClient));
+		} else if (headerIndex) {
+			throw new IllegalStateException("bitcoind.client.headerIndex requires bitcoind.client.tipWatcher.interval.");
+		}
+		if (network.trim().length() > 0) {
+			Network network = Network.valueOf(this.network.trim().toUpperCase());
+			bitcoindClient.setAddressValidator(new AddressValidator(network));
+			if (decodeRawTransactionLocally) bitcoindClient.setRawTransactionDecoder(new RawTransactionDecoder(network));
+		} else if (decodeRawTransactionLocally) {
+			throw new IllegalStateException("bitcoind.client.decodeRawTransaction.local requires bitcoind.client.network.");
+		}
 		return bitcoindClient;
 	}
 
 
+	/**
+	 * Closes the persistent cache stores, if any.
+	 */
+	@PreDestroy
+	public void closeStores() {
+		if (blockStore != null) blockStore.close();
+		if (transactionStore != null) transactionStore.close();
+	}
+
+
+	/**
+	 * Creates the tip watcher, which is only started if
+	 * bitcoind.client.tipWatcher.interval is positive.
+	 * <p>
+	 * With an interval of 0 the bean is a no-op: the watcher thread is never
+	 * started, nothing is registered with it and it doesn't poll bitcoind.
+	 * It's still created so beans depending on it can be wired regardless of
+	 * the interval, like the metrics bean when JMX export is disabled.
+	 */
+	@Bean(destroyMethod = "shutdown")
+	public TipWatcher tipWatcher() throws IOException {
+		TipWatcher tipWatcher = new TipWatcher(bitcoindClient(), tipWatcherInterval);
+		if (tipWatcherInterval > 0) {
+			bitcoindClient().registerWith(tipWatcher);
+			tipWatcher.start();
+		}
+		return tipWatcher;
+	}
+
+
+	private TipScopedCache tipScopedCache() {
+		TipScopedCache tipScopedCache = new TipScopedCache(tipScopedCacheMaxEntries);
+		for (String method : tipScopedCacheMethods) {
+			if (method.trim().length() > 0) tipScopedCache.enable(method.trim());
+		}
+		return tipScopedCache;
+	}
+
+
+	@Bean(destroyMethod = "unregister")
+	public BitcoindClientMetrics bitcoindClientMetrics() {
+		if (!recordMetrics || !exportMetrics) return new BitcoindClientMetrics();
+		return new BitcoindClientMetrics(ManagementFactory.getPlatformMBeanServer(), host + ":" + port);
+	}
+
+
+	private SingleFlight singleFlight() {
+		SingleFlight singleFlight = new SingleFlight();
+		for (String method : singleFlightMethods) {
+			if (method.trim().length() > 0) singleFlight.enable(method.trim());
+		}
+		return singleFlight;
+	}
+
+
+	private RetryPolicy retryPolicy() {
+		RetryPolicy retryPolicy = new RetryPolicy();
+		retryPolicy.setMaxAttempts(retryMaxAttempts);
+		retryPolicy.setInitialBackoff(retryInitialBackoff);
+		retryPolicy.setMaxBackoff(retryMaxBackoff);
+		return retryPolicy;
+	}
+
+
+	private CircuitBreaker circuitBreaker() {
+		CircuitBreaker circuitBreaker = new CircuitBreaker();
+		circuitBreaker.setFailureThreshold(circuitBreakerFailureThreshold);
+		circuitBreaker.setOpenTime(circuitBreakerOpenTime);
+		return circuitBreaker;
+	}
+
+
+	@Bean
+	@Lazy
+	public BitcoindAsyncClient bitcoindAsyncClient() throws IOReactorException {
+		BitcoindAsyncClientImpl bitcoindAsyncClient = new BitcoindAsyncClientImpl(httpAsyncClient(), maxInFlightRequests, asyncCallbackExecutor());
+		bitcoindAsyncClient.setUrl("http://" + host + ":" + port);
+		bitcoindAsyncClient.setCredentials(user, password);
+		bitcoindAsyncClient.setStrictJson(strictJson);
+		return bitcoindAsyncClient;
+	}
+
+
+	@Bean(destroyMethod = "shutdown")
+	@Lazy
+	public ExecutorService asyncCallbackExecutor() {
+		return Executors.newFixedThreadPool(asyncCallbackThreads, new ThreadFactory() {
+			private final AtomicInteger threadNumber = new AtomicInteger();
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "bitcoind-client-async-callback-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+
 	@Bean
 	public RestTemplate restTemplate() {
 		RestTemplate restTemplate = new RestTemplate();
@@ -85,18 +403,80 @@ public class BitcoindClientDefaultConfig {
 	}
 
 
+	/**
+	 * Creates the request factory, counting request and response bytes for
+	 * the metrics if they are recorded.
+	 */
 	private ClientHttpRequestFactory requestFactory() {
-		return new HttpComponentsClientHttpRequestFactory(httpClient());
+		ClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient());
+		if (!recordMetrics) return requestFactory;
+		return new CountingClientHttpRequestFactory(requestFactory);
+	}
+
+
+	@Bean(destroyMethod = "shutdown")
+	public PoolingClientConnectionManager connectionManager() {
+		PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager();
+		connectionManager.setMaxTotal(maxTotalConnections);
+		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+		return connectionManager;
+	}
+
+
+	@Bean(destroyMethod = "shutdown")
+	public IdleConnectionEvictor idleConnectionEvictor() {
+		IdleConnectionEvictor evictor = new IdleConnectionEvictor(connectionManager(), idleConnectionTimeout);
+		evictor.start();
+		return evictor;
 	}
 
 
 	private HttpClient httpClient() {
-		DefaultHttpClient httpClient = new DefaultHttpClient();
+		DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager());
+		HttpParams params = httpClient.getParams();
+		HttpConnectionParams.setTcpNoDelay(params, true);
+		HttpConnectionParams.setConnectionTimeout(params, connectTimeout);
+		HttpConnectionParams.setSoTimeout(params, socketTimeout);
 		httpClient.setCredentialsProvider(credentialsProvicer());
+		httpClient.addRequestInterceptor(preemptiveAuthInterceptor(), 0);
 		return httpClient;
 	}
 
 
+	/**
+	 * Creates an interceptor adding the Basic authentication header to every
+	 * request, saving the 401 round trip otherwise needed on each new
+	 * connection.
+	 */
+	private HttpRequestInterceptor preemptiveAuthInterceptor() {
+		final Header authorization = BasicScheme.authenticate(
+				new UsernamePasswordCredentials(user, password), "UTF-8", false);
+		return new HttpRequestInterceptor() {
+			@Override
+			public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+				if (!request.containsHeader(authorization.getName())) request.addHeader(authorization);
+			}
+		};
+	}
+
+
+	@Bean(destroyMethod = "shutdown")
+	@Lazy
+	public DefaultHttpAsyncClient httpAsyncClient() throws IOReactorException {
+		PoolingClientAsyncConnectionManager connectionManager = new PoolingClientAsyncConnectionManager(new DefaultConnectingIOReactor());
+		// Each in-flight request needs a connection of its own.
+		connectionManager.setMaxTotal(maxInFlightRequests);
+		connectionManager.setDefaultMaxPerRoute(maxInFlightRequests);
+		DefaultHttpAsyncClient httpAsyncClient = new DefaultHttpAsyncClient(connectionManager);
+		HttpParams params = httpAsyncClient.getParams();
+		HttpConnectionParams.setTcpNoDelay(params, true);
+		HttpConnectionParams.setConnectionTimeout(params, connectTimeout);
+		HttpConnectionParams.setSoTimeout(params, socketTimeout);
+		httpAsyncClient.start();
+		return httpAsyncClient;
+	}
+
+
 	private CredentialsProvider credentialsProvicer() {
 		CredentialsProvider credsProvider = new BasicCredentialsProvider();
 		credsProvider.setCredentials(
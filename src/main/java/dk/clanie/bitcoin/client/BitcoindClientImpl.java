@@ -17,26 +17,45 @@
  */
 package dk.clanie.bitcoin.client;
 
-import static dk.clanie.collections.CollectionFactory.newArrayList;
-import static dk.clanie.collections.CollectionFactory.newHashMap;
-import static dk.clanie.util.Util.firstNotNull;
-import static java.lang.Boolean.FALSE;
 import static java.util.Collections.EMPTY_LIST;
 
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Required;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+
 import dk.clanie.bitcoin.AddressAndAmount;
+import dk.clanie.bitcoin.AddressValidator;
+import dk.clanie.bitcoin.Sha256Hash;
 import dk.clanie.bitcoin.SignatureHashAlgorithm;
 import dk.clanie.bitcoin.TransactionOutputRef;
+import dk.clanie.bitcoin.client.BitcoindJsonRpcCodec.StreamingRequest;
+import dk.clanie.bitcoin.client.CountingClientHttpRequestFactory.ByteCount;
 import dk.clanie.bitcoin.client.request.AddNodeAction;
 import dk.clanie.bitcoin.client.request.BitcoindJsonRpcRequest;
+import dk.clanie.bitcoin.client.cache.BlockCache;
+import dk.clanie.bitcoin.client.cache.ChainTip;
+import dk.clanie.bitcoin.client.cache.HeaderIndex;
+import dk.clanie.bitcoin.client.cache.TipChangeEvent;
+import dk.clanie.bitcoin.client.cache.TipListener;
+import dk.clanie.bitcoin.client.cache.TipScopedCache;
+import dk.clanie.bitcoin.client.cache.TipWatcher;
+import dk.clanie.bitcoin.client.cache.TransactionCache;
+import dk.clanie.bitcoin.client.metrics.BitcoindClientMetrics;
+import dk.clanie.bitcoin.client.metrics.MethodMetrics;
 import dk.clanie.bitcoin.client.request.TemplateRequest;
 import dk.clanie.bitcoin.client.response.BigDecimalResponse;
 import dk.clanie.bitcoin.client.response.BooleanResponse;
@@ -44,6 +63,7 @@ import dk.clanie.bitcoin.client.response.CreateMultiSigResponse;
 import dk.clanie.bitcoin.client.response.DecodeRawTransactionResponse;
 import dk.clanie.bitcoin.client.response.GetAddedNodeInfoResponse;
 import dk.clanie.bitcoin.client.response.GetBlockResponse;
+import dk.clanie.bitcoin.client.response.GetBlockResult;
 import dk.clanie.bitcoin.client.response.GetBlockTemplateResponse;
 import dk.clanie.bitcoin.client.response.GetInfoResponse;
 import dk.clanie.bitcoin.client.response.GetMiningInfoResponse;
@@ -66,8 +86,13 @@ import dk.clanie.bitcoin.client.response.LongResponse;
 import dk.clanie.bitcoin.client.response.SignRawTransactionResponse;
 import dk.clanie.bitcoin.client.response.StringArrayResponse;
 import dk.clanie.bitcoin.client.response.StringResponse;
+import dk.clanie.bitcoin.client.response.UnspentOutputs;
 import dk.clanie.bitcoin.client.response.ValidateAddressResponse;
 import dk.clanie.bitcoin.client.response.VoidResponse;
+import dk.clanie.bitcoin.client.response.BitcoindErrorResponse;
+import dk.clanie.bitcoin.exception.BitcoinException;
+import dk.clanie.bitcoin.exception.BitcoinExceptionRegistry;
+import dk.clanie.bitcoin.exception.CircuitOpenException;
 
 /**
  * Implements bitcoind client providing java style functions for calling bitcoind rest-rpc methods.
@@ -77,15 +102,69 @@ import dk.clanie.bitcoin.client.response.VoidResponse;
 @Service
 public class BitcoindClientImpl implements BitcoindClient {
 
+	// Pre-encoded requests for methods typically called in polling loops.
+	private static final StreamingRequest GET_BLOCK_COUNT = new StreamingRequest(StreamingRequest.methodName("getblockcount"));
+	private static final StreamingRequest GET_RAW_MEM_POOL = new StreamingRequest(StreamingRequest.methodName("getrawmempool"));
+	private static final SerializableString GET_TX_OUT = StreamingRequest.methodName("gettxout");
+
+	// Error response for methods the server doesn't support.
+	private static final String METHOD_NOT_FOUND = "{\"result\":null,\"error\":{\"code\":-32601,\"message\":\"Method not found\"},\"id\":null}";
+
+	// Error response for raw transactions which can't be decoded.
+	private static final String TX_DECODE_FAILED = "{\"result\":null,\"error\":{\"code\":-22,\"message\":\"TX decode failed\"},\"id\":null}";
+
+	// Nanoseconds between attempts to probe the server's capabilities.
+	private static final long PROBE_RETRY_INTERVAL = 10000000000L;
+
+	// Response of validateAddress for invalid addresses.
+	private static final String INVALID_ADDRESS = "{\"result\":{\"isvalid\":false},\"error\":null,\"id\":null}";
 
 	// [Configuration]
 	private String url;
+	private volatile long maxTipAge = 1000;
+	private volatile boolean tipWatched = false;
+	private volatile boolean probeCapabilities = false;
 
 
 	// [Collaborators]
 	@Autowired
 	private RestTemplate restTemplate;
 
+	private RetryPolicy retryPolicy;
+	private CircuitBreaker circuitBreaker;
+	private BitcoindClientMetrics metrics;
+	private BlockCache blockCache;
+	private TransactionCache transactionCache;
+	private SingleFlight singleFlight;
+	private TipScopedCache tipScopedCache;
+	private HeaderIndex headerIndex;
+	private AddressValidator addressValidator;
+	private RawTransactionDecoder rawTransactionDecoder;
+
+
+	// [State]
+	private final ChainTip chainTip = new ChainTip();
+
+	private final TipListener tipListener = new TipListener() {
+		@Override
+		public void tipChanged(TipChangeEvent event) {
+			chainTip.update(event.getHeight());
+			BlockCache blockCache = BitcoindClientImpl.this.blockCache;
+			TransactionCache transactionCache = BitcoindClientImpl.this.transactionCache;
+			TipScopedCache tipScopedCache = BitcoindClientImpl.this.tipScopedCache;
+			HeaderIndex headerIndex = BitcoindClientImpl.this.headerIndex;
+			if (blockCache != null) blockCache.tipChanged(event);
+			if (transactionCache != null) transactionCache.tipChanged(event);
+			if (tipScopedCache != null) tipScopedCache.tipChanged(event);
+			if (headerIndex != null) headerIndex.tipChanged(event);
+		}
+	};
+
+	private final BitcoindJsonRpcCodec codec = new BitcoindJsonRpcCodec();
+
+	private volatile ServerCapabilities capabilities;
+	private final AtomicLong lastProbe = new AtomicLong(System.nanoTime() - PROBE_RETRY_INTERVAL);
+
 
 	/**
 	 * Default constructor.
@@ -106,6 +185,255 @@ public class BitcoindClientImpl implements BitcoindClient {
 	}
 
 
+	/**
+	 * Sets the policy for retrying failed calls.
+	 * <p>
+	 * Without a retry policy failed calls aren't retried.
+	 * 
+	 * @param retryPolicy
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = retryPolicy;
+	}
+
+
+	/**
+	 * Sets the circuit breaker guarding calls to bitcoind.
+	 * <p>
+	 * Each node needs a circuit breaker of its own.
+	 * 
+	 * @param circuitBreaker
+	 */
+	public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+		this.circuitBreaker = circuitBreaker;
+	}
+
+
+	/**
+	 * Sets the metrics to record calls in.
+	 * <p>
+	 * Latency, request and response size and errors are recorded per
+	 * method, for each attempt of calling bitcoind. Sizes are only known
+	 * when the RestTemplate's requests are created by a {@link
+	 * CountingClientHttpRequestFactory}, which costs a few small objects per
+	 * attempt.
+	 * 
+	 * @param metrics
+	 */
+	public void setMetrics(BitcoindClientMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+
+	/**
+	 * Sets the single flight coalescing identical concurrent calls.
+	 * 
+	 * @param singleFlight
+	 */
+	public void setSingleFlight(SingleFlight singleFlight) {
+		this.singleFlight = singleFlight;
+	}
+
+
+	/**
+	 * Sets the cache for getBlock results.
+	 * <p>
+	 * Cached blocks are returned without calling bitcoind, with
+	 * confirmations computed from the chain height - see {@link
+	 * #setMaxTipAge(long)}.
+	 * 
+	 * @param blockCache
+	 */
+	public void setBlockCache(BlockCache blockCache) {
+		this.blockCache = blockCache;
+	}
+
+
+	/**
+	 * Sets the cache for getRawTransaction and getRawTransaction_verbose
+	 * results.
+	 * <p>
+	 * With a cache getRawTransaction fetches the verbose variant on a cache
+	 * miss, as the number of confirmations is needed to decide if the
+	 * transaction can be cached.
+	 * 
+	 * @param transactionCache
+	 */
+	public void setTransactionCache(TransactionCache transactionCache) {
+		this.transactionCache = transactionCache;
+	}
+
+
+	/**
+	 * Sets the cache for results which only change with the chain tip or the
+	 * wallet, eg. getBalance and listUnspent.
+	 * <p>
+	 * The cache is invalidated after each call which may change the wallet,
+	 * and on each new tip when a {@link TipWatcher} is registered - see
+	 * {@link #registerWith(TipWatcher)}. Without one results are only
+	 * invalidated by calls made through this client.
+	 * 
+	 * @param tipScopedCache
+	 */
+	public void setTipScopedCache(TipScopedCache tipScopedCache) {
+		this.tipScopedCache = tipScopedCache;
+	}
+
+
+	/**
+	 * Sets the index of block hashes by height.
+	 * <p>
+	 * getBlockHash is answered from the index for indexed heights. The index
+	 * should be kept up to date by registering with a {@link TipWatcher} -
+	 * see {@link #registerWith(TipWatcher)}.
+	 * 
+	 * @param headerIndex
+	 */
+	public void setHeaderIndex(HeaderIndex headerIndex) {
+		this.headerIndex = headerIndex;
+	}
+
+
+	/**
+	 * Sets the validator used for validating addresses locally.
+	 * <p>
+	 * With a validator validateAddress answers invalid addresses without
+	 * calling bitcoind. bitcoind is only called for valid addresses, to learn
+	 * if they belong to the wallet.
+	 * 
+	 * @param addressValidator
+	 */
+	public void setAddressValidator(AddressValidator addressValidator) {
+		this.addressValidator = addressValidator;
+	}
+
+
+	/**
+	 * Sets the decoder used for decoding raw transactions locally.
+	 * <p>
+	 * With a decoder decodeRawTransaction doesn't call bitcoind.
+	 * 
+	 * @param rawTransactionDecoder
+	 */
+	public void setRawTransactionDecoder(RawTransactionDecoder rawTransactionDecoder) {
+		this.rawTransactionDecoder = rawTransactionDecoder;
+	}
+
+
+	/**
+	 * Registers this client with the given tip watcher.
+	 * <p>
+	 * On tip changes the chain height is updated, cached blocks and
+	 * transactions no longer in the main chain are removed, and the
+	 * tip-scoped cache is invalidated. The header index, if any, is updated
+	 * by the tip watcher's thread.
+	 * <p>
+	 * Once registered the known chain height is considered up to date, so
+	 * cached results are returned without calling getBlockCount - see
+	 * {@link #setMaxTipAge(long)}.
+	 * 
+	 * @param tipWatcher
+	 */
+	public void registerWith(TipWatcher tipWatcher) {
+		tipWatcher.addListener(tipListener);
+		tipWatched = true;
+	}
+
+
+	/**
+	 * Sets for how long the chain height learned from getBlockCount is used
+	 * for computing confirmations of cached results.
+	 * <p>
+	 * When the height is older getBlockCount is called again before
+	 * returning a cached result. Not used when registered with a {@link
+	 * TipWatcher}, which keeps the height up to date. Default is 1000.
+	 * 
+	 * @param maxTipAge - milliseconds.
+	 */
+	public void setMaxTipAge(long maxTipAge) {
+		this.maxTipAge = maxTipAge;
+	}
+
+
+	/**
+	 * Enables probing the server's capabilities.
+	 * <p>
+	 * When enabled the server is probed with help and getInfo before the
+	 * first call, and calls to methods the server doesn't support fail with
+	 * a {@link dk.clanie.bitcoin.exception.client.MethodNotFoundException}
+	 * without calling bitcoind. If probing fails calls are sent as usual,
+	 * and probing is retried after 10 seconds.
+	 * <p>
+	 * Default is false.
+	 * 
+	 * @param probeCapabilities
+	 */
+	public void setProbeCapabilities(boolean probeCapabilities) {
+		this.probeCapabilities = probeCapabilities;
+	}
+
+
+	/**
+	 * Enables strict JSON mode, in which unknown fields in responses are
+	 * skipped instead of being captured in otherFields - see
+	 * {@link dk.clanie.bitcoin.json.StrictModule}.
+	 * <p>
+	 * Use it when responses don't have to serialize back to the exact JSON
+	 * received. Should be set before the client is used.
+	 * <p>
+	 * Default is false.
+	 * 
+	 * @param strictJson
+	 */
+	public void setStrictJson(boolean strictJson) {
+		codec.setStrict(strictJson);
+	}
+
+
+	/**
+	 * Gets the server's capabilities.
+	 * 
+	 * @return ServerCapabilities, or null if probing is disabled or hasn't
+	 *         succeeded yet.
+	 */
+	public ServerCapabilities getCapabilities() {
+		return capabilities;
+	}
+
+
+	/**
+	 * Probes the server's capabilities now, eg. after upgrading bitcoind.
+	 * 
+	 * @return ServerCapabilities
+	 */
+	public ServerCapabilities probeCapabilities() {
+		lastProbe.set(System.nanoTime());
+		return probe();
+	}
+
+
+	/**
+	 * Probes the server's capabilities and remembers them.
+	 * 
+	 * @return ServerCapabilities
+	 */
+	private ServerCapabilities probe() {
+		ServerCapabilities capabilities = ServerCapabilities.probe(this);
+		this.capabilities = capabilities;
+		return capabilities;
+	}
+
+
+	/**
+	 * Gets the latest chain height learned from bitcoind.
+	 * 
+	 * @return ChainTip
+	 */
+	public ChainTip getChainTip() {
+		return chainTip;
+	}
+
+
 
 	/**
 	 * Add a nrequired-to-sign multisignature address to the wallet.
@@ -120,11 +448,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringResponse addMultiSigAddress(int nrequired, List<String> keys, String account) {
-		List<Object> params = newArrayList();
-		params.add(nrequired);
-		params.add(keys);
-		if (account != null) params.add(account);
-		return jsonRpc("addmultisigaddress", params, StringResponse.class);
+		return jsonRpc("addmultisigaddress", BitcoindParams.addMultiSigAddress(nrequired, keys, account), StringResponse.class);
 	}
 
 
@@ -144,10 +468,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public VoidResponse addNode(String node, AddNodeAction action) {
-		List<Object> params = newArrayList();
-		params.add(node);
-		params.add(action.toString());
-		return jsonRpc("addnode", params, VoidResponse.class);
+		return jsonRpc("addnode", BitcoindParams.addNode(node, action), VoidResponse.class);
 	}
 
 
@@ -161,9 +482,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public VoidResponse backupWallet(String destination) {
-		List<Object> params = newArrayList();
-		params.add(destination);
-		return jsonRpc("backupwallet", params, VoidResponse.class);
+		return jsonRpc("backupwallet", BitcoindParams.backupWallet(destination), VoidResponse.class);
 
 	}
 
@@ -182,10 +501,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public CreateMultiSigResponse createMultiSig(Integer nRequired, String[] keys) {
-		List<Object> params = newArrayList();
-		params.add(nRequired);
-		if (keys != null) params.add(keys);
-		return jsonRpc("createmultisig", params, CreateMultiSigResponse.class);
+		return jsonRpc("createmultisig", BitcoindParams.createMultiSig(nRequired, keys), CreateMultiSigResponse.class);
 	}
 
 
@@ -206,19 +522,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringResponse createRawTransaction(List<TransactionOutputRef> txOutputs, AddressAndAmount ... addressAndAmount) {
-		Map<String, BigDecimal> recipients = newHashMap();
-		for (AddressAndAmount aaa : addressAndAmount) {
-			String address = aaa.getAddress();
-			BigDecimal amount = aaa.getAmount();
-			if (recipients.containsKey(address)) {
-				amount = recipients.get(address).add(amount);
-			}
-			recipients.put(address, amount);
-		}
-		List<Object> params = newArrayList();
-		params.add(txOutputs);
-		params.add(recipients);
-		return jsonRpc("createrawtransaction", params, StringResponse.class);
+		return jsonRpc("createrawtransaction", BitcoindParams.createRawTransaction(txOutputs, addressAndAmount), StringResponse.class);
 	}
 
 
@@ -230,9 +534,19 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public DecodeRawTransactionResponse decodeRawTransaction(String rawTransaction) {
-		List<Object> params = newArrayList();
-		params.add(rawTransaction);
-		return jsonRpc("decoderawtransaction", params, DecodeRawTransactionResponse.class);
+		RawTransactionDecoder rawTransactionDecoder = this.rawTransactionDecoder;
+		if (rawTransactionDecoder != null) {
+			try {
+				return rawTransactionDecoder.decodeResponse(rawTransaction);
+			} catch (IllegalArgumentException e) {
+				// Fail the same way as bitcoind.
+				BitcoindErrorResponse errorResponse = localResponse(TX_DECODE_FAILED, BitcoindErrorResponse.class);
+				BitcoinException exception = BitcoinExceptionRegistry.getInstance().createException(errorResponse, false);
+				exception.initCause(e);
+				throw exception;
+			}
+		}
+		return jsonRpc("decoderawtransaction", BitcoindParams.decodeRawTransaction(rawTransaction), DecodeRawTransactionResponse.class);
 	}
 
 
@@ -246,9 +560,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringResponse dumpPrivateKey(String bitcoinAddress) {
-		List<String> params = newArrayList();
-		params.add(bitcoinAddress);
-		return jsonRpc("dumpprivkey", params, StringResponse.class);
+		return jsonRpc("dumpprivkey", BitcoindParams.dumpPrivateKey(bitcoinAddress), StringResponse.class);
 	}
 
 
@@ -260,9 +572,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public VoidResponse encryptWallet(String passPhrase) {
-		List<String> params = newArrayList();
-		params.add(passPhrase);
-		return jsonRpc("encryptwallet", params, VoidResponse.class);
+		return jsonRpc("encryptwallet", BitcoindParams.encryptWallet(passPhrase), VoidResponse.class);
 	}
 
 
@@ -274,9 +584,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringResponse getAccount(String bitcoinAddress) {
-		List<String> params = newArrayList();
-		params.add(bitcoinAddress);
-		return jsonRpc("getaccount", params, StringResponse.class);
+		return jsonRpc("getaccount", BitcoindParams.getAccount(bitcoinAddress), StringResponse.class);
 	}
 
 	/**
@@ -287,9 +595,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringResponse getAccountAddress(String account) {
-		List<String> params = newArrayList();
-		params.add(account);
-		return jsonRpc("getaccountaddress", params, StringResponse.class);
+		return jsonRpc("getaccountaddress", BitcoindParams.getAccountAddress(account), StringResponse.class);
 	}
 
 
@@ -312,10 +618,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 		// TODO When calling with dns=false an object is returned; when calling with dns=true an array is returned.
 		// TODO Currently only the array case (dns=true) is handled - see  https://github.com/bitcoin/bitcoin/issues/2467
 		// TODO If bitcoind isn't changed (bug 2467) implement special serialization of the response in _GetAddedNodeInfoResponse_dnsArgFalse.json
-		List<Object> params = newArrayList();
-		params.add(dns);
-		if (node != null) params.add(node);
-		return jsonRpc("getaddednodeinfo", params, GetAddedNodeInfoResponse.class);
+		return jsonRpc("getaddednodeinfo", BitcoindParams.getAddedNodeInfo(dns, node), GetAddedNodeInfoResponse.class);
 	}
 
 
@@ -327,9 +630,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringArrayResponse getAddressesByAccount(String account) {
-		List<Object> params = newArrayList();
-		params.add(account);
-		return jsonRpc("getaddressesbyaccount", params, StringArrayResponse.class);
+		return jsonRpc("getaddressesbyaccount", BitcoindParams.getAddressesByAccount(account), StringArrayResponse.class);
 	}
 
 
@@ -346,10 +647,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public BigDecimalResponse getBalance(String account, Integer minConf) {
-		List<Object> params = newArrayList();
-		if (account != null || minConf != null) params.add(account);
-		if (minConf != null) params.add(minConf);
-		return jsonRpc("getbalance", params, BigDecimalResponse.class);
+		return jsonRpc("getbalance", BitcoindParams.getBalance(account, minConf), BigDecimalResponse.class);
 	}
 
 
@@ -362,9 +660,20 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public GetBlockResponse getBlock(String hash) {
-		List<Object> params = newArrayList();
-		params.add(hash);
-		return jsonRpc("getblock", params, GetBlockResponse.class);
+		BlockCache blockCache = this.blockCache;
+		if (blockCache != null) {
+			BlockCache.Block block = blockCache.get(hash);
+			if (block != null) {
+				long tipHeight = tipHeight();
+				if (block.getNextBlockHash() == null && block.getHeight() < tipHeight) {
+					block.setNextBlockHash(Sha256Hash.valueOf(getBlockHash(block.getHeight() + 1).getResult()));
+				}
+				return block.toResponse(tipHeight, codec.reader(GetBlockResponse.class));
+			}
+		}
+		GetBlockResponse response = jsonRpc("getblock", BitcoindParams.getBlock(hash), GetBlockResponse.class);
+		if (blockCache != null) blockCache.put(response);
+		return response;
 	}
 
 
@@ -375,7 +684,10 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public LongResponse getBlockCount() {
-		return jsonRpc("getblockcount", EMPTY_LIST, LongResponse.class);
+		LongResponse response = jsonRpc(GET_BLOCK_COUNT, LongResponse.class);
+		Long blockCount = response.getResult();
+		if (blockCount != null) chainTip.update(blockCount.longValue());
+		return response;
 	}
 
 
@@ -387,9 +699,16 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringResponse getBlockHash(Long index) {
-		List<Object> params = newArrayList();
-		params.add(index);
-		return jsonRpc("getblockhash", params, StringResponse.class);
+		HeaderIndex headerIndex = this.headerIndex;
+		if (headerIndex != null && index != null) {
+			String hash = headerIndex.getHash(index.longValue());
+			if (hash != null) {
+				StringResponse response = new StringResponse();
+				response.setResult(hash);
+				return response;
+			}
+		}
+		return jsonRpc("getblockhash", BitcoindParams.getBlockHash(index), StringResponse.class);
 	}
 
 
@@ -401,9 +720,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public GetBlockTemplateResponse getBlockTemplate(TemplateRequest templateRequest) {
-		List<Object> params = newArrayList();
-		params.add(templateRequest);
-		return jsonRpc("getblocktemplate", params, GetBlockTemplateResponse.class);
+		return jsonRpc("getblocktemplate", BitcoindParams.getBlockTemplate(templateRequest), GetBlockTemplateResponse.class);
 	}
 
 
@@ -485,9 +802,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringResponse getNewAddress(String account) {
-		List<Object> params = newArrayList();
-		if (account != null) params.add(account);
-		return jsonRpc("getnewaddress", params, StringResponse.class);
+		return jsonRpc("getnewaddress", BitcoindParams.getNewAddress(account), StringResponse.class);
 	}
 
 
@@ -514,7 +829,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringArrayResponse getRawMemPool() {
-		return jsonRpc("getrawmempool", EMPTY_LIST, StringArrayResponse.class);
+		return jsonRpc(GET_RAW_MEM_POOL, StringArrayResponse.class);
 	}
 
 
@@ -529,9 +844,14 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringResponse getRawTransaction(String txId) {
-		List<Object> params = newArrayList();
-		params.add(txId);
-		return jsonRpc("getrawtransaction", params, StringResponse.class);
+		TransactionCache transactionCache = this.transactionCache;
+		if (transactionCache != null) {
+			TransactionCache.Transaction transaction = transactionCache.get(txId);
+			if (transaction != null) return transaction.toHexResponse();
+			GetRawTransactionResponse response = getRawTransactionVerboseAndCache(txId, transactionCache);
+			return TransactionCache.hexResponse(response.getResult().getHex());
+		}
+		return jsonRpc("getrawtransaction", BitcoindParams.getRawTransaction(txId), StringResponse.class);
 	}
 
 
@@ -546,10 +866,57 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public GetRawTransactionResponse getRawTransaction_verbose(String txId) {
-		List<Object> params = newArrayList();
-		params.add(txId);
-		params.add(1); // verbose
-		return jsonRpc("getrawtransaction", params, GetRawTransactionResponse.class);
+		TransactionCache transactionCache = this.transactionCache;
+		if (transactionCache != null) {
+			TransactionCache.Transaction transaction = transactionCache.get(txId);
+			if (transaction != null) return transaction.toResponse(tipHeight(), codec.reader(GetRawTransactionResponse.class));
+			return getRawTransactionVerboseAndCache(txId, transactionCache);
+		}
+		return getRawTransactionVerbose(txId);
+	}
+
+
+	private GetRawTransactionResponse getRawTransactionVerbose(String txId) {
+		return jsonRpc("getrawtransaction", BitcoindParams.getRawTransaction_verbose(txId), GetRawTransactionResponse.class);
+	}
+
+
+	/**
+	 * Gets a transaction from bitcoind, caching it if it has enough
+	 * confirmations.
+	 * <p>
+	 * The height of the block containing the transaction is looked up by the
+	 * block's hash, rather than derived from the confirmations and the chain
+	 * height, so it's right even if a block arrives during the call.
+	 */
+	private GetRawTransactionResponse getRawTransactionVerboseAndCache(String txId, TransactionCache transactionCache) {
+		GetRawTransactionResponse response = getRawTransactionVerbose(txId);
+		if (transactionCache.isCacheable(response)) {
+			Sha256Hash blockHash = response.getResult().getBlockHash();
+			Long blockHeight = blockHash == null ? null : blockHeight(blockHash.toString());
+			if (blockHeight != null) transactionCache.put(response, blockHeight.longValue());
+		}
+		return response;
+	}
+
+
+	/**
+	 * Gets the height of the block with the given hash.
+	 * <p>
+	 * Looked up in the header index if possible, else by getBlock, which is
+	 * served from the block cache, if any.
+	 * 
+	 * @param hash - block hash.
+	 * @return height, or null if not known.
+	 */
+	private Long blockHeight(String hash) {
+		HeaderIndex headerIndex = this.headerIndex;
+		if (headerIndex != null) {
+			long height = headerIndex.getHeight(hash);
+			if (height >= 0) return height;
+		}
+		GetBlockResult block = getBlock(hash).getResult();
+		return block == null ? null : block.getHeight();
 	}
 
 
@@ -566,10 +933,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public BigDecimalResponse getReceivedByAccount(String account, Integer minConf) {
-		List<Object> params = newArrayList();
-		params.add(account == null ? "" : account);
-		params.add(firstNotNull(minConf, 1));
-		return jsonRpc("getreceivedbyaccount", params, BigDecimalResponse.class);
+		return jsonRpc("getreceivedbyaccount", BitcoindParams.getReceivedByAccount(account, minConf), BigDecimalResponse.class);
 	}
 
 
@@ -590,10 +954,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public BigDecimalResponse getReceivedByAddress(String address, Integer minConf) {
-		List<Object> params = newArrayList();
-		params.add(address == null ? "" : address);
-		params.add(firstNotNull(minConf, 1));
-		return jsonRpc("getreceivedbyaddress", params, BigDecimalResponse.class);
+		return jsonRpc("getreceivedbyaddress", BitcoindParams.getReceivedByAddress(address, minConf), BigDecimalResponse.class);
 	}
 
 
@@ -605,9 +966,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public GetTransactionResponse getTransaction(String txId) {
-		List<String> params = newArrayList();
-		params.add(txId);
-		return jsonRpc("gettransaction", params, GetTransactionResponse.class);
+		return jsonRpc("gettransaction", BitcoindParams.getTransaction(txId), GetTransactionResponse.class);
 	}
 
 
@@ -623,12 +982,22 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 * @return {@link GetTxOutResponse}
 	 */
 	@Override
-	public GetTxOutResponse getTxOut(String txId, Integer n, Boolean includeMemoryPool) {
-		List<Object> params = newArrayList();
-		params.add(txId);
-		params.add(n);
-		params.add(firstNotNull(includeMemoryPool, true));
-		return jsonRpc("gettxout", params, GetTxOutResponse.class);
+	public GetTxOutResponse getTxOut(final String txId, final Integer n, Boolean includeMemoryPool) {
+		final boolean includeMemPool = includeMemoryPool == null || includeMemoryPool.booleanValue();
+		return jsonRpc(new StreamingRequest(GET_TX_OUT) {
+			@Override
+			protected void writeParams(JsonGenerator generator) throws IOException {
+				generator.writeString(txId);
+				if (n == null) generator.writeNull();
+				else generator.writeNumber(n.intValue());
+				generator.writeBoolean(includeMemPool);
+			}
+
+			@Override
+			List<?> getParams() {
+				return Arrays.asList(txId, n, includeMemPool);
+			}
+		}, GetTxOutResponse.class);
 	}
 
 
@@ -663,9 +1032,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public BooleanResponse getWork(String data) {
-		List<Object> params = newArrayList();
-		params.add(data);
-		return jsonRpc("getwork", params, BooleanResponse.class);
+		return jsonRpc("getwork", BitcoindParams.getWork(data), BooleanResponse.class);
 	}
 
 
@@ -677,9 +1044,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringResponse help(String command) {
-		List<Object> params = newArrayList();
-		if (command != null) params.add(command);
-		return jsonRpc("help", params, StringResponse.class);
+		return jsonRpc("help", BitcoindParams.help(command), StringResponse.class);
 	}
 
 
@@ -699,11 +1064,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public VoidResponse importPrivateKey(String key, String label, Boolean rescan) {
-		List<Object> params = newArrayList();
-		params.add(key);
-		params.add(firstNotNull(label, ""));
-		params.add(firstNotNull(rescan, true));
-		return jsonRpc("importprivkey", params, VoidResponse.class);
+		return jsonRpc("importprivkey", BitcoindParams.importPrivateKey(key, label, rescan), VoidResponse.class);
 	}
 
 
@@ -730,9 +1091,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public ListAccountsResponse listAccounts(Integer minConf) {
-		List<Object> params = newArrayList();
-		params.add(firstNotNull(minConf, 1));
-		return jsonRpc("listaccounts", params, ListAccountsResponse.class);
+		return jsonRpc("listaccounts", BitcoindParams.listAccounts(minConf), ListAccountsResponse.class);
 	}
 
 
@@ -773,10 +1132,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public ListReceivedByAccountResponse listReceivedByAccount(Integer minConf, Boolean includeEmpty) {
-		List<Object> params = newArrayList();
-		params.add(firstNotNull(minConf), Integer.valueOf(1));
-		params.add(firstNotNull(includeEmpty, FALSE));
-		return jsonRpc("listreceivedbyaccount", params, ListReceivedByAccountResponse.class);
+		return jsonRpc("listreceivedbyaccount", BitcoindParams.listReceivedByAccount(minConf, includeEmpty), ListReceivedByAccountResponse.class);
 	}
 
 
@@ -791,10 +1147,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public ListReceivedByAddressResponse listReceivedByAddress(Integer minConf, Boolean includeEmpty) {
-		List<Object> params = newArrayList();
-		params.add(firstNotNull(minConf), Integer.valueOf(1));
-		params.add(firstNotNull(includeEmpty, FALSE));
-		return jsonRpc("listreceivedbyaddress", params, ListReceivedByAddressResponse.class);
+		return jsonRpc("listreceivedbyaddress", BitcoindParams.listReceivedByAddress(minConf, includeEmpty), ListReceivedByAddressResponse.class);
 	}
 
 
@@ -807,10 +1160,23 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 * @return {@link ListSinceBlockResponse}
 	 */
 	ListSinceBlockResponse listSinceBlock(String blockHash, Integer targetConfirmations) {
-		List<Object> params = newArrayList();
-		if (blockHash != null || targetConfirmations != null) params.add(blockHash);
-		if (targetConfirmations != null) params.add(targetConfirmations);
-		return jsonRpc("listsinceblock", params, ListSinceBlockResponse.class);
+		return jsonRpc("listsinceblock", BitcoindParams.listSinceBlock(blockHash, targetConfirmations), ListSinceBlockResponse.class);
+	}
+
+
+	/**
+	 * Gets all transactions in blocks since block <code>blockhash</code>, or
+	 * all transactions if omitted, handing them to the given consumer while
+	 * the response is being parsed.
+	 * 
+	 * @param blockHash - optional (may be null)
+	 * @param targetConfirmations - optional (may be null)
+	 * @param consumer - receives the transactions.
+	 * @return hash of the last block.
+	 */
+	@Override
+	public Sha256Hash listSinceBlock(String blockHash, Integer targetConfirmations, TransactionDataConsumer consumer) {
+		return streamTransactions("listsinceblock", BitcoindParams.listSinceBlock(blockHash, targetConfirmations), consumer);
 	}
 
 
@@ -831,11 +1197,30 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public ListTransactionsResponse listTransactions(String account, Integer count, Integer from) {
-		List<Object> params = newArrayList();
-		params.add(account);
-		params.add(firstNotNull(count, 10));
-		params.add(firstNotNull(from, 0));
-		return jsonRpc("listtransactions", params, ListTransactionsResponse.class);
+		return jsonRpc("listtransactions", BitcoindParams.listTransactions(account, count, from), ListTransactionsResponse.class);
+	}
+
+
+	/**
+	 * Returns up to <code>count</code> most recent transactions skipping the
+	 * first <code>from</code> transactions for account <code>account</code>,
+	 * handing them to the given consumer while the response is being parsed.
+	 * 
+	 * @param account
+	 *            - optional (may be null). If not provided will return recent
+	 *            transaction from all accounts.
+	 * @param count
+	 *            - optional (may be null). Maximum number of transaction to
+	 *            return. Default 10.
+	 * @param from
+	 *            - optional (may be null). Number of transactions to skip.
+	 *            Default 0.
+	 * @param consumer
+	 *            - receives the transactions.
+	 */
+	@Override
+	public void listTransactions(String account, Integer count, Integer from, TransactionDataConsumer consumer) {
+		streamTransactions("listtransactions", BitcoindParams.listTransactions(account, count, from), consumer);
 	}
 
 
@@ -856,11 +1241,32 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public ListUnspentResponse listUnspent(Integer minConf, Integer maxConf, String ... address) {
-		List<Object> params = newArrayList();
-		params.add(firstNotNull(minConf, Integer.valueOf(1)));
-		params.add(firstNotNull(maxConf, Integer.valueOf(999999)));
-		params.add(address);
-		return jsonRpc("listunspent", params, ListUnspentResponse.class);
+		return jsonRpc("listunspent", BitcoindParams.listUnspent(minConf, maxConf, address), ListUnspentResponse.class);
+	}
+
+
+	/**
+	 * Lists unspent transaction outputs like
+	 * {@link #listUnspent(Integer, Integer, String...)}, but reads them into
+	 * primitive columns, which takes a fraction of the memory when there are
+	 * many outputs.
+	 * 
+	 * @param minConf
+	 *            - optional minimum number of confirmations. Default 1.
+	 * @param maxConf
+	 *            - optional maximum number of confirmations. Default 999999.
+	 * @param address
+	 *            - optional address(es) limiting the output to transaction
+	 *            outputs paid to those addresses.
+	 * 
+	 * @return {@link UnspentOutputs}
+	 */
+	@Override
+	public UnspentOutputs listUnspentOutputs(Integer minConf, Integer maxConf, String ... address) {
+		String method = "listunspent";
+		checkSupported(method);
+		BitcoindJsonRpcRequest request = new BitcoindJsonRpcRequest(method, BitcoindParams.listUnspent(minConf, maxConf, address));
+		return execute(method, codec.requestCallback(request), codec.unspentOutputsExtractor(), BitcoindMethods.isIdempotent(method));
 	}
 
 
@@ -875,10 +1281,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public BooleanResponse lockUnspent(Boolean unlock, TransactionOutputRef[] txOutputs) {
-		List<Object> params = newArrayList();
-		params.add(unlock);
-		params.add(txOutputs);
-		return jsonRpc("lockunspent", params, BooleanResponse.class);
+		return jsonRpc("lockunspent", BitcoindParams.lockUnspent(unlock, txOutputs), BooleanResponse.class);
 	}
 
 
@@ -896,13 +1299,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public BooleanResponse move(String fromAccount, String toAccount, BigDecimal amount, Integer minConf, String comment) {
-		List<Object> params = newArrayList();
-		params.add(fromAccount);
-		params.add(toAccount);
-		params.add(amount);
-		params.add(firstNotNull(minConf, 1));
-		if (comment != null) params.add(comment);
-		return jsonRpc("move", params, BooleanResponse.class);
+		return jsonRpc("move", BitcoindParams.move(fromAccount, toAccount, amount, minConf, comment), BooleanResponse.class);
 	}
 
 
@@ -930,14 +1327,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringResponse sendFrom(String account, String address, BigDecimal amount, Integer minConf, String comment, String commentTo) {
-		List<Object> params = newArrayList();
-		params.add(account);
-		params.add(address);
-		params.add(amount.setScale(SCALE));
-		params.add(firstNotNull(minConf, 1));
-		if (comment != null || commentTo != null) params.add(comment);
-		if (commentTo != null) params.add(commentTo);
-		return jsonRpc("sendfrom", params, StringResponse.class);
+		return jsonRpc("sendfrom", BitcoindParams.sendFrom(account, address, amount, minConf, comment, commentTo), StringResponse.class);
 	}
 
 
@@ -956,21 +1346,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringResponse sendMany(String fromAccount, AddressAndAmount[] addressesAndAmounts, Integer minConf, String commment) {
-		List<Object> params = newArrayList();
-		params.add(fromAccount);
-		Map<String, BigDecimal> recipients = newHashMap();
-		for (AddressAndAmount aaa : addressesAndAmounts) {
-			String address = aaa.getAddress();
-			BigDecimal amount = aaa.getAmount();
-			if (recipients.containsKey(address)) {
-				amount = recipients.get(address).add(amount);
-			}
-			recipients.put(address, amount);
-		}
-		params.add(recipients);
-		params.add(firstNotNull(minConf, 1));
-		if (commment != null) params.add(commment);
-		return jsonRpc("sendmany", params, StringResponse.class);
+		return jsonRpc("sendmany", BitcoindParams.sendMany(fromAccount, addressesAndAmounts, minConf, commment), StringResponse.class);
 	}
 
 
@@ -985,9 +1361,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringResponse sendRawTransaction(String hex) {
-		List<Object> params = newArrayList();
-		params.add(hex);
-		return jsonRpc("sendrawtransaction", params, StringResponse.class);
+		return jsonRpc("sendrawtransaction", BitcoindParams.sendRawTransaction(hex), StringResponse.class);
 	}
 
 
@@ -1006,12 +1380,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringResponse sendToAddress(String address, BigDecimal amount, String comment, String commentTo) {
-		List<Object> params = newArrayList();
-		params.add(address);
-		params.add(amount.setScale(SCALE));
-		if (comment != null || commentTo != null) params.add(comment);
-		if (commentTo != null) params.add(commentTo);
-		return jsonRpc("sendtoaddress", params, StringResponse.class);
+		return jsonRpc("sendtoaddress", BitcoindParams.sendToAddress(address, amount, comment, commentTo), StringResponse.class);
 	}
 
 
@@ -1028,10 +1397,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public VoidResponse setAccount(String address, String account) {
-		List<Object> params = newArrayList();
-		params.add(address);
-		params.add(account);
-		return jsonRpc("setaccount", params, VoidResponse.class);
+		return jsonRpc("setaccount", BitcoindParams.setAccount(address, account), VoidResponse.class);
 	}
 
 
@@ -1046,10 +1412,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public VoidResponse setGenerate(Boolean generate, Integer genProcLimit) {
-		List<Object> params = newArrayList();
-		params.add(generate);
-		if (genProcLimit != null) params.add(genProcLimit);
-		return jsonRpc("setgenerate", params, VoidResponse.class);
+		return jsonRpc("setgenerate", BitcoindParams.setGenerate(generate, genProcLimit), VoidResponse.class);
 	}
 
 
@@ -1061,9 +1424,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public BooleanResponse setTxFee(BigDecimal amount) {
-		List<Object> params = newArrayList();
-		params.add(amount.setScale(SCALE));
-		return jsonRpc("settxfee", params, BooleanResponse.class);
+		return jsonRpc("settxfee", BitcoindParams.setTxFee(amount), BooleanResponse.class);
 	}
 
 
@@ -1081,10 +1442,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public StringResponse signMessage(String address, String message) {
-		List<Object> params = newArrayList();
-		params.add(address);
-		params.add(message);
-		return jsonRpc("signmessage", params, StringResponse.class);
+		return jsonRpc("signmessage", BitcoindParams.signMessage(address, message), StringResponse.class);
 	}
 
 
@@ -1123,12 +1481,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	// TODO Test using args 2..4
 	@Override
 	public SignRawTransactionResponse signRawTransaction(String hex, Object[] requiredTxOuts, String[] privKeys, SignatureHashAlgorithm sigHash) {
-		List<Object> params = newArrayList();
-		params.add(hex);
-		params.add(requiredTxOuts);
-		params.add(privKeys);
-		params.add(sigHash == null ? null : sigHash.toString());
-		return jsonRpc("signrawtransaction", params, SignRawTransactionResponse.class);
+		return jsonRpc("signrawtransaction", BitcoindParams.signRawTransaction(hex, requiredTxOuts, privKeys, sigHash), SignRawTransactionResponse.class);
 	}
 
 
@@ -1154,9 +1507,11 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public ValidateAddressResponse validateAddress(String address) {
-		List<Object> params = newArrayList();
-		params.add(address);
-		return jsonRpc("validateaddress", params, ValidateAddressResponse.class);
+		AddressValidator addressValidator = this.addressValidator;
+		if (addressValidator != null && !addressValidator.isValid(address)) {
+			return localResponse(INVALID_ADDRESS, ValidateAddressResponse.class);
+		}
+		return jsonRpc("validateaddress", BitcoindParams.validateAddress(address), ValidateAddressResponse.class);
 	}
 
 
@@ -1170,11 +1525,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public BooleanResponse verifyMessage(String address, String signature, String message) {
-		List<Object> params = newArrayList();
-		params.add(address);
-		params.add(signature);
-		params.add(message);
-		return jsonRpc("verifymessage", params, BooleanResponse.class);
+		return jsonRpc("verifymessage", BitcoindParams.verifyMessage(address, signature, message), BooleanResponse.class);
 	}
 
 
@@ -1207,10 +1558,7 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public VoidResponse walletPassPhrase(String passPhrase, int timeout) {
-		List<Object> params = newArrayList();
-		params.add(passPhrase);
-		params.add(Integer.valueOf(timeout));
-		return jsonRpc("walletpassphrase", params, VoidResponse.class);
+		return jsonRpc("walletpassphrase", BitcoindParams.walletPassPhrase(passPhrase, timeout), VoidResponse.class);
 	}
 
 
@@ -1224,17 +1572,80 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	@Override
 	public VoidResponse walletPassPhraseChange(String oldPassPhrase, String newPassPhrase) {
-		List<String> params = newArrayList();
-		params.add(oldPassPhrase);
-		params.add(newPassPhrase);
-		return jsonRpc("walletpassphrasechange", params, VoidResponse.class);
+		return jsonRpc("walletpassphrasechange", BitcoindParams.walletPassPhraseChange(oldPassPhrase, newPassPhrase), VoidResponse.class);
+	}
+
+
+
+	/**
+	 * Executes all calls in the given batch in one HTTP request.
+	 * <p>
+	 * Responses are matched to calls by request id. Calls which bitcoind
+	 * answered with an error, or for which no response was received, are
+	 * failed individually - see {@link BitcoindBatch.Call#getException()}.
+	 * <p>
+	 * Batches consisting of calls to idempotent methods only are retried
+	 * like single calls. Metrics are recorded under "batch" rather than per
+	 * method, as the latency and size of a batch cover all its calls and
+	 * would distort the figures of single calls.
+	 * 
+	 * @param batch
+	 */
+	@Override
+	public void executeBatch(BitcoindBatch batch) {
+		if (batch.isExecuted()) throw new IllegalStateException("Batch has already been executed.");
+		if (batch.size() > 0) {
+			byte[] responses;
+			try {
+				responses = execute("batch", codec.requestCallback(batch.getRequests()),
+						codec.bytesExtractor(), batch.isIdempotent());
+			} finally {
+				if (tipScopedCache != null && !batch.isReadOnly()) tipScopedCache.invalidate();
+			}
+			if (responses != null) {
+				try {
+					batch.complete(responses, codec);
+				} catch (IOException e) {
+					throw new BitcoinException("Parsing batch response failed.", e);
+				}
+			}
+		}
+		batch.markExecuted();
+	}
+
+
+	/**
+	 * Creates a response answered without calling bitcoind.
+	 * 
+	 * @param json - the response.
+	 * @param responseType
+	 * @return response
+	 */
+	private <T> T localResponse(String json, Class<T> responseType) {
+		try {
+			return codec.reader(responseType).readValue(json);
+		} catch (IOException e) {
+			throw new BitcoinException("Creating response failed.", e);
+		}
 	}
 
 
+	/**
+	 * Gets the chain height, calling getBlockCount if the height is unknown,
+	 * or too old and not kept up to date by a tip watcher.
+	 */
+	private long tipHeight() {
+		if (chainTip.getHeight() < 0 || (!tipWatched && !chainTip.isFresh(maxTipAge))) getBlockCount();
+		return chainTip.getHeight();
+	}
+
 
 	/**
 	 * Performs a JSON-RPC call specifying the given method and parameters and
 	 * returning a response of the given type.
+	 * <p>
+	 * The response is parsed straight from the response stream - see
+	 * {@link BitcoindJsonRpcCodec}.
 	 * 
 	 * @param method
 	 * @param params
@@ -1243,7 +1654,246 @@ public class BitcoindClientImpl implements BitcoindClient {
 	 */
 	private <T> T jsonRpc(String method, List<?> params, Class<T> responseType) {
 		BitcoindJsonRpcRequest request = new BitcoindJsonRpcRequest(method, params);
-		return restTemplate.postForObject(url, request, responseType);
+		Object key = isKeyed() ? BitcoindParams.callKey(method, params, responseType) : null;
+		return jsonRpc(method, params, key, codec.requestCallback(request), responseType);
+	}
+
+
+	/**
+	 * Performs a JSON-RPC call with a pre-encoded request.
+	 * 
+	 * @param request
+	 * @param responseType
+	 * @return json response converted to the given type
+	 */
+	private <T> T jsonRpc(StreamingRequest request, Class<T> responseType) {
+		String method = request.getMethod();
+		List<?> params = request.getParams();
+		Object key = isKeyed() ? BitcoindParams.callKey(method, params, responseType) : null;
+		return jsonRpc(method, params, key, request, responseType);
+	}
+
+
+	/**
+	 * Tells if calls need a key - that is, if they may be coalesced or
+	 * cached.
+	 * 
+	 * @return true if a single flight or a tip-scoped cache is set.
+	 */
+	private boolean isKeyed() {
+		return singleFlight != null || tipScopedCache != null;
+	}
+
+
+	/**
+	 * Performs a JSON-RPC call, serving it from the tip-scoped cache if the
+	 * method is enabled there.
+	 * <p>
+	 * Calls including unconfirmed transactions (minConf 0) aren't cached, as
+	 * the cache isn't invalidated when transactions enter the memory pool.
+	 * The tip-scoped cache is invalidated after calls to methods which may
+	 * change the wallet, whether they succeed or not.
+	 * 
+	 * @param method
+	 * @param params
+	 * @param key - equal for identical calls, or null if neither coalesced
+	 *        nor cached.
+	 * @param request
+	 * @param responseType
+	 * @return json response converted to the given type
+	 */
+	private <T> T jsonRpc(String method, List<?> params, Object key, RequestCallback request, Class<T> responseType) {
+		TipScopedCache tipScopedCache = this.tipScopedCache;
+		if (tipScopedCache == null) return singleFlight(method, key, request, responseType);
+		if (key != null && tipScopedCache.isEnabled(method) && !BitcoindParams.includesUnconfirmed(method, params)) {
+			T response = tipScopedCache.get(key);
+			if (response != null) return response;
+			long generation = tipScopedCache.getGeneration();
+			response = singleFlight(method, key, request, responseType);
+			tipScopedCache.put(key, response, generation);
+			return response;
+		}
+		if (BitcoindMethods.isReadOnly(method)) return singleFlight(method, key, request, responseType);
+		try {
+			return singleFlight(method, key, request, responseType);
+		} finally {
+			tipScopedCache.invalidate();
+		}
+	}
+
+
+	/**
+	 * Performs a JSON-RPC call, coalescing it with an identical call in flight
+	 * if the method is enabled in the single flight.
+	 * 
+	 * @param method
+	 * @param key - equal for identical calls, or null if not coalesced.
+	 * @param request
+	 * @param responseType
+	 * @return json response converted to the given type
+	 */
+	private <T> T singleFlight(final String method, Object key, final RequestCallback request, final Class<T> responseType) {
+		SingleFlight singleFlight = this.singleFlight;
+		if (singleFlight == null || key == null || !singleFlight.isEnabled(method)) return jsonRpc(method, request, responseType);
+		return singleFlight.execute(method, key, new SingleFlight.Call<T>() {
+			@Override
+			public T call() {
+				return jsonRpc(method, request, responseType);
+			}
+		});
+	}
+
+
+	/**
+	 * Performs a JSON-RPC call writing the request with the given callback
+	 * and returning a response of the given type.
+	 * 
+	 * @param method
+	 * @param request
+	 * @param responseType
+	 * @return json response converted to the given type
+	 */
+	private <T> T jsonRpc(String method, RequestCallback request, Class<T> responseType) {
+		checkSupported(method);
+		return execute(method, request, codec.responseExtractor(responseType), BitcoindMethods.isIdempotent(method));
+	}
+
+
+	/**
+	 * Performs a JSON-RPC call handing the transactions in the response to
+	 * the given consumer as they are parsed.
+	 * <p>
+	 * Not retried once the request has been sent, as the consumer may
+	 * already have received some of the transactions.
+	 * 
+	 * @param method - listtransactions or listsinceblock.
+	 * @param params
+	 * @param consumer
+	 * @return the lastblock field of the result, if present.
+	 */
+	private Sha256Hash streamTransactions(String method, List<?> params, TransactionDataConsumer consumer) {
+		checkSupported(method);
+		BitcoindJsonRpcRequest request = new BitcoindJsonRpcRequest(method, params);
+		return execute(method, codec.requestCallback(request), codec.transactionDataExtractor(consumer), false);
+	}
+
+
+	/**
+	 * Fails calls to methods the server is known not to support.
+	 * 
+	 * @param method
+	 * @throws dk.clanie.bitcoin.exception.client.MethodNotFoundException
+	 */
+	private void checkSupported(String method) {
+		ServerCapabilities capabilities = capabilities();
+		if (capabilities != null && !capabilities.isSupported(method)) {
+			BitcoindErrorResponse errorResponse = localResponse(METHOD_NOT_FOUND, BitcoindErrorResponse.class);
+			throw BitcoinExceptionRegistry.getInstance().createException(errorResponse, true);
+		}
+	}
+
+
+	/**
+	 * Gets the server's capabilities, probing the server if enabled and not
+	 * probed yet.
+	 * <p>
+	 * Calls made while probing aren't checked, which includes the calls made
+	 * by the probe. Only the thread which gets to update lastProbe probes,
+	 * so concurrent calls don't probe the server more than once.
+	 * 
+	 * @return ServerCapabilities, or null if not known.
+	 */
+	private ServerCapabilities capabilities() {
+		ServerCapabilities capabilities = this.capabilities;
+		if (capabilities != null || !probeCapabilities) return capabilities;
+		long last = lastProbe.get();
+		long now = System.nanoTime();
+		if (now - last < PROBE_RETRY_INTERVAL || !lastProbe.compareAndSet(last, now)) return null;
+		try {
+			return probe();
+		} catch (RuntimeException e) {
+			// Try again later.
+			return null;
+		}
+	}
+
+
+	/**
+	 * Sends a request to bitcoind, guarded by the circuit breaker and retried
+	 * according to the retry policy, if any.
+	 * 
+	 * @param method - method name, for metrics.
+	 * @param request
+	 * @param responseExtractor
+	 * @param idempotent - true if the request may safely be sent again.
+	 * @return extracted response
+	 */
+	private <T> T execute(String method, RequestCallback request, ResponseExtractor<T> responseExtractor, boolean idempotent) {
+		RetryPolicy retryPolicy = this.retryPolicy;
+		CircuitBreaker circuitBreaker = this.circuitBreaker;
+		MethodMetrics methodMetrics = metrics == null ? null : metrics.forMethod(method);
+		for (int attempt = 1; ; attempt++) {
+			long startTime = 0;
+			RequestCallback callback = request;
+			if (methodMetrics != null) {
+				callback = new CountingRequestCallback(request);
+				startTime = methodMetrics.started();
+			}
+			try {
+				if (circuitBreaker != null) circuitBreaker.acquire();
+				T response = restTemplate.execute(url, HttpMethod.POST, callback, responseExtractor);
+				if (methodMetrics != null) {
+					ByteCount byteCount = ((CountingRequestCallback) callback).byteCount;
+					methodMetrics.completed(startTime, byteCount.getRequestBytes(), byteCount.getResponseBytes());
+				}
+				if (circuitBreaker != null) circuitBreaker.onSuccess();
+				return response;
+			} catch (RuntimeException e) {
+				if (methodMetrics != null) {
+					ByteCount byteCount = ((CountingRequestCallback) callback).byteCount;
+					methodMetrics.failed(startTime, e instanceof BitcoinException ? ((BitcoinException) e).getErrorCode() : null,
+							byteCount.getRequestBytes(), byteCount.getResponseBytes());
+				}
+				if (circuitBreaker != null && !(e instanceof CircuitOpenException)) {
+					if (CircuitBreaker.isNodeFailure(e)) circuitBreaker.onFailure();
+					else circuitBreaker.onSuccess();
+				}
+				if (retryPolicy == null || !retryPolicy.shouldRetry(e, idempotent, attempt)) throw e;
+				try {
+					retryPolicy.backoff(attempt);
+				} catch (InterruptedException ie) {
+					Thread.currentThread().interrupt();
+					throw e;
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Captures the byte count of the request it writes, if the request is
+	 * created by a {@link CountingClientHttpRequestFactory}.
+	 * <p>
+	 * Created per attempt, so the count is that of the attempt alone.
+	 */
+	private static class CountingRequestCallback implements RequestCallback {
+
+		private static final ByteCount NOT_COUNTED = new ByteCount();
+
+		private final RequestCallback request;
+		private ByteCount byteCount = NOT_COUNTED;
+
+		private CountingRequestCallback(RequestCallback request) {
+			this.request = request;
+		}
+
+		@Override
+		public void doWithRequest(ClientHttpRequest httpRequest) throws IOException {
+			ByteCount byteCount = CountingClientHttpRequestFactory.getByteCount(httpRequest);
+			if (byteCount != null) this.byteCount = byteCount;
+			request.doWithRequest(httpRequest);
+		}
+
 	}
 
 
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static dk.clanie.collections.CollectionFactory.newArrayList;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.http.concurrent.FutureCallback;
+
+/**
+ * Result of an asynchronous call to bitcoind.
+ * <p>
+ * Besides the usual {@link Future} methods callbacks can be added, which
+ * are notified when the call completes. This makes it possible to process
+ * responses without having a thread waiting for each of them.<br>
+ * Callbacks are invoked by the thread completing the future, which is
+ * normally a thread of the client's callback executor, so callbacks which
+ * block hold up the completion of other calls.
+ *
+ * @author Claus Nielsen
+ *
+ * @param <T> response type.
+ */
+public class BitcoindFuture<T> implements Future<T> {
+
+	private final List<FutureCallback<T>> callbacks = newArrayList();
+	private Future<?> underlying;
+	private T result;
+	private Exception exception;
+	private boolean done = false;
+	private boolean cancelled = false;
+	private boolean mayInterruptIfRunning = false;
+
+
+	/**
+	 * Adds a callback to be notified when this future completes.
+	 * <p>
+	 * If the future has already completed the callback is notified
+	 * immediately, by the calling thread.
+	 *
+	 * @param callback
+	 * @return this future.
+	 */
+	public BitcoindFuture<T> addCallback(FutureCallback<T> callback) {
+		synchronized (this) {
+			if (!done) {
+				callbacks.add(callback);
+				return this;
+			}
+		}
+		invoke(callback);
+		return this;
+	}
+
+
+	@Override
+	public synchronized boolean isDone() {
+		return done;
+	}
+
+
+	@Override
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+
+	@Override
+	public T get() throws InterruptedException, ExecutionException {
+		synchronized (this) {
+			while (!done) wait();
+		}
+		return getResult();
+	}
+
+
+	@Override
+	public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (this) {
+			while (!done) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) throw new TimeoutException();
+				TimeUnit.NANOSECONDS.timedWait(this, remaining);
+			}
+		}
+		return getResult();
+	}
+
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		Future<?> toCancel;
+		synchronized (this) {
+			if (done) return false;
+			done = true;
+			cancelled = true;
+			this.mayInterruptIfRunning = mayInterruptIfRunning;
+			toCancel = underlying;
+			notifyAll();
+		}
+		if (toCancel != null) toCancel.cancel(mayInterruptIfRunning);
+		notifyCallbacks();
+		return true;
+	}
+
+
+	/**
+	 * Completes this future with the given result.
+	 *
+	 * @param result
+	 * @return false if the future was already completed.
+	 */
+	boolean completed(T result) {
+		synchronized (this) {
+			if (done) return false;
+			this.result = result;
+			done = true;
+			notifyAll();
+		}
+		notifyCallbacks();
+		return true;
+	}
+
+
+	/**
+	 * Completes this future with the given exception.
+	 *
+	 * @param exception
+	 * @return false if the future was already completed.
+	 */
+	boolean failed(Exception exception) {
+		synchronized (this) {
+			if (done) return false;
+			this.exception = exception;
+			done = true;
+			notifyAll();
+		}
+		notifyCallbacks();
+		return true;
+	}
+
+
+	/**
+	 * Sets the future of the underlying operation, which will be cancelled if
+	 * this future is cancelled - also if this future already was.
+	 *
+	 * @param underlying
+	 */
+	void setUnderlying(Future<?> underlying) {
+		boolean cancelUnderlying;
+		boolean mayInterrupt;
+		synchronized (this) {
+			this.underlying = underlying;
+			cancelUnderlying = cancelled;
+			mayInterrupt = mayInterruptIfRunning;
+		}
+		if (cancelUnderlying) underlying.cancel(mayInterrupt);
+	}
+
+
+	private T getResult() throws ExecutionException {
+		if (cancelled) throw new CancellationException();
+		if (exception != null) throw new ExecutionException(exception);
+		return result;
+	}
+
+
+	private void notifyCallbacks() {
+		List<FutureCallback<T>> toNotify;
+		synchronized (this) {
+			toNotify = new ArrayList<FutureCallback<T>>(callbacks);
+			callbacks.clear();
+		}
+		for (FutureCallback<T> callback : toNotify) invoke(callback);
+	}
+
+
+	private void invoke(FutureCallback<T> callback) {
+		if (cancelled) callback.cancelled();
+		else if (exception != null) callback.failed(exception);
+		else callback.completed(result);
+	}
+
+
+}
@@ -0,0 +1,421 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResponseExtractor;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import dk.clanie.bitcoin.Sha256Hash;
+import dk.clanie.bitcoin.client.response.TransactionData;
+import dk.clanie.bitcoin.client.response.UnspentOutputs;
+import dk.clanie.bitcoin.json.StrictModule;
+
+/**
+ * Encodes JSON RPC requests and decodes responses.
+ * <p>
+ * Used in place of RestTemplate's message converters. Requests are written
+ * directly to the request body stream, and responses are parsed directly
+ * from the response body stream using an {@link ObjectReader} cached per
+ * response type, so no per-call lookup of converters and deserializers is
+ * done. Jackson recycles its read buffers per thread, so parsing even large
+ * responses allocates little besides the resulting objects.
+ * <p>
+ * Frequently called methods may skip building a {@link
+ * dk.clanie.bitcoin.client.request.BitcoindJsonRpcRequest} and a parameter
+ * list altogether by using a {@link StreamingRequest}, which writes the
+ * request envelope with pre-encoded names and streams the parameters
+ * directly to a JsonGenerator.
+ * <p>
+ * In strict mode unknown fields in responses are skipped rather than
+ * captured - see {@link StrictModule}.
+ *
+ * @author Claus Nielsen
+ */
+class BitcoindJsonRpcCodec {
+
+	private static final JsonFactory jsonFactory = new JsonFactory();
+	private static final SerializableString JSONRPC = new SerializedString("jsonrpc");
+	private static final SerializableString JSONRPC_VERSION = new SerializedString("2.0");
+	private static final SerializableString METHOD = new SerializedString("method");
+	private static final SerializableString PARAMS = new SerializedString("params");
+
+	private static final ResponseExtractor<byte[]> BYTES_EXTRACTOR = new ResponseExtractor<byte[]>() {
+		@Override
+		public byte[] extractData(ClientHttpResponse response) throws IOException {
+			InputStream body = response.getBody();
+			if (body == null) return null;
+			return FileCopyUtils.copyToByteArray(body);
+		}
+	};
+
+	private volatile ObjectMapper objectMapper = new ObjectMapper();
+	private final ConcurrentMap<Class<?>, ResponseExtractor<?>> extractors = new ConcurrentHashMap<Class<?>, ResponseExtractor<?>>();
+
+
+	/**
+	 * Enables or disables strict mode.
+	 * <p>
+	 * Should be set before the codec is used, as readers created earlier
+	 * are discarded.
+	 * 
+	 * @param strict
+	 */
+	void setStrict(boolean strict) {
+		ObjectMapper objectMapper = new ObjectMapper();
+		if (strict) objectMapper.registerModule(new StrictModule());
+		this.objectMapper = objectMapper;
+		extractors.clear();
+	}
+
+
+	/**
+	 * Gets the ObjectMapper used for requests and responses.
+	 * 
+	 * @return ObjectMapper
+	 */
+	ObjectMapper getObjectMapper() {
+		return objectMapper;
+	}
+
+
+	/**
+	 * Gets the (cached) reader for the given type.
+	 *
+	 * @param type
+	 * @return ObjectReader
+	 */
+	ObjectReader reader(Class<?> type) {
+		return ((JsonResponseExtractor<?>) responseExtractor(type)).reader;
+	}
+
+
+	/**
+	 * Creates a parser for the given JSON.
+	 *
+	 * @param json
+	 * @return JsonParser
+	 * @throws IOException
+	 */
+	JsonParser createParser(byte[] json) throws IOException {
+		return jsonFactory.createParser(json);
+	}
+
+
+	/**
+	 * Gets the ResponseExtractor reading the whole response body into a
+	 * byte array.
+	 *
+	 * @return ResponseExtractor
+	 */
+	ResponseExtractor<byte[]> bytesExtractor() {
+		return BYTES_EXTRACTOR;
+	}
+
+
+	/**
+	 * Creates a RequestCallback writing the given request as JSON.
+	 *
+	 * @param request
+	 * @return RequestCallback
+	 */
+	RequestCallback requestCallback(final Object request) {
+		return new RequestCallback() {
+			@Override
+			public void doWithRequest(ClientHttpRequest httpRequest) throws IOException {
+				httpRequest.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+				objectMapper.writeValue(httpRequest.getBody(), request);
+			}
+		};
+	}
+
+
+	/**
+	 * Writes the given request as JSON.
+	 *
+	 * @param request
+	 * @return JSON bytes
+	 * @throws JsonProcessingException
+	 */
+	byte[] writeRequest(Object request) throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(request);
+	}
+
+
+	/**
+	 * Gets the (cached) ResponseExtractor for the given type.
+	 *
+	 * @param type
+	 * @return ResponseExtractor
+	 */
+	@SuppressWarnings("unchecked")
+	<T> ResponseExtractor<T> responseExtractor(Class<T> type) {
+		ResponseExtractor<T> extractor = (ResponseExtractor<T>) extractors.get(type);
+		if (extractor == null) {
+			extractor = new JsonResponseExtractor<T>(objectMapper.reader(type));
+			ResponseExtractor<T> existing = (ResponseExtractor<T>) extractors.putIfAbsent(type, extractor);
+			if (existing != null) extractor = existing;
+		}
+		return extractor;
+	}
+
+
+	/**
+	 * Creates a ResponseExtractor handing the transactions in a
+	 * listtransactions or listsinceblock response to the given consumer one
+	 * at a time, as they are parsed, so the response is never held in
+	 * memory as a whole.
+	 * <p>
+	 * The transactions are read from the result if it's an array, or else
+	 * from the result's transactions field.
+	 * 
+	 * @param consumer
+	 * @return ResponseExtractor returning the result's lastblock field, if
+	 *         present.
+	 */
+	ResponseExtractor<Sha256Hash> transactionDataExtractor(final TransactionDataConsumer consumer) {
+		final ObjectReader transactionReader = reader(TransactionData.class);
+		final ObjectReader hashReader = reader(Sha256Hash.class);
+		return new ResponseExtractor<Sha256Hash>() {
+			@Override
+			public Sha256Hash extractData(ClientHttpResponse response) throws IOException {
+				InputStream body = response.getBody();
+				if (body == null) return null;
+				JsonParser parser = jsonFactory.createParser(body);
+				try {
+					Sha256Hash lastBlock = null;
+					if (parser.nextToken() != JsonToken.START_OBJECT) throw new JsonParseException("Expected a JSON RPC response.", parser.getCurrentLocation());
+					while (parser.nextToken() == JsonToken.FIELD_NAME) {
+						String field = parser.getCurrentName();
+						JsonToken token = parser.nextToken();
+						if (!"result".equals(field)) {
+							parser.skipChildren();
+						} else if (token == JsonToken.START_ARRAY) {
+							streamTransactions(parser, body);
+						} else if (token == JsonToken.START_OBJECT) {
+							while (parser.nextToken() == JsonToken.FIELD_NAME) {
+								String resultField = parser.getCurrentName();
+								token = parser.nextToken();
+								if ("transactions".equals(resultField) && token == JsonToken.START_ARRAY) {
+									streamTransactions(parser, body);
+								} else if ("lastblock".equals(resultField) && token == JsonToken.VALUE_STRING) {
+									lastBlock = hashReader.readValue(parser);
+								} else {
+									parser.skipChildren();
+								}
+							}
+						}
+					}
+					return lastBlock;
+				} finally {
+					parser.close();
+				}
+			}
+
+			private void streamTransactions(JsonParser parser, InputStream body) throws IOException {
+				while (parser.nextToken() == JsonToken.START_OBJECT) {
+					TransactionData transactionData = transactionReader.readValue(parser);
+					try {
+						consumer.accept(transactionData);
+					} catch (RuntimeException e) {
+						// The consumer gave up - don't read the rest of the response.
+						abortConnection(body);
+						throw e;
+					}
+				}
+			}
+		};
+	}
+
+
+	/**
+	 * Aborts the connection a response body is read from, so closing the
+	 * response doesn't read the rest of the body to reuse the connection.
+	 * 
+	 * @param body
+	 */
+	private static void abortConnection(InputStream body) throws IOException {
+		if (body instanceof ConnectionReleaseTrigger) ((ConnectionReleaseTrigger) body).abortConnection();
+		else body.close();
+	}
+
+
+	/**
+	 * Creates a ResponseExtractor reading a listunspent response into
+	 * {@link UnspentOutputs}, straight from the parser, without creating a
+	 * {@link dk.clanie.bitcoin.client.response.ListUnspentResult} per output.
+	 * 
+	 * @return ResponseExtractor
+	 */
+	ResponseExtractor<UnspentOutputs> unspentOutputsExtractor() {
+		return new ResponseExtractor<UnspentOutputs>() {
+			@Override
+			public UnspentOutputs extractData(ClientHttpResponse response) throws IOException {
+				InputStream body = response.getBody();
+				if (body == null) return null;
+				JsonParser parser = jsonFactory.createParser(body);
+				try {
+					UnspentOutputs unspentOutputs = null;
+					if (parser.nextToken() != JsonToken.START_OBJECT) throw new JsonParseException("Expected a JSON RPC response.", parser.getCurrentLocation());
+					while (parser.nextToken() == JsonToken.FIELD_NAME) {
+						String field = parser.getCurrentName();
+						JsonToken token = parser.nextToken();
+						if ("result".equals(field) && token == JsonToken.START_ARRAY) {
+							unspentOutputs = UnspentOutputs.read(parser);
+						} else {
+							parser.skipChildren();
+						}
+					}
+					return unspentOutputs;
+				} finally {
+					parser.close();
+				}
+			}
+		};
+	}
+
+
+	/**
+	 * Request writing the JSON RPC envelope directly to the request body.
+	 * <p>
+	 * Instances without per-call parameters are immutable and may be shared,
+	 * so calls using them allocate nothing for encoding the request.
+	 */
+	static class StreamingRequest implements RequestCallback {
+
+		private final SerializableString method;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param method - pre-encoded method name - see {@link #methodName(String)}.
+		 */
+		StreamingRequest(SerializableString method) {
+			this.method = method;
+		}
+
+		/**
+		 * Pre-encodes the given method name.
+		 *
+		 * @param method
+		 * @return SerializableString
+		 */
+		static SerializableString methodName(String method) {
+			return new SerializedString(method);
+		}
+
+		/**
+		 * Gets the method name.
+		 *
+		 * @return method name.
+		 */
+		String getMethod() {
+			return method.getValue();
+		}
+
+		@Override
+		public void doWithRequest(ClientHttpRequest httpRequest) throws IOException {
+			httpRequest.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+			OutputStream body = httpRequest.getBody();
+			JsonGenerator generator = jsonFactory.createGenerator(body, JsonEncoding.UTF8);
+			generator.writeStartObject();
+			generator.writeFieldName(JSONRPC);
+			generator.writeString(JSONRPC_VERSION);
+			generator.writeFieldName(METHOD);
+			generator.writeString(method);
+			generator.writeFieldName(PARAMS);
+			generator.writeStartArray();
+			writeParams(generator);
+			generator.writeEndArray();
+			generator.writeEndObject();
+			generator.close();
+		}
+
+		/**
+		 * Gets the method parameters, identifying the call when coalescing
+		 * and caching calls.
+		 * <p>
+		 * Returns an empty list by default - override along with {@link
+		 * #writeParams(JsonGenerator)} for methods taking parameters.
+		 *
+		 * @return parameters.
+		 */
+		List<?> getParams() {
+			return Collections.emptyList();
+		}
+
+		/**
+		 * Writes the method parameters as elements of the params array.
+		 * <p>
+		 * Does nothing by default - override for methods taking parameters.
+		 *
+		 * @param generator
+		 * @throws IOException
+		 */
+		protected void writeParams(JsonGenerator generator) throws IOException {
+		}
+
+	}
+
+
+	/**
+	 * Parses the response body straight from the stream.
+	 */
+	private static class JsonResponseExtractor<T> implements ResponseExtractor<T> {
+
+		private final ObjectReader reader;
+
+		private JsonResponseExtractor(ObjectReader reader) {
+			this.reader = reader;
+		}
+
+		@Override
+		public T extractData(ClientHttpResponse response) throws IOException {
+			InputStream body = response.getBody();
+			if (body == null) return null;
+			return reader.readValue(body);
+		}
+
+	}
+
+
+}
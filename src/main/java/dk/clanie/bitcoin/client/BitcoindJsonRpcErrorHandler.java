@@ -30,14 +30,12 @@ import org.springframework.web.client.DefaultResponseErrorHandler;
 import org.springframework.web.client.UnknownHttpStatusCodeException;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 
 import dk.clanie.bitcoin.client.response.BitcoindErrorResponse;
 import dk.clanie.bitcoin.exception.BitcoinException;
-import dk.clanie.bitcoin.exception.client.BitcoinClientException;
-import dk.clanie.bitcoin.exception.client.MethodNotFoundException;
-import dk.clanie.bitcoin.exception.server.BitcoinServerException;
-import dk.clanie.bitcoin.exception.server.InvalidAddressException;
-import dk.clanie.bitcoin.exception.server.WalletEncryptionException;
+import dk.clanie.bitcoin.exception.BitcoinExceptionRegistry;
+import dk.clanie.bitcoin.exception.BitcoinHttpException;
 
 /**
  * Handles error responses from bitcoind.
@@ -45,12 +43,15 @@ import dk.clanie.bitcoin.exception.server.WalletEncryptionException;
  * When bitcoind returns an client- or server-error response (an HTTP 4xx
  * or 5xx response) this handler will throw an BitcoinClient- or
  * BitcoinServerException including the response body as an {@link
- * BitcoindErrorResponse}.<br>
+ * BitcoindErrorResponse}. The body is parsed directly from the response
+ * stream, and the exception is created by the {@link
+ * BitcoinExceptionRegistry}, which maps error codes to specific subclasses
+ * and decides whether a stack trace is captured.<br>
  * If the response body isn't valid JSON, or if parsing it fails for
- * any reason, an BitcoinException is thrown. It will indicate which
- * HTTP status code was received.
+ * any reason, an {@link BitcoinHttpException} is thrown. It will indicate
+ * which HTTP status code was received.
  * <p>
- * In case of other HTTP errors an BitcoinException is also thrown. It
+ * In case of other HTTP errors an BitcoinHttpException is also thrown. It
  * will <b>not</b> include the response body, but it will include
  * whatever exception Spring's {@link DefaultResponseErrorHandler} would
  * have thrown as it's cause.
@@ -59,85 +60,83 @@ import dk.clanie.bitcoin.exception.server.WalletEncryptionException;
  */
 public class BitcoindJsonRpcErrorHandler extends DefaultResponseErrorHandler {
 
-	private static final ObjectMapper objectMapper = new ObjectMapper();
+	private static final ObjectReader errorResponseReader = new ObjectMapper().reader(BitcoindErrorResponse.class);
 
 	public void handleError(ClientHttpResponse response) throws IOException {
 		HttpStatus statusCode = getHttpStatusCode(response);
 		switch (statusCode.series()) {
-		case SERVER_ERROR: {
-			BitcoindErrorResponse errorResponse = parseResponse(response, statusCode);
-			switch (errorResponse.getError().getCode()) {
-			// Comments are observed error messages for each code.
-			case -1:
-				// a multisignature address must require at least one key to redeem
-				// no full public key for address <bitcoinaddress>
-				// createrawtransaction [{\"txid\":txid,\"vout\":n},...] {address:amount,...}\nCreate a transaction ...
-				throw new BitcoinServerException(errorResponse);
-			case -4:
-				// Private key for address <bitcoinaddress> is not known
-				// Wallet backup failed!
-				// Error adding key to wallet
-				throw new BitcoinServerException(errorResponse);
-			case -5:
-				// Invalid Bitcoin address
-				throw new InvalidAddressException(errorResponse);
-			case -13:
-				// Error: Please enter the wallet passphrase with walletpassphrase first.
-				throw new BitcoinServerException(errorResponse);
-			case -14:
-				// Error: The wallet passphrase entered was incorrect.
-				throw new BitcoinServerException(errorResponse);
-			case -15:
-				// Error: running with an unencrypted wallet, but walletpassphrasechange was called.
-				// Error: running with an encrypted wallet, but encryptwallet was called.
-				throw new WalletEncryptionException(errorResponse);
-			case -17:
-				// Error: Wallet is already unlocked.
-				throw new BitcoinServerException(errorResponse);
-			default:
-				throw new BitcoinServerException(errorResponse);
-			}
-		}
-		case CLIENT_ERROR: {
-			BitcoindErrorResponse errorResponse = parseResponse(response, statusCode);
-			switch (errorResponse.getError().getCode()) {
-			case -32601:
-				// Method not found
-				throw new MethodNotFoundException(errorResponse);
-			default:
-				throw new BitcoinClientException(errorResponse);
-			}
-		}
+		case SERVER_ERROR:
+			throw serverException(parseResponse(response, statusCode));
+		case CLIENT_ERROR:
+			throw clientException(parseResponse(response, statusCode));
 		default:
 			try {
 				super.handleError(response);
 			} catch (Exception cause) {
-				throw new BitcoinException(cause);
+				throw new BitcoinHttpException(statusCode.value(), cause.getMessage(), cause);
 			}
 		}
 	}
 
 
 	/**
-	 * Parses the response body, deserializing it into an BitcoinJsonRpcErrorResponse object.
+	 * Creates the exception matching the given error response.
+	 * <p>
+	 * Used where no HTTP status is available to tell client and server errors
+	 * apart, eg. for the individual responses in a batch. The error codes for
+	 * which bitcoind answers an HTTP 4xx status are mapped to client
+	 * exceptions, all others to server exceptions.
+	 * 
+	 * @param errorResponse
+	 * @return BitcoinException
+	 */
+	static BitcoinException toException(BitcoindErrorResponse errorResponse) {
+		switch (errorResponse.getError().getCode()) {
+		case -32600: // Invalid request
+		case -32601: // Method not found
+			return clientException(errorResponse);
+		default:
+			return serverException(errorResponse);
+		}
+	}
+
+
+	static BitcoinException serverException(BitcoindErrorResponse errorResponse) {
+		return BitcoinExceptionRegistry.getInstance().createException(errorResponse, false);
+	}
+
+
+	static BitcoinException clientException(BitcoindErrorResponse errorResponse) {
+		return BitcoinExceptionRegistry.getInstance().createException(errorResponse, true);
+	}
+
+
+	/**
+	 * Parses the error response straight from the response body.
 	 * <p>
-	 * If parsing fails an BitcoinException containing the given HTTP error code is thrown.
+	 * If parsing fails an BitcoinHttpException containing the given HTTP error code is thrown.
 	 * 
-	 * @param response
-	 * @param statusCode
-	 * @return BitcoinJsonRpcErrorResponse
-	 * @throws BitcoinException
+	 * @param in - response body.
+	 * @param status - HTTP status code.
+	 * @param reasonPhrase - HTTP reason phrase.
+	 * @return BitcoindErrorResponse
+	 * @throws BitcoinHttpException
 	 */
-	private BitcoindErrorResponse parseResponse(ClientHttpResponse response, HttpStatus statusCode) {
-		String body = new String(getResponseBody(response), getCharset(response));
+	static BitcoindErrorResponse parseErrorResponse(InputStream in, int status, String reasonPhrase) {
 		try {
-			return objectMapper.readValue(body, BitcoindErrorResponse.class);
+			if (in == null) throw new BitcoinHttpException(status, "Received an HTTP " + status + " " + reasonPhrase + " without a body.");
+			return errorResponseReader.readValue(in);
 		} catch (IOException ioe) {
-			throw new BitcoinException("Received an HTTP " + statusCode.value() + " " + statusCode.getReasonPhrase() + ". Response parsing failed.", ioe);
+			throw new BitcoinHttpException(status, "Received an HTTP " + status + " " + reasonPhrase + ". Response parsing failed.", ioe);
 		}
 	}
 
 
+	private BitcoindErrorResponse parseResponse(ClientHttpResponse response, HttpStatus statusCode) throws IOException {
+		return parseErrorResponse(response.getBody(), statusCode.value(), statusCode.getReasonPhrase());
+	}
+
+
 	private HttpStatus getHttpStatusCode(ClientHttpResponse response) throws IOException {
 		HttpStatus statusCode;
 		try {
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static java.util.Arrays.asList;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Classification of the bitcoind JSON RPC methods.
+ * 
+ * @author Claus Nielsen
+ */
+public final class BitcoindMethods {
+
+	/**
+	 * Methods which don't change any state.
+	 */
+	private static final Set<String> READ_ONLY = Collections.unmodifiableSet(new HashSet<String>(asList(
+			"createmultisig",
+			"createrawtransaction",
+			"decoderawtransaction",
+			"dumpprivkey",
+			"getaccount",
+			"getaddednodeinfo",
+			"getaddressesbyaccount",
+			"getbalance",
+			"getblock",
+			"getblockcount",
+			"getblockhash",
+			"getblocktemplate",
+			"getconnectioncount",
+			"getdifficulty",
+			"getgenerate",
+			"gethashespersec",
+			"getinfo",
+			"getmininginfo",
+			"getpeerinfo",
+			"getrawmempool",
+			"getrawtransaction",
+			"getreceivedbyaccount",
+			"getreceivedbyaddress",
+			"gettransaction",
+			"gettxout",
+			"gettxoutsetinfo",
+			"help",
+			"listaccounts",
+			"listaddressgroupings",
+			"listlockunspent",
+			"listreceivedbyaccount",
+			"listreceivedbyaddress",
+			"listsinceblock",
+			"listtransactions",
+			"listunspent",
+			"signmessage",
+			"signrawtransaction",
+			"validateaddress",
+			"verifymessage")));
+
+	/**
+	 * Read-only methods whose results depend neither on the wallet nor on
+	 * node-local state, so any node at the same chain tip gives the same
+	 * answer. getrawmempool isn't one of them, as each node has its own
+	 * memory pool, and neither are validateaddress and createmultisig, which
+	 * look addresses up in the wallet.
+	 */
+	private static final Set<String> NODE_INDEPENDENT = Collections.unmodifiableSet(new HashSet<String>(asList(
+			"createrawtransaction",
+			"decoderawtransaction",
+			"getblock",
+			"getblockcount",
+			"getblockhash",
+			"getdifficulty",
+			"getrawtransaction",
+			"gettxout",
+			"gettxoutsetinfo",
+			"help",
+			"verifymessage")));
+
+	/**
+	 * Methods which may safely be called again if it's unknown whether a
+	 * call reached bitcoind. These are the read-only methods, and methods
+	 * leaving the state the same no matter how many times they are called.
+	 */
+	private static final Set<String> IDEMPOTENT = union(READ_ONLY, asList(
+			"addmultisigaddress",
+			"backupwallet",
+			"getaccountaddress", // only creates a new address once the current one is used
+			"keypoolrefill",
+			"lockunspent",
+			"setaccount",
+			"setgenerate",
+			"settxfee",
+			"walletlock"));
+
+	// Not idempotent, and therefore never resent once they may have reached
+	// bitcoind:
+	// addnode - fails if the node was already added.
+	// encryptwallet - stops bitcoind.
+	// getnewaddress - returns a new address for each call.
+	// getwork - submits a block when called with data.
+	// importprivkey - may trigger a (long) rescan.
+	// move, sendfrom, sendmany, sendtoaddress - moves or sends funds.
+	// sendrawtransaction - fails if the transaction is already known.
+	// stop - stops bitcoind.
+	// walletpassphrase - fails if the wallet is already unlocked.
+	// walletpassphrasechange - fails with the old passphrase once changed.
+
+
+	private BitcoindMethods() {
+	}
+
+
+	/**
+	 * Tells if the given method is read-only.
+	 * <p>
+	 * Methods not known to be read-only, including methods not known at all,
+	 * are considered to change state.
+	 * 
+	 * @param method - JSON RPC method name, eg. "getblock".
+	 * @return true if the method doesn't change any state.
+	 */
+	public static boolean isReadOnly(String method) {
+		return READ_ONLY.contains(method);
+	}
+
+
+	/**
+	 * Tells if the given method may be answered by any node, rather than
+	 * only by the node holding the wallet.
+	 * <p>
+	 * Methods not known to be node independent, including methods not known
+	 * at all, are considered to depend on the node.
+	 * 
+	 * @param method - JSON RPC method name, eg. "getblock".
+	 * @return true if the method is read-only and independent of the wallet
+	 *         and other node-local state.
+	 */
+	public static boolean isNodeIndependent(String method) {
+		return NODE_INDEPENDENT.contains(method);
+	}
+
+
+	/**
+	 * Tells if the given method is idempotent.
+	 * <p>
+	 * Methods not known to be idempotent, including methods not known at all,
+	 * are considered non-idempotent.
+	 * 
+	 * @param method - JSON RPC method name, eg. "getblock".
+	 * @return true if the method may safely be called again.
+	 */
+	public static boolean isIdempotent(String method) {
+		return IDEMPOTENT.contains(method);
+	}
+
+
+	private static Set<String> union(Set<String> set, List<String> more) {
+		Set<String> union = new HashSet<String>(set);
+		union.addAll(more);
+		return Collections.unmodifiableSet(union);
+	}
+
+
+}
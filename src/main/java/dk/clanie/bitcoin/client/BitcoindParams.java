@@ -0,0 +1,451 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static dk.clanie.bitcoin.client.BitcoindClient.SCALE;
+import static dk.clanie.collections.CollectionFactory.newArrayList;
+import static dk.clanie.util.Util.firstNotNull;
+import static java.lang.Boolean.FALSE;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import dk.clanie.bitcoin.AddressAndAmount;
+import dk.clanie.bitcoin.SignatureHashAlgorithm;
+import dk.clanie.bitcoin.TransactionOutputRef;
+import dk.clanie.bitcoin.client.request.AddNodeAction;
+import dk.clanie.bitcoin.client.request.TemplateRequest;
+
+/**
+ * Builds the parameter lists of the bitcoind JSON RPC methods, including
+ * defaults for omitted optional parameters.
+ * <p>
+ * Shared by {@link BitcoindClientImpl} and {@link BitcoindAsyncClientImpl},
+ * so both send the same requests. The methods are named like the client
+ * methods they serve.
+ * 
+ * @author Claus Nielsen
+ */
+final class BitcoindParams {
+
+	private BitcoindParams() {
+	}
+
+
+	static List<Object> addMultiSigAddress(int nrequired, List<String> keys, String account) {
+		List<Object> params = newArrayList();
+		params.add(nrequired);
+		params.add(keys);
+		if (account != null) params.add(account);
+		return params;
+	}
+
+
+	static List<Object> addNode(String node, AddNodeAction action) {
+		List<Object> params = newArrayList();
+		params.add(node);
+		params.add(action.toString());
+		return params;
+	}
+
+
+	static List<Object> backupWallet(String destination) {
+		return single(destination);
+	}
+
+
+	static List<Object> createMultiSig(Integer nRequired, String[] keys) {
+		List<Object> params = newArrayList();
+		params.add(nRequired);
+		if (keys != null) params.add(keys);
+		return params;
+	}
+
+
+	static List<Object> createRawTransaction(List<TransactionOutputRef> txOutputs, AddressAndAmount ... addressAndAmount) {
+		List<Object> params = newArrayList();
+		params.add(txOutputs);
+		params.add(new Recipients(addressAndAmount));
+		return params;
+	}
+
+
+	static List<Object> decodeRawTransaction(String rawTransaction) {
+		return single(rawTransaction);
+	}
+
+
+	static List<Object> dumpPrivateKey(String bitcoinAddress) {
+		return single(bitcoinAddress);
+	}
+
+
+	static List<Object> encryptWallet(String passPhrase) {
+		return single(passPhrase);
+	}
+
+
+	static List<Object> getAccount(String bitcoinAddress) {
+		return single(bitcoinAddress);
+	}
+
+
+	static List<Object> getAccountAddress(String account) {
+		return single(account);
+	}
+
+
+	static List<Object> getAddedNodeInfo(Boolean dns, String node) {
+		List<Object> params = newArrayList();
+		params.add(dns);
+		if (node != null) params.add(node);
+		return params;
+	}
+
+
+	static List<Object> getAddressesByAccount(String account) {
+		return single(account);
+	}
+
+
+	static List<Object> getBalance(String account, Integer minConf) {
+		List<Object> params = newArrayList();
+		if (account != null || minConf != null) params.add(account);
+		if (minConf != null) params.add(minConf);
+		return params;
+	}
+
+
+	static List<Object> getBlock(String hash) {
+		return single(hash);
+	}
+
+
+	static List<Object> getBlockHash(Long index) {
+		return single(index);
+	}
+
+
+	static List<Object> getBlockTemplate(TemplateRequest templateRequest) {
+		return single(templateRequest);
+	}
+
+
+	static List<Object> getNewAddress(String account) {
+		List<Object> params = newArrayList();
+		if (account != null) params.add(account);
+		return params;
+	}
+
+
+	static List<Object> getRawTransaction(String txId) {
+		return single(txId);
+	}
+
+
+	static List<Object> getRawTransaction_verbose(String txId) {
+		List<Object> params = newArrayList();
+		params.add(txId);
+		params.add(1); // verbose
+		return params;
+	}
+
+
+	static List<Object> getReceivedByAccount(String account, Integer minConf) {
+		List<Object> params = newArrayList();
+		params.add(account == null ? "" : account);
+		params.add(firstNotNull(minConf, 1));
+		return params;
+	}
+
+
+	static List<Object> getReceivedByAddress(String address, Integer minConf) {
+		List<Object> params = newArrayList();
+		params.add(address == null ? "" : address);
+		params.add(firstNotNull(minConf, 1));
+		return params;
+	}
+
+
+	static List<Object> getTransaction(String txId) {
+		return single(txId);
+	}
+
+
+	static List<Object> getTxOut(String txId, Integer n, Boolean includeMemoryPool) {
+		List<Object> params = newArrayList();
+		params.add(txId);
+		params.add(n);
+		params.add(firstNotNull(includeMemoryPool, true));
+		return params;
+	}
+
+
+	static List<Object> getWork(String data) {
+		return single(data);
+	}
+
+
+	static List<Object> help(String command) {
+		List<Object> params = newArrayList();
+		if (command != null) params.add(command);
+		return params;
+	}
+
+
+	static List<Object> importPrivateKey(String key, String label, Boolean rescan) {
+		List<Object> params = newArrayList();
+		params.add(key);
+		params.add(firstNotNull(label, ""));
+		params.add(firstNotNull(rescan, true));
+		return params;
+	}
+
+
+	static List<Object> listAccounts(Integer minConf) {
+		return single(firstNotNull(minConf, 1));
+	}
+
+
+	static List<Object> listReceivedByAccount(Integer minConf, Boolean includeEmpty) {
+		List<Object> params = newArrayList();
+		params.add(firstNotNull(minConf, Integer.valueOf(1)));
+		params.add(firstNotNull(includeEmpty, FALSE));
+		return params;
+	}
+
+
+	static List<Object> listReceivedByAddress(Integer minConf, Boolean includeEmpty) {
+		return listReceivedByAccount(minConf, includeEmpty);
+	}
+
+
+	static List<Object> listSinceBlock(String blockHash, Integer targetConfirmations) {
+		List<Object> params = newArrayList();
+		if (blockHash != null || targetConfirmations != null) params.add(blockHash);
+		if (targetConfirmations != null) params.add(targetConfirmations);
+		return params;
+	}
+
+
+	static List<Object> listTransactions(String account, Integer count, Integer from) {
+		List<Object> params = newArrayList();
+		params.add(account);
+		params.add(firstNotNull(count, 10));
+		params.add(firstNotNull(from, 0));
+		return params;
+	}
+
+
+	static List<Object> listUnspent(Integer minConf, Integer maxConf, String ... address) {
+		List<Object> params = newArrayList();
+		params.add(firstNotNull(minConf, Integer.valueOf(1)));
+		params.add(firstNotNull(maxConf, Integer.valueOf(999999)));
+		params.add(address);
+		return params;
+	}
+
+
+	static List<Object> lockUnspent(Boolean unlock, TransactionOutputRef[] txOutputs) {
+		List<Object> params = newArrayList();
+		params.add(unlock);
+		params.add(txOutputs);
+		return params;
+	}
+
+
+	static List<Object> move(String fromAccount, String toAccount, BigDecimal amount, Integer minConf, String comment) {
+		List<Object> params = newArrayList();
+		params.add(fromAccount);
+		params.add(toAccount);
+		params.add(amount);
+		params.add(firstNotNull(minConf, 1));
+		if (comment != null) params.add(comment);
+		return params;
+	}
+
+
+	static List<Object> sendFrom(String account, String address, BigDecimal amount, Integer minConf, String comment, String commentTo) {
+		List<Object> params = newArrayList();
+		params.add(account);
+		params.add(address);
+		params.add(amount.setScale(SCALE));
+		params.add(firstNotNull(minConf, 1));
+		if (comment != null || commentTo != null) params.add(comment);
+		if (commentTo != null) params.add(commentTo);
+		return params;
+	}
+
+
+	static List<Object> sendMany(String fromAccount, AddressAndAmount[] addressesAndAmounts, Integer minConf, String commment) {
+		List<Object> params = newArrayList();
+		params.add(fromAccount);
+		params.add(new Recipients(addressesAndAmounts));
+		params.add(firstNotNull(minConf, 1));
+		if (commment != null) params.add(commment);
+		return params;
+	}
+
+
+	static List<Object> sendRawTransaction(String hex) {
+		return single(hex);
+	}
+
+
+	static List<Object> sendToAddress(String address, BigDecimal amount, String comment, String commentTo) {
+		List<Object> params = newArrayList();
+		params.add(address);
+		params.add(amount.setScale(SCALE));
+		if (comment != null || commentTo != null) params.add(comment);
+		if (commentTo != null) params.add(commentTo);
+		return params;
+	}
+
+
+	static List<Object> setAccount(String address, String account) {
+		List<Object> params = newArrayList();
+		params.add(address);
+		params.add(account);
+		return params;
+	}
+
+
+	static List<Object> setGenerate(Boolean generate, Integer genProcLimit) {
+		List<Object> params = newArrayList();
+		params.add(generate);
+		if (genProcLimit != null) params.add(genProcLimit);
+		return params;
+	}
+
+
+	static List<Object> setTxFee(BigDecimal amount) {
+		return single(amount.setScale(SCALE));
+	}
+
+
+	static List<Object> signMessage(String address, String message) {
+		List<Object> params = newArrayList();
+		params.add(address);
+		params.add(message);
+		return params;
+	}
+
+
+	static List<Object> signRawTransaction(String hex, Object[] requiredTxOuts, String[] privKeys, SignatureHashAlgorithm sigHash) {
+		List<Object> params = newArrayList();
+		params.add(hex);
+		params.add(requiredTxOuts);
+		params.add(privKeys);
+		params.add(sigHash == null ? null : sigHash.toString());
+		return params;
+	}
+
+
+	static List<Object> validateAddress(String address) {
+		return single(address);
+	}
+
+
+	static List<Object> verifyMessage(String address, String signature, String message) {
+		List<Object> params = newArrayList();
+		params.add(address);
+		params.add(signature);
+		params.add(message);
+		return params;
+	}
+
+
+	static List<Object> walletPassPhrase(String passPhrase, int timeout) {
+		List<Object> params = newArrayList();
+		params.add(passPhrase);
+		params.add(Integer.valueOf(timeout));
+		return params;
+	}
+
+
+	static List<Object> walletPassPhraseChange(String oldPassPhrase, String newPassPhrase) {
+		List<Object> params = newArrayList();
+		params.add(oldPassPhrase);
+		params.add(newPassPhrase);
+		return params;
+	}
+
+
+	/**
+	 * Builds a key identifying a call, for coalescing and caching calls.
+	 * <p>
+	 * Array parameters, eg. the addresses given to listUnspent, are compared
+	 * by content, so identical calls get equal keys.
+	 * 
+	 * @param method
+	 * @param params
+	 * @param responseType
+	 * @return key
+	 */
+	static List<Object> callKey(String method, List<?> params, Class<?> responseType) {
+		List<Object> key = newArrayList();
+		key.add(method);
+		key.add(keyValue(params));
+		key.add(responseType);
+		return key;
+	}
+
+
+	/**
+	 * Tells if a call includes unconfirmed transactions, which may change
+	 * any time, as its minConf parameter is 0.
+	 * 
+	 * @param method
+	 * @param params
+	 * @return boolean
+	 */
+	static boolean includesUnconfirmed(String method, List<?> params) {
+		int minConfIndex;
+		if ("getbalance".equals(method) || "getreceivedbyaccount".equals(method) || "getreceivedbyaddress".equals(method)) {
+			minConfIndex = 1;
+		} else if ("listunspent".equals(method) || "listreceivedbyaccount".equals(method) || "listreceivedbyaddress".equals(method)) {
+			minConfIndex = 0;
+		} else {
+			return false;
+		}
+		if (params.size() <= minConfIndex) return false;
+		Object minConf = params.get(minConfIndex);
+		return minConf instanceof Number && ((Number) minConf).intValue() < 1;
+	}
+
+
+	private static Object keyValue(Object value) {
+		if (value instanceof Object[]) return keyValue(Arrays.asList((Object[]) value));
+		if (value instanceof List) {
+			List<Object> values = newArrayList();
+			for (Object element : (List<?>) value) values.add(keyValue(element));
+			return values;
+		}
+		return value;
+	}
+
+
+	private static List<Object> single(Object param) {
+		List<Object> params = newArrayList();
+		params.add(param);
+		return params;
+	}
+
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.io.InterruptedIOException;
+import java.net.SocketException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.NoHttpResponseException;
+import org.springframework.web.client.ResourceAccessException;
+
+import dk.clanie.bitcoin.exception.BitcoinHttpException;
+import dk.clanie.bitcoin.exception.CircuitOpenException;
+
+/**
+ * Circuit breaker for calls to one bitcoind node.
+ * <p>
+ * After a number of consecutive calls failing to get an answer from bitcoind
+ * the circuit opens, and calls fail immediately with an {@link
+ * CircuitOpenException} instead of waiting for connect- or socket timeouts.
+ * When the circuit has been open for a while a single trial call is let
+ * through. If it gets an answer the circuit closes, otherwise it stays open
+ * for another period.
+ * <p>
+ * Error responses from bitcoind don't count as failures - bitcoind answered.
+ * Neither do responses which couldn't be parsed - see {@link
+ * #isNodeFailure(RuntimeException)}.
+ * <p>
+ * The circuit breaker is thread safe, and doesn't lock.
+ * 
+ * @author Claus Nielsen
+ */
+public class CircuitBreaker {
+
+	private static final int CLOSED = 0;
+	private static final int OPEN = 1;
+	private static final int HALF_OPEN = 2;
+
+
+	// [Configuration]
+	private volatile int failureThreshold = 5;
+	private volatile long openTime = 30000;
+
+
+	// [State]
+	private final AtomicInteger state = new AtomicInteger(CLOSED);
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+	private volatile long openedAt;
+
+
+	/**
+	 * Sets the number of consecutive failures opening the circuit.
+	 * <p>
+	 * Default is 5.
+	 * 
+	 * @param failureThreshold
+	 */
+	public void setFailureThreshold(int failureThreshold) {
+		this.failureThreshold = failureThreshold;
+	}
+
+
+	/**
+	 * Sets for how long the circuit stays open before a trial call is let
+	 * through.
+	 * <p>
+	 * Default is 30000.
+	 * 
+	 * @param openTime - milliseconds.
+	 */
+	public void setOpenTime(long openTime) {
+		this.openTime = openTime;
+	}
+
+
+	/**
+	 * Tells if the circuit is closed, ie. calls are let through.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isClosed() {
+		return state.get() == CLOSED;
+	}
+
+
+	/**
+	 * Checks that a call may be made.
+	 * <p>
+	 * Must be followed by a call to either {@link #onSuccess()} or {@link
+	 * #onFailure()}.
+	 * 
+	 * @throws CircuitOpenException if the circuit is open.
+	 */
+	public void acquire() {
+		int s = state.get();
+		if (s == CLOSED) return;
+		if (s == OPEN && System.currentTimeMillis() - openedAt >= openTime && state.compareAndSet(OPEN, HALF_OPEN)) {
+			return; // Trial call
+		}
+		throw new CircuitOpenException("Circuit open after " + consecutiveFailures.get() + " consecutive failures to call bitcoind.");
+	}
+
+
+	/**
+	 * Registers that bitcoind answered a call.
+	 */
+	public void onSuccess() {
+		// Only writing when needed, as all callers share these.
+		if (consecutiveFailures.get() != 0) consecutiveFailures.set(0);
+		if (state.get() != CLOSED) state.set(CLOSED);
+	}
+
+
+	/**
+	 * Registers that bitcoind failed to answer a call.
+	 */
+	public void onFailure() {
+		int failures = consecutiveFailures.incrementAndGet();
+		if (state.get() == HALF_OPEN || failures >= failureThreshold) {
+			openedAt = System.currentTimeMillis();
+			state.set(OPEN);
+		}
+	}
+
+
+	/**
+	 * Tells if the given exception means that bitcoind didn't answer.
+	 * <p>
+	 * That is only the case for connection errors, timeouts, and HTTP 5xx
+	 * errors without a valid JSON RPC error response. Responses which
+	 * couldn't be parsed, and other HTTP errors (eg. 401 Unauthorized) don't
+	 * count, as the node did answer, and calling it again won't help.
+	 * 
+	 * @param e
+	 * @return boolean
+	 */
+	public static boolean isNodeFailure(RuntimeException e) {
+		if (e instanceof ResourceAccessException) return isConnectionFailure(e.getCause());
+		if (e instanceof BitcoinHttpException) return ((BitcoinHttpException) e).isServerError();
+		return false;
+	}
+
+
+	/**
+	 * Tells if the given I/O error means the connection failed or timed out,
+	 * as opposed to eg. a response which couldn't be parsed.
+	 * 
+	 * @param cause
+	 * @return boolean
+	 */
+	static boolean isConnectionFailure(Throwable cause) {
+		return cause instanceof SocketException // including ConnectException
+				|| cause instanceof InterruptedIOException // including socket and connect timeouts
+				|| cause instanceof NoHttpResponseException;
+	}
+
+
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * ClientHttpRequestFactory counting the bytes of each request and response
+ * body, for metrics.
+ * <p>
+ * Each request gets a {@link ByteCount} of its own, shared only with its
+ * response, so the counts are right no matter how calls are spread over
+ * threads or clients - also when a call is made while the response to
+ * another call is still being read, eg. from a {@link
+ * TransactionDataConsumer}. Error response bodies, which are read by the
+ * ResponseErrorHandler, are counted too.
+ * <p>
+ * The count for a request is obtained with {@link
+ * #getByteCount(ClientHttpRequest)}, typically from the RequestCallback.
+ * Requests created by other factories aren't counted.
+ * <p>
+ * Counting isn't free of allocation: each request is wrapped, along with
+ * its response and their body streams - four small objects per request, on
+ * top of those allocated by the underlying factory and the RestTemplate.
+ * 
+ * @author Claus Nielsen
+ */
+public class CountingClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+	// [Collaborators]
+	private final ClientHttpRequestFactory requestFactory;
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param requestFactory - factory creating the actual requests.
+	 */
+	public CountingClientHttpRequestFactory(ClientHttpRequestFactory requestFactory) {
+		this.requestFactory = requestFactory;
+	}
+
+
+	@Override
+	public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+		return new CountingRequest(requestFactory.createRequest(uri, httpMethod));
+	}
+
+
+	/**
+	 * Gets the byte count of the given request.
+	 * 
+	 * @param request
+	 * @return ByteCount, or null if the request isn't counted.
+	 */
+	public static ByteCount getByteCount(ClientHttpRequest request) {
+		if (request instanceof CountingRequest) return (CountingRequest) request;
+		return null;
+	}
+
+
+	/**
+	 * Number of bytes in the body of one request and its response.
+	 */
+	public static class ByteCount {
+
+		private long requestBytes;
+		private long responseBytes;
+
+		/**
+		 * Gets the number of bytes written to the request body.
+		 */
+		public long getRequestBytes() {
+			return requestBytes;
+		}
+
+		/**
+		 * Gets the number of bytes read from the response body so far.
+		 */
+		public long getResponseBytes() {
+			return responseBytes;
+		}
+
+	}
+
+
+	/**
+	 * Request counting its own bytes, and those of its response.
+	 */
+	private static class CountingRequest extends ByteCount implements ClientHttpRequest {
+
+		private final ClientHttpRequest request;
+		private OutputStream body;
+
+		private CountingRequest(ClientHttpRequest request) {
+			this.request = request;
+		}
+
+		@Override
+		public HttpMethod getMethod() {
+			return request.getMethod();
+		}
+
+		@Override
+		public URI getURI() {
+			return request.getURI();
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return request.getHeaders();
+		}
+
+		@Override
+		public OutputStream getBody() throws IOException {
+			if (body == null) body = new CountingOutputStream(request.getBody(), this);
+			return body;
+		}
+
+		@Override
+		public ClientHttpResponse execute() throws IOException {
+			return new CountingResponse(request.execute(), this);
+		}
+
+	}
+
+
+	private static class CountingResponse implements ClientHttpResponse {
+
+		private final ClientHttpResponse response;
+		private final ByteCount byteCount;
+		private InputStream body;
+
+		private CountingResponse(ClientHttpResponse response, ByteCount byteCount) {
+			this.response = response;
+			this.byteCount = byteCount;
+		}
+
+		@Override
+		public HttpStatus getStatusCode() throws IOException {
+			return response.getStatusCode();
+		}
+
+		@Override
+		public int getRawStatusCode() throws IOException {
+			return response.getRawStatusCode();
+		}
+
+		@Override
+		public String getStatusText() throws IOException {
+			return response.getStatusText();
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return response.getHeaders();
+		}
+
+		@Override
+		public InputStream getBody() throws IOException {
+			if (body == null) {
+				InputStream in = response.getBody();
+				if (in == null) return null;
+				body = new CountingInputStream(in, byteCount);
+			}
+			return body;
+		}
+
+		@Override
+		public void close() {
+			response.close();
+		}
+
+	}
+
+
+	/**
+	 * OutputStream counting the bytes written.
+	 */
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private final ByteCount byteCount;
+
+		private CountingOutputStream(OutputStream out, ByteCount byteCount) {
+			super(out);
+			this.byteCount = byteCount;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			byteCount.requestBytes++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			byteCount.requestBytes += len;
+		}
+
+	}
+
+
+	/**
+	 * InputStream counting the bytes read.
+	 * <p>
+	 * Passes {@link ConnectionReleaseTrigger} calls on to the stream it
+	 * wraps, so the connection can still be aborted through it.
+	 */
+	private static class CountingInputStream extends FilterInputStream implements ConnectionReleaseTrigger {
+
+		private final ByteCount byteCount;
+
+		private CountingInputStream(InputStream in, ByteCount byteCount) {
+			super(in);
+			this.byteCount = byteCount;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = in.read();
+			if (b >= 0) byteCount.responseBytes++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = in.read(b, off, len);
+			if (n > 0) byteCount.responseBytes += n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(n);
+			byteCount.responseBytes += skipped;
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void releaseConnection() throws IOException {
+			if (in instanceof ConnectionReleaseTrigger) ((ConnectionReleaseTrigger) in).releaseConnection();
+			else in.close();
+		}
+
+		@Override
+		public void abortConnection() throws IOException {
+			if (in instanceof ConnectionReleaseTrigger) ((ConnectionReleaseTrigger) in).abortConnection();
+			else in.close();
+		}
+
+	}
+
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionManager;
+
+/**
+ * Daemon thread periodically closing expired and idle pooled connections.
+ * <p>
+ * Pooled connections which bitcoind has closed in the meantime would
+ * otherwise only be detected when they are leased for the next request.
+ *
+ * @author Claus Nielsen
+ */
+public class IdleConnectionEvictor extends Thread {
+
+	private final ClientConnectionManager connectionManager;
+	private final long idleTimeout;
+	private final long interval;
+	private volatile boolean shutdown = false;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param connectionManager - manager of the connections to evict.
+	 * @param idleTimeout - milliseconds a connection may be idle before it is closed.
+	 */
+	public IdleConnectionEvictor(ClientConnectionManager connectionManager, long idleTimeout) {
+		super("bitcoind-client-idle-connection-evictor");
+		setDaemon(true);
+		this.connectionManager = connectionManager;
+		this.idleTimeout = idleTimeout;
+		this.interval = Math.max(1000L, idleTimeout / 2);
+	}
+
+
+	@Override
+	public void run() {
+		try {
+			while (!shutdown) {
+				synchronized (this) {
+					wait(interval);
+				}
+				connectionManager.closeExpiredConnections();
+				connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+			}
+		} catch (InterruptedException e) {
+			// terminate
+		}
+	}
+
+
+	/**
+	 * Stops the evictor.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+
+}
@@ -0,0 +1,1393 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import dk.clanie.bitcoin.AddressAndAmount;
+import dk.clanie.bitcoin.SignatureHashAlgorithm;
+import dk.clanie.bitcoin.Sha256Hash;
+import dk.clanie.bitcoin.TransactionOutputRef;
+import dk.clanie.bitcoin.client.request.AddNodeAction;
+import dk.clanie.bitcoin.client.request.TemplateRequest;
+import dk.clanie.bitcoin.client.response.BigDecimalResponse;
+import dk.clanie.bitcoin.client.response.BooleanResponse;
+import dk.clanie.bitcoin.client.response.CreateMultiSigResponse;
+import dk.clanie.bitcoin.client.response.DecodeRawTransactionResponse;
+import dk.clanie.bitcoin.client.response.GetAddedNodeInfoResponse;
+import dk.clanie.bitcoin.client.response.GetBlockResponse;
+import dk.clanie.bitcoin.client.response.GetBlockTemplateResponse;
+import dk.clanie.bitcoin.client.response.GetInfoResponse;
+import dk.clanie.bitcoin.client.response.GetMiningInfoResponse;
+import dk.clanie.bitcoin.client.response.GetPeerInfoResponse;
+import dk.clanie.bitcoin.client.response.GetRawTransactionResponse;
+import dk.clanie.bitcoin.client.response.GetTransactionResponse;
+import dk.clanie.bitcoin.client.response.GetTxOutResponse;
+import dk.clanie.bitcoin.client.response.GetTxOutSetInfoResponse;
+import dk.clanie.bitcoin.client.response.GetWorkResponse;
+import dk.clanie.bitcoin.client.response.IntegerResponse;
+import dk.clanie.bitcoin.client.response.ListAccountsResponse;
+import dk.clanie.bitcoin.client.response.ListAddressGroupingsResponse;
+import dk.clanie.bitcoin.client.response.ListLockUnspentResponse;
+import dk.clanie.bitcoin.client.response.ListReceivedByAccountResponse;
+import dk.clanie.bitcoin.client.response.ListReceivedByAddressResponse;
+import dk.clanie.bitcoin.client.response.ListTransactionsResponse;
+import dk.clanie.bitcoin.client.response.ListUnspentResponse;
+import dk.clanie.bitcoin.client.response.LongResponse;
+import dk.clanie.bitcoin.client.response.SignRawTransactionResponse;
+import dk.clanie.bitcoin.client.response.StringArrayResponse;
+import dk.clanie.bitcoin.client.response.StringResponse;
+import dk.clanie.bitcoin.client.response.UnspentOutputs;
+import dk.clanie.bitcoin.client.response.ValidateAddressResponse;
+import dk.clanie.bitcoin.client.response.VoidResponse;
+import dk.clanie.bitcoin.exception.BitcoinException;
+
+/**
+ * BitcoindClient spreading calls over a number of bitcoind nodes.
+ * <p>
+ * One node is the primary. Calls using or changing the wallet, or which
+ * concern the node itself (eg. getInfo, getPeerInfo, addNode), are always
+ * sent to the primary, as each node has its own wallet. This includes
+ * validateAddress and createMultiSig, which look addresses up in the
+ * wallet. So are calls reading the memory pool, eg. getRawMemPool, as the
+ * memory pools of the nodes differ. Calls which only read the block chain,
+ * or don't depend on node state at all - those for which {@link
+ * BitcoindMethods#isNodeIndependent(String)} is true, eg. getBlock,
+ * getRawTransaction and verifyMessage - are sent to whichever node is least
+ * loaded. So are batches consisting of such calls only, though they are
+ * never hedged.
+ * <p>
+ * Load is measured as the number of calls in flight to each node from this
+ * client. Only nodes whose block count is at the current tip (the highest
+ * block count seen among the nodes), or at most {@link #setMaxLag(int)}
+ * blocks behind it, are considered, so a replica which is still catching up
+ * doesn't answer with stale data. Block counts are refreshed by {@link
+ * #refreshBlockCounts()}, which is called periodically once {@link
+ * #start(long)} has been called.<br>
+ * A node failing to respond is skipped until it answers the next refresh,
+ * or until a single call is let through to it again once the retry
+ * interval (see {@link #setRetryInterval(long)}) has passed, and succeeds.
+ * If no node qualifies the call goes to the primary.
+ * <p>
+ * Read-only calls may be hedged to cut tail latency: when enabled with
+ * {@link #enableHedging(ExecutorService, double)} a read-only call which
+ * hasn't been answered within the given percentile of recently observed
+ * latencies for that method is sent to a second node as well. Whichever
+ * answer arrives first is used, and the other call is cancelled without
+ * being interrupted - it runs to completion on its thread, but its
+ * response is discarded. Interrupting it would only break the connection
+ * and make a healthy node look unavailable. The latency of every call is
+ * sampled, including the discarded ones, so slow nodes aren't hidden by
+ * the hedges. The number of hedges issued and won is available for
+ * monitoring the effect.
+ * <p>
+ * Note that getRawTransaction only finds transactions not in the node's
+ * wallet if the node maintains a transaction index (-txindex), so replicas
+ * should be configured like the primary.
+ * <p>
+ * Example:
+ * <pre>
+ * BitcoindClientImpl primary = new BitcoindClientImpl(); // and replicas likewise
+ * primary.setUrl("http://node1:8332");
+ * LoadBalancingBitcoindClient client = new LoadBalancingBitcoindClient(primary, Arrays.asList(replica1, replica2));
+ * client.start(5000);
+ * </pre>
+ * 
+ * @author Claus Nielsen
+ */
+public class LoadBalancingBitcoindClient implements BitcoindClient {
+
+	// [Configuration]
+	private volatile int maxLag = 0;
+	private volatile ExecutorService hedgeExecutor;
+	private volatile double hedgePercentile;
+	private volatile long minHedgeDelay = TimeUnit.MILLISECONDS.toNanos(10);
+	private volatile long retryInterval = TimeUnit.SECONDS.toNanos(5);
+
+
+	// [Collaborators]
+	private final Node primary;
+	private final Node[] nodes;
+
+
+	// [State]
+	private final AtomicInteger nextNode = new AtomicInteger();
+	private volatile long tip = -1;
+	private volatile BlockCountRefresher refresher;
+	private final ConcurrentMap<String, LatencySamples> latencies = new ConcurrentHashMap<String, LatencySamples>();
+	private final AtomicLong hedgesIssued = new AtomicLong();
+	private final AtomicLong hedgesWon = new AtomicLong();
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param primary - client for the node handling wallet calls.
+	 * @param replicas - clients for additional nodes handling read-only calls.
+	 */
+	public LoadBalancingBitcoindClient(BitcoindClient primary, List<? extends BitcoindClient> replicas) {
+		this.primary = new Node(primary);
+		this.nodes = new Node[replicas.size() + 1];
+		this.nodes[0] = this.primary;
+		for (int i = 0; i < replicas.size(); i++) {
+			this.nodes[i + 1] = new Node(replicas.get(i));
+		}
+	}
+
+
+	/**
+	 * Does nothing - the url is set on the client for each node.
+	 * <p>
+	 * Implemented as a no-op, so this client may be configured like any
+	 * other BitcoindClient.
+	 * 
+	 * @param url - ignored.
+	 */
+	@Override
+	public void setUrl(String url) {
+		// Each node's client has its own url.
+	}
+
+
+	/**
+	 * Sets how many blocks a node may be behind the tip and still be used
+	 * for read-only calls.
+	 * <p>
+	 * Default is 0.
+	 * 
+	 * @param maxLag - number of blocks.
+	 */
+	public void setMaxLag(int maxLag) {
+		this.maxLag = maxLag;
+	}
+
+
+	/**
+	 * Sets how long a node which failed to respond is skipped before a call
+	 * is sent to it again.
+	 * <p>
+	 * Default is 5000 milliseconds.
+	 * 
+	 * @param retryInterval - milliseconds.
+	 */
+	public void setRetryInterval(long retryInterval) {
+		this.retryInterval = TimeUnit.MILLISECONDS.toNanos(retryInterval);
+	}
+
+
+	/**
+	 * Enables hedging of read-only calls.
+	 * <p>
+	 * Hedging needs at least two nodes. The executor runs both the original
+	 * and the hedged call of each read-only call, so it should have enough
+	 * threads for two calls per concurrent caller, plus cancelled calls still
+	 * running to completion.
+	 * 
+	 * @param executor - executor for running hedged calls.
+	 * @param percentile - fraction of calls expected to be answered before a
+	 *        hedge is sent, eg. 0.95.
+	 */
+	public void enableHedging(ExecutorService executor, double percentile) {
+		if (percentile <= 0 || percentile >= 1) throw new IllegalArgumentException("Percentile must be between 0 and 1.");
+		this.hedgePercentile = percentile;
+		this.hedgeExecutor = executor;
+	}
+
+
+	/**
+	 * Disables hedging of read-only calls.
+	 * <p>
+	 * The executor is not shut down.
+	 */
+	public void disableHedging() {
+		this.hedgeExecutor = null;
+	}
+
+
+	/**
+	 * Sets the minimum delay before a call is hedged.
+	 * <p>
+	 * Also used until enough latencies have been observed for a method.
+	 * Default is 10 milliseconds.
+	 * 
+	 * @param minHedgeDelay - milliseconds.
+	 */
+	public void setMinHedgeDelay(long minHedgeDelay) {
+		this.minHedgeDelay = TimeUnit.MILLISECONDS.toNanos(minHedgeDelay);
+	}
+
+
+	/**
+	 * Gets the number of hedged calls sent.
+	 * 
+	 * @return number of hedges issued.
+	 */
+	public long getHedgesIssued() {
+		return hedgesIssued.get();
+	}
+
+
+	/**
+	 * Gets the number of hedged calls answered before the original call.
+	 * 
+	 * @return number of hedges won.
+	 */
+	public long getHedgesWon() {
+		return hedgesWon.get();
+	}
+
+
+	/**
+	 * Gets the nodes, the primary first.
+	 * 
+	 * @return List of {@link Node}s.
+	 */
+	public List<Node> getNodes() {
+		return Collections.unmodifiableList(Arrays.asList(nodes));
+	}
+
+
+	/**
+	 * Gets the highest block count seen among the nodes.
+	 * 
+	 * @return block count, or -1 if block counts haven't been refreshed yet.
+	 */
+	public long getTip() {
+		return tip;
+	}
+
+
+	/**
+	 * Calls getBlockCount on each node, updating the tip and which nodes are
+	 * available.
+	 */
+	public void refreshBlockCounts() {
+		long newTip = -1;
+		for (Node node : nodes) {
+			try {
+				Long blockCount = node.client.getBlockCount().getResult();
+				node.blockCount = blockCount == null ? -1 : blockCount.longValue();
+				node.available = true;
+			} catch (RuntimeException e) {
+				node.markUnavailable();
+			}
+			if (node.available && node.blockCount > newTip) newTip = node.blockCount;
+		}
+		tip = newTip;
+	}
+
+
+	/**
+	 * Starts a daemon thread refreshing block counts at the given interval.
+	 * 
+	 * @param interval - milliseconds between refreshes.
+	 */
+	public synchronized void start(long interval) {
+		if (refresher != null) throw new IllegalStateException("Already started.");
+		refreshBlockCounts();
+		refresher = new BlockCountRefresher(interval);
+		refresher.start();
+	}
+
+
+	/**
+	 * Stops refreshing block counts.
+	 */
+	public synchronized void shutdown() {
+		if (refresher == null) return;
+		refresher.shutdown();
+		refresher = null;
+	}
+
+
+	@Override
+	public StringResponse addMultiSigAddress(final int nrequired, final List<String> keys, final String account) {
+		return route("addmultisigaddress", new NodeCall<StringResponse>() {
+			@Override
+			public StringResponse call(BitcoindClient client) {
+				return client.addMultiSigAddress(nrequired, keys, account);
+			}
+		});
+	}
+
+
+	@Override
+	public VoidResponse addNode(final String node, final AddNodeAction action) {
+		return route("addnode", new NodeCall<VoidResponse>() {
+			@Override
+			public VoidResponse call(BitcoindClient client) {
+				return client.addNode(node, action);
+			}
+		});
+	}
+
+
+	@Override
+	public VoidResponse backupWallet(final String destination) {
+		return route("backupwallet", new NodeCall<VoidResponse>() {
+			@Override
+			public VoidResponse call(BitcoindClient client) {
+				return client.backupWallet(destination);
+			}
+		});
+	}
+
+
+	@Override
+	public CreateMultiSigResponse createMultiSig(final Integer nRequired, final String[] keys) {
+		return route("createmultisig", new NodeCall<CreateMultiSigResponse>() {
+			@Override
+			public CreateMultiSigResponse call(BitcoindClient client) {
+				return client.createMultiSig(nRequired, keys);
+			}
+		});
+	}
+
+
+	@Override
+	public StringResponse createRawTransaction(final List<TransactionOutputRef> txOutputs, final AddressAndAmount ... addressAndAmount) {
+		return route("createrawtransaction", new NodeCall<StringResponse>() {
+			@Override
+			public StringResponse call(BitcoindClient client) {
+				return client.createRawTransaction(txOutputs, addressAndAmount);
+			}
+		});
+	}
+
+
+	@Override
+	public DecodeRawTransactionResponse decodeRawTransaction(final String rawTransaction) {
+		return route("decoderawtransaction", new NodeCall<DecodeRawTransactionResponse>() {
+			@Override
+			public DecodeRawTransactionResponse call(BitcoindClient client) {
+				return client.decodeRawTransaction(rawTransaction);
+			}
+		});
+	}
+
+
+	@Override
+	public StringResponse dumpPrivateKey(final String bitcoinAddress) {
+		return route("dumpprivkey", new NodeCall<StringResponse>() {
+			@Override
+			public StringResponse call(BitcoindClient client) {
+				return client.dumpPrivateKey(bitcoinAddress);
+			}
+		});
+	}
+
+
+	@Override
+	public VoidResponse encryptWallet(final String passPhrase) {
+		return route("encryptwallet", new NodeCall<VoidResponse>() {
+			@Override
+			public VoidResponse call(BitcoindClient client) {
+				return client.encryptWallet(passPhrase);
+			}
+		});
+	}
+
+
+	@Override
+	public StringResponse getAccount(final String bitcoinAddress) {
+		return route("getaccount", new NodeCall<StringResponse>() {
+			@Override
+			public StringResponse call(BitcoindClient client) {
+				return client.getAccount(bitcoinAddress);
+			}
+		});
+	}
+
+
+	@Override
+	public StringResponse getAccountAddress(final String account) {
+		return route("getaccountaddress", new NodeCall<StringResponse>() {
+			@Override
+			public StringResponse call(BitcoindClient client) {
+				return client.getAccountAddress(account);
+			}
+		});
+	}
+
+
+	@Override
+	public GetAddedNodeInfoResponse getAddedNodeInfo(final Boolean dns, final String node) {
+		return route("getaddednodeinfo", new NodeCall<GetAddedNodeInfoResponse>() {
+			@Override
+			public GetAddedNodeInfoResponse call(BitcoindClient client) {
+				return client.getAddedNodeInfo(dns, node);
+			}
+		});
+	}
+
+
+	@Override
+	public StringArrayResponse getAddressesByAccount(final String account) {
+		return route("getaddressesbyaccount", new NodeCall<StringArrayResponse>() {
+			@Override
+			public StringArrayResponse call(BitcoindClient client) {
+				return client.getAddressesByAccount(account);
+			}
+		});
+	}
+
+
+	@Override
+	public BigDecimalResponse getBalance(final String account, final Integer minConf) {
+		return route("getbalance", new NodeCall<BigDecimalResponse>() {
+			@Override
+			public BigDecimalResponse call(BitcoindClient client) {
+				return client.getBalance(account, minConf);
+			}
+		});
+	}
+
+
+	@Override
+	public GetBlockResponse getBlock(final String hash) {
+		return route("getblock", new NodeCall<GetBlockResponse>() {
+			@Override
+			public GetBlockResponse call(BitcoindClient client) {
+				return client.getBlock(hash);
+			}
+		});
+	}
+
+
+	@Override
+	public LongResponse getBlockCount() {
+		return route("getblockcount", new NodeCall<LongResponse>() {
+			@Override
+			public LongResponse call(BitcoindClient client) {
+				return client.getBlockCount();
+			}
+		});
+	}
+
+
+	@Override
+	public StringResponse getBlockHash(final Long index) {
+		return route("getblockhash", new NodeCall<StringResponse>() {
+			@Override
+			public StringResponse call(BitcoindClient client) {
+				return client.getBlockHash(index);
+			}
+		});
+	}
+
+
+	@Override
+	public GetBlockTemplateResponse getBlockTemplate(final TemplateRequest templateRequest) {
+		return route("getblocktemplate", new NodeCall<GetBlockTemplateResponse>() {
+			@Override
+			public GetBlockTemplateResponse call(BitcoindClient client) {
+				return client.getBlockTemplate(templateRequest);
+			}
+		});
+	}
+
+
+	@Override
+	public IntegerResponse getConnectionCount() {
+		return route("getconnectioncount", new NodeCall<IntegerResponse>() {
+			@Override
+			public IntegerResponse call(BitcoindClient client) {
+				return client.getConnectionCount();
+			}
+		});
+	}
+
+
+	@Override
+	public IntegerResponse getDifficulty() {
+		return route("getdifficulty", new NodeCall<IntegerResponse>() {
+			@Override
+			public IntegerResponse call(BitcoindClient client) {
+				return client.getDifficulty();
+			}
+		});
+	}
+
+
+	@Override
+	public BooleanResponse getGenerate() {
+		return route("getgenerate", new NodeCall<BooleanResponse>() {
+			@Override
+			public BooleanResponse call(BitcoindClient client) {
+				return client.getGenerate();
+			}
+		});
+	}
+
+
+	@Override
+	public LongResponse getHashesPerSecond() {
+		return route("gethashespersec", new NodeCall<LongResponse>() {
+			@Override
+			public LongResponse call(BitcoindClient client) {
+				return client.getHashesPerSecond();
+			}
+		});
+	}
+
+
+	@Override
+	public GetInfoResponse getInfo() {
+		return route("getinfo", new NodeCall<GetInfoResponse>() {
+			@Override
+			public GetInfoResponse call(BitcoindClient client) {
+				return client.getInfo();
+			}
+		});
+	}
+
+
+	@Override
+	public GetMiningInfoResponse getMiningInfo() {
+		return route("getmininginfo", new NodeCall<GetMiningInfoResponse>() {
+			@Override
+			public GetMiningInfoResponse call(BitcoindClient client) {
+				return client.getMiningInfo();
+			}
+		});
+	}
+
+
+	@Override
+	public StringResponse getNewAddress(final String account) {
+		return route("getnewaddress", new NodeCall<StringResponse>() {
+			@Override
+			public StringResponse call(BitcoindClient client) {
+				return client.getNewAddress(account);
+			}
+		});
+	}
+
+
+	@Override
+	public GetPeerInfoResponse getPeerInfo() {
+		return route("getpeerinfo", new NodeCall<GetPeerInfoResponse>() {
+			@Override
+			public GetPeerInfoResponse call(BitcoindClient client) {
+				return client.getPeerInfo();
+			}
+		});
+	}
+
+
+	@Override
+	public StringArrayResponse getRawMemPool() {
+		return route("getrawmempool", new NodeCall<StringArrayResponse>() {
+			@Override
+			public StringArrayResponse call(BitcoindClient client) {
+				return client.getRawMemPool();
+			}
+		});
+	}
+
+
+	@Override
+	public StringResponse getRawTransaction(final String txId) {
+		return route("getrawtransaction", new NodeCall<StringResponse>() {
+			@Override
+			public StringResponse call(BitcoindClient client) {
+				return client.getRawTransaction(txId);
+			}
+		});
+	}
+
+
+	@Override
+	public GetRawTransactionResponse getRawTransaction_verbose(final String txId) {
+		return route("getrawtransaction", new NodeCall<GetRawTransactionResponse>() {
+			@Override
+			public GetRawTransactionResponse call(BitcoindClient client) {
+				return client.getRawTransaction_verbose(txId);
+			}
+		});
+	}
+
+
+	@Override
+	public BigDecimalResponse getReceivedByAccount(final String account, final Integer minConf) {
+		return route("getreceivedbyaccount", new NodeCall<BigDecimalResponse>() {
+			@Override
+			public BigDecimalResponse call(BitcoindClient client) {
+				return client.getReceivedByAccount(account, minConf);
+			}
+		});
+	}
+
+
+	@Override
+	public BigDecimalResponse getReceivedByAddress(final String address, final Integer minConf) {
+		return route("getreceivedbyaddress", new NodeCall<BigDecimalResponse>() {
+			@Override
+			public BigDecimalResponse call(BitcoindClient client) {
+				return client.getReceivedByAddress(address, minConf);
+			}
+		});
+	}
+
+
+	@Override
+	public GetTransactionResponse getTransaction(final String txId) {
+		return route("gettransaction", new NodeCall<GetTransactionResponse>() {
+			@Override
+			public GetTransactionResponse call(BitcoindClient client) {
+				return client.getTransaction(txId);
+			}
+		});
+	}
+
+
+	@Override
+	public GetTxOutResponse getTxOut(final String txId, final Integer n, final Boolean includeMemoryPool) {
+		return route("gettxout", new NodeCall<GetTxOutResponse>() {
+			@Override
+			public GetTxOutResponse call(BitcoindClient client) {
+				return client.getTxOut(txId, n, includeMemoryPool);
+			}
+		});
+	}
+
+
+	@Override
+	public GetTxOutSetInfoResponse getTxOutSetInfo() {
+		return route("gettxoutsetinfo", new NodeCall<GetTxOutSetInfoResponse>() {
+			@Override
+			public GetTxOutSetInfoResponse call(BitcoindClient client) {
+				return client.getTxOutSetInfo();
+			}
+		});
+	}
+
+
+	@Override
+	public GetWorkResponse getWork() {
+		return route("getwork", new NodeCall<GetWorkResponse>() {
+			@Override
+			public GetWorkResponse call(BitcoindClient client) {
+				return client.getWork();
+			}
+		});
+	}
+
+
+	@Override
+	public BooleanResponse getWork(final String data) {
+		return route("getwork", new NodeCall<BooleanResponse>() {
+			@Override
+			public BooleanResponse call(BitcoindClient client) {
+				return client.getWork(data);
+			}
+		});
+	}
+
+
+	@Override
+	public StringResponse help(final String command) {
+		return route("help", new NodeCall<StringResponse>() {
+			@Override
+			public StringResponse call(BitcoindClient client) {
+				return client.help(command);
+			}
+		});
+	}
+
+
+	@Override
+	public VoidResponse importPrivateKey(final String key, final String label, final Boolean rescan) {
+		return route("importprivkey", new NodeCall<VoidResponse>() {
+			@Override
+			public VoidResponse call(BitcoindClient client) {
+				return client.importPrivateKey(key, label, rescan);
+			}
+		});
+	}
+
+
+	@Override
+	public VoidResponse keyPoolRefill() {
+		return route("keypoolrefill", new NodeCall<VoidResponse>() {
+			@Override
+			public VoidResponse call(BitcoindClient client) {
+				return client.keyPoolRefill();
+			}
+		});
+	}
+
+
+	@Override
+	public ListAccountsResponse listAccounts(final Integer minConf) {
+		return route("listaccounts", new NodeCall<ListAccountsResponse>() {
+			@Override
+			public ListAccountsResponse call(BitcoindClient client) {
+				return client.listAccounts(minConf);
+			}
+		});
+	}
+
+
+	@Override
+	public ListAddressGroupingsResponse listAddressGroupings() {
+		return route("listaddressgroupings", new NodeCall<ListAddressGroupingsResponse>() {
+			@Override
+			public ListAddressGroupingsResponse call(BitcoindClient client) {
+				return client.listAddressGroupings();
+			}
+		});
+	}
+
+
+	@Override
+	public ListLockUnspentResponse listLockUnspent() {
+		return route("listlockunspent", new NodeCall<ListLockUnspentResponse>() {
+			@Override
+			public ListLockUnspentResponse call(BitcoindClient client) {
+				return client.listLockUnspent();
+			}
+		});
+	}
+
+
+	@Override
+	public ListReceivedByAccountResponse listReceivedByAccount(final Integer minConf, final Boolean includeEmpty) {
+		return route("listreceivedbyaccount", new NodeCall<ListReceivedByAccountResponse>() {
+			@Override
+			public ListReceivedByAccountResponse call(BitcoindClient client) {
+				return client.listReceivedByAccount(minConf, includeEmpty);
+			}
+		});
+	}
+
+
+	@Override
+	public ListReceivedByAddressResponse listReceivedByAddress(final Integer minConf, final Boolean includeEmpty) {
+		return route("listreceivedbyaddress", new NodeCall<ListReceivedByAddressResponse>() {
+			@Override
+			public ListReceivedByAddressResponse call(BitcoindClient client) {
+				return client.listReceivedByAddress(minConf, includeEmpty);
+			}
+		});
+	}
+
+
+	@Override
+	public Sha256Hash listSinceBlock(final String blockHash, final Integer targetConfirmations, final TransactionDataConsumer consumer) {
+		return route("listsinceblock", new NodeCall<Sha256Hash>() {
+			@Override
+			public Sha256Hash call(BitcoindClient client) {
+				return client.listSinceBlock(blockHash, targetConfirmations, consumer);
+			}
+		});
+	}
+
+
+	@Override
+	public ListTransactionsResponse listTransactions(final String account, final Integer count, final Integer from) {
+		return route("listtransactions", new NodeCall<ListTransactionsResponse>() {
+			@Override
+			public ListTransactionsResponse call(BitcoindClient client) {
+				return client.listTransactions(account, count, from);
+			}
+		});
+	}
+
+
+	@Override
+	public void listTransactions(final String account, final Integer count, final Integer from, final TransactionDataConsumer consumer) {
+		route("listtransactions", new NodeCall<Void>() {
+			@Override
+			public Void call(BitcoindClient client) {
+				client.listTransactions(account, count, from, consumer);
+				return null;
+			}
+		});
+	}
+
+
+	@Override
+	public ListUnspentResponse listUnspent(final Integer minConf, final Integer maxConf, final String ... address) {
+		return route("listunspent", new NodeCall<ListUnspentResponse>() {
+			@Override
+			public ListUnspentResponse call(BitcoindClient client) {
+				return client.listUnspent(minConf, maxConf, address);
+			}
+		});
+	}
+
+
+	@Override
+	public UnspentOutputs listUnspentOutputs(final Integer minConf, final Integer maxConf, final String ... address) {
+		return route("listunspent", new NodeCall<UnspentOutputs>() {
+			@Override
+			public UnspentOutputs call(BitcoindClient client) {
+				return client.listUnspentOutputs(minConf, maxConf, address);
+			}
+		});
+	}
+
+
+	@Override
+	public BooleanResponse lockUnspent(final Boolean unlock, final TransactionOutputRef[] txOutputs) {
+		return route("lockunspent", new NodeCall<BooleanResponse>() {
+			@Override
+			public BooleanResponse call(BitcoindClient client) {
+				return client.lockUnspent(unlock, txOutputs);
+			}
+		});
+	}
+
+
+	@Override
+	public BooleanResponse move(final String fromAccount, final String toAccount, final BigDecimal amount, final Integer minConf, final String comment) {
+		return route("move", new NodeCall<BooleanResponse>() {
+			@Override
+			public BooleanResponse call(BitcoindClient client) {
+				return client.move(fromAccount, toAccount, amount, minConf, comment);
+			}
+		});
+	}
+
+
+	@Override
+	public StringResponse sendFrom(final String account, final String address, final BigDecimal amount, final Integer minConf, final String comment, final String commentTo) {
+		return route("sendfrom", new NodeCall<StringResponse>() {
+			@Override
+			public StringResponse call(BitcoindClient client) {
+				return client.sendFrom(account, address, amount, minConf, comment, commentTo);
+			}
+		});
+	}
+
+
+	@Override
+	public StringResponse sendMany(final String fromAccount, final AddressAndAmount[] addressesAndAmounts, final Integer minConf, final String commment) {
+		return route("sendmany", new NodeCall<StringResponse>() {
+			@Override
+			public StringResponse call(BitcoindClient client) {
+				return client.sendMany(fromAccount, addressesAndAmounts, minConf, commment);
+			}
+		});
+	}
+
+
+	@Override
+	public StringResponse sendRawTransaction(final String hex) {
+		return route("sendrawtransaction", new NodeCall<StringResponse>() {
+			@Override
+			public StringResponse call(BitcoindClient client) {
+				return client.sendRawTransaction(hex);
+			}
+		});
+	}
+
+
+	@Override
+	public StringResponse sendToAddress(final String address, final BigDecimal amount, final String comment, final String commentTo) {
+		return route("sendtoaddress", new NodeCall<StringResponse>() {
+			@Override
+			public StringResponse call(BitcoindClient client) {
+				return client.sendToAddress(address, amount, comment, commentTo);
+			}
+		});
+	}
+
+
+	@Override
+	public VoidResponse setAccount(final String address, final String account) {
+		return route("setaccount", new NodeCall<VoidResponse>() {
+			@Override
+			public VoidResponse call(BitcoindClient client) {
+				return client.setAccount(address, account);
+			}
+		});
+	}
+
+
+	@Override
+	public VoidResponse setGenerate(final Boolean generate, final Integer genProcLimit) {
+		return route("setgenerate", new NodeCall<VoidResponse>() {
+			@Override
+			public VoidResponse call(BitcoindClient client) {
+				return client.setGenerate(generate, genProcLimit);
+			}
+		});
+	}
+
+
+	@Override
+	public BooleanResponse setTxFee(final BigDecimal amount) {
+		return route("settxfee", new NodeCall<BooleanResponse>() {
+			@Override
+			public BooleanResponse call(BitcoindClient client) {
+				return client.setTxFee(amount);
+			}
+		});
+	}
+
+
+	@Override
+	public StringResponse signMessage(final String address, final String message) {
+		return route("signmessage", new NodeCall<StringResponse>() {
+			@Override
+			public StringResponse call(BitcoindClient client) {
+				return client.signMessage(address, message);
+			}
+		});
+	}
+
+
+	@Override
+	public SignRawTransactionResponse signRawTransaction(final String hex, final Object[] requiredTxOuts, final String[] privKeys, final SignatureHashAlgorithm sigHash) {
+		return route("signrawtransaction", new NodeCall<SignRawTransactionResponse>() {
+			@Override
+			public SignRawTransactionResponse call(BitcoindClient client) {
+				return client.signRawTransaction(hex, requiredTxOuts, privKeys, sigHash);
+			}
+		});
+	}
+
+
+	@Override
+	public VoidResponse stop() {
+		return route("stop", new NodeCall<VoidResponse>() {
+			@Override
+			public VoidResponse call(BitcoindClient client) {
+				return client.stop();
+			}
+		});
+	}
+
+
+	@Override
+	public ValidateAddressResponse validateAddress(final String address) {
+		return route("validateaddress", new NodeCall<ValidateAddressResponse>() {
+			@Override
+			public ValidateAddressResponse call(BitcoindClient client) {
+				return client.validateAddress(address);
+			}
+		});
+	}
+
+
+	@Override
+	public BooleanResponse verifyMessage(final String address, final String signature, final String message) {
+		return route("verifymessage", new NodeCall<BooleanResponse>() {
+			@Override
+			public BooleanResponse call(BitcoindClient client) {
+				return client.verifyMessage(address, signature, message);
+			}
+		});
+	}
+
+
+	@Override
+	public VoidResponse walletLock() {
+		return route("walletlock", new NodeCall<VoidResponse>() {
+			@Override
+			public VoidResponse call(BitcoindClient client) {
+				return client.walletLock();
+			}
+		});
+	}
+
+
+	@Override
+	public VoidResponse walletPassPhrase(final String passPhrase, final int timeout) {
+		return route("walletpassphrase", new NodeCall<VoidResponse>() {
+			@Override
+			public VoidResponse call(BitcoindClient client) {
+				return client.walletPassPhrase(passPhrase, timeout);
+			}
+		});
+	}
+
+
+	@Override
+	public VoidResponse walletPassPhraseChange(final String oldPassPhrase, final String newPassPhrase) {
+		return route("walletpassphrasechange", new NodeCall<VoidResponse>() {
+			@Override
+			public VoidResponse call(BitcoindClient client) {
+				return client.walletPassPhraseChange(oldPassPhrase, newPassPhrase);
+			}
+		});
+	}
+
+
+	/**
+	 * Executes the batch on the least loaded node if all its calls are node
+	 * independent, and otherwise on the primary.
+	 * <p>
+	 * Batches aren't hedged, as a batch can only be completed once.
+	 * 
+	 * @param batch
+	 */
+	@Override
+	public void executeBatch(final BitcoindBatch batch) {
+		NodeCall<Void> call = new NodeCall<Void>() {
+			@Override
+			public Void call(BitcoindClient client) {
+				client.executeBatch(batch);
+				return null;
+			}
+		};
+		if (batch.isNodeIndependent()) call(selectReadNode(), call);
+		else onPrimary(call);
+	}
+
+
+	/**
+	 * Selects the node for a read-only call.
+	 * <p>
+	 * Picks the node with the fewest calls in flight among the available
+	 * nodes which are at most maxLag blocks behind the tip. The search starts
+	 * at a rotating position, so equally loaded nodes take turns.
+	 * <p>
+	 * An unavailable node whose retry interval has passed is picked right
+	 * away, by one caller only, so it gets a chance to prove it's back.
+	 * 
+	 * @return Node
+	 */
+	Node selectReadNode() {
+		Node selected = selectReadNode(null);
+		return selected == null ? primary : selected;
+	}
+
+
+	/**
+	 * Selects a node for a read-only call, other than the given node.
+	 * 
+	 * @param excluded - node not to select, or null.
+	 * @return Node, or null if no other node qualifies.
+	 */
+	private Node selectReadNode(Node excluded) {
+		long minBlockCount = tip - maxLag;
+		long now = System.nanoTime();
+		int start = (nextNode.getAndIncrement() & Integer.MAX_VALUE) % nodes.length;
+		Node selected = null;
+		int selectedLoad = Integer.MAX_VALUE;
+		for (int i = 0; i < nodes.length; i++) {
+			Node node = nodes[(start + i) % nodes.length];
+			if (node == excluded || node.blockCount < minBlockCount) continue;
+			if (!node.available) {
+				if (node.claimRetry(now, retryInterval)) return node;
+				continue;
+			}
+			int load = node.inFlight.get();
+			if (load < selectedLoad) {
+				selected = node;
+				selectedLoad = load;
+			}
+		}
+		return selected;
+	}
+
+
+	/**
+	 * Sends calls to node independent methods to the least loaded node, and
+	 * all other calls to the primary.
+	 */
+	private <T> T route(String method, NodeCall<T> call) {
+		if (BitcoindMethods.isNodeIndependent(method)) return read(method, call);
+		return onPrimary(call);
+	}
+
+
+	private <T> T read(String method, NodeCall<T> call) {
+		ExecutorService executor = hedgeExecutor;
+		if (executor == null || nodes.length < 2) return call(selectReadNode(), call);
+		return hedged(executor, method, call);
+	}
+
+
+	/**
+	 * Makes a read-only call, sending it to a second node as well if it isn't
+	 * answered within the hedge delay for the method.
+	 */
+	private <T> T hedged(ExecutorService executor, String method, NodeCall<T> call) {
+		LatencySamples samples = latencySamples(method);
+		Node node = selectReadNode();
+		CompletionService<T> completionService = new ExecutorCompletionService<T>(executor);
+		Future<T> original;
+		try {
+			original = completionService.submit(task(node, call, samples));
+		} catch (RejectedExecutionException e) {
+			return call(node, call);
+		}
+		Future<T> hedge = null;
+		try {
+			Future<T> done = completionService.poll(samples.getHedgeDelay(hedgePercentile, minHedgeDelay), TimeUnit.NANOSECONDS);
+			if (done == null) {
+				Node other = selectReadNode(node);
+				if (other != null) {
+					try {
+						hedge = completionService.submit(task(other, call, samples));
+						hedgesIssued.incrementAndGet();
+					} catch (RejectedExecutionException e) {
+						// Just wait for the original call.
+					}
+				}
+				done = completionService.take();
+			}
+			T result;
+			try {
+				result = done.get();
+			} catch (ExecutionException e) {
+				// If one call failed, wait for the other one, if any.
+				if (hedge == null) throw e;
+				done = completionService.take();
+				result = done.get();
+			}
+			if (done == hedge) hedgesWon.incrementAndGet();
+			return result;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new BitcoinException("Calling " + method + " failed.", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BitcoinException("Interrupted while calling " + method + ".", e);
+		} finally {
+			// Not interrupting, as that would break the connection and mark the node unavailable.
+			original.cancel(false);
+			if (hedge != null) hedge.cancel(false);
+		}
+	}
+
+
+	/**
+	 * Creates a task making the call on the given node, sampling its
+	 * latency if it succeeds - also if the result is no longer wanted.
+	 */
+	private <T> Callable<T> task(final Node node, final NodeCall<T> call, final LatencySamples samples) {
+		return new Callable<T>() {
+			@Override
+			public T call() {
+				long start = System.nanoTime();
+				T result = LoadBalancingBitcoindClient.this.call(node, call);
+				samples.add(System.nanoTime() - start);
+				return result;
+			}
+		};
+	}
+
+
+	private LatencySamples latencySamples(String method) {
+		LatencySamples samples = latencies.get(method);
+		if (samples == null) {
+			samples = new LatencySamples();
+			LatencySamples existing = latencies.putIfAbsent(method, samples);
+			if (existing != null) samples = existing;
+		}
+		return samples;
+	}
+
+
+	private <T> T onPrimary(NodeCall<T> call) {
+		return call(primary, call);
+	}
+
+
+	private <T> T call(Node node, NodeCall<T> call) {
+		node.inFlight.incrementAndGet();
+		try {
+			T result = call.call(node.client);
+			node.available = true;
+			return result;
+		} catch (RuntimeException e) {
+			// Anything but an error response from bitcoind means the node didn't answer.
+			if (!(e instanceof BitcoinException) || ((BitcoinException) e).getErrorResponse() == null) {
+				node.markUnavailable();
+			}
+			throw e;
+		} finally {
+			node.inFlight.decrementAndGet();
+		}
+	}
+
+
+	/**
+	 * A call to be made on one of the nodes.
+	 */
+	private interface NodeCall<T> {
+		T call(BitcoindClient client);
+	}
+
+
+	/**
+	 * A bitcoind node and its current state, as seen by this client.
+	 */
+	public static class Node {
+
+		private final BitcoindClient client;
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private volatile long blockCount = -1;
+		private volatile boolean available = true;
+		private final AtomicLong lastFailure = new AtomicLong();
+
+		private Node(BitcoindClient client) {
+			this.client = client;
+		}
+
+		private void markUnavailable() {
+			lastFailure.set(System.nanoTime());
+			available = false;
+		}
+
+		/**
+		 * Claims the right to retry this unavailable node, if the retry
+		 * interval has passed since it last failed (or was last retried).
+		 */
+		private boolean claimRetry(long now, long retryInterval) {
+			long since = lastFailure.get();
+			return now - since >= retryInterval && lastFailure.compareAndSet(since, now);
+		}
+
+		public BitcoindClient getClient() {
+			return client;
+		}
+
+		/**
+		 * Gets the number of calls currently in flight to this node.
+		 */
+		public int getInFlight() {
+			return inFlight.get();
+		}
+
+		/**
+		 * Gets the block count reported by the latest refresh.
+		 * 
+		 * @return block count, or -1 if unknown.
+		 */
+		public long getBlockCount() {
+			return blockCount;
+		}
+
+		/**
+		 * Tells if this node answered the latest refresh or call.
+		 */
+		public boolean isAvailable() {
+			return available;
+		}
+
+	}
+
+
+	/**
+	 * The most recently observed latencies of a method.
+	 * <p>
+	 * Samples are kept in a ring buffer without locking. The hedge delay is
+	 * recomputed from the buffer for every {@link #RECOMPUTE_INTERVAL}
+	 * samples, so sorting is amortized over many calls.
+	 */
+	private static class LatencySamples {
+
+		private static final int SIZE = 256;
+		private static final int RECOMPUTE_INTERVAL = 32;
+
+		private final AtomicLongArray samples = new AtomicLongArray(SIZE);
+		private final AtomicLong count = new AtomicLong();
+		private volatile long hedgeDelay = -1;
+		private volatile double percentile;
+
+		private void add(long latency) {
+			long n = count.getAndIncrement();
+			samples.set((int) (n % SIZE), latency);
+			if ((n + 1) % RECOMPUTE_INTERVAL == 0) hedgeDelay = -1;
+		}
+
+		/**
+		 * Gets the given percentile of the sampled latencies, but at least
+		 * minDelay.
+		 */
+		private long getHedgeDelay(double percentile, long minDelay) {
+			long n = Math.min(count.get(), SIZE);
+			if (n < RECOMPUTE_INTERVAL) return minDelay;
+			long delay = hedgeDelay;
+			if (delay < 0 || percentile != this.percentile) {
+				long[] sorted = new long[(int) n];
+				for (int i = 0; i < n; i++) sorted[i] = samples.get(i);
+				Arrays.sort(sorted);
+				delay = sorted[(int) Math.min(n - 1, (long) (n * percentile))];
+				this.percentile = percentile;
+				hedgeDelay = delay;
+			}
+			return Math.max(delay, minDelay);
+		}
+
+	}
+
+
+	/**
+	 * Daemon thread periodically refreshing block counts.
+	 */
+	private class BlockCountRefresher extends Thread {
+
+		private final long interval;
+		private volatile boolean shutdown = false;
+
+		private BlockCountRefresher(long interval) {
+			super("bitcoind-client-block-count-refresher");
+			setDaemon(true);
+			this.interval = interval;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (!shutdown) {
+					synchronized (this) {
+						wait(interval);
+					}
+					if (!shutdown) refreshBlockCounts();
+				}
+			} catch (InterruptedException e) {
+				// terminate
+			}
+		}
+
+		private void shutdown() {
+			shutdown = true;
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+
+	}
+
+
+}
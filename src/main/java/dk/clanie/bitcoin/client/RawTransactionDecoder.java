@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import dk.clanie.bitcoin.Base58;
+import dk.clanie.bitcoin.Hashes;
+import dk.clanie.bitcoin.Hex;
+import dk.clanie.bitcoin.Network;
+import dk.clanie.bitcoin.RawTransaction;
+import dk.clanie.bitcoin.Script;
+import dk.clanie.bitcoin.client.response.DecodeRawTransactionResponse;
+import dk.clanie.bitcoin.client.response.DecodeRawTransactionResult;
+import dk.clanie.bitcoin.exception.BitcoinException;
+
+/**
+ * Decodes raw transactions locally, producing the same result as
+ * bitcoind's decodeRawTransaction.
+ * <p>
+ * Coinbase inputs are returned with the coinbase data as scriptSig hex and
+ * without txid and vout, as {@link dk.clanie.bitcoin.TransactionInput} has
+ * no coinbase field.
+ * <p>
+ * Use {@link RawTransaction} directly to read only some fields of many
+ * transactions without building the complete result.
+ * <p>
+ * Instances are thread safe.
+ * 
+ * @author Claus Nielsen
+ */
+public class RawTransactionDecoder {
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final Network network;
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param network - network for which addresses of outputs are shown.
+	 */
+	public RawTransactionDecoder(Network network) {
+		this.network = network;
+	}
+
+
+	/**
+	 * Decodes a hex encoded transaction.
+	 * 
+	 * @param hex
+	 * @return DecodeRawTransactionResult
+	 * @throws IllegalArgumentException if the transaction is malformed.
+	 */
+	public DecodeRawTransactionResult decode(String hex) {
+		return decode(RawTransaction.parse(hex));
+	}
+
+
+	/**
+	 * Decodes a parsed transaction.
+	 * 
+	 * @param transaction
+	 * @return DecodeRawTransactionResult
+	 */
+	public DecodeRawTransactionResult decode(RawTransaction transaction) {
+		return treeToValue(toJson(transaction), DecodeRawTransactionResult.class);
+	}
+
+
+	/**
+	 * Decodes a hex encoded transaction into a decodeRawTransaction response.
+	 * 
+	 * @param hex
+	 * @return DecodeRawTransactionResponse
+	 * @throws IllegalArgumentException if the transaction is malformed.
+	 */
+	public DecodeRawTransactionResponse decodeResponse(String hex) {
+		ObjectNode response = objectMapper.createObjectNode();
+		response.put("result", toJson(RawTransaction.parse(hex)));
+		response.putNull("error");
+		response.putNull("id");
+		return treeToValue(response, DecodeRawTransactionResponse.class);
+	}
+
+
+	private ObjectNode toJson(RawTransaction transaction) {
+		ObjectNode json = objectMapper.createObjectNode();
+		json.put("txid", transaction.getTxId().toString());
+		json.put("version", transaction.getVersion());
+		json.put("locktime", transaction.getLockTime());
+		ArrayNode vin = json.putArray("vin");
+		boolean coinbase = transaction.isCoinbase();
+		for (int i = 0; i < transaction.getInputCount(); i++) {
+			ObjectNode input = vin.addObject();
+			ByteBuffer script = transaction.getInputScript(i);
+			ObjectNode scriptSig = objectMapper.createObjectNode();
+			if (!coinbase) {
+				input.put("txid", transaction.getInputTxId(i).toString());
+				input.put("vout", transaction.getInputVout(i));
+				scriptSig.put("asm", Script.toAsm(script));
+			}
+			scriptSig.put("hex", Hex.encode(script, 0, script.remaining(), false));
+			input.put("scriptSig", scriptSig);
+			input.put("sequence", transaction.getInputSequence(i));
+		}
+		ArrayNode vout = json.putArray("vout");
+		for (int i = 0; i < transaction.getOutputCount(); i++) {
+			ObjectNode output = vout.addObject();
+			output.put("value", BigDecimal.valueOf(transaction.getOutputValue(i), 8));
+			output.put("n", i);
+			output.put("scriptPubKey", scriptPubKey(transaction.getOutputScript(i)));
+		}
+		return json;
+	}
+
+
+	private ObjectNode scriptPubKey(ByteBuffer script) {
+		ObjectNode json = objectMapper.createObjectNode();
+		json.put("asm", Script.toAsm(script));
+		json.put("hex", Hex.encode(script, 0, script.remaining(), false));
+		List<Script.Op> ops = Script.parse(script);
+		Script.Type type = Script.getType(ops);
+		ArrayNode addresses = objectMapper.createArrayNode();
+		int reqSigs = 1;
+		switch (type) {
+		case PUBKEY:
+			addresses.add(pubKeyAddress(ops.get(0).getBytes()));
+			break;
+		case PUBKEYHASH:
+			addresses.add(address(network.getPubKeyHashVersion(), ops.get(2).getBytes()));
+			break;
+		case SCRIPTHASH:
+			addresses.add(address(network.getScriptHashVersion(), ops.get(1).getBytes()));
+			break;
+		case MULTISIG:
+			reqSigs = ops.get(0).getOpcode() - Script.OP_1 + 1;
+			for (int i = 1; i < ops.size() - 2; i++) {
+				byte[] pubKey = ops.get(i).getBytes();
+				if (isValidPubKey(pubKey)) addresses.add(pubKeyAddress(pubKey));
+			}
+			break;
+		default:
+			// No addresses, like bitcoind.
+			json.put("type", type.toString());
+			return json;
+		}
+		json.put("reqSigs", reqSigs);
+		json.put("type", type.toString());
+		json.put("addresses", addresses);
+		return json;
+	}
+
+
+	private String pubKeyAddress(byte[] pubKey) {
+		return address(network.getPubKeyHashVersion(), Hashes.hash160(pubKey, 0, pubKey.length));
+	}
+
+
+	private static String address(int version, byte[] hash) {
+		byte[] payload = new byte[1 + hash.length];
+		payload[0] = (byte) version;
+		System.arraycopy(hash, 0, payload, 1, hash.length);
+		return Base58.encodeChecked(payload);
+	}
+
+
+	/**
+	 * Tells if the given bytes have the length given by the header byte of a
+	 * compressed or uncompressed public key.
+	 */
+	private static boolean isValidPubKey(byte[] pubKey) {
+		int header = pubKey[0];
+		if (header == 2 || header == 3) return pubKey.length == 33;
+		if (header == 4 || header == 6 || header == 7) return pubKey.length == 65;
+		return false;
+	}
+
+
+	private static <T> T treeToValue(ObjectNode json, Class<T> type) {
+		try {
+			return objectMapper.treeToValue(json, type);
+		} catch (IOException e) {
+			throw new BitcoinException("Creating " + type.getSimpleName() + " failed.", e);
+		}
+	}
+
+
+}
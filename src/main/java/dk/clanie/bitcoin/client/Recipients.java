@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static dk.clanie.collections.CollectionFactory.newHashMap;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import dk.clanie.bitcoin.AddressAndAmount;
+import dk.clanie.bitcoin.json.SatoshiSerializer;
+
+/**
+ * Recipients and amounts of a payment, as passed to sendmany and
+ * createrawtransaction.
+ * <p>
+ * Amounts to the same address are added up. Serialized as a JSON object
+ * mapping addresses to amounts, with the amounts written straight from
+ * satoshis, without creating BigDecimals.
+ * 
+ * @author Claus Nielsen
+ */
+@JsonSerialize(using = Recipients.Serializer.class)
+class Recipients {
+
+	private final String[] addresses;
+	private final long[] amounts;
+	private int size = 0;
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param addressesAndAmounts
+	 */
+	Recipients(AddressAndAmount[] addressesAndAmounts) {
+		addresses = new String[addressesAndAmounts.length];
+		amounts = new long[addressesAndAmounts.length];
+		Map<String, Integer> indexes = newHashMap();
+		for (AddressAndAmount aaa : addressesAndAmounts) {
+			Integer index = indexes.get(aaa.getAddress());
+			if (index != null) {
+				amounts[index.intValue()] += aaa.getAmountSatoshis();
+			} else {
+				indexes.put(aaa.getAddress(), Integer.valueOf(size));
+				addresses[size] = aaa.getAddress();
+				amounts[size++] = aaa.getAmountSatoshis();
+			}
+		}
+	}
+
+
+	/**
+	 * Writes the recipients as a JSON object.
+	 */
+	static class Serializer extends JsonSerializer<Recipients> {
+
+		@Override
+		public void serialize(Recipients value, JsonGenerator jgen,
+				SerializerProvider provider) throws IOException,
+				JsonProcessingException {
+			jgen.writeStartObject();
+			for (int i = 0; i < value.size; i++) {
+				jgen.writeFieldName(value.addresses[i]);
+				SatoshiSerializer.write(value.amounts[i], jgen);
+			}
+			jgen.writeEndObject();
+		}
+
+	}
+
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.net.ConnectException;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.springframework.web.client.ResourceAccessException;
+
+import dk.clanie.bitcoin.exception.BitcoinException;
+
+/**
+ * Decides which failed calls to retry, and how long to wait in between.
+ * <p>
+ * Calls are retried when bitcoind didn't answer - the connection failed or
+ * timed out, or an HTTP 5xx error without a JSON RPC error response was
+ * received - or answered that it is still starting up (error code -28), as
+ * long as resending is safe:
+ * <ul>
+ * <li>If the connection couldn't be established the request never reached
+ * bitcoind, and any call can be retried.</li>
+ * <li>Otherwise only calls to idempotent methods are retried, as a request
+ * may have been executed even if the response never arrived - see {@link
+ * BitcoindMethods#isIdempotent(String)}.</li>
+ * </ul>
+ * Error responses from bitcoind are not retried, as they would just be
+ * repeated. Neither are responses which couldn't be parsed, and other HTTP
+ * errors, like 401 Unauthorized.
+ * <p>
+ * The wait before each retry grows exponentially from the initial backoff up
+ * to the maximum backoff. A random half of each wait is jitter, so clients
+ * failing at the same time don't retry in lockstep.
+ * 
+ * @author Claus Nielsen
+ */
+public class RetryPolicy {
+
+	// RPC_IN_WARMUP
+	private static final int WARMING_UP = -28;
+
+
+	// [Configuration]
+	private int maxAttempts = 3;
+	private long initialBackoff = 100;
+	private long maxBackoff = 2000;
+
+
+	/**
+	 * Sets the maximum number of attempts for each call, including the first.
+	 * <p>
+	 * Default is 3.
+	 * 
+	 * @param maxAttempts
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+
+	/**
+	 * Sets the (maximum) wait before the first retry.
+	 * <p>
+	 * Default is 100.
+	 * 
+	 * @param initialBackoff - milliseconds.
+	 */
+	public void setInitialBackoff(long initialBackoff) {
+		this.initialBackoff = initialBackoff;
+	}
+
+
+	/**
+	 * Sets the maximum wait between retries.
+	 * <p>
+	 * Default is 2000.
+	 * 
+	 * @param maxBackoff - milliseconds.
+	 */
+	public void setMaxBackoff(long maxBackoff) {
+		this.maxBackoff = maxBackoff;
+	}
+
+
+	/**
+	 * Tells if a call failing with the given exception should be retried.
+	 * 
+	 * @param e - exception thrown by the call.
+	 * @param idempotent - true if the method called is idempotent.
+	 * @param attempt - number of attempts made so far.
+	 * @return boolean
+	 */
+	public boolean shouldRetry(RuntimeException e, boolean idempotent, int attempt) {
+		if (attempt >= maxAttempts) return false;
+		if (e instanceof ResourceAccessException) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ConnectException || cause instanceof ConnectTimeoutException) return true;
+			return idempotent && CircuitBreaker.isConnectionFailure(cause);
+		}
+		if (e instanceof BitcoinException) {
+			BitcoinException be = (BitcoinException) e;
+			if (be.getErrorResponse() != null) return Integer.valueOf(WARMING_UP).equals(be.getErrorCode());
+			return idempotent && CircuitBreaker.isNodeFailure(e);
+		}
+		return false;
+	}
+
+
+	/**
+	 * Waits before the next attempt.
+	 * 
+	 * @param attempt - number of attempts made so far.
+	 * @throws InterruptedException
+	 */
+	public void backoff(int attempt) throws InterruptedException {
+		long backoff = maxBackoff;
+		if (attempt <= 30) backoff = Math.min(maxBackoff, initialBackoff << (attempt - 1));
+		long half = backoff / 2;
+		Thread.sleep(half + (long) (Math.random() * (backoff - half)));
+	}
+
+
+}
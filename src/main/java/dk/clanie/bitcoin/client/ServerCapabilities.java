@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import dk.clanie.bitcoin.client.response.GetInfoResult;
+
+/**
+ * The methods and version of a bitcoind server, as probed with help and
+ * getInfo.
+ * <p>
+ * help only lists the wallet encryption methods which are applicable to the
+ * current state of the wallet, eg. walletpassphrase only when the wallet is
+ * encrypted. These methods are always reported as supported, so calling
+ * them still gives bitcoind's error explaining why they can't be used.
+ * <p>
+ * Instances are immutable.
+ * 
+ * @author Claus Nielsen
+ */
+public class ServerCapabilities {
+
+	private static final Set<String> ALWAYS_SUPPORTED = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(
+			"encryptwallet",
+			"getinfo",
+			"help",
+			"walletlock",
+			"walletpassphrase",
+			"walletpassphrasechange")));
+
+	private final Set<String> methods;
+	private final Integer version;
+	private final Integer protocolVersion;
+	private final Boolean testnet;
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param methods - names of the supported methods.
+	 * @param version - bitcoind version, eg. 80500 for 0.8.5.
+	 * @param protocolVersion
+	 * @param testnet
+	 */
+	public ServerCapabilities(Set<String> methods, Integer version, Integer protocolVersion, Boolean testnet) {
+		this.methods = Collections.unmodifiableSet(new HashSet<String>(methods));
+		this.version = version;
+		this.protocolVersion = protocolVersion;
+		this.testnet = testnet;
+	}
+
+
+	/**
+	 * Probes the server with help and getInfo.
+	 * 
+	 * @param bitcoindClient
+	 * @return ServerCapabilities
+	 */
+	public static ServerCapabilities probe(BitcoindClient bitcoindClient) {
+		Set<String> methods = parseHelp(bitcoindClient.help(null).getResult());
+		GetInfoResult info = bitcoindClient.getInfo().getResult();
+		return new ServerCapabilities(methods, info.getVersion(), info.getProtocolVersion(), info.getTestnet());
+	}
+
+
+	/**
+	 * Parses the method names from the output of help without arguments,
+	 * which has a line per method starting with the method name.
+	 * 
+	 * @param help
+	 * @return method names
+	 */
+	static Set<String> parseHelp(String help) {
+		Set<String> methods = new HashSet<String>();
+		if (help == null) return methods;
+		for (String line : help.split("\n")) {
+			String[] words = line.trim().split("\\s+", 2);
+			if (words[0].length() > 0) methods.add(words[0].toLowerCase());
+		}
+		return methods;
+	}
+
+
+	/**
+	 * Tells if the server supports the given method.
+	 * 
+	 * @param method - JSON RPC method name, eg. "getblocktemplate".
+	 * @return boolean
+	 */
+	public boolean isSupported(String method) {
+		return methods.contains(method) || ALWAYS_SUPPORTED.contains(method);
+	}
+
+
+	/**
+	 * Gets the methods listed by help.
+	 * 
+	 * @return method names
+	 */
+	public Set<String> getMethods() {
+		return methods;
+	}
+
+
+	/**
+	 * Gets the bitcoind version.
+	 * 
+	 * @return version, eg. 80500 for 0.8.5.
+	 */
+	public Integer getVersion() {
+		return version;
+	}
+
+
+	public Integer getProtocolVersion() {
+		return protocolVersion;
+	}
+
+
+	public Boolean getTestnet() {
+		return testnet;
+	}
+
+
+	@Override
+	public String toString() {
+		return "version " + version + ", " + methods.size() + " methods";
+	}
+
+
+}
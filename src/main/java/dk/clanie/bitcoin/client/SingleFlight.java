@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dk.clanie.bitcoin.exception.BitcoinException;
+
+/**
+ * Coalesces identical concurrent calls.
+ * <p>
+ * When a call is made while an identical call (same method and parameters)
+ * is already in flight, it doesn't send a request of its own, but waits for
+ * the call in flight to complete and returns the same response object - or
+ * throws the same exception. This saves bitcoind from answering the same
+ * question many times when lots of threads poll eg. getInfo at the same
+ * time.
+ * <p>
+ * Only calls to methods explicitly enabled are coalesced, and only
+ * idempotent methods can be enabled. Response objects are mutable beans,
+ * and coalesced callers all get the same instance, so callers must not
+ * modify the responses of coalesced calls.
+ * 
+ * @author Claus Nielsen
+ */
+public class SingleFlight {
+
+	private final Set<String> methods = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final ConcurrentMap<Object, Flight<?>> flights = new ConcurrentHashMap<Object, Flight<?>>();
+	private final ConcurrentMap<String, AtomicLong> collapsed = new ConcurrentHashMap<String, AtomicLong>();
+
+
+	/**
+	 * Enables coalescing of calls to the given method.
+	 * 
+	 * @param method - JSON RPC method name, eg. "getinfo".
+	 * @throws IllegalArgumentException if the method isn't idempotent.
+	 */
+	public void enable(String method) {
+		if (!BitcoindMethods.isIdempotent(method)) {
+			throw new IllegalArgumentException("Calls to " + method + " can't be coalesced, as " + method + " isn't idempotent.");
+		}
+		collapsed.putIfAbsent(method, new AtomicLong());
+		methods.add(method);
+	}
+
+
+	/**
+	 * Enables coalescing of calls to the given methods.
+	 * 
+	 * @param methods - JSON RPC method names.
+	 * @throws IllegalArgumentException if a method isn't idempotent.
+	 */
+	public void setMethods(Set<String> methods) {
+		for (String method : methods) enable(method);
+	}
+
+
+	/**
+	 * Tells if calls to the given method are coalesced.
+	 * 
+	 * @param method - JSON RPC method name.
+	 * @return boolean
+	 */
+	public boolean isEnabled(String method) {
+		return methods.contains(method);
+	}
+
+
+	/**
+	 * Gets the number of calls which were coalesced with a call in flight,
+	 * instead of sending a request of their own.
+	 * 
+	 * @return number of collapsed calls, by method.
+	 */
+	public Map<String, Long> getCollapsed() {
+		Map<String, Long> result = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> entry : collapsed.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return result;
+	}
+
+
+	/**
+	 * Makes a call, or joins an identical call in flight.
+	 * 
+	 * @param method - JSON RPC method name.
+	 * @param key - identifies the call; equal keys means identical calls.
+	 * @param call - makes the call.
+	 * @return response
+	 */
+	<T> T execute(String method, Object key, Call<T> call) {
+		Flight<T> flight = new Flight<T>();
+		@SuppressWarnings("unchecked")
+		Flight<T> inFlight = (Flight<T>) flights.putIfAbsent(key, flight);
+		if (inFlight != null) {
+			collapsed.get(method).incrementAndGet();
+			return inFlight.await();
+		}
+		boolean completed = false;
+		try {
+			flight.response = call.call();
+			completed = true;
+			return flight.response;
+		} catch (RuntimeException e) {
+			flight.exception = e;
+			throw e;
+		} finally {
+			if (!completed && flight.exception == null) {
+				flight.exception = new BitcoinException("Coalesced call to " + method + " failed.");
+			}
+			flights.remove(key, flight);
+			flight.done.countDown();
+		}
+	}
+
+
+	/**
+	 * A call which may be coalesced.
+	 */
+	interface Call<T> {
+		T call();
+	}
+
+
+	/**
+	 * A call in flight.
+	 */
+	private static class Flight<T> {
+
+		private final CountDownLatch done = new CountDownLatch(1);
+		private T response;
+		private RuntimeException exception;
+
+		private T await() {
+			boolean interrupted = false;
+			while (true) {
+				try {
+					done.await();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+			if (exception != null) throw exception;
+			return response;
+		}
+
+	}
+
+
+}
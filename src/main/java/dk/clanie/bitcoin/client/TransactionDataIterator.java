@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dk.clanie.bitcoin.Sha256Hash;
+import dk.clanie.bitcoin.client.response.TransactionData;
+import dk.clanie.bitcoin.exception.BitcoinException;
+
+/**
+ * Iterator over the transactions returned by listTransactions or
+ * listSinceBlock, while the response is still being parsed.
+ * <p>
+ * The call is made on an Executor using the streaming variant of the
+ * method, which hands the transactions to the iterator through a bounded
+ * queue. Unless an Executor is given the call is made by a shared pool of
+ * daemon threads. Memory use is therefore constant, regardless of the number of
+ * transactions, and the first transactions are available before the whole
+ * response has been received.
+ * <p>
+ * Always close the iterator, also when it's abandoned before the end, as
+ * that stops the call, aborting the connection rather than reading the rest
+ * of the response:
+ * <pre>
+ * TransactionDataIterator i = TransactionDataIterator.listSinceBlock(bitcoindClient, lastBlock, null);
+ * try {
+ *     while (i.hasNext()) process(i.next());
+ *     lastBlock = i.getLastBlock().toString();
+ * } finally {
+ *     i.close();
+ * }
+ * </pre>
+ * If the call fails the exception is rethrown by hasNext, once the
+ * transactions received before the failure have been iterated.
+ * <p>
+ * Not thread safe.
+ * 
+ * @author Claus Nielsen
+ */
+public class TransactionDataIterator implements Iterator<TransactionData>, Closeable {
+
+	/**
+	 * Default number of parsed transactions waiting to be iterated.
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	private static final Object END = new Object();
+
+	private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+		private final AtomicInteger threadNumber = new AtomicInteger();
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "bitcoind-client-transaction-stream-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+
+	// [State]
+	private final BlockingQueue<Object> queue;
+	private volatile boolean closed = false;
+	private volatile Sha256Hash lastBlock;
+	private volatile RuntimeException failure;
+	private Object next;
+	private boolean ended = false;
+
+
+	/**
+	 * Iterates over the transactions returned by
+	 * {@link BitcoindClient#listTransactions(String, Integer, Integer)}.
+	 * 
+	 * @param client
+	 * @param account - optional (may be null).
+	 * @param count - optional (may be null). Default 10.
+	 * @param from - optional (may be null). Default 0.
+	 * @return started iterator.
+	 */
+	public static TransactionDataIterator listTransactions(BitcoindClient client,
+			String account, Integer count, Integer from) {
+		return listTransactions(client, account, count, from, DEFAULT_EXECUTOR);
+	}
+
+
+	/**
+	 * Iterates over the transactions returned by
+	 * {@link BitcoindClient#listTransactions(String, Integer, Integer)},
+	 * making the call on the given Executor.
+	 * 
+	 * @param client
+	 * @param account - optional (may be null).
+	 * @param count - optional (may be null). Default 10.
+	 * @param from - optional (may be null). Default 0.
+	 * @param executor - runs the call.
+	 * @return started iterator.
+	 */
+	public static TransactionDataIterator listTransactions(final BitcoindClient client,
+			final String account, final Integer count, final Integer from, Executor executor) {
+		return new TransactionDataIterator(DEFAULT_CAPACITY, executor, new Source() {
+			@Override
+			public Sha256Hash stream(TransactionDataConsumer consumer) {
+				client.listTransactions(account, count, from, consumer);
+				return null;
+			}
+		});
+	}
+
+
+	/**
+	 * Iterates over the transactions returned by
+	 * {@link BitcoindClient#listSinceBlock(String, Integer, TransactionDataConsumer)}.
+	 * 
+	 * @param client
+	 * @param blockHash - optional (may be null).
+	 * @param targetConfirmations - optional (may be null).
+	 * @return started iterator.
+	 */
+	public static TransactionDataIterator listSinceBlock(BitcoindClient client,
+			String blockHash, Integer targetConfirmations) {
+		return listSinceBlock(client, blockHash, targetConfirmations, DEFAULT_EXECUTOR);
+	}
+
+
+	/**
+	 * Iterates over the transactions returned by
+	 * {@link BitcoindClient#listSinceBlock(String, Integer, TransactionDataConsumer)},
+	 * making the call on the given Executor.
+	 * 
+	 * @param client
+	 * @param blockHash - optional (may be null).
+	 * @param targetConfirmations - optional (may be null).
+	 * @param executor - runs the call.
+	 * @return started iterator.
+	 */
+	public static TransactionDataIterator listSinceBlock(final BitcoindClient client,
+			final String blockHash, final Integer targetConfirmations, Executor executor) {
+		return new TransactionDataIterator(DEFAULT_CAPACITY, executor, new Source() {
+			@Override
+			public Sha256Hash stream(TransactionDataConsumer consumer) {
+				return client.listSinceBlock(blockHash, targetConfirmations, consumer);
+			}
+		});
+	}
+
+
+	/**
+	 * Constructor - starts the call.
+	 * 
+	 * @param capacity - maximum number of parsed transactions waiting to be iterated.
+	 * @param executor - runs the call.
+	 * @param source - makes the call.
+	 */
+	TransactionDataIterator(int capacity, Executor executor, final Source source) {
+		this.queue = new ArrayBlockingQueue<Object>(capacity);
+		Runnable producer = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					lastBlock = source.stream(new TransactionDataConsumer() {
+						@Override
+						public void accept(TransactionData transactionData) {
+							enqueue(transactionData);
+						}
+					});
+				} catch (Closed e) {
+					// Iterator closed - stop.
+				} catch (RuntimeException e) {
+					failure = e;
+				} finally {
+					try {
+						enqueue(END);
+					} catch (Closed e) {
+						// Nobody's waiting for the end.
+					}
+				}
+			}
+		};
+		try {
+			executor.execute(producer);
+		} catch (RejectedExecutionException e) {
+			failure = e;
+			queue.add(END);
+		}
+	}
+
+
+	@Override
+	public boolean hasNext() {
+		if (next != null) return true;
+		if (ended) return false;
+		if (closed) throw new IllegalStateException("Iterator has been closed.");
+		try {
+			next = queue.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BitcoinException("Interrupted while waiting for transactions.", e);
+		}
+		if (next != END) return true;
+		next = null;
+		ended = true;
+		RuntimeException failure = this.failure;
+		if (failure != null) throw failure;
+		return false;
+	}
+
+
+	@Override
+	public TransactionData next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		TransactionData transactionData = (TransactionData) next;
+		next = null;
+		return transactionData;
+	}
+
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+
+	/**
+	 * Gets the hash of the last block, as returned by listSinceBlock.
+	 * 
+	 * @return hash, or null if not known (yet).
+	 */
+	public Sha256Hash getLastBlock() {
+		return lastBlock;
+	}
+
+
+	/**
+	 * Stops the call, if still in progress, and discards transactions not
+	 * iterated yet.
+	 */
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		queue.clear();
+	}
+
+
+	private void enqueue(Object element) {
+		try {
+			while (!queue.offer(element, 100, TimeUnit.MILLISECONDS)) {
+				if (closed) throw new Closed();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new Closed();
+		}
+		if (closed) throw new Closed();
+	}
+
+
+	/**
+	 * Makes the streaming call.
+	 */
+	interface Source {
+		Sha256Hash stream(TransactionDataConsumer consumer);
+	}
+
+
+	/**
+	 * Thrown through the parser to abort the call when the iterator is
+	 * closed.
+	 */
+	@SuppressWarnings("serial")
+	private static class Closed extends RuntimeException {
+	}
+
+
+}
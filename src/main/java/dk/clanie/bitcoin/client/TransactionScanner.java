@@ -0,0 +1,347 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import dk.clanie.bitcoin.Sha256Hash;
+import dk.clanie.bitcoin.client.response.TransactionData;
+import dk.clanie.bitcoin.exception.BitcoinException;
+
+/**
+ * Iterator over the whole transaction history of an account (or of all
+ * accounts), fetched page by page with listTransactions.
+ * <p>
+ * While one page is being iterated the next one is fetched in the
+ * background, so a full scan takes about one round trip per page less than
+ * paging by hand.
+ * <p>
+ * listTransactions counts its <code>from</code> offset back from the most
+ * recent transaction, so pages are fetched newest first, and the
+ * transactions are iterated newest first too. When new transactions arrive
+ * during the scan the older ones move to higher offsets, and the next page
+ * then starts with transactions already returned. These are recognized by
+ * their txid, category, address, account, amount and time, matching the
+ * newest entries of the next page with the last transactions returned, in
+ * order. Those, and transactions which arrived during the scan, are
+ * skipped - see {@link #getSkipped()}. The last two pages of transactions
+ * returned are remembered, so less than two pages of transactions may
+ * arrive while a page is being fetched.
+ * <p>
+ * Entries can't be told apart by anything but these fields, so identical
+ * entries - eg. a transaction paying the same amount to the same address
+ * twice - look like transactions pushed onto the next page when they are
+ * split by a page boundary, and the entries after the boundary are then
+ * skipped. Identical entries elsewhere are all returned.
+ * <p>
+ * Always close the scanner, also when it's abandoned before the end, as
+ * that cancels the prefetch:
+ * <pre>
+ * TransactionScanner scanner = new TransactionScanner(bitcoindClient, "*", 1000);
+ * try {
+ *     while (scanner.hasNext()) export(scanner.next());
+ * } finally {
+ *     scanner.close();
+ * }
+ * </pre>
+ * Not thread safe.
+ * 
+ * @author Claus Nielsen
+ */
+public class TransactionScanner implements Iterator<TransactionData>, Closeable {
+
+	/**
+	 * Default number of transactions requested per page.
+	 */
+	public static final int DEFAULT_PAGE_SIZE = 1000;
+
+
+	// [Configuration]
+	private final String account;
+	private final int pageSize;
+
+	// [Collaborators]
+	private final BitcoindClient bitcoindClient;
+	private final ExecutorService executor;
+	private final boolean ownExecutor;
+
+	// [State]
+	private int from = 0;
+	private Future<TransactionData[]> nextPage;
+	private TransactionData[] page;
+	private Key[] pageKeys;
+	private int index = -1;
+	private final List<Key> returnedKeys = new ArrayList<Key>();
+	private TransactionData next;
+	private long skipped = 0;
+	private boolean closed = false;
+
+
+	/**
+	 * Constructor - starts fetching the first page, using a thread of its
+	 * own for the prefetching.
+	 * 
+	 * @param bitcoindClient
+	 * @param account - optional (may be null). "*" for all accounts.
+	 * @param pageSize - number of transactions per page.
+	 */
+	public TransactionScanner(BitcoindClient bitcoindClient, String account, int pageSize) {
+		this(bitcoindClient, account, pageSize, Executors.newSingleThreadExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "bitcoind-client-transaction-scanner");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}), true);
+	}
+
+
+	/**
+	 * Constructor - starts fetching the first page.
+	 * 
+	 * @param bitcoindClient
+	 * @param account - optional (may be null). "*" for all accounts.
+	 * @param pageSize - number of transactions per page.
+	 * @param executor - for fetching pages in the background. Not shut down by {@link #close()}.
+	 */
+	public TransactionScanner(BitcoindClient bitcoindClient, String account, int pageSize, ExecutorService executor) {
+		this(bitcoindClient, account, pageSize, executor, false);
+	}
+
+
+	private TransactionScanner(BitcoindClient bitcoindClient, String account, int pageSize, ExecutorService executor, boolean ownExecutor) {
+		if (pageSize < 1) throw new IllegalArgumentException("Page size must be positive.");
+		this.bitcoindClient = bitcoindClient;
+		this.account = account;
+		this.pageSize = pageSize;
+		this.executor = executor;
+		this.ownExecutor = ownExecutor;
+		nextPage = fetch();
+	}
+
+
+	@Override
+	public boolean hasNext() {
+		if (next == null) {
+			if (closed) throw new IllegalStateException("Scanner has been closed.");
+			if (index < 0 && !advance()) return false;
+			returnedKeys.add(pageKeys[page.length - 1 - index]);
+			next = page[index--];
+		}
+		return true;
+	}
+
+
+	@Override
+	public TransactionData next() {
+		if (!hasNext()) throw new NoSuchElementException();
+		TransactionData transactionData = next;
+		next = null;
+		return transactionData;
+	}
+
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+
+	/**
+	 * Gets the number of transactions skipped because they had already been
+	 * returned, before new transactions pushed them onto a later page, or
+	 * because they arrived during the scan.
+	 * 
+	 * @return number of transactions skipped so far.
+	 */
+	public long getSkipped() {
+		return skipped;
+	}
+
+
+	/**
+	 * Cancels the prefetch, if in progress, and shuts down the scanner's own
+	 * thread, if it has one.
+	 */
+	@Override
+	public void close() {
+		if (closed) return;
+		closed = true;
+		if (nextPage != null) nextPage.cancel(false);
+		nextPage = null;
+		page = null;
+		pageKeys = null;
+		if (ownExecutor) executor.shutdown();
+	}
+
+
+	/**
+	 * Takes the prefetched page into use, skipping transactions already
+	 * returned, and starts fetching the one after it unless this was the
+	 * last.
+	 * 
+	 * @return false if there are no more pages.
+	 */
+	private boolean advance() {
+		int excess = returnedKeys.size() - 2 * pageSize;
+		if (excess > 0) returnedKeys.subList(0, excess).clear();
+		while (nextPage != null) {
+			TransactionData[] fetched = get(nextPage);
+			nextPage = fetched.length < pageSize ? null : fetch();
+			Key[] keys = new Key[fetched.length];
+			for (int i = 0; i < keys.length; i++) keys[i] = new Key(fetched[keys.length - 1 - i]);
+			int shift = shift(keys);
+			skipped += shift;
+			if (fetched.length > shift) {
+				page = fetched;
+				pageKeys = keys;
+				index = fetched.length - 1 - shift;
+				return true;
+			}
+		}
+		return false;
+	}
+
+
+	/**
+	 * Finds how many transactions arrived since the previous page was
+	 * fetched, by matching the newest transactions on the given page with
+	 * the last transactions returned, in order.
+	 * <p>
+	 * When k transactions arrived, the k newest entries on the page are
+	 * either transactions already returned or transactions which arrived
+	 * during the scan, and are skipped. The largest k for which all entries
+	 * on the page overlapping the remembered transactions match is used.
+	 * 
+	 * @param keys - keys of the page, newest transaction first.
+	 * @return number of transactions to skip.
+	 */
+	private int shift(Key[] keys) {
+		int returned = returnedKeys.size();
+		if (returned == 0) return 0;
+		for (int k = returned + keys.length - 1; k > 0; k--) {
+			boolean match = true;
+			for (int p = Math.max(0, k - returned); p < Math.min(keys.length, k) && match; p++) {
+				match = keys[p].equals(returnedKeys.get(returned - k + p));
+			}
+			if (match) return Math.min(k, keys.length);
+		}
+		return 0;
+	}
+
+
+	private Future<TransactionData[]> fetch() {
+		final int offset = from;
+		from += pageSize;
+		return executor.submit(new Callable<TransactionData[]>() {
+			@Override
+			public TransactionData[] call() {
+				TransactionData[] result = bitcoindClient.listTransactions(account, pageSize, offset).getResult();
+				return result == null ? new TransactionData[0] : result;
+			}
+		});
+	}
+
+
+	private TransactionData[] get(Future<TransactionData[]> future) {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw new BitcoinException("Calling listtransactions failed.", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new BitcoinException("Interrupted while calling listtransactions.", e);
+		}
+	}
+
+
+	/**
+	 * Identifies a transaction entry across pages.
+	 * <p>
+	 * One transaction can have several entries, eg. one per address sent to,
+	 * and moves between accounts have no txid, hence more than txid and
+	 * category are needed. Confirmations are left out as they change between
+	 * calls.
+	 */
+	private static final class Key {
+
+		private final Sha256Hash txId;
+		private final String category;
+		private final String address;
+		private final String account;
+		private final Long amount;
+		private final Date time;
+
+
+		Key(TransactionData transactionData) {
+			txId = transactionData.getTxId();
+			category = transactionData.getCategory();
+			address = transactionData.getAddress();
+			account = transactionData.getAccount();
+			amount = transactionData.getAmountSatoshis();
+			time = transactionData.getTime();
+		}
+
+
+		@Override
+		public int hashCode() {
+			int hash = txId == null ? 0 : txId.hashCode();
+			hash = 31 * hash + (category == null ? 0 : category.hashCode());
+			hash = 31 * hash + (address == null ? 0 : address.hashCode());
+			hash = 31 * hash + (amount == null ? 0 : amount.hashCode());
+			return hash;
+		}
+
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof Key)) return false;
+			Key other = (Key) obj;
+			return equal(amount, other.amount)
+					&& equal(txId, other.txId)
+					&& equal(category, other.category)
+					&& equal(address, other.address)
+					&& equal(account, other.account)
+					&& equal(time, other.time);
+		}
+
+
+		private static boolean equal(Object a, Object b) {
+			return a == null ? b == null : a.equals(b);
+		}
+
+	}
+
+
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import dk.clanie.bitcoin.Sha256Hash;
+import dk.clanie.bitcoin.client.response.GetBlockResponse;
+import dk.clanie.bitcoin.client.response.GetBlockResult;
+import dk.clanie.bitcoin.exception.BitcoinException;
+
+/**
+ * Cache of getBlock results, keyed by block hash.
+ * <p>
+ * A block never changes, except for its number of confirmations and -
+ * until the next block arrives - its next block hash. The cache stores the
+ * rest of the block, serialized as JSON, and computes confirmations from the
+ * current chain height when a block is read. The next block hash is stored
+ * separately, and can be filled in later if it wasn't known when the block
+ * was cached.
+ * <p>
+ * Only blocks with at least {@link #setMinConfirmations(int)}
+ * confirmations are cached, so blocks which may still be orphaned by a
+ * reorganization aren't.
+ * <p>
+ * The cache is bounded by the total size of the cached blocks, evicting the
+ * least recently used blocks first. Optionally blocks are also kept in a
+ * persistent {@link SegmentStore}, from which blocks evicted or cached
+ * before a restart are read back. It is thread safe.
+ * 
+ * @author Claus Nielsen
+ */
+public class BlockCache implements TipListener {
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	// Estimated memory used per entry besides the serialized block.
+	private static final int ENTRY_OVERHEAD = 200;
+
+
+	// [Configuration]
+	private volatile int minConfirmations = 6;
+
+
+	// [Collaborators]
+	private volatile SegmentStore store;
+
+
+	// [State]
+	private final SizeBoundedLruMap<Sha256Hash, Block> blocks;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxBytes - maximum (estimated) memory used by cached blocks.
+	 */
+	public BlockCache(long maxBytes) {
+		this.blocks = new SizeBoundedLruMap<Sha256Hash, Block>(maxBytes);
+	}
+
+
+	/**
+	 * Sets the minimum number of confirmations a block must have to be
+	 * cached.
+	 * <p>
+	 * Default is 6.
+	 * 
+	 * @param minConfirmations
+	 */
+	public void setMinConfirmations(int minConfirmations) {
+		this.minConfirmations = minConfirmations;
+	}
+
+
+	/**
+	 * Sets a persistent store for cached blocks.
+	 * <p>
+	 * Blocks are written to the store when they are cached, and read from
+	 * it when they aren't in memory.
+	 * 
+	 * @param store
+	 */
+	public void setStore(SegmentStore store) {
+		this.store = store;
+	}
+
+
+	/**
+	 * Gets a cached block.
+	 * 
+	 * @param hash - block hash in hex.
+	 * @return Block, or null if the block isn't cached.
+	 */
+	public Block get(String hash) {
+		Sha256Hash parsed;
+		try {
+			parsed = Sha256Hash.valueOf(hash);
+		} catch (IllegalArgumentException e) {
+			// Not a valid hash - let bitcoind tell.
+			misses.incrementAndGet();
+			return null;
+		}
+		return get(parsed);
+	}
+
+
+	/**
+	 * Gets a cached block.
+	 * 
+	 * @param hash - block hash.
+	 * @return Block, or null if the block isn't cached.
+	 */
+	public Block get(Sha256Hash hash) {
+		Block block;
+		synchronized (this) {
+			block = blocks.get(hash);
+		}
+		SegmentStore store = this.store;
+		if (block == null && store != null) {
+			SegmentStore.Record record = store.get(hash.toString());
+			if (record != null) {
+				block = new Block(hash, record.getHeight(), record.getValue());
+				synchronized (this) {
+					blocks.put(hash, block);
+				}
+			}
+		}
+		if (block == null) misses.incrementAndGet();
+		else hits.incrementAndGet();
+		return block;
+	}
+
+
+	/**
+	 * Caches the given block, if it has enough confirmations.
+	 * 
+	 * @param response - getBlock response.
+	 */
+	public void put(GetBlockResponse response) {
+		GetBlockResult result = response.getResult();
+		if (result == null || result.getHash() == null || result.getHeight() == null) return;
+		Integer confirmations = result.getConfirmations();
+		if (confirmations == null || confirmations.intValue() < minConfirmations) return;
+		ObjectNode json = objectMapper.valueToTree(response);
+		ObjectNode resultJson = (ObjectNode) json.get("result");
+		resultJson.remove("confirmations");
+		resultJson.remove("nextblockhash");
+		json.remove("id");
+		Block block;
+		try {
+			block = new Block(result.getHash(), result.getHeight(), objectMapper.writeValueAsBytes(json));
+		} catch (IOException e) {
+			throw new BitcoinException("Serializing block " + result.getHash() + " failed.", e);
+		}
+		block.nextBlockHash = result.getNextBlockHash();
+		put(block, result.getPreviousBlockHash());
+		SegmentStore store = this.store;
+		if (store != null) {
+			String key = block.hash.toString();
+			if (!store.contains(key)) store.put(key, block.height, block.json);
+		}
+	}
+
+
+	private synchronized void put(Block block, Sha256Hash previousBlockHash) {
+		blocks.put(block.hash, block);
+		if (previousBlockHash != null) {
+			Block previous = blocks.get(previousBlockHash);
+			if (previous != null && previous.nextBlockHash == null) previous.nextBlockHash = block.hash;
+		}
+	}
+
+
+	/**
+	 * Removes all blocks from memory.
+	 * <p>
+	 * Blocks in the persistent store, if any, are kept.
+	 */
+	public synchronized void clear() {
+		blocks.clear();
+	}
+
+
+	/**
+	 * Removes blocks with a height above the given height, eg. after a
+	 * reorganization.
+	 * 
+	 * @param height
+	 */
+	public synchronized void removeAbove(long height) {
+		if (store != null) store.removeAbove(height);
+		Iterator<Block> i = blocks.values();
+		while (i.hasNext()) {
+			Block block = i.next();
+			if (block.height > height) i.remove();
+			else if (block.height == height) block.nextBlockHash = null;
+		}
+	}
+
+
+	/**
+	 * Removes blocks no longer in the main chain after a reorganization.
+	 * 
+	 * @param event
+	 */
+	@Override
+	public void tipChanged(TipChangeEvent event) {
+		if (event.isReorganization()) removeAbove(event.getForkHeight());
+	}
+
+
+	public synchronized int getSize() {
+		return blocks.count();
+	}
+
+
+	public synchronized long getBytes() {
+		return blocks.size();
+	}
+
+
+	public long getHits() {
+		return hits.get();
+	}
+
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+
+	/**
+	 * A cached block.
+	 */
+	public static class Block implements SizeBoundedLruMap.Sized {
+
+		private final Sha256Hash hash;
+		private final long height;
+		private final byte[] json;
+		private volatile Sha256Hash nextBlockHash;
+
+		private Block(Sha256Hash hash, long height, byte[] json) {
+			this.hash = hash;
+			this.height = height;
+			this.json = json;
+		}
+
+		public Sha256Hash getHash() {
+			return hash;
+		}
+
+		public long getHeight() {
+			return height;
+		}
+
+		/**
+		 * Gets the hash of the next block in the main chain.
+		 * 
+		 * @return hash, or null if not known (yet).
+		 */
+		public Sha256Hash getNextBlockHash() {
+			return nextBlockHash;
+		}
+
+		/**
+		 * Fills in the hash of the next block.
+		 * 
+		 * @param nextBlockHash
+		 */
+		public void setNextBlockHash(Sha256Hash nextBlockHash) {
+			this.nextBlockHash = nextBlockHash;
+		}
+
+		/**
+		 * Creates a getBlock response for this block.
+		 * <p>
+		 * The stored JSON is read straight into the response, so amounts
+		 * like the difficulty keep their scale, as in responses from
+		 * bitcoind.
+		 * 
+		 * @param tipHeight - current height of the block chain.
+		 * @param reader - reader for GetBlockResponse, eg. the client's, so
+		 *        unknown fields are handled the same way as in responses
+		 *        from bitcoind.
+		 * @return GetBlockResponse
+		 */
+		public GetBlockResponse toResponse(long tipHeight, ObjectReader reader) {
+			GetBlockResponse response;
+			try {
+				response = reader.readValue(json);
+			} catch (IOException e) {
+				throw new BitcoinException("Deserializing cached block " + hash + " failed.", e);
+			}
+			GetBlockResult result = response.getResult();
+			result.setConfirmations((int) Math.max(1, tipHeight - height + 1));
+			result.setNextBlockHash(nextBlockHash);
+			return response;
+		}
+
+		@Override
+		public long size() {
+			return json.length + ENTRY_OVERHEAD;
+		}
+
+	}
+
+
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+/**
+ * The latest known height of the block chain.
+ * <p>
+ * Updated whenever a client learns the block count, and used by caches to
+ * compute confirmations without asking bitcoind.
+ * 
+ * @author Claus Nielsen
+ */
+public class ChainTip {
+
+	private volatile long height = -1;
+	private volatile long updated;
+
+
+	/**
+	 * Records the current height.
+	 * 
+	 * @param height - block count reported by bitcoind.
+	 */
+	public void update(long height) {
+		this.height = height;
+		this.updated = System.nanoTime();
+	}
+
+
+	/**
+	 * Gets the latest known height.
+	 * 
+	 * @return height, or -1 if unknown.
+	 */
+	public long getHeight() {
+		return height;
+	}
+
+
+	/**
+	 * Tells if the height was updated within the given time.
+	 * 
+	 * @param maxAge - milliseconds.
+	 * @return false if the height is unknown or older than maxAge.
+	 */
+	public boolean isFresh(long maxAge) {
+		return height >= 0 && System.nanoTime() - updated <= maxAge * 1000000L;
+	}
+
+
+}
@@ -0,0 +1,311 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+import static dk.clanie.collections.CollectionFactory.newArrayList;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import dk.clanie.bitcoin.Hex;
+import dk.clanie.bitcoin.client.BitcoindBatch;
+import dk.clanie.bitcoin.client.BitcoindClient;
+import dk.clanie.bitcoin.client.response.StringResponse;
+
+/**
+ * Index of the hashes of the blocks in the main chain, by height.
+ * <p>
+ * The hashes are packed into an off-heap buffer of 32 bytes per block, so
+ * even the whole chain takes only a few megabytes and no objects per block.
+ * Hashes are looked up by height directly in the buffer, and heights are
+ * looked up by hash in an open addressing hash table of heights.
+ * <p>
+ * The index is built and extended by {@link #update()}, which fetches
+ * missing hashes with batched getblockhash calls. When registered with a
+ * {@link TipWatcher} it is updated on each new tip, and truncated back to
+ * the fork on reorganizations. The first update of an empty index fetches
+ * the hashes of the whole chain, which takes a while.
+ * <p>
+ * The index is thread safe.
+ * 
+ * @author Claus Nielsen
+ */
+public class HeaderIndex implements TipListener {
+
+	private static final int HASH_SIZE = 32;
+	private static final int INITIAL_CAPACITY = 1024;
+
+
+	// [Configuration]
+	private volatile int batchSize = 1000;
+
+
+	// [Collaborators]
+	private final BitcoindClient bitcoindClient;
+
+
+	// [State]
+	private ByteBuffer hashes = ByteBuffer.allocateDirect(INITIAL_CAPACITY * HASH_SIZE);
+	private int size = 0;
+	// Open addressing table of height + 1 by hash; 0 means empty.
+	private int[] table = new int[2 * INITIAL_CAPACITY];
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param bitcoindClient - client for fetching block hashes.
+	 */
+	public HeaderIndex(BitcoindClient bitcoindClient) {
+		this.bitcoindClient = bitcoindClient;
+	}
+
+
+	/**
+	 * Sets the number of getblockhash calls sent in one batch.
+	 * <p>
+	 * Default is 1000.
+	 * 
+	 * @param batchSize
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) throw new IllegalArgumentException("Batch size must be positive.");
+		this.batchSize = batchSize;
+	}
+
+
+	/**
+	 * Gets the hash of the block at the given height.
+	 * 
+	 * @param height
+	 * @return hash, or null if the height isn't indexed.
+	 */
+	public synchronized String getHash(long height) {
+		if (height < 0 || height >= size) return null;
+		return Hex.encode(hashes, (int) height * HASH_SIZE, HASH_SIZE, false);
+	}
+
+
+	/**
+	 * Gets the height of the block with the given hash.
+	 * 
+	 * @param hash
+	 * @return height, or -1 if the hash isn't indexed.
+	 */
+	public long getHeight(String hash) {
+		byte[] bytes;
+		try {
+			bytes = Hex.decode(hash);
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+		if (bytes.length != HASH_SIZE) return -1;
+		synchronized (this) {
+			int mask = table.length - 1;
+			for (int slot = hashCode(bytes) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+				if (matches(table[slot] - 1, bytes)) return table[slot] - 1;
+			}
+		}
+		return -1;
+	}
+
+
+	/**
+	 * Gets the number of indexed blocks.
+	 * 
+	 * @return size - blocks at heights 0 to size - 1 are indexed.
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+
+	/**
+	 * Brings the index up to date with the current chain.
+	 * <p>
+	 * Truncates the index if its last block is no longer in the main
+	 * chain, and fetches the hashes of blocks added since the last update.
+	 */
+	public void update() {
+		update(bitcoindClient.getBlockCount().getResult());
+	}
+
+
+	/**
+	 * Truncates the index on reorganizations and fetches the hashes of the
+	 * new blocks.
+	 * 
+	 * @param event
+	 */
+	@Override
+	public void tipChanged(TipChangeEvent event) {
+		if (event.isReorganization()) truncate(event.getForkHeight() + 1);
+		update(event.getHeight());
+	}
+
+
+	/**
+	 * Removes the blocks from the given height and up.
+	 * 
+	 * @param newSize - number of blocks to keep.
+	 */
+	public synchronized void truncate(long newSize) {
+		newSize = Math.max(0, newSize);
+		while (size > newSize) remove(--size);
+	}
+
+
+	private void update(long tipHeight) {
+		walkBack();
+		int batchSize = this.batchSize;
+		for (long from = size(); from <= tipHeight; from += batchSize) {
+			long to = Math.min(tipHeight, from + batchSize - 1);
+			List<String> fetched = fetchHashes(from, to);
+			synchronized (this) {
+				// Another thread may have updated the index meanwhile.
+				if (size != from) return;
+				for (String hash : fetched) append(hash);
+			}
+		}
+	}
+
+
+	/**
+	 * Truncates the index back past blocks orphaned while we weren't
+	 * watching.
+	 * <p>
+	 * Usually only the last block needs checking. If it was orphaned, the
+	 * blocks below are checked in batches doubling in size.
+	 */
+	private void walkBack() {
+		int count = 1;
+		for (long last = size() - 1; last >= 0; ) {
+			long first = Math.max(0, last - count + 1);
+			List<String> fetched = fetchHashes(first, last);
+			for (long height = last; height >= first; height--) {
+				if (fetched.get((int) (height - first)).equals(getHash(height))) {
+					truncate(height + 1);
+					return;
+				}
+			}
+			truncate(first);
+			last = first - 1;
+			count = Math.min(count * 2, batchSize);
+		}
+	}
+
+
+	/**
+	 * Fetches the hashes of the blocks at the given heights in one batch.
+	 * 
+	 * @param from - first height.
+	 * @param to - last height.
+	 * @return hashes, by height from <code>from</code>.
+	 */
+	private List<String> fetchHashes(long from, long to) {
+		BitcoindBatch batch = new BitcoindBatch();
+		List<BitcoindBatch.Call<StringResponse>> calls = newArrayList();
+		for (long height = from; height <= to; height++) {
+			calls.add(batch.add("getblockhash", Arrays.asList(height), StringResponse.class));
+		}
+		bitcoindClient.executeBatch(batch);
+		List<String> hashes = newArrayList();
+		for (BitcoindBatch.Call<StringResponse> call : calls) hashes.add(call.getResponse().getResult());
+		return hashes;
+	}
+
+
+	private void append(String hash) {
+		byte[] bytes = Hex.decode(hash);
+		if (bytes.length != HASH_SIZE) throw new IllegalArgumentException("Invalid block hash " + hash + ".");
+		if ((size + 1) * HASH_SIZE > hashes.capacity()) {
+			ByteBuffer grown = ByteBuffer.allocateDirect(hashes.capacity() * 2);
+			hashes.clear();
+			grown.put(hashes);
+			hashes = grown;
+		}
+		hashes.position(size * HASH_SIZE);
+		hashes.put(bytes);
+		size++;
+		// Keep the table at most half full.
+		if (size * 2 > table.length) rebuildTable(table.length * 2);
+		else insert(size - 1);
+	}
+
+
+	private void rebuildTable(int capacity) {
+		table = new int[capacity];
+		for (int height = 0; height < size; height++) insert(height);
+	}
+
+
+	private void insert(int height) {
+		int mask = table.length - 1;
+		int slot = hashCode(height) & mask;
+		while (table[slot] != 0) slot = (slot + 1) & mask;
+		table[slot] = height + 1;
+	}
+
+
+	/**
+	 * Removes a height from the table, moving later entries of the probe
+	 * sequence back into the freed slot, so they can still be found.
+	 */
+	private void remove(int height) {
+		int mask = table.length - 1;
+		int hole = hashCode(height) & mask;
+		while (table[hole] != height + 1) hole = (hole + 1) & mask;
+		for (int slot = (hole + 1) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+			int home = hashCode(table[slot] - 1) & mask;
+			// Move the entry if the hole is between its home slot and it.
+			if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+				table[hole] = table[slot];
+				hole = slot;
+			}
+		}
+		table[hole] = 0;
+	}
+
+
+	/**
+	 * Block hashes are random, except for leading zeroes, so the last bytes
+	 * make a good hash code.
+	 */
+	private static int hashCode(byte[] hash) {
+		return (hash[28] & 0xff) << 24 | (hash[29] & 0xff) << 16 | (hash[30] & 0xff) << 8 | (hash[31] & 0xff);
+	}
+
+
+	private int hashCode(int height) {
+		int offset = height * HASH_SIZE + 28;
+		return (hashes.get(offset) & 0xff) << 24 | (hashes.get(offset + 1) & 0xff) << 16
+				| (hashes.get(offset + 2) & 0xff) << 8 | (hashes.get(offset + 3) & 0xff);
+	}
+
+
+	private boolean matches(int height, byte[] hash) {
+		int offset = height * HASH_SIZE;
+		for (int i = HASH_SIZE - 1; i >= 0; i--) {
+			if (hashes.get(offset + i) != hash[i]) return false;
+		}
+		return true;
+	}
+
+
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+import dk.clanie.bitcoin.exception.BitcoinException;
+
+/**
+ * Persistent store of immutable values, eg. serialized blocks and
+ * transactions, keyed by hash.
+ * <p>
+ * Values are appended to a log of fixed size segment files in a directory,
+ * which are memory-mapped, so reads are served from the operating system's
+ * page cache without system calls. An in-memory index maps each key to the
+ * segment and offset of its latest value. The index is rebuilt by scanning
+ * the segments when the store is opened.
+ * <p>
+ * Each record holds a length and a CRC32 checksum of its contents. When the
+ * store is opened after a crash, scanning a segment stops at the first
+ * incomplete or corrupt record, and the rest of the segment is cleared so
+ * new records are appended from there.<br>
+ * Records are written to the mapped segments, so they survive the process
+ * crashing, but they are only guaranteed to be on disk when {@link #flush()}
+ * or {@link #close()} has been called.
+ * <p>
+ * Removals are recorded by appending a removal record. Space used by removed
+ * or overwritten values isn't reclaimed, so only store values which are
+ * rarely removed.
+ * <p>
+ * A directory may only be used by one store at a time. The store is thread
+ * safe; reads don't lock. Once closed the store can't be used; reading,
+ * writing or flushing it throws an IllegalStateException.
+ * 
+ * @author Claus Nielsen
+ */
+public class SegmentStore {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	private static final String SEGMENT_PREFIX = "segment-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	// Record layout: length (int), crc (int), then length bytes of payload:
+	// type (byte), key length (short), key, height (long) and value.
+	private static final int HEADER_SIZE = 8;
+	private static final int PAYLOAD_OVERHEAD = 1 + 2 + 8;
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+
+	/** Default segment size, 64 MB. */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+
+	// [Configuration]
+	private final File directory;
+	private final int segmentSize;
+
+
+	// [State]
+	private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<MappedByteBuffer>();
+	private final ConcurrentMap<String, Entry> index = new ConcurrentHashMap<String, Entry>();
+	private int writePosition;
+	private long bytes;
+	private volatile boolean closed = false;
+
+
+	/**
+	 * Opens the store in the given directory with the default segment size.
+	 * 
+	 * @param directory - created if it doesn't exist.
+	 * @throws IOException
+	 */
+	public SegmentStore(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+
+	/**
+	 * Opens the store in the given directory, recovering the index from the
+	 * existing segments.
+	 * 
+	 * @param directory - created if it doesn't exist.
+	 * @param segmentSize - size of new segment files in bytes, which also
+	 *        limits the size of a record.
+	 * @throws IOException
+	 */
+	public SegmentStore(File directory, int segmentSize) throws IOException {
+		if (segmentSize < 1024) throw new IllegalArgumentException("Segment size must be at least 1024 bytes.");
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Creating directory " + directory + " failed.");
+		}
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		recover();
+	}
+
+
+	/**
+	 * Gets the value stored with the given key.
+	 * 
+	 * @param key
+	 * @return Record, or null if no value is stored with the key.
+	 */
+	public Record get(String key) {
+		checkOpen();
+		Entry entry = index.get(key);
+		if (entry == null) return null;
+		ByteBuffer segment = segments.get(entry.segment).duplicate();
+		segment.position(entry.valueOffset);
+		byte[] value = new byte[entry.valueLength];
+		segment.get(value);
+		return new Record(key, entry.height, value);
+	}
+
+
+	/**
+	 * Tells if a value is stored with the given key.
+	 * 
+	 * @param key
+	 * @return boolean
+	 */
+	public boolean contains(String key) {
+		checkOpen();
+		return index.containsKey(key);
+	}
+
+
+	/**
+	 * Stores a value, replacing any value stored with the same key.
+	 * 
+	 * @param key - ASCII string, eg. a hash.
+	 * @param height - height of the block the value belongs to, used by
+	 *        {@link #removeAbove(long)}.
+	 * @param value
+	 * @return false if the value is too big to fit in a segment.
+	 */
+	public synchronized boolean put(String key, long height, byte[] value) {
+		return append(PUT, key, height, value);
+	}
+
+
+	/**
+	 * Removes the value stored with the given key.
+	 * 
+	 * @param key
+	 */
+	public synchronized void remove(String key) {
+		checkOpen();
+		Entry entry = index.get(key);
+		if (entry != null) append(REMOVE, key, entry.height, new byte[0]);
+	}
+
+
+	/**
+	 * Removes values with a height above the given height, eg. after a
+	 * reorganization.
+	 * 
+	 * @param height
+	 */
+	public synchronized void removeAbove(long height) {
+		checkOpen();
+		List<String> keys = new ArrayList<String>();
+		for (Map.Entry<String, Entry> entry : index.entrySet()) {
+			if (entry.getValue().height > height) keys.add(entry.getKey());
+		}
+		for (String key : keys) remove(key);
+	}
+
+
+	/**
+	 * Writes all records to disk.
+	 */
+	public synchronized void flush() {
+		checkOpen();
+		for (MappedByteBuffer segment : segments) segment.force();
+	}
+
+
+	/**
+	 * Writes all records to disk and closes the store.
+	 * <p>
+	 * Segments stay mapped until the store is garbage collected.
+	 */
+	public synchronized void close() {
+		if (closed) return;
+		flush();
+		closed = true;
+	}
+
+
+	/**
+	 * Gets the number of values stored.
+	 * 
+	 * @return count
+	 */
+	public int getCount() {
+		return index.size();
+	}
+
+
+	/**
+	 * Gets the number of bytes used by records in the segments, including
+	 * removed and overwritten values.
+	 * 
+	 * @return bytes
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+
+	public File getDirectory() {
+		return directory;
+	}
+
+
+	private boolean append(byte type, String key, long height, byte[] value) {
+		checkOpen();
+		byte[] keyBytes = key.getBytes(ASCII);
+		if (keyBytes.length > Short.MAX_VALUE) throw new IllegalArgumentException("Key too long.");
+		int payloadLength = PAYLOAD_OVERHEAD + keyBytes.length + value.length;
+		int recordSize = HEADER_SIZE + payloadLength;
+		// Leave room for the terminating zero length.
+		if (recordSize > segmentSize - 4) return false;
+		if (segments.isEmpty() || writePosition + recordSize > segments.get(segments.size() - 1).capacity() - 4) newSegment();
+
+		ByteBuffer payload = ByteBuffer.allocate(payloadLength);
+		payload.put(type);
+		payload.putShort((short) keyBytes.length);
+		payload.put(keyBytes);
+		payload.putLong(height);
+		payload.put(value);
+		CRC32 crc = new CRC32();
+		crc.update(payload.array());
+
+		int segmentNumber = segments.size() - 1;
+		ByteBuffer segment = segments.get(segmentNumber).duplicate();
+		segment.position(writePosition + HEADER_SIZE);
+		segment.put(payload.array());
+		segment.putInt(writePosition + 4, (int) crc.getValue());
+		// Written last, so the record isn't seen until it's complete.
+		segment.putInt(writePosition, payloadLength);
+
+		apply(type, key, new Entry(segmentNumber, writePosition + HEADER_SIZE + payloadLength - value.length, value.length, height));
+		writePosition += recordSize;
+		bytes += recordSize;
+		return true;
+	}
+
+
+	private void checkOpen() {
+		if (closed) throw new IllegalStateException("Store in " + directory + " is closed.");
+	}
+
+
+	private void apply(byte type, String key, Entry entry) {
+		if (type == PUT) index.put(key, entry);
+		else index.remove(key);
+	}
+
+
+	private void newSegment() {
+		try {
+			segments.add(map(segmentFile(segments.size()), segmentSize));
+			writePosition = 0;
+		} catch (IOException e) {
+			throw new BitcoinException("Creating segment in " + directory + " failed.", e);
+		}
+	}
+
+
+	/**
+	 * Maps the existing segments and rebuilds the index.
+	 */
+	private void recover() throws IOException {
+		for (int number = 0; segmentFile(number).exists(); number++) {
+			File file = segmentFile(number);
+			MappedByteBuffer segment = map(file, (int) Math.min(Integer.MAX_VALUE, Math.max(file.length(), segmentSize)));
+			segments.add(segment);
+			writePosition = scan(number, segment);
+			bytes += writePosition;
+		}
+	}
+
+
+	/**
+	 * Indexes the records in a segment, clearing the segment after the last
+	 * valid record.
+	 * 
+	 * @return position after the last valid record.
+	 */
+	private int scan(int number, MappedByteBuffer segment) {
+		ByteBuffer buffer = segment.duplicate();
+		int limit = buffer.limit();
+		int position = 0;
+		while (position + HEADER_SIZE <= limit) {
+			int payloadLength = buffer.getInt(position);
+			if (payloadLength == 0) break;
+			if (payloadLength < PAYLOAD_OVERHEAD || payloadLength > limit - position - HEADER_SIZE) {
+				clear(buffer, position);
+				break;
+			}
+			byte[] payload = new byte[payloadLength];
+			buffer.position(position + HEADER_SIZE);
+			buffer.get(payload);
+			CRC32 crc = new CRC32();
+			crc.update(payload);
+			if ((int) crc.getValue() != buffer.getInt(position + 4) || !index(number, position, payload)) {
+				clear(buffer, position);
+				break;
+			}
+			position += HEADER_SIZE + payloadLength;
+		}
+		return position;
+	}
+
+
+	private boolean index(int number, int position, byte[] payload) {
+		ByteBuffer buffer = ByteBuffer.wrap(payload);
+		byte type = buffer.get();
+		int keyLength = buffer.getShort();
+		if ((type != PUT && type != REMOVE) || keyLength < 0 || keyLength > payload.length - PAYLOAD_OVERHEAD) return false;
+		String key = new String(payload, 3, keyLength, ASCII);
+		buffer.position(3 + keyLength);
+		long height = buffer.getLong();
+		int valueLength = payload.length - PAYLOAD_OVERHEAD - keyLength;
+		apply(type, key, new Entry(number, position + HEADER_SIZE + payload.length - valueLength, valueLength, height));
+		return true;
+	}
+
+
+	/**
+	 * Zeroes a segment from the given position, removing the remains of an
+	 * incomplete write.
+	 */
+	private void clear(ByteBuffer buffer, int position) {
+		byte[] zeroes = new byte[8192];
+		buffer.position(position);
+		while (buffer.hasRemaining()) buffer.put(zeroes, 0, Math.min(zeroes.length, buffer.remaining()));
+	}
+
+
+	private File segmentFile(int number) {
+		return new File(directory, SEGMENT_PREFIX + String.format("%08d", number) + SEGMENT_SUFFIX);
+	}
+
+
+	private static MappedByteBuffer map(File file, int size) throws IOException {
+		RandomAccessFile raf;
+		try {
+			raf = new RandomAccessFile(file, "rw");
+		} catch (FileNotFoundException e) {
+			throw new IOException("Opening " + file + " failed.", e);
+		}
+		try {
+			if (raf.length() < size) raf.setLength(size);
+			// The mapping stays valid after the file is closed.
+			return raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+		} finally {
+			raf.close();
+		}
+	}
+
+
+	/**
+	 * A stored value.
+	 */
+	public static class Record {
+
+		private final String key;
+		private final long height;
+		private final byte[] value;
+
+		private Record(String key, long height, byte[] value) {
+			this.key = key;
+			this.height = height;
+			this.value = value;
+		}
+
+		public String getKey() {
+			return key;
+		}
+
+		public long getHeight() {
+			return height;
+		}
+
+		public byte[] getValue() {
+			return value;
+		}
+
+		@Override
+		public String toString() {
+			return key + "@" + height + " (" + value.length + " bytes)";
+		}
+
+	}
+
+
+	/**
+	 * Location of a value in the segments.
+	 */
+	private static class Entry {
+
+		private final int segment;
+		private final int valueOffset;
+		private final int valueLength;
+		private final long height;
+
+		private Entry(int segment, int valueOffset, int valueLength, long height) {
+			this.segment = segment;
+			this.valueOffset = valueOffset;
+			this.valueLength = valueLength;
+			this.height = height;
+		}
+
+	}
+
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Map evicting the least recently used entries when the total size of the
+ * values exceeds a limit.
+ * <p>
+ * Not thread safe.
+ * 
+ * @author Claus Nielsen
+ *
+ * @param <K> key type.
+ * @param <V> value type.
+ */
+class SizeBoundedLruMap<K, V extends SizeBoundedLruMap.Sized> {
+
+	private final LinkedHashMap<K, V> map = new LinkedHashMap<K, V>(16, 0.75f, true);
+	private final long maxSize;
+	private long size = 0;
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxSize - maximum total size of the values.
+	 */
+	SizeBoundedLruMap(long maxSize) {
+		this.maxSize = maxSize;
+	}
+
+
+	V get(K key) {
+		return map.get(key);
+	}
+
+
+	/**
+	 * Adds or replaces a value, evicting least recently used values if the
+	 * size limit is exceeded.
+	 */
+	void put(K key, V value) {
+		V replaced = map.put(key, value);
+		if (replaced != null) size -= replaced.size();
+		size += value.size();
+		Iterator<V> eldest = map.values().iterator();
+		while (size > maxSize && eldest.hasNext()) {
+			size -= eldest.next().size();
+			eldest.remove();
+		}
+	}
+
+
+	V remove(K key) {
+		V removed = map.remove(key);
+		if (removed != null) size -= removed.size();
+		return removed;
+	}
+
+
+	/**
+	 * Gets an iterator over the values, least recently used first, which
+	 * keeps the size up to date when values are removed.
+	 */
+	Iterator<V> values() {
+		final Iterator<V> values = map.values().iterator();
+		return new Iterator<V>() {
+			private V current;
+
+			@Override
+			public boolean hasNext() {
+				return values.hasNext();
+			}
+
+			@Override
+			public V next() {
+				return current = values.next();
+			}
+
+			@Override
+			public void remove() {
+				values.remove();
+				size -= current.size();
+			}
+		};
+	}
+
+
+	void clear() {
+		map.clear();
+		size = 0;
+	}
+
+
+	int count() {
+		return map.size();
+	}
+
+
+	long size() {
+		return size;
+	}
+
+
+	/**
+	 * A value with a size.
+	 */
+	interface Sized {
+
+		/**
+		 * Gets the (estimated) size of this value in bytes.
+		 */
+		long size();
+
+	}
+
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+/**
+ * Published by the {@link TipWatcher} when the tip of the block chain
+ * changes.
+ * 
+ * @author Claus Nielsen
+ */
+public class TipChangeEvent {
+
+	private final long height;
+	private final String hash;
+	private final long previousHeight;
+	private final String previousHash;
+	private final long forkHeight;
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param height - new height.
+	 * @param hash - hash of the new tip.
+	 * @param previousHeight - previous height, or -1 if unknown.
+	 * @param previousHash - hash of the previous tip, or null if unknown.
+	 * @param forkHeight - height of the last block common to the old and the
+	 *        new chain in case of a reorganization, otherwise -1.
+	 */
+	public TipChangeEvent(long height, String hash, long previousHeight, String previousHash, long forkHeight) {
+		this.height = height;
+		this.hash = hash;
+		this.previousHeight = previousHeight;
+		this.previousHash = previousHash;
+		this.forkHeight = forkHeight;
+	}
+
+
+	public long getHeight() {
+		return height;
+	}
+
+
+	public String getHash() {
+		return hash;
+	}
+
+
+	public long getPreviousHeight() {
+		return previousHeight;
+	}
+
+
+	public String getPreviousHash() {
+		return previousHash;
+	}
+
+
+	/**
+	 * Gets the height of the last block common to the old and the new chain.
+	 * <p>
+	 * Blocks above this height in the old chain are no longer in the main
+	 * chain.
+	 * 
+	 * @return height, or -1 if the tip changed without a reorganization.
+	 */
+	public long getForkHeight() {
+		return forkHeight;
+	}
+
+
+	/**
+	 * Tells if the tip changed because of a reorganization.
+	 * 
+	 * @return boolean
+	 */
+	public boolean isReorganization() {
+		return forkHeight >= 0;
+	}
+
+
+	@Override
+	public String toString() {
+		return "TipChangeEvent[" + previousHeight + " " + previousHash + " -> " + height + " " + hash
+				+ (isReorganization() ? ", fork at " + forkHeight : "") + "]";
+	}
+
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of results which only change when the tip of the block chain or the
+ * wallet changes, eg. getBalance, listUnspent and getDifficulty.
+ * <p>
+ * Results are served from memory until the cache is invalidated, which
+ * happens once per new tip when it is registered with a {@link TipWatcher},
+ * and whenever the client makes a call which may change the wallet.
+ * <p>
+ * Note that changes caused by others aren't seen until the next block, eg.
+ * transactions sent by another client. Calls including unconfirmed
+ * transactions (minConf 0) aren't cached by the client, as payments entering
+ * the memory pool change their results. Only enable methods for which that
+ * is acceptable.
+ * <p>
+ * Only calls to methods explicitly enabled are cached, and at most a given
+ * number of results are held - when full, further results aren't cached
+ * until the next invalidation. The cache is thread safe.
+ * 
+ * @author Claus Nielsen
+ */
+public class TipScopedCache implements TipListener {
+
+	// Default maximum number of cached results.
+	private static final int DEFAULT_MAX_ENTRIES = 1000;
+
+	private final int maxEntries;
+	private final Set<String> methods = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+	private final ConcurrentMap<Object, Object> results = new ConcurrentHashMap<Object, Object>();
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+
+	/**
+	 * Creates a cache holding at most 1000 results.
+	 */
+	public TipScopedCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxEntries - maximum number of cached results.
+	 */
+	public TipScopedCache(int maxEntries) {
+		this.maxEntries = maxEntries;
+	}
+
+
+	/**
+	 * Enables caching of results of the given method.
+	 * 
+	 * @param method - JSON RPC method name, eg. "getbalance".
+	 */
+	public void enable(String method) {
+		methods.add(method);
+	}
+
+
+	/**
+	 * Tells if results of the given method are cached.
+	 * 
+	 * @param method - JSON RPC method name.
+	 * @return boolean
+	 */
+	public boolean isEnabled(String method) {
+		return methods.contains(method);
+	}
+
+
+	/**
+	 * Gets the current generation, to be passed to {@link #put(Object, Object, long)}.
+	 * <p>
+	 * Get it before calling bitcoind, so results of calls made before an
+	 * invalidation aren't cached after it.
+	 * 
+	 * @return generation
+	 */
+	public long getGeneration() {
+		return generation.get();
+	}
+
+
+	/**
+	 * Gets a cached result.
+	 * 
+	 * @param key - identifies the call.
+	 * @return result, or null if not cached.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T get(Object key) {
+		T result = (T) results.get(key);
+		if (result == null) misses.incrementAndGet();
+		else hits.incrementAndGet();
+		return result;
+	}
+
+
+	/**
+	 * Caches a result, unless the cache was invalidated since the given
+	 * generation, or is full.
+	 * 
+	 * @param key - identifies the call.
+	 * @param result
+	 * @param generation - generation when the call was made.
+	 */
+	public void put(Object key, Object result, long generation) {
+		if (result == null || generation != this.generation.get()) return;
+		if (results.size() >= maxEntries) return;
+		results.put(key, result);
+		// Invalidated meanwhile?
+		if (generation != this.generation.get()) results.remove(key, result);
+	}
+
+
+	/**
+	 * Removes all cached results.
+	 */
+	public void invalidate() {
+		generation.incrementAndGet();
+		results.clear();
+		invalidations.incrementAndGet();
+	}
+
+
+	@Override
+	public void tipChanged(TipChangeEvent event) {
+		invalidate();
+	}
+
+
+	public long getHits() {
+		return hits.get();
+	}
+
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+
+	public long getInvalidations() {
+		return invalidations.get();
+	}
+
+
+	/**
+	 * Gets the number of cached results.
+	 * 
+	 * @return number of results.
+	 */
+	public int size() {
+		return results.size();
+	}
+
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import dk.clanie.bitcoin.client.BitcoindBatch;
+import dk.clanie.bitcoin.client.BitcoindClient;
+import dk.clanie.bitcoin.client.response.StringResponse;
+
+/**
+ * Daemon thread watching the tip of the block chain.
+ * <p>
+ * Polls getBlockCount and getBlockHash, and notifies the registered
+ * {@link TipListener}s once for each change of the tip - whether a new block
+ * arrived or the chain was reorganized. On a reorganization the height of the
+ * fork is found by comparing the hashes of recent blocks with those seen
+ * before, so listeners know which blocks are no longer in the main chain.
+ * <p>
+ * Each poll makes two small calls, getBlockCount and getBlockHash, plus one
+ * getBlockHash call per block back to the fork when the tip changes. Block
+ * hashes are always fetched from bitcoind, even if the client answers
+ * getBlockHash from a {@link HeaderIndex}.
+ * 
+ * @author Claus Nielsen
+ */
+public class TipWatcher extends Thread {
+
+	// Number of recent block hashes remembered for finding forks.
+	private static final int HISTORY = 144;
+
+
+	// [Configuration]
+	private final long interval;
+
+
+	// [Collaborators]
+	private final BitcoindClient bitcoindClient;
+	private final List<TipListener> listeners = new CopyOnWriteArrayList<TipListener>();
+
+
+	// [State]
+	private final TreeMap<Long, String> recentHashes = new TreeMap<Long, String>();
+	private volatile long height = -1;
+	private volatile String hash;
+	private volatile boolean shutdown = false;
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param bitcoindClient - client for polling bitcoind.
+	 * @param interval - milliseconds between polls.
+	 */
+	public TipWatcher(BitcoindClient bitcoindClient, long interval) {
+		super("bitcoind-client-tip-watcher");
+		setDaemon(true);
+		this.bitcoindClient = bitcoindClient;
+		this.interval = interval;
+	}
+
+
+	/**
+	 * Registers a listener.
+	 * 
+	 * @param listener
+	 */
+	public void addListener(TipListener listener) {
+		listeners.add(listener);
+	}
+
+
+	/**
+	 * Unregisters a listener.
+	 * 
+	 * @param listener
+	 */
+	public void removeListener(TipListener listener) {
+		listeners.remove(listener);
+	}
+
+
+	/**
+	 * Gets the height of the tip seen by the latest poll.
+	 * 
+	 * @return height, or -1 if not polled yet.
+	 */
+	public long getHeight() {
+		return height;
+	}
+
+
+	/**
+	 * Gets the hash of the tip seen by the latest poll.
+	 * 
+	 * @return hash, or null if not polled yet.
+	 */
+	public String getHash() {
+		return hash;
+	}
+
+
+	@Override
+	public void run() {
+		try {
+			while (!shutdown) {
+				try {
+					poll();
+				} catch (RuntimeException e) {
+					// Try again next time.
+				}
+				synchronized (this) {
+					if (!shutdown) wait(interval);
+				}
+			}
+		} catch (InterruptedException e) {
+			// terminate
+		}
+	}
+
+
+	/**
+	 * Polls the tip, notifying the listeners if it changed.
+	 * <p>
+	 * Called periodically by the watcher's thread once started, but may also
+	 * be called directly.
+	 */
+	public synchronized void poll() {
+		long newHeight = bitcoindClient.getBlockCount().getResult();
+		String newHash = fetchBlockHash(bitcoindClient, newHeight);
+		if (newHeight == height && newHash.equals(hash)) return;
+		long forkHeight = findFork(newHeight, newHash);
+		TipChangeEvent event = new TipChangeEvent(newHeight, newHash, height, hash, forkHeight);
+		recentHashes.put(newHeight, newHash);
+		recentHashes.tailMap(newHeight, false).clear();
+		while (recentHashes.size() > HISTORY) recentHashes.pollFirstEntry();
+		height = newHeight;
+		hash = newHash;
+		for (TipListener listener : listeners) {
+			try {
+				listener.tipChanged(event);
+			} catch (RuntimeException e) {
+				// One failing listener mustn't keep the others from being notified.
+			}
+		}
+	}
+
+
+	/**
+	 * Finds the height of the last block common to the chain seen before and
+	 * the current chain.
+	 * 
+	 * @return fork height, or -1 if the known chain wasn't reorganized.
+	 */
+	private long findFork(long newHeight, String newHash) {
+		if (recentHashes.isEmpty()) return -1;
+		long checkHeight = Math.min(newHeight, recentHashes.lastKey());
+		boolean reorganized = false;
+		for (Map.Entry<Long, String> known : recentHashes.headMap(checkHeight, true).descendingMap().entrySet()) {
+			long knownHeight = known.getKey();
+			String current = knownHeight == newHeight ? newHash : fetchBlockHash(bitcoindClient, knownHeight);
+			if (current.equals(known.getValue())) return reorganized ? knownHeight : -1;
+			reorganized = true;
+		}
+		// Forked below the remembered history.
+		return Math.max(0, recentHashes.firstKey() - 1);
+	}
+
+
+	/**
+	 * Fetches the hash of the block at the given height from bitcoind.
+	 * <p>
+	 * Sent as a batch, which the client always sends to bitcoind, rather than
+	 * by calling getBlockHash, which may be answered from a
+	 * {@link HeaderIndex}.
+	 * 
+	 * @param bitcoindClient
+	 * @param height
+	 * @return hash
+	 */
+	static String fetchBlockHash(BitcoindClient bitcoindClient, long height) {
+		BitcoindBatch batch = new BitcoindBatch();
+		BitcoindBatch.Call<StringResponse> call = batch.add("getblockhash", Arrays.asList(height), StringResponse.class);
+		bitcoindClient.executeBatch(batch);
+		return call.getResponse().getResult();
+	}
+
+
+	/**
+	 * Stops the watcher.
+	 */
+	public void shutdown() {
+		shutdown = true;
+		synchronized (this) {
+			notifyAll();
+		}
+	}
+
+
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import dk.clanie.bitcoin.Sha256Hash;
+import dk.clanie.bitcoin.client.response.GetRawTransactionResponse;
+import dk.clanie.bitcoin.client.response.GetRawTransactionResult;
+import dk.clanie.bitcoin.client.response.StringResponse;
+import dk.clanie.bitcoin.exception.BitcoinException;
+
+/**
+ * Cache of confirmed transactions, keyed by transaction id.
+ * <p>
+ * Once a transaction is in a block it never changes, except for its number
+ * of confirmations. The cache stores the verbose getRawTransaction result
+ * without confirmations, serialized as JSON, and the raw transaction hex
+ * separately, so both variants of getRawTransaction can be answered. When a
+ * transaction is read confirmations are computed from the height of the
+ * block containing it and the current chain height.
+ * <p>
+ * Only transactions with at least {@link #setMinConfirmations(int)}
+ * confirmations are cached, so transactions which may still be affected by
+ * a reorganization aren't.
+ * <p>
+ * The cache is bounded by the total size of the cached transactions,
+ * evicting the least recently used transactions first. Optionally
+ * transactions are also kept in a persistent {@link SegmentStore}, from
+ * which transactions evicted or cached before a restart are read back. It is
+ * thread safe.
+ * 
+ * @author Claus Nielsen
+ */
+public class TransactionCache implements TipListener {
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	// Estimated memory used per entry besides the serialized transaction.
+	private static final int ENTRY_OVERHEAD = 200;
+
+
+	// [Configuration]
+	private volatile int minConfirmations = 6;
+
+
+	// [Collaborators]
+	private volatile SegmentStore store;
+
+
+	// [State]
+	private final SizeBoundedLruMap<Sha256Hash, Transaction> transactions;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param maxBytes - maximum (estimated) memory used by cached transactions.
+	 */
+	public TransactionCache(long maxBytes) {
+		this.transactions = new SizeBoundedLruMap<Sha256Hash, Transaction>(maxBytes);
+	}
+
+
+	/**
+	 * Sets the minimum number of confirmations a transaction must have to be
+	 * cached.
+	 * <p>
+	 * Default is 6.
+	 * 
+	 * @param minConfirmations
+	 */
+	public void setMinConfirmations(int minConfirmations) {
+		this.minConfirmations = minConfirmations;
+	}
+
+
+	/**
+	 * Sets a persistent store for cached transactions.
+	 * <p>
+	 * Transactions are written to the store when they are cached, and read
+	 * from it when they aren't in memory.
+	 * 
+	 * @param store
+	 */
+	public void setStore(SegmentStore store) {
+		this.store = store;
+	}
+
+
+	/**
+	 * Gets a cached transaction.
+	 * 
+	 * @param txId - transaction id in hex.
+	 * @return Transaction, or null if the transaction isn't cached.
+	 */
+	public Transaction get(String txId) {
+		Sha256Hash parsed;
+		try {
+			parsed = Sha256Hash.valueOf(txId);
+		} catch (IllegalArgumentException e) {
+			// Not a valid transaction id - let bitcoind tell.
+			misses.incrementAndGet();
+			return null;
+		}
+		return get(parsed);
+	}
+
+
+	/**
+	 * Gets a cached transaction.
+	 * 
+	 * @param txId - transaction id.
+	 * @return Transaction, or null if the transaction isn't cached.
+	 */
+	public Transaction get(Sha256Hash txId) {
+		Transaction transaction;
+		synchronized (this) {
+			transaction = transactions.get(txId);
+		}
+		SegmentStore store = this.store;
+		if (transaction == null && store != null) {
+			SegmentStore.Record record = store.get(txId.toString());
+			if (record != null) {
+				transaction = Transaction.fromStored(txId, record.getHeight(), record.getValue());
+				synchronized (this) {
+					transactions.put(txId, transaction);
+				}
+			}
+		}
+		if (transaction == null) misses.incrementAndGet();
+		else hits.incrementAndGet();
+		return transaction;
+	}
+
+
+	/**
+	 * Tells if the given transaction has enough confirmations to be cached.
+	 * 
+	 * @param response - verbose getRawTransaction response.
+	 * @return boolean
+	 */
+	public boolean isCacheable(GetRawTransactionResponse response) {
+		GetRawTransactionResult result = response.getResult();
+		if (result == null || result.getTxId() == null || result.getHex() == null) return false;
+		Integer confirmations = result.getConfirmations();
+		return confirmations != null && confirmations.intValue() >= minConfirmations;
+	}
+
+
+	/**
+	 * Caches the given transaction, if it has enough confirmations.
+	 * 
+	 * @param response - verbose getRawTransaction response.
+	 * @param blockHeight - height of the block containing the transaction.
+	 */
+	public void put(GetRawTransactionResponse response, long blockHeight) {
+		if (!isCacheable(response)) return;
+		GetRawTransactionResult result = response.getResult();
+		ObjectNode json = objectMapper.valueToTree(response);
+		ObjectNode resultJson = (ObjectNode) json.get("result");
+		resultJson.remove("confirmations");
+		resultJson.remove("hex");
+		json.remove("id");
+		Transaction transaction;
+		try {
+			transaction = new Transaction(result.getTxId(), blockHeight,
+					result.getHex().getBytes(ASCII), objectMapper.writeValueAsBytes(json));
+		} catch (IOException e) {
+			throw new BitcoinException("Serializing transaction " + result.getTxId() + " failed.", e);
+		}
+		synchronized (this) {
+			transactions.put(transaction.txId, transaction);
+		}
+		SegmentStore store = this.store;
+		if (store != null) {
+			String key = transaction.txId.toString();
+			if (!store.contains(key)) store.put(key, blockHeight, transaction.toStored());
+		}
+	}
+
+
+	/**
+	 * Removes all transactions from memory.
+	 * <p>
+	 * Transactions in the persistent store, if any, are kept.
+	 */
+	public synchronized void clear() {
+		transactions.clear();
+	}
+
+
+	/**
+	 * Removes transactions in blocks above the given height, eg. after a
+	 * reorganization.
+	 * 
+	 * @param height
+	 */
+	public synchronized void removeAbove(long height) {
+		if (store != null) store.removeAbove(height);
+		Iterator<Transaction> i = transactions.values();
+		while (i.hasNext()) {
+			if (i.next().blockHeight > height) i.remove();
+		}
+	}
+
+
+	/**
+	 * Removes transactions no longer in the main chain after a reorganization.
+	 * 
+	 * @param event
+	 */
+	@Override
+	public void tipChanged(TipChangeEvent event) {
+		if (event.isReorganization()) removeAbove(event.getForkHeight());
+	}
+
+
+	public synchronized int getSize() {
+		return transactions.count();
+	}
+
+
+	public synchronized long getBytes() {
+		return transactions.size();
+	}
+
+
+	public long getHits() {
+		return hits.get();
+	}
+
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+
+	/**
+	 * Creates a non-verbose getRawTransaction response.
+	 * 
+	 * @param hex - raw transaction hex.
+	 * @return StringResponse
+	 */
+	public static StringResponse hexResponse(String hex) {
+		StringResponse response = new StringResponse();
+		response.setResult(hex);
+		return response;
+	}
+
+
+	/**
+	 * A cached transaction.
+	 */
+	public static class Transaction implements SizeBoundedLruMap.Sized {
+
+		private final Sha256Hash txId;
+		private final long blockHeight;
+		private final byte[] hex;
+		private final byte[] json;
+
+		private Transaction(Sha256Hash txId, long blockHeight, byte[] hex, byte[] json) {
+			this.txId = txId;
+			this.blockHeight = blockHeight;
+			this.hex = hex;
+			this.json = json;
+		}
+
+		/**
+		 * Reads a transaction written by {@link #toStored()}.
+		 */
+		private static Transaction fromStored(Sha256Hash txId, long blockHeight, byte[] stored) {
+			ByteBuffer buffer = ByteBuffer.wrap(stored);
+			byte[] hex = new byte[buffer.getInt()];
+			buffer.get(hex);
+			byte[] json = new byte[buffer.remaining()];
+			buffer.get(json);
+			return new Transaction(txId, blockHeight, hex, json);
+		}
+
+		/**
+		 * Serializes this transaction for a {@link SegmentStore}, as the
+		 * length of the hex, the hex and the JSON.
+		 */
+		private byte[] toStored() {
+			ByteBuffer buffer = ByteBuffer.allocate(4 + hex.length + json.length);
+			buffer.putInt(hex.length);
+			buffer.put(hex);
+			buffer.put(json);
+			return buffer.array();
+		}
+
+		public Sha256Hash getTxId() {
+			return txId;
+		}
+
+		public long getBlockHeight() {
+			return blockHeight;
+		}
+
+		/**
+		 * Gets the raw transaction.
+		 * 
+		 * @return hex encoded transaction.
+		 */
+		public String getHex() {
+			return new String(hex, ASCII);
+		}
+
+		/**
+		 * Creates a non-verbose getRawTransaction response for this
+		 * transaction.
+		 * 
+		 * @return StringResponse
+		 */
+		public StringResponse toHexResponse() {
+			return hexResponse(getHex());
+		}
+
+		/**
+		 * Creates a verbose getRawTransaction response for this transaction.
+		 * <p>
+		 * The stored JSON is read straight into the response, so amounts keep
+		 * their scale, as in responses from bitcoind.
+		 * 
+		 * @param tipHeight - current height of the block chain.
+		 * @param reader - reader for GetRawTransactionResponse, eg. the
+		 *        client's, so unknown fields are handled the same way as in
+		 *        responses from bitcoind.
+		 * @return GetRawTransactionResponse
+		 */
+		public GetRawTransactionResponse toResponse(long tipHeight, ObjectReader reader) {
+			GetRawTransactionResponse response;
+			try {
+				response = reader.readValue(json);
+			} catch (IOException e) {
+				throw new BitcoinException("Deserializing cached transaction " + txId + " failed.", e);
+			}
+			GetRawTransactionResult result = response.getResult();
+			result.setHex(getHex());
+			result.setConfirmations((int) Math.max(1, tipHeight - blockHeight + 1));
+			return response;
+		}
+
+		@Override
+		public long size() {
+			return hex.length + json.length + ENTRY_OVERHEAD;
+		}
+
+	}
+
+
+}
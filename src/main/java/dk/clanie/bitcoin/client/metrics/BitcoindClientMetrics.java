@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Per-method metrics for calls made by a client.
+ * <p>
+ * When created with an MBeanServer the {@link MethodMetrics} for each method
+ * are registered as an MXBean named
+ * <code>dk.clanie.bitcoin:type=BitcoindClient,name=&lt;name&gt;,method=&lt;method&gt;</code>
+ * the first time the method is called. Registration failures are ignored;
+ * the metrics are still collected and available from {@link #getMethods()}.
+ * 
+ * @author Claus Nielsen
+ */
+public class BitcoindClientMetrics {
+
+	public static final String DOMAIN = "dk.clanie.bitcoin";
+	public static final String DEFAULT_NAME = "bitcoind";
+
+	private final MBeanServer mBeanServer;
+	private final String name;
+	private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<String, MethodMetrics>();
+
+
+	/**
+	 * Creates metrics which are not exported.
+	 */
+	public BitcoindClientMetrics() {
+		this(null, null);
+	}
+
+
+	/**
+	 * Creates metrics exported over JMX.
+	 * 
+	 * @param mBeanServer - server to register MXBeans with.
+	 * @param name - name identifying the client, eg. the host and port of
+	 *        the node it calls. Defaults to {@link #DEFAULT_NAME} if null.
+	 */
+	public BitcoindClientMetrics(MBeanServer mBeanServer, String name) {
+		this.mBeanServer = mBeanServer;
+		this.name = name == null ? DEFAULT_NAME : name;
+	}
+
+
+	/**
+	 * Gets the metrics for the given method, creating them if needed.
+	 * 
+	 * @param method - JSON RPC method name.
+	 * @return MethodMetrics
+	 */
+	public MethodMetrics forMethod(String method) {
+		MethodMetrics metrics = methods.get(method);
+		if (metrics == null) {
+			metrics = new MethodMetrics(method);
+			MethodMetrics existing = methods.putIfAbsent(method, metrics);
+			if (existing != null) return existing;
+			register(metrics);
+		}
+		return metrics;
+	}
+
+
+	/**
+	 * Gets the metrics of all methods called so far.
+	 * 
+	 * @return Collection of {@link MethodMetrics}.
+	 */
+	public Collection<MethodMetrics> getMethods() {
+		return Collections.unmodifiableCollection(methods.values());
+	}
+
+
+	/**
+	 * Unregisters the MXBeans.
+	 */
+	public void unregister() {
+		if (mBeanServer == null) return;
+		for (MethodMetrics metrics : methods.values()) {
+			try {
+				mBeanServer.unregisterMBean(objectName(metrics));
+			} catch (JMException e) {
+				// Not registered.
+			}
+		}
+	}
+
+
+	private void register(MethodMetrics metrics) {
+		if (mBeanServer == null) return;
+		try {
+			mBeanServer.registerMBean(metrics, objectName(metrics));
+		} catch (JMException e) {
+			// Ignored - see class comment.
+		}
+	}
+
+
+	private ObjectName objectName(MethodMetrics metrics) throws JMException {
+		return new ObjectName(DOMAIN + ":type=BitcoindClient,name=" + ObjectName.quote(name)
+				+ ",method=" + ObjectName.quote(metrics.getMethod()));
+	}
+
+
+}
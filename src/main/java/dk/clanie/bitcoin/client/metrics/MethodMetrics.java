@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics for calls to one JSON RPC method.
+ * <p>
+ * Recording uses atomic counters only, so it doesn't lock, and it allocates
+ * nothing - except the first time an error code is seen for the method.
+ * Counting the bytes recorded does allocate a few small objects per call -
+ * see {@link dk.clanie.bitcoin.client.CountingClientHttpRequestFactory}.
+ * 
+ * @author Claus Nielsen
+ */
+public class MethodMetrics implements MethodMetricsMXBean {
+
+	private final String method;
+	private final LatencyHistogram latencies = new LatencyHistogram();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong requestBytes = new AtomicLong();
+	private final AtomicLong responseBytes = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final ConcurrentMap<Integer, AtomicLong> errorsByCode = new ConcurrentHashMap<Integer, AtomicLong>();
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param method - JSON RPC method name.
+	 */
+	public MethodMetrics(String method) {
+		this.method = method;
+	}
+
+
+	/**
+	 * Records the start of a call.
+	 * 
+	 * @return start time, to be passed to {@link #completed(long, long, long)}
+	 *         or {@link #failed(long, Integer, long, long)}.
+	 */
+	public long started() {
+		inFlight.incrementAndGet();
+		return System.nanoTime();
+	}
+
+
+	/**
+	 * Records a completed call.
+	 * 
+	 * @param startTime - as returned by {@link #started()}.
+	 * @param requestBytes - size of the request.
+	 * @param responseBytes - size of the response.
+	 */
+	public void completed(long startTime, long requestBytes, long responseBytes) {
+		latencies.record((System.nanoTime() - startTime) / 1000);
+		inFlight.decrementAndGet();
+		this.requestBytes.addAndGet(requestBytes);
+		this.responseBytes.addAndGet(responseBytes);
+	}
+
+
+	/**
+	 * Records a failed call.
+	 * 
+	 * @param startTime - as returned by {@link #started()}.
+	 * @param errorCode - error code from bitcoind, or null if bitcoind
+	 *        didn't answer with an error response.
+	 * @param requestBytes - size of the request, as far as it was sent.
+	 * @param responseBytes - size of the response, as far as it was read.
+	 */
+	public void failed(long startTime, Integer errorCode, long requestBytes, long responseBytes) {
+		latencies.record((System.nanoTime() - startTime) / 1000);
+		inFlight.decrementAndGet();
+		this.requestBytes.addAndGet(requestBytes);
+		this.responseBytes.addAndGet(responseBytes);
+		if (errorCode == null) {
+			failures.incrementAndGet();
+			return;
+		}
+		AtomicLong errors = errorsByCode.get(errorCode);
+		if (errors == null) {
+			errors = new AtomicLong();
+			AtomicLong existing = errorsByCode.putIfAbsent(errorCode, errors);
+			if (existing != null) errors = existing;
+		}
+		errors.incrementAndGet();
+	}
+
+
+	@Override
+	public String getMethod() {
+		return method;
+	}
+
+
+	@Override
+	public long getCalls() {
+		return latencies.getCount();
+	}
+
+
+	@Override
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+
+	@Override
+	public long getLatency50thPercentileMicros() {
+		return latencies.getPercentile(0.5);
+	}
+
+
+	@Override
+	public long getLatency99thPercentileMicros() {
+		return latencies.getPercentile(0.99);
+	}
+
+
+	@Override
+	public long getLatencyMaxMicros() {
+		return latencies.getMax();
+	}
+
+
+	@Override
+	public long getRequestBytes() {
+		return requestBytes.get();
+	}
+
+
+	@Override
+	public long getResponseBytes() {
+		return responseBytes.get();
+	}
+
+
+	@Override
+	public long getFailures() {
+		return failures.get();
+	}
+
+
+	@Override
+	public Map<Integer, Long> getErrorsByCode() {
+		Map<Integer, Long> result = new TreeMap<Integer, Long>();
+		for (Map.Entry<Integer, AtomicLong> entry : errorsByCode.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().get());
+		}
+		return result;
+	}
+
+
+	/**
+	 * Gets the latency histogram.
+	 * 
+	 * @return LatencyHistogram
+	 */
+	public LatencyHistogram getLatencies() {
+		return latencies;
+	}
+
+
+	@Override
+	public void reset() {
+		latencies.reset();
+		requestBytes.set(0);
+		responseBytes.set(0);
+		failures.set(0);
+		errorsByCode.clear();
+	}
+
+
+}
@@ -21,6 +21,9 @@ import java.util.List;
 
 import org.springframework.roo.addon.javabean.RooJavaBean;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
 import dk.clanie.core.BaseClass;
 
 @SuppressWarnings("serial")
@@ -30,10 +33,25 @@ public class BitcoindJsonRpcRequest extends BaseClass {
 	private String jsonrpc = "2.0";
 	private String method;
 	private List<?> params;
-	
+
+	/**
+	 * Request id.
+	 * <p>
+	 * Echoed back by bitcoind in the response. Only needed when sending
+	 * several requests in one batch, where it is used for matching responses
+	 * to requests.
+	 */
+	@JsonInclude(Include.NON_NULL)
+	private String id;
+
 	public BitcoindJsonRpcRequest(String method, List<?> params) {
+		this(method, params, null);
+	}
+
+	public BitcoindJsonRpcRequest(String method, List<?> params, String id) {
 		this.method = method;
 		this.params = params;
+		this.id = id;
 	}
 
 }
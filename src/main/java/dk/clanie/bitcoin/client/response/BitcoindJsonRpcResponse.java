@@ -36,4 +36,25 @@ public abstract class BitcoindJsonRpcResponse<RT> extends JsonExtra {
 	private BitcoindError error;
 	private String id;
 
+
+	/**
+	 * Sets the result, eg. when answering without calling bitcoind.
+	 * 
+	 * @param result
+	 */
+	public void setResult(RT result) {
+		this.result = result;
+	}
+
+
+	public void setError(BitcoindError error) {
+		this.error = error;
+	}
+
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+
 }
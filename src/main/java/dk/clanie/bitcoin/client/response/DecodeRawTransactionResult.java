@@ -22,6 +22,7 @@ import org.springframework.roo.addon.javabean.RooJavaBean;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
+import dk.clanie.bitcoin.Sha256Hash;
 import dk.clanie.bitcoin.TransactionInput;
 import dk.clanie.bitcoin.TransactionOutput;
 import dk.clanie.bitcoin.json.JsonExtra;
@@ -43,7 +44,7 @@ import dk.clanie.bitcoin.json.JsonExtra;
 public class DecodeRawTransactionResult extends JsonExtra {
 
 	@JsonProperty("txid")
-	private String txId;
+	private Sha256Hash txId;
 
 	private Integer version;
 	private Integer locktime;
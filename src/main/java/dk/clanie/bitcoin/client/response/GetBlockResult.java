@@ -25,6 +25,7 @@ import org.springframework.roo.addon.javabean.RooJavaBean;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
+import dk.clanie.bitcoin.Sha256Hash;
 import dk.clanie.bitcoin.json.JsonExtra;
 
 /**
@@ -51,7 +52,7 @@ import dk.clanie.bitcoin.json.JsonExtra;
 })
 public class GetBlockResult extends JsonExtra {
 
-	private String hash;
+	private Sha256Hash hash;
 	private Integer confirmations;
 	private Integer size;
 	private Long height;
@@ -61,7 +62,7 @@ public class GetBlockResult extends JsonExtra {
 	private String merkleRoot;
 
 	@JsonProperty("tx")
-	private String[] transactions;
+	private Sha256Hash[] transactions;
 
 	private Date time;
 	private Long nonce;
@@ -69,9 +70,30 @@ public class GetBlockResult extends JsonExtra {
 	private BigDecimal difficulty;
 
 	@JsonProperty("previousblockhash")
-	private String previousBlockHash;
+	private Sha256Hash previousBlockHash;
 
 	@JsonProperty("nextblockhash")
-	private String nextBlockHash;
+	private Sha256Hash nextBlockHash;
+
+
+	/**
+	 * Sets the number of confirmations, eg. when answering from a cache.
+	 * 
+	 * @param confirmations
+	 */
+	public void setConfirmations(Integer confirmations) {
+		this.confirmations = confirmations;
+	}
+
+
+	/**
+	 * Sets the hash of the next block, eg. when answering from a cache.
+	 * 
+	 * @param nextBlockHash
+	 */
+	public void setNextBlockHash(Sha256Hash nextBlockHash) {
+		this.nextBlockHash = nextBlockHash;
+	}
+
 
 }
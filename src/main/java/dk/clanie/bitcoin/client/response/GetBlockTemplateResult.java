@@ -26,6 +26,7 @@ import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
+import dk.clanie.bitcoin.Sha256Hash;
 import dk.clanie.bitcoin.client.Transaction;
 import dk.clanie.bitcoin.json.JsonExtra;
 
@@ -65,7 +66,7 @@ public class GetBlockTemplateResult extends JsonExtra {
 	 * Hash of current highest block.
 	 */
 	@JsonProperty("previousblockhash")
-	private String previousBlockHash;
+	private Sha256Hash previousBlockHash;
 
 	/**
 	 * Contents of non-coinbase transactions that should be included in the next
@@ -22,9 +22,11 @@ import java.util.Date;
 
 import org.springframework.roo.addon.javabean.RooJavaBean;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
+import dk.clanie.bitcoin.Satoshi;
 import dk.clanie.bitcoin.json.JsonExtra;
 
 /**
@@ -81,4 +83,29 @@ public class GetInfoResult extends JsonExtra {
 	@JsonProperty("unlocked_until")
 	private Date unlockedUntil;
 
+
+	/**
+	 * Gets the balance in satoshis.
+	 * <p>
+	 * The balance is kept as a BigDecimal, preserving bitcoind's formatting
+	 * of it.
+	 * 
+	 * @return balance in satoshis, or null.
+	 */
+	@JsonIgnore
+	public Long getBalanceSatoshis() {
+		return balance == null ? null : Satoshi.valueOf(balance);
+	}
+
+
+	/**
+	 * Gets the transaction fee in satoshis.
+	 * 
+	 * @return fee in satoshis, or null.
+	 */
+	@JsonIgnore
+	public Long getPayTxFeeSatoshis() {
+		return payTxFee == null ? null : Satoshi.valueOf(payTxFee);
+	}
+
 }
@@ -24,6 +24,7 @@ import org.springframework.roo.addon.javabean.RooJavaBean;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
+import dk.clanie.bitcoin.Sha256Hash;
 import dk.clanie.bitcoin.TransactionInput;
 import dk.clanie.bitcoin.TransactionOutput;
 import dk.clanie.bitcoin.json.JsonExtra;
@@ -52,7 +53,7 @@ public class GetRawTransactionResult extends JsonExtra {
 	private String hex;
 
 	@JsonProperty("txid")
-	private String txId;
+	private Sha256Hash txId;
 
 	public Integer version;
 
@@ -66,7 +67,7 @@ public class GetRawTransactionResult extends JsonExtra {
 	private TransactionOutput[] txOutputs;
 
 	@JsonProperty("blockhash")
-	private String blockHash;
+	private Sha256Hash blockHash;
 
 	private Integer confirmations;
 	private Date time;
@@ -74,4 +75,25 @@ public class GetRawTransactionResult extends JsonExtra {
 	@JsonProperty("blocktime")
 	private Date blockTime;
 
+
+	/**
+	 * Sets the raw transaction, eg. when answering from a cache.
+	 * 
+	 * @param hex
+	 */
+	public void setHex(String hex) {
+		this.hex = hex;
+	}
+
+
+	/**
+	 * Sets the number of confirmations, eg. when answering from a cache.
+	 * 
+	 * @param confirmations
+	 */
+	public void setConfirmations(Integer confirmations) {
+		this.confirmations = confirmations;
+	}
+
+
 }
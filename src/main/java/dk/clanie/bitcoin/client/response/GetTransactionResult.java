@@ -25,6 +25,7 @@ import org.springframework.roo.addon.javabean.RooJavaBean;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
+import dk.clanie.bitcoin.Sha256Hash;
 import dk.clanie.bitcoin.json.JsonExtra;
 
 /**
@@ -58,7 +59,7 @@ public class GetTransactionResult extends JsonExtra {
 	private Integer confirmations;
 
 	@JsonProperty("blockhash")
-	private String blockHash;
+	private Sha256Hash blockHash;
 
 	@JsonProperty("blockindex")
 	private Integer blockIndex;
@@ -70,7 +71,7 @@ public class GetTransactionResult extends JsonExtra {
 	 * Transaction ID
 	 */
 	@JsonProperty("txid")
-	private String txId;
+	private Sha256Hash txId;
 
 	/**
 	 * Time the transaction occurred.
@@ -29,6 +29,7 @@ import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonAnySetter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
+import dk.clanie.bitcoin.Satoshi;
 import dk.clanie.core.BaseClass;
 
 /**
@@ -76,4 +77,17 @@ public class ListAccountsResult extends BaseClass {
 		return accountBalances.get(account);
 	}
 
+
+	/**
+	 * Gets the balance of the given account in satoshis.
+	 * 
+	 * @param account
+	 * @return account balance in satoshis, or null if there is no such account.
+	 */
+	@JsonIgnore
+	public Long getAccountBalanceSatoshis(String account) {
+		BigDecimal balance = accountBalances.get(account);
+		return balance == null ? null : Satoshi.valueOf(balance);
+	}
+
 }
@@ -22,6 +22,7 @@ import org.springframework.roo.addon.javabean.RooJavaBean;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 
+import dk.clanie.bitcoin.Sha256Hash;
 import dk.clanie.bitcoin.json.JsonExtra;
 
 /**
@@ -40,6 +41,6 @@ public class ListSinceBlockResult extends JsonExtra {
 	private TransactionData[] transactions;
 
 	@JsonProperty("lastblock")
-	private String lastBlock;
+	private Sha256Hash lastBlock;
 
 }
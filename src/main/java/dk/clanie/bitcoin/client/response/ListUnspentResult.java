@@ -20,8 +20,10 @@ import java.math.BigDecimal;
 
 import org.springframework.roo.addon.javabean.RooJavaBean;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonUnwrapped;
 
+import dk.clanie.bitcoin.Satoshi;
 import dk.clanie.bitcoin.TransactionOutputRef;
 import dk.clanie.bitcoin.json.JsonExtra;
 
@@ -41,4 +43,15 @@ public class ListUnspentResult extends JsonExtra {
 	private BigDecimal amount;
 	private Integer confirmations;
 
+
+	/**
+	 * Gets the amount in satoshis.
+	 * 
+	 * @return amount in satoshis, or null.
+	 */
+	@JsonIgnore
+	public Long getAmountSatoshis() {
+		return amount == null ? null : Satoshi.valueOf(amount);
+	}
+
 }
@@ -22,12 +22,15 @@ import java.util.Date;
 
 import org.springframework.roo.addon.javabean.RooJavaBean;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
+import dk.clanie.bitcoin.Satoshi;
+import dk.clanie.bitcoin.Sha256Hash;
 import dk.clanie.bitcoin.json.BigDecimalPlainSerializer;
 import dk.clanie.bitcoin.json.JsonExtra;
 
@@ -76,7 +79,7 @@ public class TransactionData extends JsonExtra {
 
 	@JsonProperty("blockhash")
 	@JsonInclude(Include.NON_NULL)
-	private String blockHash;
+	private Sha256Hash blockHash;
 
 	@JsonProperty("blockindex")
 	@JsonInclude(Include.NON_NULL)
@@ -87,7 +90,7 @@ public class TransactionData extends JsonExtra {
 	private Date blockTime;
 
 	@JsonProperty("txid")
-	private String txId;
+	private Sha256Hash txId;
 
 	private Date time;
 
@@ -100,4 +103,27 @@ public class TransactionData extends JsonExtra {
 	@JsonInclude(Include.NON_NULL)
 	private String to;
 
+
+	/**
+	 * Gets the amount in satoshis.
+	 * 
+	 * @return amount in satoshis, or null.
+	 */
+	@JsonIgnore
+	public Long getAmountSatoshis() {
+		return amount == null ? null : Satoshi.valueOf(amount);
+	}
+
+
+	/**
+	 * Gets the fee in satoshis. The fee is only included for sent
+	 * transactions.
+	 * 
+	 * @return fee in satoshis, or null.
+	 */
+	@JsonIgnore
+	public Long getFeeSatoshis() {
+		return fee == null ? null : Satoshi.valueOf(fee);
+	}
+
 }
@@ -0,0 +1,497 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.response;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import dk.clanie.bitcoin.Hex;
+import dk.clanie.bitcoin.Satoshi;
+import dk.clanie.bitcoin.Sha256Hash;
+import dk.clanie.bitcoin.TransactionOutputRef;
+
+/**
+ * Unspent transaction outputs as returned by listUnspent, stored column by
+ * column in primitive arrays instead of as one {@link ListUnspentResult}
+ * per output.
+ * <p>
+ * Each output takes about 50 bytes: the txid as 32 packed bytes, vout,
+ * amount in satoshis, confirmations and an index into a pool of distinct
+ * scriptPubKeys - outputs paid to the same address share the script.
+ * Other fields returned by bitcoind are not kept.
+ * <p>
+ * {@link #filter(long, long, int, int)} and the sort methods return views
+ * sharing the columns with this instance, so they only allocate an array of
+ * row numbers, and no object per output. Values are read by row number:
+ * <pre>
+ * UnspentOutputs mature = bitcoindClient.listUnspentOutputs(null, null)
+ *         .filter(0, Long.MAX_VALUE, 100, Integer.MAX_VALUE)
+ *         .sortByAmount(true);
+ * for (int row = 0; row &lt; mature.size(); row++) {
+ *     if (mature.getAmountSatoshis(row) &lt; dust) break;
+ *     spend(mature.getTxRef(row));
+ * }
+ * </pre>
+ * Immutable and thread safe.
+ * 
+ * @author Claus Nielsen
+ */
+public final class UnspentOutputs {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final int size;
+	private final byte[] txIds;
+	private final int[] vouts;
+	private final long[] amounts;
+	private final int[] confirmations;
+	private final int[] scriptIndexes;
+	private final String[] scripts;
+
+	/**
+	 * Row numbers in the columns, in view order, or null for all rows in
+	 * column order.
+	 */
+	private final int[] rows;
+
+
+	private UnspentOutputs(int size, byte[] txIds, int[] vouts, long[] amounts,
+			int[] confirmations, int[] scriptIndexes, String[] scripts, int[] rows) {
+		this.size = size;
+		this.txIds = txIds;
+		this.vouts = vouts;
+		this.amounts = amounts;
+		this.confirmations = confirmations;
+		this.scriptIndexes = scriptIndexes;
+		this.scripts = scripts;
+		this.rows = rows;
+	}
+
+
+	private UnspentOutputs(UnspentOutputs columns, int[] rows, int size) {
+		this(size, columns.txIds, columns.vouts, columns.amounts,
+				columns.confirmations, columns.scriptIndexes, columns.scripts, rows);
+	}
+
+
+	/**
+	 * Reads the outputs from the result array of a listunspent response.
+	 * 
+	 * @param parser - positioned at the START_ARRAY token of the result.
+	 *        Left at the matching END_ARRAY.
+	 * @return UnspentOutputs
+	 * @throws IOException
+	 */
+	public static UnspentOutputs read(JsonParser parser) throws IOException {
+		if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+			throw new JsonParseException("Expected an array of unspent outputs.", parser.getCurrentLocation());
+		}
+		Builder builder = new Builder();
+		while (parser.nextToken() == JsonToken.START_OBJECT) {
+			builder.read(parser);
+		}
+		return builder.build();
+	}
+
+
+	/**
+	 * Gets the number of outputs.
+	 * 
+	 * @return number of outputs.
+	 */
+	public int size() {
+		return size;
+	}
+
+
+	/**
+	 * Gets the txid of the transaction holding an output.
+	 * 
+	 * @param index - 0 to size()-1.
+	 * @return Sha256Hash
+	 */
+	public Sha256Hash getTxId(int index) {
+		return Sha256Hash.fromBytes(txIds, row(index) * Sha256Hash.LENGTH, false);
+	}
+
+
+	/**
+	 * Copies the txid of the transaction holding an output, in display order,
+	 * to the given array.
+	 * 
+	 * @param index - 0 to size()-1.
+	 * @param dest - destination array.
+	 * @param offset - where in dest to put the 32 bytes.
+	 */
+	public void getTxIdBytes(int index, byte[] dest, int offset) {
+		System.arraycopy(txIds, row(index) * Sha256Hash.LENGTH, dest, offset, Sha256Hash.LENGTH);
+	}
+
+
+	/**
+	 * Gets the output's number in its transaction.
+	 * 
+	 * @param index - 0 to size()-1.
+	 * @return vout
+	 */
+	public int getVout(int index) {
+		return vouts[row(index)];
+	}
+
+
+	/**
+	 * Gets a reference to an output, eg. for createRawTransaction.
+	 * 
+	 * @param index - 0 to size()-1.
+	 * @return TransactionOutputRef
+	 */
+	public TransactionOutputRef getTxRef(int index) {
+		return new TransactionOutputRef(getTxId(index), getVout(index));
+	}
+
+
+	/**
+	 * Gets the amount of an output.
+	 * 
+	 * @param index - 0 to size()-1.
+	 * @return amount in satoshis.
+	 */
+	public long getAmountSatoshis(int index) {
+		return amounts[row(index)];
+	}
+
+
+	/**
+	 * Gets the number of confirmations of an output.
+	 * 
+	 * @param index - 0 to size()-1.
+	 * @return confirmations
+	 */
+	public int getConfirmations(int index) {
+		return confirmations[row(index)];
+	}
+
+
+	/**
+	 * Gets the scriptPubKey of an output.
+	 * 
+	 * @param index - 0 to size()-1.
+	 * @return script in hex, shared by all outputs with the same script.
+	 */
+	public String getScriptPubKey(int index) {
+		int script = scriptIndexes[row(index)];
+		return script < 0 ? null : scripts[script];
+	}
+
+
+	/**
+	 * Gets the sum of the amounts of all the outputs.
+	 * 
+	 * @return total amount in satoshis.
+	 */
+	public long getTotalSatoshis() {
+		long total = 0;
+		for (int i = 0; i < size; i++) total += amounts[row(i)];
+		return total;
+	}
+
+
+	/**
+	 * Gets the outputs with an amount and number of confirmations in the
+	 * given ranges, in the same order as in this instance.
+	 * 
+	 * @param minAmount - minimum amount in satoshis (inclusive).
+	 * @param maxAmount - maximum amount in satoshis (inclusive).
+	 * @param minConfirmations - minimum confirmations (inclusive).
+	 * @param maxConfirmations - maximum confirmations (inclusive).
+	 * @return view sharing the columns with this instance.
+	 */
+	public UnspentOutputs filter(long minAmount, long maxAmount, int minConfirmations, int maxConfirmations) {
+		int[] selected = new int[size];
+		int count = 0;
+		for (int i = 0; i < size; i++) {
+			int row = row(i);
+			long amount = amounts[row];
+			int conf = confirmations[row];
+			if (amount >= minAmount && amount <= maxAmount && conf >= minConfirmations && conf <= maxConfirmations) {
+				selected[count++] = row;
+			}
+		}
+		return new UnspentOutputs(this, count == size ? selected : Arrays.copyOf(selected, count), count);
+	}
+
+
+	/**
+	 * Gets the outputs ordered by amount.
+	 * <p>
+	 * The sort is stable, so outputs with the same amount keep their order
+	 * from this instance, eg. by confirmations if sorted by that first.
+	 * 
+	 * @param descending - true to get the largest amounts first.
+	 * @return view sharing the columns with this instance.
+	 */
+	public UnspentOutputs sortByAmount(boolean descending) {
+		return sort(false, descending);
+	}
+
+
+	/**
+	 * Gets the outputs ordered by number of confirmations.
+	 * <p>
+	 * The sort is stable, so outputs with the same number of confirmations
+	 * keep their order from this instance.
+	 * 
+	 * @param descending - true to get the oldest outputs first.
+	 * @return view sharing the columns with this instance.
+	 */
+	public UnspentOutputs sortByConfirmations(boolean descending) {
+		return sort(true, descending);
+	}
+
+
+	private int row(int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		return rows == null ? index : rows[index];
+	}
+
+
+	private UnspentOutputs sort(boolean byConfirmations, boolean descending) {
+		int[] sorted = new int[size];
+		for (int i = 0; i < size; i++) sorted[i] = row(i);
+		mergeSort(sorted.clone(), sorted, 0, size, byConfirmations, descending);
+		return new UnspentOutputs(this, sorted, size);
+	}
+
+
+	/**
+	 * Sorts dest[from..to) using src, which must hold the same row numbers,
+	 * as work area.
+	 */
+	private void mergeSort(int[] src, int[] dest, int from, int to, boolean byConfirmations, boolean descending) {
+		int length = to - from;
+		if (length < 8) {
+			for (int i = from + 1; i < to; i++) {
+				int row = dest[i];
+				int j = i;
+				while (j > from && compare(dest[j - 1], row, byConfirmations, descending) > 0) {
+					dest[j] = dest[j - 1];
+					j--;
+				}
+				dest[j] = row;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(dest, src, from, mid, byConfirmations, descending);
+		mergeSort(dest, src, mid, to, byConfirmations, descending);
+		for (int i = from, p = from, q = mid; i < to; i++) {
+			if (q >= to || p < mid && compare(src[p], src[q], byConfirmations, descending) <= 0) {
+				dest[i] = src[p++];
+			} else {
+				dest[i] = src[q++];
+			}
+		}
+	}
+
+
+	private int compare(int rowA, int rowB, boolean byConfirmations, boolean descending) {
+		int result;
+		if (byConfirmations) {
+			int a = confirmations[rowA], b = confirmations[rowB];
+			result = a < b ? -1 : a == b ? 0 : 1;
+		} else {
+			long a = amounts[rowA], b = amounts[rowB];
+			result = a < b ? -1 : a == b ? 0 : 1;
+		}
+		return descending ? -result : result;
+	}
+
+
+	/**
+	 * Collects the columns while parsing.
+	 */
+	private static final class Builder {
+
+		private int size = 0;
+		private byte[] txIds = new byte[INITIAL_CAPACITY * Sha256Hash.LENGTH];
+		private int[] vouts = new int[INITIAL_CAPACITY];
+		private long[] amounts = new long[INITIAL_CAPACITY];
+		private int[] confirmations = new int[INITIAL_CAPACITY];
+		private int[] scriptIndexes = new int[INITIAL_CAPACITY];
+		private final ScriptPool scripts = new ScriptPool();
+
+
+		/**
+		 * Reads one output, with the parser positioned at its START_OBJECT.
+		 */
+		void read(JsonParser parser) throws IOException {
+			if (size == vouts.length) grow();
+			int row = size;
+			scriptIndexes[row] = -1;
+			boolean hasTxId = false;
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken token = parser.nextToken();
+				if (token == JsonToken.VALUE_NULL) continue;
+				if ("txid".equals(field)) {
+					readTxId(parser, row);
+					hasTxId = true;
+				} else if ("vout".equals(field)) {
+					vouts[row] = parser.getIntValue();
+				} else if ("amount".equals(field)) {
+					amounts[row] = readAmount(parser);
+				} else if ("confirmations".equals(field)) {
+					confirmations[row] = parser.getIntValue();
+				} else if ("scriptPubKey".equals(field)) {
+					scriptIndexes[row] = scripts.add(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+				} else {
+					parser.skipChildren();
+				}
+			}
+			if (!hasTxId) throw new JsonParseException("Unspent output without txid.", parser.getCurrentLocation());
+			size++;
+		}
+
+
+		private void readTxId(JsonParser parser, int row) throws IOException {
+			if (parser.getTextLength() != Sha256Hash.HEX_LENGTH) {
+				throw new JsonParseException("Invalid txid \"" + parser.getText() + "\".", parser.getCurrentLocation());
+			}
+			char[] chars = parser.getTextCharacters();
+			int offset = parser.getTextOffset();
+			int dest = row * Sha256Hash.LENGTH;
+			try {
+				for (int i = 0; i < Sha256Hash.LENGTH; i++) {
+					txIds[dest + i] = (byte) (Hex.digit(chars[offset + 2 * i]) << 4 | Hex.digit(chars[offset + 2 * i + 1]));
+				}
+			} catch (IllegalArgumentException e) {
+				throw new JsonParseException("Invalid txid \"" + parser.getText() + "\".", parser.getCurrentLocation(), e);
+			}
+		}
+
+
+		private long readAmount(JsonParser parser) throws IOException {
+			try {
+				return Satoshi.parse(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+			} catch (NumberFormatException e) {
+				throw new JsonParseException(e.getMessage(), parser.getCurrentLocation(), e);
+			} catch (ArithmeticException e) {
+				throw new JsonParseException(e.getMessage(), parser.getCurrentLocation(), e);
+			}
+		}
+
+
+		private void grow() {
+			int capacity = vouts.length * 2;
+			txIds = Arrays.copyOf(txIds, capacity * Sha256Hash.LENGTH);
+			vouts = Arrays.copyOf(vouts, capacity);
+			amounts = Arrays.copyOf(amounts, capacity);
+			confirmations = Arrays.copyOf(confirmations, capacity);
+			scriptIndexes = Arrays.copyOf(scriptIndexes, capacity);
+		}
+
+
+		UnspentOutputs build() {
+			return new UnspentOutputs(size,
+					Arrays.copyOf(txIds, size * Sha256Hash.LENGTH),
+					Arrays.copyOf(vouts, size),
+					Arrays.copyOf(amounts, size),
+					Arrays.copyOf(confirmations, size),
+					Arrays.copyOf(scriptIndexes, size),
+					scripts.toArray(),
+					null);
+		}
+
+	}
+
+
+	/**
+	 * Distinct scripts, looked up straight from the parser's text buffer so
+	 * only the first occurrence of each script creates a String.
+	 */
+	private static final class ScriptPool {
+
+		private String[] scripts = new String[16];
+		private int[] table = new int[32];
+		private int count = 0;
+
+
+		ScriptPool() {
+			Arrays.fill(table, -1);
+		}
+
+
+		int add(char[] chars, int offset, int length) {
+			int hash = 0;
+			for (int i = offset; i < offset + length; i++) hash = 31 * hash + chars[i];
+			int mask = table.length - 1;
+			for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+				int index = table[slot];
+				if (index < 0) break;
+				if (matches(scripts[index], chars, offset, length)) return index;
+			}
+			if (count == scripts.length) scripts = Arrays.copyOf(scripts, count * 2);
+			scripts[count] = new String(chars, offset, length);
+			if (2 * (count + 1) > table.length) rehash();
+			insert(count, hash);
+			return count++;
+		}
+
+
+		String[] toArray() {
+			return Arrays.copyOf(scripts, count);
+		}
+
+
+		private void rehash() {
+			table = new int[table.length * 2];
+			Arrays.fill(table, -1);
+			for (int i = 0; i < count; i++) insert(i, scripts[i].hashCode());
+		}
+
+
+		private void insert(int index, int hash) {
+			int mask = table.length - 1;
+			int slot = mix(hash) & mask;
+			while (table[slot] >= 0) slot = (slot + 1) & mask;
+			table[slot] = index;
+		}
+
+
+		private static int mix(int hash) {
+			hash ^= hash >>> 16;
+			return hash * 0x85ebca6b;
+		}
+
+
+		private static boolean matches(String script, char[] chars, int offset, int length) {
+			if (script.length() != length) return false;
+			for (int i = 0; i < length; i++) {
+				if (script.charAt(i) != chars[offset + i]) return false;
+			}
+			return true;
+		}
+
+	}
+
+
+}
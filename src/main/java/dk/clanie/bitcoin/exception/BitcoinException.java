@@ -17,13 +17,17 @@
  */
 package dk.clanie.bitcoin.exception;
 
-import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
 
 import dk.clanie.bitcoin.client.response.BitcoindErrorResponse;
 import dk.clanie.exception.AbstractRuntimeException;
 
 /**
  * Superclass for all exceptions thrown when a call to bitcoind fails.
+ * <p>
+ * Exceptions created from error responses may be created without a stack
+ * trace, which makes them much cheaper to create - see
+ * {@link BitcoinExceptionRegistry#setStackTraceEnabled(int, boolean)}.
  * 
  * @author Claus Nielsen
  */
@@ -32,20 +36,57 @@ public class BitcoinException extends AbstractRuntimeException {
 
 	private BitcoindErrorResponse errorResponse = null;
 
+	/**
+	 * Set when the superclass constructors are done. Until then filling in
+	 * the stack trace is deferred, leaving the decision to our constructors.
+	 */
+	private transient boolean constructed;
+
 
 	protected BitcoinException(BitcoindErrorResponse errorResponse) {
+		this(errorResponse, true);
+	}
+
+
+	/**
+	 * Constructor.
+	 * 
+	 * @param errorResponse - error response received from bitcoind.
+	 * @param stackTrace - if false no stack trace is captured.
+	 */
+	protected BitcoinException(BitcoindErrorResponse errorResponse, boolean stackTrace) {
 		super(errorResponse.getError().getMessage());
 		this.errorResponse = errorResponse;
+		constructed = true;
+		if (stackTrace) fillInStackTrace();
+	}
+
+
+	public BitcoinException(String message) {
+		super(message);
+		constructed = true;
+		fillInStackTrace();
 	}
 
 
 	public BitcoinException(Exception cause) {
 		super(cause);
+		constructed = true;
+		fillInStackTrace();
 	}
 	
 
 	public BitcoinException(String message, Exception cause) {
 		super(message, cause);
+		constructed = true;
+		fillInStackTrace();
+	}
+
+
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		if (!constructed) return this;
+		return super.fillInStackTrace();
 	}
 	
 
@@ -72,7 +113,7 @@ public class BitcoinException extends AbstractRuntimeException {
 
 	@Override
 	public String toString() {
-		return ToStringBuilder.reflectionToString(this);
+		return ReflectionToStringBuilder.toStringExclude(this, "constructed");
 	}
 
 
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.exception;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import dk.clanie.bitcoin.client.response.BitcoindErrorResponse;
+import dk.clanie.bitcoin.exception.client.BitcoinClientException;
+import dk.clanie.bitcoin.exception.client.MethodNotFoundException;
+import dk.clanie.bitcoin.exception.server.BitcoinServerException;
+import dk.clanie.bitcoin.exception.server.InvalidAddressException;
+import dk.clanie.bitcoin.exception.server.WalletEncryptionException;
+
+/**
+ * Maps bitcoind error codes to exceptions.
+ * <p>
+ * Codes without a registered {@link ExceptionFactory} are mapped to an
+ * {@link BitcoinClientException} or an {@link BitcoinServerException},
+ * depending on the type of error.
+ * <p>
+ * Capturing the stack trace is the most expensive part of creating an
+ * exception. For error codes which are expected to occur frequently, and
+ * which are handled by the caller anyway (eg. -5 Invalid Bitcoin address
+ * when validating addresses in bulk), stack trace capture can be disabled
+ * with {@link #setStackTraceEnabled(int, boolean)}.
+ * <p>
+ * The registry is thread safe, and the shared instance returned by
+ * {@link #getInstance()} is used by the clients.
+ * 
+ * @author Claus Nielsen
+ */
+public class BitcoinExceptionRegistry {
+
+	private static final BitcoinExceptionRegistry instance = new BitcoinExceptionRegistry();
+
+	private final ConcurrentMap<Integer, ExceptionFactory> factories = new ConcurrentHashMap<Integer, ExceptionFactory>();
+	private final Set<Integer> stacklessCodes = Collections.newSetFromMap(new ConcurrentHashMap<Integer, Boolean>());
+
+
+	/**
+	 * Creates a registry with the default mappings.
+	 */
+	public BitcoinExceptionRegistry() {
+		// Comments are observed error messages for each code.
+		// -1:
+		//   a multisignature address must require at least one key to redeem
+		//   no full public key for address <bitcoinaddress>
+		//   createrawtransaction [{\"txid\":txid,\"vout\":n},...] {address:amount,...}\nCreate a transaction ...
+		// -4:
+		//   Private key for address <bitcoinaddress> is not known
+		//   Wallet backup failed!
+		//   Error adding key to wallet
+		// -13:
+		//   Error: Please enter the wallet passphrase with walletpassphrase first.
+		// -14:
+		//   Error: The wallet passphrase entered was incorrect.
+		// -17:
+		//   Error: Wallet is already unlocked.
+		register(-5, new ExceptionFactory() {
+			// Invalid Bitcoin address
+			@Override
+			public BitcoinException create(BitcoindErrorResponse errorResponse, boolean stackTrace) {
+				return new InvalidAddressException(errorResponse, stackTrace);
+			}
+		});
+		register(-15, new ExceptionFactory() {
+			// Error: running with an unencrypted wallet, but walletpassphrasechange was called.
+			// Error: running with an encrypted wallet, but encryptwallet was called.
+			@Override
+			public BitcoinException create(BitcoindErrorResponse errorResponse, boolean stackTrace) {
+				return new WalletEncryptionException(errorResponse, stackTrace);
+			}
+		});
+		register(-32601, new ExceptionFactory() {
+			// Method not found
+			@Override
+			public BitcoinException create(BitcoindErrorResponse errorResponse, boolean stackTrace) {
+				return new MethodNotFoundException(errorResponse, stackTrace);
+			}
+		});
+	}
+
+
+	/**
+	 * Gets the shared registry.
+	 * 
+	 * @return BitcoinExceptionRegistry
+	 */
+	public static BitcoinExceptionRegistry getInstance() {
+		return instance;
+	}
+
+
+	/**
+	 * Registers the factory to use for the given error code, replacing any
+	 * previous registration.
+	 * 
+	 * @param code - bitcoind error code.
+	 * @param factory
+	 */
+	public void register(int code, ExceptionFactory factory) {
+		factories.put(code, factory);
+	}
+
+
+	/**
+	 * Enables or disables stack trace capture for exceptions created for the
+	 * given error code.
+	 * <p>
+	 * Stack traces are enabled for all codes by default.
+	 * 
+	 * @param code - bitcoind error code.
+	 * @param enabled
+	 */
+	public void setStackTraceEnabled(int code, boolean enabled) {
+		if (enabled) stacklessCodes.remove(code);
+		else stacklessCodes.add(code);
+	}
+
+
+	/**
+	 * Tells if stack traces are captured for exceptions created for the given
+	 * error code.
+	 * 
+	 * @param code - bitcoind error code.
+	 * @return boolean
+	 */
+	public boolean isStackTraceEnabled(int code) {
+		return !stacklessCodes.contains(code);
+	}
+
+
+	/**
+	 * Creates the exception matching the given error response.
+	 * 
+	 * @param errorResponse
+	 * @param clientError - true if bitcoind reported the error as a client
+	 *        error (an HTTP 4xx response); decides the type of exception
+	 *        for unregistered codes.
+	 * @return BitcoinException
+	 */
+	public BitcoinException createException(BitcoindErrorResponse errorResponse, boolean clientError) {
+		int code = errorResponse.getError().getCode();
+		boolean stackTrace = !stacklessCodes.contains(code);
+		ExceptionFactory factory = factories.get(code);
+		if (factory != null) return factory.create(errorResponse, stackTrace);
+		if (clientError) return new BitcoinClientException(errorResponse, stackTrace);
+		return new BitcoinServerException(errorResponse, stackTrace);
+	}
+
+
+	/**
+	 * Creates exceptions for an error code.
+	 */
+	public interface ExceptionFactory {
+
+		/**
+		 * Creates an exception for the given error response.
+		 * 
+		 * @param errorResponse
+		 * @param stackTrace - if false the exception should be created
+		 *        without a stack trace.
+		 * @return BitcoinException
+		 */
+		BitcoinException create(BitcoindErrorResponse errorResponse, boolean stackTrace);
+
+	}
+
+
+}
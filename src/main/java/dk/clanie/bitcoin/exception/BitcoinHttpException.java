@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.exception;
+
+/**
+ * Thrown when bitcoind, or something in between, answers with an HTTP error
+ * status but without a valid JSON RPC error response - eg. an HTML page for
+ * an HTTP 401 Unauthorized.
+ * 
+ * @author Claus Nielsen
+ */
+@SuppressWarnings("serial")
+public class BitcoinHttpException extends BitcoinException {
+
+	private final int statusCode;
+
+
+	public BitcoinHttpException(int statusCode, String message) {
+		super(message);
+		this.statusCode = statusCode;
+	}
+
+
+	public BitcoinHttpException(int statusCode, String message, Exception cause) {
+		super(message, cause);
+		this.statusCode = statusCode;
+	}
+
+
+	/**
+	 * Gets the HTTP status code received.
+	 * 
+	 * @return HTTP status code.
+	 */
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+
+	/**
+	 * Tells if the HTTP status is a server error (5xx).
+	 * 
+	 * @return boolean
+	 */
+	public boolean isServerError() {
+		return statusCode >= 500 && statusCode < 600;
+	}
+
+
+}
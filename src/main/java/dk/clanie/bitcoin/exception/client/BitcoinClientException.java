@@ -32,4 +32,9 @@ public class BitcoinClientException extends BitcoinException {
 		super(errorResponse);
 	}
 
+
+	public BitcoinClientException(BitcoindErrorResponse errorResponse, boolean stackTrace) {
+		super(errorResponse, stackTrace);
+	}
+
 }
@@ -32,5 +32,10 @@ public class MethodNotFoundException extends BitcoinClientException {
 		super(errorResponse);
 	}
 
+
+	public MethodNotFoundException(BitcoindErrorResponse errorResponse, boolean stackTrace) {
+		super(errorResponse, stackTrace);
+	}
+
 	
 }
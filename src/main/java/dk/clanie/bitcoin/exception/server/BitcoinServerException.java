@@ -32,4 +32,9 @@ public class BitcoinServerException extends BitcoinException {
 		super(errorResponse);
 	}
 
+
+	public BitcoinServerException(BitcoindErrorResponse errorResponse, boolean stackTrace) {
+		super(errorResponse, stackTrace);
+	}
+
 }
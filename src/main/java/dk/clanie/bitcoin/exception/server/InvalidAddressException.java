@@ -32,5 +32,10 @@ public class InvalidAddressException extends BitcoinServerException {
 		super(errorResponse);
 	}
 
+
+	public InvalidAddressException(BitcoindErrorResponse errorResponse, boolean stackTrace) {
+		super(errorResponse, stackTrace);
+	}
+
 	
 }
@@ -32,5 +32,10 @@ public class WalletEncryptionException extends BitcoinServerException {
 		super(errorResponse);
 	}
 
+
+	public WalletEncryptionException(BitcoindErrorResponse errorResponse, boolean stackTrace) {
+		super(errorResponse, stackTrace);
+	}
+
 	
 }
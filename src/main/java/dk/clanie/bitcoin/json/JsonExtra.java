@@ -31,6 +31,12 @@ import dk.clanie.core.BaseClass;
 
 /**
  * "MixIn" adding an otherFields map for json fields not explicitly mapped.
+ * <p>
+ * The map is only allocated when the first unknown field is met, as almost
+ * all responses have none - not even when serializing the object. Until
+ * then getOtherFields returns a shared empty map. Deserializers configured
+ * with the {@link StrictModule} skip unknown fields entirely, leaving
+ * otherFields empty.
  * 
  * @author Claus Nielsen
  */
@@ -38,7 +44,7 @@ import dk.clanie.core.BaseClass;
 @RooJavaBean(settersByDefault = false)
 public abstract class JsonExtra extends BaseClass {
 
-	private Map<String, Object> otherFields = newHashMap();
+	private Map<String, Object> otherFields;
 
 	/**
 	 * Sets name and value of other (unknown) JSON fields.
@@ -49,6 +55,7 @@ public abstract class JsonExtra extends BaseClass {
 	@JsonAnySetter
 	@SuppressWarnings("unused") // Is used by Jackson
 	private void set(String field, Object value)  {
+		if (otherFields == null) otherFields = newHashMap();
 		otherFields.put(field, value);
 	}
 
@@ -60,6 +67,7 @@ public abstract class JsonExtra extends BaseClass {
 	 */
 	@JsonAnyGetter
 	public Map<String, Object> getOtherFields() {
+		if (otherFields == null) return Collections.emptyMap();
 		return Collections.unmodifiableMap(otherFields);
 	}
 
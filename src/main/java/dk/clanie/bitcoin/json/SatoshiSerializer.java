@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.json;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+
+import dk.clanie.bitcoin.Satoshi;
+
+/**
+ * Serializes amounts held as satoshis in a long as bitcoins with 8
+ * decimals, the way bitcoind writes them.
+ * <p>
+ * The digits are written from a char buffer reused per thread, so neither a
+ * BigDecimal nor a String is created.
+ * 
+ * @author Claus Nielsen
+ */
+public class SatoshiSerializer extends JsonSerializer<Long> {
+
+	private static final ThreadLocal<char[]> buffer = new ThreadLocal<char[]>() {
+		@Override
+		protected char[] initialValue() {
+			return new char[Satoshi.MAX_LENGTH];
+		}
+	};
+
+
+	@Override
+	public void serialize(Long value, JsonGenerator jgen,
+			SerializerProvider provider) throws IOException,
+			JsonProcessingException {
+		write(value.longValue(), jgen);
+	}
+
+
+	/**
+	 * Writes an amount in satoshis as a JSON number in bitcoins.
+	 * 
+	 * @param satoshis
+	 * @param jgen
+	 * @throws IOException
+	 */
+	public static void write(long satoshis, JsonGenerator jgen) throws IOException {
+		if (jgen instanceof TokenBuffer) {
+			// Doesn't support raw values - used when converting to trees.
+			jgen.writeNumber(Satoshi.toBigDecimal(satoshis));
+			return;
+		}
+		char[] chars = buffer.get();
+		jgen.writeRawValue(chars, 0, Satoshi.format(satoshis, chars, 0));
+	}
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.json;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+
+import dk.clanie.bitcoin.Sha256Hash;
+
+/**
+ * Deserializes Sha256Hashes from hex strings, parsing the digits directly
+ * from the parser's text buffer without creating a String.
+ * 
+ * @author Claus Nielsen
+ */
+public class Sha256HashDeserializer extends JsonDeserializer<Sha256Hash> {
+
+	@Override
+	public Sha256Hash deserialize(JsonParser jp, DeserializationContext ctxt)
+			throws IOException, JsonProcessingException {
+		if (jp.getCurrentToken() != JsonToken.VALUE_STRING) {
+			throw new JsonMappingException("Expected a hash in hex, got " + jp.getCurrentToken() + ".", jp.getCurrentLocation());
+		}
+		try {
+			return Sha256Hash.fromHex(jp.getTextCharacters(), jp.getTextOffset(), jp.getTextLength());
+		} catch (IllegalArgumentException e) {
+			throw new JsonMappingException(e.getMessage(), jp.getCurrentLocation(), e);
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.json;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import dk.clanie.bitcoin.Sha256Hash;
+
+/**
+ * Serializes Sha256Hashes as lower case hex strings, writing the digits from
+ * a char buffer reused per thread instead of creating a String.
+ * 
+ * @author Claus Nielsen
+ */
+public class Sha256HashSerializer extends JsonSerializer<Sha256Hash> {
+
+	private static final ThreadLocal<char[]> buffer = new ThreadLocal<char[]>() {
+		@Override
+		protected char[] initialValue() {
+			return new char[Sha256Hash.HEX_LENGTH];
+		}
+	};
+
+
+	@Override
+	public void serialize(Sha256Hash value, JsonGenerator jgen,
+			SerializerProvider provider) throws IOException,
+			JsonProcessingException {
+		char[] chars = buffer.get();
+		value.writeHex(chars, 0);
+		jgen.writeString(chars, 0, chars.length);
+	}
+
+}
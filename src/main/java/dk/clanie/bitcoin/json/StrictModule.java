@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.json;
+
+import com.fasterxml.jackson.core.Version;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerBuilder;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+
+/**
+ * Jackson module making deserializers of {@link JsonExtra} subclasses skip
+ * unknown fields instead of capturing them in otherFields.
+ * <p>
+ * Unknown fields are then neither deserialized nor stored, which saves
+ * time and memory for services that don't need responses to serialize back
+ * to the exact JSON they were read from.
+ * 
+ * @author Claus Nielsen
+ */
+public class StrictModule extends Module {
+
+	@Override
+	public String getModuleName() {
+		return "bitcoind-client-strict";
+	}
+
+
+	@Override
+	public Version version() {
+		return Version.unknownVersion();
+	}
+
+
+	@Override
+	public void setupModule(SetupContext context) {
+		context.addBeanDeserializerModifier(new BeanDeserializerModifier() {
+			@Override
+			public BeanDeserializerBuilder updateBuilder(DeserializationConfig config,
+					BeanDescription beanDesc, BeanDeserializerBuilder builder) {
+				if (JsonExtra.class.isAssignableFrom(beanDesc.getBeanClass())) {
+					builder.setAnySetter(null);
+					builder.setIgnoreUnknownProperties(true);
+				}
+				return builder;
+			}
+		});
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link AddressValidator}.
+ * 
+ * @author Claus Nielsen
+ */
+public class AddressValidatorTest {
+
+	private static final String MAIN_PUB_KEY_HASH = "1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNa";
+	private static final String MAIN_SCRIPT_HASH = "3J98t1WpEZ73CNmQviecrnyiWrnqRhWNLy";
+	private static final String TEST_PUB_KEY_HASH = "mipcBbFg9gMiCh81Kj8tqqdgoZub1ZJRfn";
+
+	private final AddressValidator mainValidator = new AddressValidator(Network.MAIN);
+	private final AddressValidator testValidator = new AddressValidator(Network.TEST);
+
+
+	@Test
+	public void testValidAddresses() throws Exception {
+		assertTrue(mainValidator.isValid(MAIN_PUB_KEY_HASH));
+		assertTrue(mainValidator.isValid(MAIN_SCRIPT_HASH));
+		assertTrue(testValidator.isValid(TEST_PUB_KEY_HASH));
+	}
+
+
+	@Test
+	public void testAddressesOfOtherNetworkAreInvalid() throws Exception {
+		assertThat(mainValidator.isValid(TEST_PUB_KEY_HASH), equalTo(false));
+		assertThat(testValidator.isValid(MAIN_PUB_KEY_HASH), equalTo(false));
+	}
+
+
+	@Test
+	public void testMalformedAddressesAreInvalid() throws Exception {
+		assertThat(mainValidator.isValid(null), equalTo(false));
+		assertThat(mainValidator.isValid(""), equalTo(false));
+		assertThat(mainValidator.isValid("1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNb"), equalTo(false));
+		assertThat(mainValidator.isValid("1A1zP1eP5QGefi2DMPTfTL5SLmv7Divf0a"), equalTo(false));
+		// Valid Base58Check, but not a 20 byte hash.
+		assertThat(mainValidator.isValid(Base58.encodeChecked(new byte[30])), equalTo(false));
+	}
+
+
+	@Test
+	public void testIsScriptHash() throws Exception {
+		assertTrue(mainValidator.isScriptHash(MAIN_SCRIPT_HASH));
+		assertThat(mainValidator.isScriptHash(MAIN_PUB_KEY_HASH), equalTo(false));
+	}
+
+
+	@Test
+	public void testValidateInParallelKeepsOrder() throws Exception {
+		List<String> addresses = new ArrayList<String>();
+		for (int i = 0; i < 3000; i++) addresses.add(i % 3 == 0 ? "invalid" : MAIN_PUB_KEY_HASH);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			boolean[] valid = mainValidator.validate(addresses, executor);
+			for (int i = 0; i < valid.length; i++) assertThat(valid[i], equalTo(i % 3 != 0));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+
+}
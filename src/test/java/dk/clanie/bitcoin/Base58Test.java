@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Base58}.
+ * 
+ * @author Claus Nielsen
+ */
+public class Base58Test {
+
+
+	@Test
+	public void testEncode() throws Exception {
+		assertThat(Base58.encode("hello world".getBytes("US-ASCII")), equalTo("StV1DL6CwTryKyV"));
+		assertThat(Base58.encode(new byte[] {0, 0, 0, 0x28, 0x7f, (byte) 0xb4, (byte) 0xcd}), equalTo("111233QC4"));
+		assertThat(Base58.encode(new byte[0]), equalTo(""));
+	}
+
+
+	@Test
+	public void testDecode() throws Exception {
+		assertThat(new String(Base58.decode("StV1DL6CwTryKyV"), "US-ASCII"), equalTo("hello world"));
+		assertThat(Arrays.equals(Base58.decode("111233QC4"), new byte[] {0, 0, 0, 0x28, 0x7f, (byte) 0xb4, (byte) 0xcd}), equalTo(true));
+	}
+
+
+	@Test
+	public void testDecodeRejectsCharactersOutsideAlphabet() throws Exception {
+		assertThat(Base58.decode("0OIl"), equalTo(null));
+		assertThat(Base58.decode("St\u00e6V1"), equalTo(null));
+	}
+
+
+	@Test
+	public void testCheckedRoundTrip() throws Exception {
+		byte[] payload = new byte[21];
+		for (int i = 0; i < payload.length; i++) payload[i] = (byte) (i * 13);
+		String encoded = Base58.encodeChecked(payload);
+		assertThat(Arrays.equals(Base58.decodeChecked(encoded), payload), equalTo(true));
+	}
+
+
+	@Test
+	public void testDecodeCheckedRejectsBadChecksum() throws Exception {
+		assertThat(Base58.decodeChecked("1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNa").length, equalTo(21));
+		assertThat(Base58.decodeChecked("1A1zP1eP5QGefi2DMPTfTL5SLmv7DivfNb"), equalTo(null));
+		assertThat(Base58.decodeChecked("1"), equalTo(null));
+	}
+
+
+}
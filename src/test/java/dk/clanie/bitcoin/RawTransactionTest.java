@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Tests parsing transactions with {@link RawTransaction}.
+ * 
+ * @author Claus Nielsen
+ */
+public class RawTransactionTest {
+
+	// Coinbase transaction of the genesis block.
+	private static final String GENESIS_COINBASE = "01000000010000000000000000000000000000000000000000000000000000000000000000ffffffff"
+			+ "4d04ffff001d0104455468652054696d65732030332f4a616e2f32303039204368616e63656c6c6f72206f6e206272696e6b206f66"
+			+ "207365636f6e64206261696c6f757420666f722062616e6b73ffffffff0100f2052a01000000434104678afdb0fe5548271967f1a6"
+			+ "7130b7105cd6a828e03909a67962e0ea1f61deb649f6bc3f4cef38c4f35504e51ec112de5c384df7ba0b8d578a4c702b6bf11d5fac"
+			+ "00000000";
+
+	// First transaction between addresses, in block 170.
+	private static final String BLOCK_170_TRANSFER = "0100000001c997a5e56e104102fa209c6a852dd90660a20b2d9c352423edce25857fcd3704000000"
+			+ "004847304402204e45e16932b8af514961a1d3a1a25fdf3f4f7732e9d624c6c61548ab5fb8cd410220181522ec8eca07de4860a4acdd"
+			+ "12909d831cc56cbbac4622082221a8768d1d0901ffffffff0200ca9a3b00000000434104ae1a62fe09c5f51b13905f07f06b99a2f715"
+			+ "9b2225f374cd378d71302fa28414e7aab37397f554a7df5f142c21c1b7303b8a0626f1baded5c72a704f7e6cd84cac00286bee000000"
+			+ "0043410411db93e1dcdb8a016b49840f8c53bc1eb68a382e97b1482ecad7b148a6909a5cb2e0eaddfb84ccf9744464f82e160bfa9b8b"
+			+ "64f9d4c03f999b8643f656b412a3ac00000000";
+
+
+	@Test
+	public void testParseCoinbase() throws Exception {
+		RawTransaction transaction = RawTransaction.parse(GENESIS_COINBASE);
+		assertThat(transaction.getTxId().toString(), equalTo("4a5e1e4baab89f3a32518a88c31bc87f618f76673e2cc77ab2127b7afdeda33b"));
+		assertTrue(transaction.isCoinbase());
+		assertThat(transaction.getSize(), equalTo(204));
+		assertThat(transaction.getVersion(), equalTo(1));
+		assertThat(transaction.getInputCount(), equalTo(1));
+		assertThat(transaction.getInputScript(0).remaining(), equalTo(77));
+		assertThat(transaction.getInputSequence(0), equalTo(0xffffffffL));
+		assertThat(transaction.getOutputCount(), equalTo(1));
+		assertThat(transaction.getOutputValue(0), equalTo(5000000000L));
+		assertThat(transaction.getOutputScript(0).remaining(), equalTo(67));
+		assertThat(transaction.getLockTime(), equalTo(0L));
+	}
+
+
+	@Test
+	public void testParseTransfer() throws Exception {
+		RawTransaction transaction = RawTransaction.parse(BLOCK_170_TRANSFER);
+		assertThat(transaction.getTxId().toString(), equalTo("f4184fc596403b9d638783cf57adfe4c75c605f6356fbc91338530e9831e9e16"));
+		assertThat(transaction.isCoinbase(), equalTo(false));
+		assertThat(transaction.getInputTxId(0).toString(), equalTo("0437cd7f8525ceed2324359c2d0ba26006d92d856a9c20fa0241106ee5a597c9"));
+		assertThat(transaction.getInputVout(0), equalTo(0L));
+		assertThat(transaction.getOutputCount(), equalTo(2));
+		assertThat(transaction.getOutputValue(0), equalTo(1000000000L));
+		assertThat(transaction.getOutputValue(1), equalTo(4000000000L));
+	}
+
+
+	@Test
+	public void testParseConsecutiveTransactions() throws Exception {
+		ByteBuffer buffer = ByteBuffer.wrap(Hex.decode(GENESIS_COINBASE + BLOCK_170_TRANSFER));
+		assertTrue(RawTransaction.parse(buffer).isCoinbase());
+		assertThat(RawTransaction.parse(buffer).getOutputCount(), equalTo(2));
+		assertThat(buffer.hasRemaining(), equalTo(false));
+	}
+
+
+	@Test
+	public void testMalformedTransactionsAreRejected() throws Exception {
+		String[] malformed = {
+				GENESIS_COINBASE.substring(0, GENESIS_COINBASE.length() - 2),
+				GENESIS_COINBASE + "00",
+				"01000000fd",
+				"01000000ffffffffffffffffff"};
+		for (String hex : malformed) {
+			try {
+				RawTransaction.parse(hex);
+				fail("Expected IllegalArgumentException for " + hex);
+			} catch (IllegalArgumentException e) {
+				// Expected.
+			}
+		}
+	}
+
+
+}
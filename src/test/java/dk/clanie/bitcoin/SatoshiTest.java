@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Satoshi}.
+ * 
+ * @author Claus Nielsen
+ */
+public class SatoshiTest {
+
+
+	@Test
+	public void testParse() throws Exception {
+		assertThat(Satoshi.parse("1"), equalTo(Satoshi.COIN));
+		assertThat(Satoshi.parse("0.00000001"), equalTo(1L));
+		assertThat(Satoshi.parse("-0.01000000"), equalTo(-1000000L));
+		assertThat(Satoshi.parse("+12.5"), equalTo(1250000000L));
+		assertThat(Satoshi.parse("0.10000000000"), equalTo(10000000L));
+		assertThat(Satoshi.parse("0E-8"), equalTo(0L));
+		assertThat(Satoshi.parse("0.0"), equalTo(0L));
+		assertThat(Satoshi.parse("1.0E-5"), equalTo(1000L));
+		assertThat(Satoshi.parse("2.1E7"), equalTo(21000000L * Satoshi.COIN));
+		assertThat(Satoshi.parse("92233720368.54775807"), equalTo(Long.MAX_VALUE));
+	}
+
+
+	@Test
+	public void testParseCharRange() throws Exception {
+		char[] chars = "{\"amount\":0.5,".toCharArray();
+		assertThat(Satoshi.parse(chars, 10, 3), equalTo(50000000L));
+	}
+
+
+	@Test
+	public void testParseRejectsInvalidAmounts() throws Exception {
+		for (String amount : new String[] {"", "-", ".", "1.2.3", "1e", "1e+", "abc", "1,5", "0x10"}) {
+			try {
+				Satoshi.parse(amount);
+				fail("Accepted \"" + amount + "\"");
+			} catch (NumberFormatException e) {
+				// expected
+			}
+		}
+	}
+
+
+	@Test
+	public void testParseRejectsInexactAmounts() throws Exception {
+		for (String amount : new String[] {"0.000000001", "1E-9", "92233720368.54775808", "1E20"}) {
+			try {
+				Satoshi.parse(amount);
+				fail("Accepted \"" + amount + "\"");
+			} catch (ArithmeticException e) {
+				// expected
+			}
+		}
+	}
+
+
+	@Test
+	public void testFormat() throws Exception {
+		assertThat(Satoshi.toString(0L), equalTo("0.00000000"));
+		assertThat(Satoshi.toString(1L), equalTo("0.00000001"));
+		assertThat(Satoshi.toString(-1000000L), equalTo("-0.01000000"));
+		assertThat(Satoshi.toString(21000000L * Satoshi.COIN), equalTo("21000000.00000000"));
+		assertThat(Satoshi.toString(Long.MAX_VALUE), equalTo("92233720368.54775807"));
+		assertThat(Satoshi.toString(Long.MIN_VALUE), equalTo("-92233720368.54775808"));
+
+		char[] dest = new char[2 + Satoshi.MAX_LENGTH];
+		int length = Satoshi.format(Long.MIN_VALUE, dest, 2);
+		assertThat(length, equalTo(Satoshi.MAX_LENGTH));
+		assertThat(new String(dest, 2, length), equalTo("-92233720368.54775808"));
+	}
+
+
+	@Test
+	public void testBigDecimalConversion() throws Exception {
+		assertThat(Satoshi.valueOf(new BigDecimal("0.01")), equalTo(1000000L));
+		assertThat(Satoshi.valueOf(new BigDecimal("0E-8")), equalTo(0L));
+		assertThat(Satoshi.toBigDecimal(1000000L), equalTo(new BigDecimal("0.01000000")));
+		try {
+			Satoshi.valueOf(new BigDecimal("0.000000001"));
+			fail();
+		} catch (ArithmeticException e) {
+			// expected
+		}
+	}
+
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link Sha256Hash}.
+ * 
+ * @author Claus Nielsen
+ */
+public class Sha256HashTest {
+
+	private static final String GENESIS = "000000000019d6689c085ae165831e934ff763ae46a2a6c172b3f1b60a8ce26f";
+
+
+	@Test
+	public void testValueOfAndToString() throws Exception {
+		assertThat(Sha256Hash.valueOf(GENESIS).toString(), equalTo(GENESIS));
+		assertThat(Sha256Hash.valueOf(GENESIS.toUpperCase()).toString(), equalTo(GENESIS));
+		assertThat(Sha256Hash.valueOf(null), equalTo(null));
+		assertThat(Sha256Hash.ZERO.toString(), equalTo("0000000000000000000000000000000000000000000000000000000000000000"));
+	}
+
+
+	@Test
+	public void testValueOfRejectsInvalidHex() throws Exception {
+		for (String hex : new String[] {"", GENESIS.substring(1), GENESIS + "0", GENESIS.substring(1) + "g"}) {
+			try {
+				Sha256Hash.valueOf(hex);
+				fail("Accepted " + hex);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+
+	@Test
+	public void testFromHex() throws Exception {
+		char[] chars = ("\"" + GENESIS + "\"").toCharArray();
+		assertThat(Sha256Hash.fromHex(chars, 1, 64), equalTo(Sha256Hash.valueOf(GENESIS)));
+	}
+
+
+	@Test
+	public void testBytes() throws Exception {
+		Sha256Hash hash = Sha256Hash.valueOf(GENESIS);
+		byte[] display = hash.getBytes(false);
+		byte[] internal = hash.getBytes(true);
+		assertThat(display[0], equalTo((byte) 0x00));
+		assertThat(display[31], equalTo((byte) 0x6f));
+		assertThat(internal[0], equalTo((byte) 0x6f));
+		assertThat(internal[31], equalTo((byte) 0x00));
+		assertThat(Sha256Hash.fromBytes(display), equalTo(hash));
+		assertThat(Sha256Hash.fromBytes(internal, 0, true), equalTo(hash));
+
+		byte[] padded = new byte[40];
+		System.arraycopy(internal, 0, padded, 4, 32);
+		assertThat(Sha256Hash.fromBytes(padded, 4, true), equalTo(hash));
+		assertThat(Sha256Hash.fromBytes(ByteBuffer.wrap(padded), 4, true), equalTo(hash));
+		assertTrue(Arrays.equals(Sha256Hash.fromBytes(padded, 4, false).getBytes(false), Arrays.copyOfRange(padded, 4, 36)));
+	}
+
+
+	@Test
+	public void testFromBytesRejectsShortInput() throws Exception {
+		try {
+			Sha256Hash.fromBytes(new byte[40], 10, false);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		try {
+			Sha256Hash.fromBytes(ByteBuffer.allocate(31), 0, true);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+
+	@Test
+	public void testEqualsAndHashCode() throws Exception {
+		Sha256Hash a = Sha256Hash.valueOf(GENESIS);
+		Sha256Hash b = Sha256Hash.valueOf(GENESIS.toUpperCase());
+		assertTrue(a.equals(b));
+		assertThat(a.hashCode(), equalTo(b.hashCode()));
+		assertTrue(!a.equals(Sha256Hash.ZERO));
+		assertTrue(!a.equals(GENESIS));
+		assertTrue(!a.equals(null));
+	}
+
+
+	@Test
+	public void testCompareToIsUnsigned() throws Exception {
+		Sha256Hash low = Sha256Hash.valueOf("7fffffffffffffffffffffffffffffffffffffffffffffffffffffffffffffff");
+		Sha256Hash high = Sha256Hash.valueOf("8000000000000000000000000000000000000000000000000000000000000000");
+		assertTrue(low.compareTo(high) < 0);
+		assertTrue(high.compareTo(low) > 0);
+		assertTrue(Sha256Hash.ZERO.compareTo(low) < 0);
+		assertThat(high.compareTo(Sha256Hash.valueOf(high.toString())), equalTo(0));
+	}
+
+
+}
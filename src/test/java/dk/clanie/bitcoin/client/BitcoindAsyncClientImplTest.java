@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.concurrent.BasicFuture;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.nio.client.HttpAsyncClient;
+import org.junit.Test;
+
+import dk.clanie.bitcoin.client.response.LongResponse;
+
+/**
+ * Tests {@link BitcoindAsyncClientImpl} against an HttpAsyncClient which
+ * leaves requests in flight until the test completes them.
+ * 
+ * @author Claus Nielsen
+ */
+public class BitcoindAsyncClientImplTest {
+
+	private final List<HttpFuture> requests = new CopyOnWriteArrayList<HttpFuture>();
+
+
+	@Test
+	public void testRequestsBeyondMaxInFlightAreQueued() throws Exception {
+		BitcoindAsyncClientImpl client = client(2);
+		BitcoindFuture<LongResponse> first = client.getBlockCount();
+		client.getBlockCount();
+		BitcoindFuture<LongResponse> third = client.getBlockCount();
+		assertThat(requests.size(), equalTo(2));
+
+		requests.get(0).completed(response("{\"result\":100,\"error\":null,\"id\":null}"));
+		assertThat(first.get().getResult(), equalTo(100L));
+		assertThat(requests.size(), equalTo(3));
+
+		requests.get(2).completed(response("{\"result\":101,\"error\":null,\"id\":null}"));
+		assertThat(third.get().getResult(), equalTo(101L));
+	}
+
+
+	@Test
+	public void testCancellingCancelsRequestAndFreesPermit() throws Exception {
+		BitcoindAsyncClientImpl client = client(1);
+		BitcoindFuture<LongResponse> future = client.getBlockCount();
+		BitcoindFuture<LongResponse> queued = client.getBlockCount();
+		assertThat(requests.size(), equalTo(1));
+
+		assertTrue(future.cancel(false));
+		assertTrue(future.isCancelled());
+		assertTrue(requests.get(0).isCancelled());
+		assertThat(requests.get(0).mayInterruptIfRunning, equalTo(false));
+
+		// The next call is sent on the permit released by the cancelled one.
+		assertThat(requests.size(), equalTo(2));
+		requests.get(1).completed(response("{\"result\":100,\"error\":null,\"id\":null}"));
+		assertThat(queued.get().getResult(), equalTo(100L));
+	}
+
+
+	@Test
+	public void testQueuedCallsCancelledBeforeSendingAreNotSent() throws Exception {
+		BitcoindAsyncClientImpl client = client(1);
+		client.getBlockCount();
+		client.getBlockCount().cancel(true);
+
+		requests.get(0).completed(response("{\"result\":100,\"error\":null,\"id\":null}"));
+		assertThat(requests.size(), equalTo(1));
+	}
+
+
+	/**
+	 * Creates a client completing futures on the thread completing the
+	 * request.
+	 */
+	private BitcoindAsyncClientImpl client(int maxInFlightRequests) {
+		HttpAsyncClient httpClient = (HttpAsyncClient) Proxy.newProxyInstance(HttpAsyncClient.class.getClassLoader(),
+				new Class<?>[] {HttpAsyncClient.class}, new InvocationHandler() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if (!method.getName().equals("execute") || args.length != 2) throw new UnsupportedOperationException(method.getName());
+				HttpFuture request = new HttpFuture((FutureCallback<HttpResponse>) args[1]);
+				requests.add(request);
+				return request;
+			}
+		});
+		BitcoindAsyncClientImpl client = new BitcoindAsyncClientImpl(httpClient, maxInFlightRequests, new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+		client.setUrl("http://localhost:18332");
+		return client;
+	}
+
+
+	private static HttpResponse response(String body) throws Exception {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, 200, "OK");
+		response.setEntity(new StringEntity(body));
+		return response;
+	}
+
+
+	/**
+	 * A request in flight, recording how it was cancelled.
+	 */
+	private static class HttpFuture extends BasicFuture<HttpResponse> {
+
+		private volatile Boolean mayInterruptIfRunning;
+
+		private HttpFuture(FutureCallback<HttpResponse> callback) {
+			super(callback);
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			this.mayInterruptIfRunning = mayInterruptIfRunning;
+			return super.cancel(mayInterruptIfRunning);
+		}
+
+	}
+
+
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import dk.clanie.bitcoin.client.response.BigDecimalResponse;
+import dk.clanie.bitcoin.client.response.StringResponse;
+import dk.clanie.bitcoin.exception.BitcoinException;
+import dk.clanie.bitcoin.exception.server.InvalidAddressException;
+
+/**
+ * Tests completing the calls in a {@link BitcoindBatch} from a batch response.
+ * 
+ * @author Claus Nielsen
+ */
+public class BitcoindBatchTest {
+
+	private final BitcoindJsonRpcCodec codec = new BitcoindJsonRpcCodec();
+
+
+	@Test
+	public void testResponsesAreMatchedById() throws Exception {
+		BitcoindBatch batch = new BitcoindBatch();
+		BitcoindBatch.Call<StringResponse> first = batch.add("getblockhash", Arrays.asList(1), StringResponse.class);
+		BitcoindBatch.Call<StringResponse> second = batch.add("getblockhash", Arrays.asList(2), StringResponse.class);
+		batch.complete(bytes("[{\"result\":\"two\",\"error\":null,\"id\":\"2\"},"
+				+ "{\"result\":\"other\",\"error\":null,\"id\":\"99\"},"
+				+ "{\"result\":\"one\",\"error\":null,\"id\":1}]"), codec);
+		batch.markExecuted();
+		assertThat(first.getResponse().getResult(), equalTo("one"));
+		assertThat(second.getResponse().getResult(), equalTo("two"));
+	}
+
+
+	@Test
+	public void testAmountsAreParsedExactly() throws Exception {
+		BitcoindBatch batch = new BitcoindBatch();
+		BitcoindBatch.Call<BigDecimalResponse> large = batch.add("getbalance", Arrays.asList("a"), BigDecimalResponse.class);
+		BitcoindBatch.Call<BigDecimalResponse> small = batch.add("getbalance", Arrays.asList("b"), BigDecimalResponse.class);
+		batch.complete(bytes("[{\"result\":1234567890.12345678,\"error\":null,\"id\":\"1\"},"
+				+ "{\"result\":0.00010000,\"error\":null,\"id\":\"2\"}]"), codec);
+		assertThat(large.getResponse().getResult(), equalTo(new BigDecimal("1234567890.12345678")));
+		assertThat(small.getResponse().getResult(), equalTo(new BigDecimal("0.00010000")));
+	}
+
+
+	@Test
+	public void testErrorResponseFailsOnlyItsCall() throws Exception {
+		BitcoindBatch batch = new BitcoindBatch();
+		BitcoindBatch.Call<StringResponse> unknown = batch.add("getrawtransaction", Arrays.asList("00"), StringResponse.class);
+		BitcoindBatch.Call<StringResponse> known = batch.add("getblockhash", Arrays.asList(0), StringResponse.class);
+		batch.complete(bytes("[{\"result\":null,\"error\":{\"code\":-5,\"message\":\"No information available about transaction\"},\"id\":\"1\"},"
+				+ "{\"result\":\"genesis\",\"error\":null,\"id\":\"2\"}]"), codec);
+		batch.markExecuted();
+		assertThat(unknown.getException(), instanceOf(InvalidAddressException.class));
+		assertThat(unknown.getException().getErrorCode(), equalTo(-5));
+		assertThat(known.getResponse().getResult(), equalTo("genesis"));
+	}
+
+
+	@Test
+	public void testCallWithoutResponseFails() throws Exception {
+		BitcoindBatch batch = new BitcoindBatch();
+		BitcoindBatch.Call<StringResponse> answered = batch.add("getblockhash", Arrays.asList(0), StringResponse.class);
+		BitcoindBatch.Call<StringResponse> unanswered = batch.add("getblockhash", Arrays.asList(1), StringResponse.class);
+		batch.complete(bytes("[{\"result\":\"genesis\",\"error\":null,\"id\":\"1\"}]"), codec);
+		batch.markExecuted();
+		assertTrue(answered.isSuccess());
+		try {
+			unanswered.getResponse();
+			fail("Expected BitcoinException.");
+		} catch (BitcoinException e) {
+			assertThat(e.getMessage(), equalTo("No response received for request with id 2."));
+		}
+	}
+
+
+	@Test(expected = IllegalStateException.class)
+	public void testExecutedBatchCannotBeExtended() throws Exception {
+		BitcoindBatch batch = new BitcoindBatch();
+		batch.markExecuted();
+		batch.add("getblockcount", Arrays.asList(), StringResponse.class);
+	}
+
+
+	@Test
+	public void testReadOnly() throws Exception {
+		BitcoindBatch batch = new BitcoindBatch();
+		batch.add("getblockcount", Arrays.asList(), StringResponse.class);
+		assertTrue(batch.isReadOnly());
+		batch.add("sendtoaddress", Arrays.asList("address", 1), StringResponse.class);
+		assertTrue(!batch.isReadOnly());
+	}
+
+
+	@Test
+	public void testIdempotent() throws Exception {
+		BitcoindBatch batch = new BitcoindBatch();
+		batch.add("getblockhash", Arrays.asList(1), StringResponse.class);
+		batch.add("getbalance", Arrays.asList(), BigDecimalResponse.class);
+		assertTrue(batch.isIdempotent());
+		batch.add("sendtoaddress", Arrays.asList("address", 1), StringResponse.class);
+		assertTrue(!batch.isIdempotent());
+	}
+
+
+	@Test
+	public void testNodeIndependent() throws Exception {
+		BitcoindBatch batch = new BitcoindBatch();
+		batch.add("getblockhash", Arrays.asList(1), StringResponse.class);
+		assertTrue(batch.isNodeIndependent());
+		batch.add("getbalance", Arrays.asList(), BigDecimalResponse.class);
+		assertTrue(batch.isReadOnly());
+		assertTrue(!batch.isNodeIndependent());
+	}
+
+
+	private static byte[] bytes(String json) {
+		return json.getBytes(Charset.forName("UTF-8"));
+	}
+
+
+}
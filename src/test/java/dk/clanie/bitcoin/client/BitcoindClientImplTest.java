@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseExtractor;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dk.clanie.bitcoin.Network;
+import dk.clanie.bitcoin.TransactionOutputRef;
+import dk.clanie.bitcoin.client.cache.BlockCache;
+import dk.clanie.bitcoin.client.cache.TipScopedCache;
+import dk.clanie.bitcoin.client.cache.TipWatcher;
+import dk.clanie.bitcoin.client.cache.TransactionCache;
+import dk.clanie.bitcoin.exception.client.MethodNotFoundException;
+import dk.clanie.bitcoin.exception.server.BitcoinServerException;
+
+/**
+ * Tests {@link BitcoindClientImpl} against a RestTemplate answering each
+ * method with a fixed result.
+ * 
+ * @author Claus Nielsen
+ */
+public class BitcoindClientImplTest {
+
+	private static final String TX_ID = "4a5e1e4baab89f3a32518a88c31bc87f618f76673e2cc77ab2127b7afdeda33b";
+	private static final String BLOCK_HASH = "000000000019d6689c085ae165831e934ff763ae46a2a6c172b3f1b60a8ce26f";
+	private static final String BLOCK_HASH_171 = "00000000d1145790a8694403d4063f323d499e655c83426834d4ce2f8dd4a2ee";
+
+	private final BitcoindClientImpl client = new BitcoindClientImpl();
+	private final Map<String, String> results = new HashMap<String, String>();
+	private final List<String> calls = new ArrayList<String>();
+
+
+	@Before
+	public void setUp() throws Exception {
+		final ObjectMapper objectMapper = new ObjectMapper();
+		ReflectionTestUtils.setField(client, "restTemplate", new RestTemplate() {
+			@Override
+			public <T> T execute(String url, HttpMethod method, RequestCallback requestCallback,
+					ResponseExtractor<T> responseExtractor, Object... urlVariables) {
+				try {
+					FakeClientHttpRequest request = new FakeClientHttpRequest(method, URI.create(url), null);
+					requestCallback.doWithRequest(request);
+					String rpcMethod = objectMapper.readTree(request.getBodyAsBytes()).get("method").asText();
+					calls.add(rpcMethod);
+					String result = results.containsKey(rpcMethod) ? results.get(rpcMethod) : "null";
+					return responseExtractor.extractData(new FakeClientHttpResponse(HttpStatus.OK,
+							"{\"result\":" + result + ",\"error\":null,\"id\":null}"));
+				} catch (IOException e) {
+					throw new ResourceAccessException(e.getMessage(), e);
+				}
+			}
+		});
+		client.setUrl("http://localhost:18332");
+	}
+
+
+	@Test
+	public void testStreamingCallsAreCachedByMethodAndParameters() throws Exception {
+		TipScopedCache tipScopedCache = new TipScopedCache();
+		tipScopedCache.enable("gettxout");
+		client.setTipScopedCache(tipScopedCache);
+		results.put("gettxout", "{\"bestblock\":\"" + BLOCK_HASH + "\",\"confirmations\":7}");
+
+		client.getTxOut("a3c9", 0, null);
+		client.getTxOut("a3c9", 0, true);
+		assertThat(calls.size(), equalTo(1));
+
+		client.getTxOut("a3c9", 1, null);
+		client.getTxOut("b7e2", 0, null);
+		assertThat(calls.size(), equalTo(3));
+		assertThat(tipScopedCache.getHits(), equalTo(1L));
+	}
+
+
+	@Test
+	public void testCallsWithArrayParametersAreCachedByContent() throws Exception {
+		TipScopedCache tipScopedCache = new TipScopedCache();
+		tipScopedCache.enable("listunspent");
+		client.setTipScopedCache(tipScopedCache);
+		results.put("listunspent", "[]");
+
+		client.listUnspent(1, null, "addr1", "addr2");
+		client.listUnspent(1, null, "addr1", "addr2");
+		assertThat(calls.size(), equalTo(1));
+
+		client.listUnspent(1, null, "addr1");
+		assertThat(calls.size(), equalTo(2));
+	}
+
+
+	@Test
+	public void testCallsIncludingUnconfirmedTransactionsAreNotCached() throws Exception {
+		TipScopedCache tipScopedCache = new TipScopedCache();
+		tipScopedCache.enable("getbalance");
+		tipScopedCache.enable("listunspent");
+		client.setTipScopedCache(tipScopedCache);
+		results.put("getbalance", "1.5");
+		results.put("listunspent", "[]");
+
+		client.getBalance(null, 0);
+		client.getBalance(null, 0);
+		client.listUnspent(0, null);
+		client.listUnspent(0, null);
+		assertThat(calls.size(), equalTo(4));
+		assertThat(tipScopedCache.size(), equalTo(0));
+
+		client.getBalance(null, 1);
+		client.getBalance(null, 1);
+		assertThat(calls.size(), equalTo(5));
+	}
+
+
+	@Test
+	public void testCallsWhichMayChangeTheWalletInvalidateCache() throws Exception {
+		TipScopedCache tipScopedCache = new TipScopedCache();
+		tipScopedCache.enable("getbalance");
+		client.setTipScopedCache(tipScopedCache);
+		results.put("getbalance", "1.5");
+
+		client.getBalance(null, null);
+		client.getAccount("addr1");
+		client.getBalance(null, null);
+		assertThat(calls, equalTo(Arrays.asList("getbalance", "getaccount")));
+
+		client.walletLock();
+		client.getBalance(null, null);
+		assertThat(calls, equalTo(Arrays.asList("getbalance", "getaccount", "walletlock", "getbalance")));
+		assertThat(tipScopedCache.getInvalidations(), equalTo(1L));
+	}
+
+
+	@Test
+	public void testCallsAreMadeWithoutKeys() throws Exception {
+		client.getTxOut("a3c9", 0, null);
+		client.getTxOut("a3c9", 0, null);
+		assertThat(calls.size(), equalTo(2));
+	}
+
+
+	@Test
+	public void testCachedBlocksAreReturnedWithoutCallsWhenTipIsWatched() throws Exception {
+		BlockCache blockCache = new BlockCache(1000000);
+		client.setBlockCache(blockCache);
+		client.setMaxTipAge(0);
+		client.registerWith(new TipWatcher(client, 0));
+		results.put("getblock", "{\"hash\":\"" + BLOCK_HASH + "\",\"height\":170,\"confirmations\":10,\"nextblockhash\":\"" + BLOCK_HASH_171 + "\"}");
+		results.put("getblockcount", "179");
+
+		client.getBlock(BLOCK_HASH);
+		client.getBlock(BLOCK_HASH);
+		client.getBlock(BLOCK_HASH);
+		assertThat(calls, equalTo(Arrays.asList("getblock", "getblockcount")));
+		assertThat(client.getBlock(BLOCK_HASH).getResult().getConfirmations(), equalTo(10));
+	}
+
+
+	@Test
+	public void testCachedTransactionHeightIsLookedUpByBlockHash() throws Exception {
+		TransactionCache transactionCache = new TransactionCache(1000000);
+		client.setTransactionCache(transactionCache);
+		results.put("getrawtransaction", "{\"hex\":\"01000000\",\"txid\":\"" + TX_ID + "\",\"blockhash\":\"" + BLOCK_HASH
+				+ "\",\"confirmations\":10}");
+		results.put("getblock", "{\"hash\":\"" + BLOCK_HASH + "\",\"height\":170,\"confirmations\":10}");
+
+		client.getRawTransaction_verbose(TX_ID);
+		assertThat(calls, equalTo(Arrays.asList("getrawtransaction", "getblock")));
+		assertThat(transactionCache.get(TX_ID).getBlockHeight(), equalTo(170L));
+	}
+
+
+	@Test
+	public void testLocalDecodeFailureMatchesBitcoind() throws Exception {
+		client.setRawTransactionDecoder(new RawTransactionDecoder(Network.MAIN));
+		try {
+			client.decodeRawTransaction("01000000fd");
+			fail("Expected BitcoinServerException");
+		} catch (BitcoinServerException e) {
+			assertThat(e.getErrorCode(), equalTo(-22));
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		assertThat(calls.size(), equalTo(0));
+	}
+
+
+	@Test
+	public void testUnsupportedMethodsFailLocally() throws Exception {
+		results.put("help", new ObjectMapper().writeValueAsString(ServerCapabilitiesTest.HELP_0_7));
+		results.put("getinfo", "{\"version\":70200,\"protocolversion\":60002,\"testnet\":false}");
+		results.put("getblockcount", "170");
+		client.setProbeCapabilities(true);
+
+		try {
+			client.lockUnspent(false, new TransactionOutputRef[] {new TransactionOutputRef(TX_ID, 0)});
+			fail("Expected MethodNotFoundException");
+		} catch (MethodNotFoundException e) {
+			assertThat(e.getErrorCode(), equalTo(-32601));
+		}
+		assertThat(calls, equalTo(Arrays.asList("help", "getinfo")));
+		assertThat(client.getCapabilities().getVersion(), equalTo(70200));
+
+		client.getBlockCount();
+		assertThat(calls, equalTo(Arrays.asList("help", "getinfo", "getblockcount")));
+	}
+
+
+	@Test
+	public void testFailedProbeIsNotRetriedImmediately() throws Exception {
+		results.put("getblockcount", "170");
+		client.setProbeCapabilities(true);
+
+		// getinfo answers null, so the probe fails and the calls are unchecked.
+		client.getBlockCount();
+		client.getBlockCount();
+		assertThat(calls, equalTo(Arrays.asList("help", "getinfo", "getblockcount", "getblockcount")));
+		assertNull(client.getCapabilities());
+	}
+
+
+}
@@ -18,6 +18,9 @@
 package dk.clanie.bitcoin.client;
 
 import static dk.clanie.collections.CollectionFactory.newArrayList;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertThat;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
@@ -66,6 +69,8 @@ import dk.clanie.bitcoin.client.response.StringArrayResponse;
 import dk.clanie.bitcoin.client.response.StringResponse;
 import dk.clanie.bitcoin.client.response.ValidateAddressResponse;
 import dk.clanie.bitcoin.client.response.VoidResponse;
+import dk.clanie.bitcoin.exception.BitcoinException;
+import dk.clanie.bitcoin.exception.server.InvalidAddressException;
 
 
 /**
@@ -159,6 +164,21 @@ public class BitcoindClientIntegrationTest {
 	}
 
 
+	@Test
+	public void testExecuteBatch() throws Exception {
+		BitcoindBatch batch = new BitcoindBatch();
+		BitcoindBatch.Call<StringResponse> rawTransaction = batch.add("getrawtransaction", Arrays.asList("9922eee42642f603ffeb28575de81972ebd9defc2d44e74a45066ef4a47692be"), StringResponse.class);
+		BitcoindBatch.Call<ValidateAddressResponse> validateAddress = batch.add("validateaddress", Arrays.asList("mj3QxNUyp4Ry2pbbP19tznUAAPqFvDbRFq"), ValidateAddressResponse.class);
+		BitcoindBatch.Call<StringResponse> unknownTransaction = batch.add("getrawtransaction", Arrays.asList("0000000000000000000000000000000000000000000000000000000000000000"), StringResponse.class);
+		bc.executeBatch(batch);
+		print(rawTransaction.getResponse());
+		print(validateAddress.getResponse());
+		BitcoinException exception = unknownTransaction.getException();
+		assertThat(exception, instanceOf(InvalidAddressException.class));
+		assertThat(exception.getErrorCode(), equalTo(-5));
+	}
+
+
 	@Test
 	public void testGetAccount() throws Exception {
 		StringResponse getAccountResponse = bc.getAccount("mof5U4zusfjigWYwwjf6c88Qn77KEafStx");
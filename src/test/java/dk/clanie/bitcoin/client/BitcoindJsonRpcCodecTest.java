@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import org.apache.http.conn.ConnectionReleaseTrigger;
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+
+import dk.clanie.bitcoin.client.response.TransactionData;
+
+/**
+ * Tests {@link BitcoindJsonRpcCodec}.
+ * 
+ * @author Claus Nielsen
+ */
+public class BitcoindJsonRpcCodecTest {
+
+	private final BitcoindJsonRpcCodec codec = new BitcoindJsonRpcCodec();
+
+
+	@Test
+	public void testAbortsConnectionWhenConsumerGivesUp() throws Exception {
+		AbortableStream body = new AbortableStream("{\"result\":{\"transactions\":[{},{},{}],\"lastblock\":null},\"error\":null,\"id\":null}");
+		try {
+			codec.transactionDataExtractor(new TransactionDataConsumer() {
+				@Override
+				public void accept(TransactionData transactionData) {
+					throw new IllegalStateException("Enough");
+				}
+			}).extractData(new FakeClientHttpResponse(HttpStatus.OK, body));
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// Expected.
+		}
+		assertTrue(body.aborted);
+	}
+
+
+	@Test
+	public void testStreamsTransactionsAndLastBlock() throws Exception {
+		String lastBlock = "000000000000000a5a9cf5a6a7e1a5d3f3a10dd1b2d1e4e7e2c7a3bfa3a2b1c0";
+		AbortableStream body = new AbortableStream("{\"result\":{\"transactions\":[{},{}],\"lastblock\":\"" + lastBlock + "\"},\"error\":null,\"id\":null}");
+		final int[] count = new int[1];
+		Object result = codec.transactionDataExtractor(new TransactionDataConsumer() {
+			@Override
+			public void accept(TransactionData transactionData) {
+				count[0]++;
+			}
+		}).extractData(new FakeClientHttpResponse(HttpStatus.OK, body));
+		assertThat(result.toString(), equalTo(lastBlock));
+		assertThat(count[0], equalTo(2));
+		assertThat(body.aborted, equalTo(false));
+	}
+
+
+	/**
+	 * Response body recording whether the connection was aborted.
+	 */
+	private static class AbortableStream extends ByteArrayInputStream implements ConnectionReleaseTrigger {
+
+		private boolean aborted = false;
+
+		private AbortableStream(String content) throws IOException {
+			super(content.getBytes("UTF-8"));
+		}
+
+		@Override
+		public void releaseConnection() {
+		}
+
+		@Override
+		public void abortConnection() {
+			aborted = true;
+		}
+
+	}
+
+
+}
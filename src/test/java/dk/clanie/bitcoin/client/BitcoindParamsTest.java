@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dk.clanie.bitcoin.AddressAndAmount;
+
+/**
+ * Tests building parameter lists with {@link BitcoindParams}.
+ * 
+ * @author Claus Nielsen
+ */
+public class BitcoindParamsTest {
+
+	@Test
+	public void testOptionalParametersAreOmitted() throws Exception {
+		assertThat(BitcoindParams.getBalance(null, null), equalTo(params()));
+		assertThat(BitcoindParams.getBalance(null, 6), equalTo(params(null, 6)));
+		assertThat(BitcoindParams.help(null), equalTo(params()));
+		assertThat(BitcoindParams.listSinceBlock("hash", null), equalTo(params("hash")));
+	}
+
+
+	@Test
+	public void testDefaultsAreFilledIn() throws Exception {
+		assertThat(BitcoindParams.listTransactions(null, null, null), equalTo(params(null, 10, 0)));
+		assertThat(BitcoindParams.getTxOut("txid", 1, null), equalTo(params("txid", 1, true)));
+		assertThat(BitcoindParams.listReceivedByAccount(null, null), equalTo(params(1, false)));
+		assertThat(BitcoindParams.listReceivedByAddress(0, true), equalTo(params(0, true)));
+	}
+
+
+	@Test
+	public void testCommentIsSentWhenOnlyCommentToIsGiven() throws Exception {
+		List<Object> params = BitcoindParams.sendToAddress("address", BigDecimal.ONE, null, "to");
+		assertThat(params, equalTo(params("address", new BigDecimal("1.00000000"), null, "to")));
+	}
+
+
+	@Test
+	public void testRecipientsAreWrittenInBitcoinsAddedUpPerAddress() throws Exception {
+		Recipients recipients = new Recipients(new AddressAndAmount[] {
+				new AddressAndAmount("a", new BigDecimal("0.1")),
+				new AddressAndAmount("b", 2500000000L),
+				new AddressAndAmount("a", 1L)});
+		assertThat(new ObjectMapper().writeValueAsString(recipients), equalTo("{\"a\":0.10000001,\"b\":25.00000000}"));
+	}
+
+
+	@Test
+	public void testCallKeysCompareArrayParametersByContent() throws Exception {
+		Object key = BitcoindParams.callKey("listunspent", BitcoindParams.listUnspent(1, null, "a", "b"), Object.class);
+		assertThat(key, equalTo(BitcoindParams.callKey("listunspent", BitcoindParams.listUnspent(1, null, "a", "b"), Object.class)));
+		assertThat(key.hashCode(), equalTo(BitcoindParams.callKey("listunspent", BitcoindParams.listUnspent(1, null, "a", "b"), Object.class).hashCode()));
+		assertThat(key.equals(BitcoindParams.callKey("listunspent", BitcoindParams.listUnspent(1, null, "a"), Object.class)), equalTo(false));
+	}
+
+
+	@Test
+	public void testMinConfZeroIncludesUnconfirmed() throws Exception {
+		assertThat(BitcoindParams.includesUnconfirmed("getbalance", BitcoindParams.getBalance(null, 0)), equalTo(true));
+		assertThat(BitcoindParams.includesUnconfirmed("getbalance", BitcoindParams.getBalance(null, null)), equalTo(false));
+		assertThat(BitcoindParams.includesUnconfirmed("listunspent", BitcoindParams.listUnspent(0, null)), equalTo(true));
+		assertThat(BitcoindParams.includesUnconfirmed("listunspent", BitcoindParams.listUnspent(null, null)), equalTo(false));
+		assertThat(BitcoindParams.includesUnconfirmed("getdifficulty", params()), equalTo(false));
+	}
+
+
+	private static List<Object> params(Object ... params) {
+		return Arrays.asList(params);
+	}
+
+
+}
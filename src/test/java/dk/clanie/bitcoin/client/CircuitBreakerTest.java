@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import org.junit.Test;
+import org.springframework.web.client.ResourceAccessException;
+
+import com.fasterxml.jackson.core.JsonParseException;
+
+import dk.clanie.bitcoin.exception.BitcoinException;
+import dk.clanie.bitcoin.exception.BitcoinHttpException;
+import dk.clanie.bitcoin.exception.CircuitOpenException;
+
+/**
+ * Tests {@link CircuitBreaker}.
+ * 
+ * @author Claus Nielsen
+ */
+public class CircuitBreakerTest {
+
+	@Test
+	public void testOpensAfterConsecutiveFailures() throws Exception {
+		CircuitBreaker circuitBreaker = new CircuitBreaker();
+		circuitBreaker.setFailureThreshold(2);
+		circuitBreaker.acquire();
+		circuitBreaker.onFailure();
+		circuitBreaker.acquire();
+		circuitBreaker.onSuccess();
+		circuitBreaker.acquire();
+		circuitBreaker.onFailure();
+		assertTrue(circuitBreaker.isClosed());
+		circuitBreaker.acquire();
+		circuitBreaker.onFailure();
+		assertThat(circuitBreaker.isClosed(), equalTo(false));
+		try {
+			circuitBreaker.acquire();
+			fail("Circuit should be open.");
+		} catch (CircuitOpenException e) {
+			// expected
+		}
+	}
+
+
+	@Test
+	public void testSingleTrialCallAfterOpenTime() throws Exception {
+		CircuitBreaker circuitBreaker = new CircuitBreaker();
+		circuitBreaker.setFailureThreshold(1);
+		circuitBreaker.setOpenTime(0);
+		circuitBreaker.acquire();
+		circuitBreaker.onFailure();
+		circuitBreaker.acquire(); // trial call
+		try {
+			circuitBreaker.acquire();
+			fail("Only one trial call should be let through.");
+		} catch (CircuitOpenException e) {
+			// expected
+		}
+		circuitBreaker.onSuccess();
+		assertTrue(circuitBreaker.isClosed());
+		circuitBreaker.acquire();
+	}
+
+
+	@Test
+	public void testOnlyConnectionTimeoutAndServerErrorsAreNodeFailures() throws Exception {
+		assertTrue(CircuitBreaker.isNodeFailure(new ResourceAccessException("I/O error", new ConnectException())));
+		assertTrue(CircuitBreaker.isNodeFailure(new ResourceAccessException("I/O error", new SocketTimeoutException())));
+		assertTrue(CircuitBreaker.isNodeFailure(new BitcoinHttpException(503, "Service Unavailable")));
+		assertThat(CircuitBreaker.isNodeFailure(new ResourceAccessException("I/O error", new JsonParseException("Unexpected character", null))), equalTo(false));
+		assertThat(CircuitBreaker.isNodeFailure(new ResourceAccessException("I/O error", new IOException())), equalTo(false));
+		assertThat(CircuitBreaker.isNodeFailure(new BitcoinHttpException(401, "Unauthorized")), equalTo(false));
+		assertThat(CircuitBreaker.isNodeFailure(new BitcoinException("Parsing batch response failed.")), equalTo(false));
+		assertThat(CircuitBreaker.isNodeFailure(new CircuitOpenException("Circuit open.")), equalTo(false));
+	}
+
+
+}
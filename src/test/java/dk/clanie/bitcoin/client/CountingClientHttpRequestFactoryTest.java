@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.FileCopyUtils;
+
+import dk.clanie.bitcoin.client.CountingClientHttpRequestFactory.ByteCount;
+
+/**
+ * Tests counting bytes with {@link CountingClientHttpRequestFactory}.
+ * 
+ * @author Claus Nielsen
+ */
+public class CountingClientHttpRequestFactoryTest {
+
+	private static final URI URL = URI.create("http://localhost:8332");
+
+
+	@Test
+	public void testCountsRequestAndResponseBytes() throws Exception {
+		CountingClientHttpRequestFactory factory = new CountingClientHttpRequestFactory(new FakeFactory(HttpStatus.OK, "{\"result\":1}"));
+		ClientHttpRequest request = factory.createRequest(URL, HttpMethod.POST);
+		request.getBody().write("{\"method\":\"getblockcount\"}".getBytes("UTF-8"));
+		ClientHttpResponse response = request.execute();
+		FileCopyUtils.copyToByteArray(response.getBody());
+
+		ByteCount byteCount = CountingClientHttpRequestFactory.getByteCount(request);
+		assertThat(byteCount.getRequestBytes(), equalTo(26L));
+		assertThat(byteCount.getResponseBytes(), equalTo(12L));
+	}
+
+
+	@Test
+	public void testCountsEachRequestSeparately() throws Exception {
+		CountingClientHttpRequestFactory factory = new CountingClientHttpRequestFactory(new FakeFactory(HttpStatus.OK, "{\"result\":1}"));
+		ClientHttpRequest outer = factory.createRequest(URL, HttpMethod.POST);
+		outer.getBody().write(new byte[10]);
+		InputStream outerBody = outer.execute().getBody();
+		outerBody.read(new byte[5]);
+
+		// Another call made while the first response is being read.
+		ClientHttpRequest inner = factory.createRequest(URL, HttpMethod.POST);
+		inner.getBody().write(new byte[3]);
+		FileCopyUtils.copyToByteArray(inner.execute().getBody());
+
+		outerBody.read(new byte[7]);
+		assertThat(CountingClientHttpRequestFactory.getByteCount(outer).getRequestBytes(), equalTo(10L));
+		assertThat(CountingClientHttpRequestFactory.getByteCount(outer).getResponseBytes(), equalTo(12L));
+		assertThat(CountingClientHttpRequestFactory.getByteCount(inner).getRequestBytes(), equalTo(3L));
+		assertThat(CountingClientHttpRequestFactory.getByteCount(inner).getResponseBytes(), equalTo(12L));
+	}
+
+
+	@Test
+	public void testCountsErrorResponseBytes() throws Exception {
+		String error = "{\"result\":null,\"error\":{\"code\":-8,\"message\":\"Block height out of range\"},\"id\":null}";
+		CountingClientHttpRequestFactory factory = new CountingClientHttpRequestFactory(new FakeFactory(HttpStatus.INTERNAL_SERVER_ERROR, error));
+		ClientHttpRequest request = factory.createRequest(URL, HttpMethod.POST);
+		ClientHttpResponse response = request.execute();
+		BitcoindJsonRpcErrorHandler.parseErrorResponse(response.getBody(), 500, "Internal Server Error");
+		assertTrue(CountingClientHttpRequestFactory.getByteCount(request).getResponseBytes() > 0);
+	}
+
+
+	@Test
+	public void testRequestsFromOtherFactoriesAreNotCounted() throws Exception {
+		ClientHttpRequest request = new FakeFactory(HttpStatus.OK, "").createRequest(URL, HttpMethod.POST);
+		assertThat(CountingClientHttpRequestFactory.getByteCount(request), equalTo(null));
+	}
+
+
+	/**
+	 * Creates requests answered with a fixed response.
+	 */
+	private static class FakeFactory implements ClientHttpRequestFactory {
+
+		private final HttpStatus status;
+		private final String body;
+
+		private FakeFactory(HttpStatus status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+
+		@Override
+		public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+			return new FakeClientHttpRequest(httpMethod, uri, new FakeClientHttpResponse(status, body));
+		}
+
+	}
+
+
+}
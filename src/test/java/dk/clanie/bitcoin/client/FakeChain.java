@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dk.clanie.bitcoin.Hex;
+import dk.clanie.bitcoin.client.response.BitcoindJsonRpcResponse;
+import dk.clanie.bitcoin.client.response.LongResponse;
+import dk.clanie.bitcoin.client.response.StringResponse;
+
+/**
+ * A block chain served by a fake BitcoindClient, answering getBlockCount,
+ * getBlockHash and batched getblockhash calls, for tests.
+ * 
+ * @author Claus Nielsen
+ */
+public class FakeChain implements InvocationHandler {
+
+	private static final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final List<String> hashes = new CopyOnWriteArrayList<String>();
+	private final List<String> calls = new CopyOnWriteArrayList<String>();
+	private int branch = 0;
+
+
+	/**
+	 * Creates a chain of the given length.
+	 * 
+	 * @param length - number of blocks, including the genesis block.
+	 */
+	public FakeChain(int length) {
+		extend(length);
+	}
+
+
+	/**
+	 * Gets a client for the chain.
+	 * 
+	 * @return BitcoindClient
+	 */
+	public BitcoindClient client() {
+		return (BitcoindClient) Proxy.newProxyInstance(BitcoindClient.class.getClassLoader(),
+				new Class<?>[] {BitcoindClient.class}, this);
+	}
+
+
+	/**
+	 * Adds blocks to the chain.
+	 * 
+	 * @param blocks
+	 */
+	public synchronized void extend(int blocks) {
+		for (int i = 0; i < blocks; i++) hashes.add(hash(branch, hashes.size()));
+	}
+
+
+	/**
+	 * Replaces the blocks above the given height by new ones.
+	 * 
+	 * @param forkHeight - height of the last block kept.
+	 * @param blocks - number of new blocks.
+	 */
+	public synchronized void reorganize(int forkHeight, int blocks) {
+		while (hashes.size() > forkHeight + 1) hashes.remove(hashes.size() - 1);
+		branch++;
+		extend(blocks);
+	}
+
+
+	public String getHash(long height) {
+		return hashes.get((int) height);
+	}
+
+
+	public int getHeight() {
+		return hashes.size() - 1;
+	}
+
+
+	/**
+	 * Gets the methods called, batches as "executeBatch(n)" where n is the
+	 * number of calls in the batch.
+	 * 
+	 * @return method names.
+	 */
+	public List<String> getCalls() {
+		return new ArrayList<String>(calls);
+	}
+
+
+	public void clearCalls() {
+		calls.clear();
+	}
+
+
+	@Override
+	public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		if (name.equals("getBlockCount")) {
+			calls.add(name);
+			return objectMapper.readValue("{\"result\":" + getHeight() + ",\"error\":null,\"id\":null}", LongResponse.class);
+		}
+		if (name.equals("getBlockHash")) {
+			calls.add(name);
+			return hashResponse(((Number) args[0]).longValue());
+		}
+		if (name.equals("executeBatch")) {
+			BitcoindBatch batch = (BitcoindBatch) args[0];
+			calls.add(name + "(" + batch.size() + ")");
+			for (BitcoindBatch.Call<?> call : batch.getCalls()) {
+				long height = ((Number) call.getRequest().getParams().get(0)).longValue();
+				complete(call, hashResponse(height));
+			}
+			batch.markExecuted();
+			return null;
+		}
+		throw new UnsupportedOperationException(name);
+	}
+
+
+	@SuppressWarnings("unchecked")
+	private static <T extends BitcoindJsonRpcResponse<?>> void complete(BitcoindBatch.Call<T> call, Object response) {
+		call.complete((T) response);
+	}
+
+
+	private StringResponse hashResponse(long height) throws Exception {
+		return objectMapper.readValue("{\"result\":\"" + getHash(height) + "\",\"error\":null,\"id\":null}", StringResponse.class);
+	}
+
+
+	private static String hash(int branch, int height) {
+		try {
+			byte[] hash = MessageDigest.getInstance("SHA-256").digest((branch + ":" + height).getBytes("US-ASCII"));
+			return Hex.encode(hash, 0, hash.length, false);
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+}
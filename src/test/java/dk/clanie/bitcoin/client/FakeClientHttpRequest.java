@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * ClientHttpRequest capturing the request body and answering with a given
+ * response, for tests.
+ * 
+ * @author Claus Nielsen
+ */
+class FakeClientHttpRequest implements ClientHttpRequest {
+
+	private final HttpMethod method;
+	private final URI uri;
+	private final ClientHttpResponse response;
+	private final HttpHeaders headers = new HttpHeaders();
+	private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+
+	FakeClientHttpRequest(HttpMethod method, URI uri, ClientHttpResponse response) {
+		this.method = method;
+		this.uri = uri;
+		this.response = response;
+	}
+
+
+	@Override
+	public HttpMethod getMethod() {
+		return method;
+	}
+
+
+	@Override
+	public URI getURI() {
+		return uri;
+	}
+
+
+	@Override
+	public HttpHeaders getHeaders() {
+		return headers;
+	}
+
+
+	@Override
+	public OutputStream getBody() {
+		return body;
+	}
+
+
+	/**
+	 * Gets the bytes written to the request body.
+	 * 
+	 * @return body
+	 */
+	byte[] getBodyAsBytes() {
+		return body.toByteArray();
+	}
+
+
+	@Override
+	public ClientHttpResponse execute() {
+		return response;
+	}
+
+
+}
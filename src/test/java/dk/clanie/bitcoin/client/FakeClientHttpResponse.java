@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * ClientHttpResponse with a fixed status and body, for tests.
+ * 
+ * @author Claus Nielsen
+ */
+class FakeClientHttpResponse implements ClientHttpResponse {
+
+	private final HttpStatus status;
+	private final InputStream body;
+	private final HttpHeaders headers = new HttpHeaders();
+
+
+	FakeClientHttpResponse(HttpStatus status, InputStream body) {
+		this.status = status;
+		this.body = body;
+	}
+
+
+	FakeClientHttpResponse(HttpStatus status, String body) throws UnsupportedEncodingException {
+		this(status, new ByteArrayInputStream(body.getBytes("UTF-8")));
+	}
+
+
+	@Override
+	public HttpStatus getStatusCode() {
+		return status;
+	}
+
+
+	@Override
+	public int getRawStatusCode() {
+		return status.value();
+	}
+
+
+	@Override
+	public String getStatusText() {
+		return status.name();
+	}
+
+
+	@Override
+	public HttpHeaders getHeaders() {
+		return headers;
+	}
+
+
+	@Override
+	public InputStream getBody() {
+		return body;
+	}
+
+
+	@Override
+	public void close() {
+	}
+
+
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dk.clanie.bitcoin.client.response.BigDecimalResponse;
+import dk.clanie.bitcoin.client.response.LongResponse;
+import dk.clanie.bitcoin.client.response.StringResponse;
+
+/**
+ * Tests routing calls with {@link LoadBalancingBitcoindClient}.
+ * 
+ * @author Claus Nielsen
+ */
+public class LoadBalancingBitcoindClientTest {
+
+	private final FakeNode primary = new FakeNode();
+	private final FakeNode replica = new FakeNode();
+	private final LoadBalancingBitcoindClient client =
+			new LoadBalancingBitcoindClient(primary.client(), Arrays.asList(replica.client()));
+
+
+	@Test
+	public void testNodeIndependentCallsAreSpread() throws Exception {
+		client.refreshBlockCounts();
+		client.decodeRawTransaction("01000000");
+		client.decodeRawTransaction("01000000");
+		assertThat(primary.calls, equalTo(Arrays.asList("getBlockCount", "decodeRawTransaction")));
+		assertThat(replica.calls, equalTo(Arrays.asList("getBlockCount", "decodeRawTransaction")));
+	}
+
+
+	@Test
+	public void testCallsLookingUpAddressesInTheWalletGoToThePrimary() throws Exception {
+		client.refreshBlockCounts();
+		client.validateAddress("address");
+		client.validateAddress("address");
+		client.createMultiSig(1, new String[] {"address"});
+		assertThat(primary.calls, equalTo(Arrays.asList("getBlockCount", "validateAddress", "validateAddress", "createMultiSig")));
+		assertThat(replica.calls, equalTo(Arrays.asList("getBlockCount")));
+	}
+
+
+	@Test
+	public void testWalletCallsGoToThePrimary() throws Exception {
+		client.refreshBlockCounts();
+		client.getBalance(null, null);
+		client.getBalance(null, null);
+		assertThat(primary.calls, equalTo(Arrays.asList("getBlockCount", "getBalance", "getBalance")));
+		assertThat(replica.calls, equalTo(Arrays.asList("getBlockCount")));
+	}
+
+
+	@Test
+	public void testMemPoolCallsGoToThePrimary() throws Exception {
+		client.refreshBlockCounts();
+		client.getRawMemPool();
+		client.getRawMemPool();
+		assertThat(primary.calls, equalTo(Arrays.asList("getBlockCount", "getRawMemPool", "getRawMemPool")));
+		assertThat(replica.calls, equalTo(Arrays.asList("getBlockCount")));
+	}
+
+
+	@Test
+	public void testBatchesAreRoutedByTheirCalls() throws Exception {
+		client.refreshBlockCounts();
+		for (int i = 0; i < 2; i++) {
+			BitcoindBatch batch = new BitcoindBatch();
+			batch.add("getblockhash", Arrays.asList(i), StringResponse.class);
+			client.executeBatch(batch);
+		}
+		BitcoindBatch walletBatch = new BitcoindBatch();
+		walletBatch.add("getbalance", Arrays.asList(), BigDecimalResponse.class);
+		client.executeBatch(walletBatch);
+		assertThat(primary.calls, equalTo(Arrays.asList("getBlockCount", "executeBatch", "executeBatch")));
+		assertThat(replica.calls, equalTo(Arrays.asList("getBlockCount", "executeBatch")));
+	}
+
+
+	@Test
+	public void testFailedNodeIsRetriedAfterRetryInterval() throws Exception {
+		client.setRetryInterval(50);
+		client.refreshBlockCounts();
+		replica.failing = true;
+		boolean failed = false;
+		for (int i = 0; i < 2; i++) {
+			try {
+				client.getBlockHash(1L);
+			} catch (RuntimeException e) {
+				failed = true;
+			}
+		}
+		assertTrue(failed);
+		assertThat(client.getNodes().get(1).isAvailable(), equalTo(false));
+		replica.failing = false;
+		replica.calls.clear();
+		client.getBlockHash(1L);
+		assertThat(replica.calls.size(), equalTo(0));
+		Thread.sleep(60);
+		client.getBlockHash(1L);
+		assertThat(replica.calls, equalTo(Arrays.asList("getBlockHash")));
+		assertThat(client.getNodes().get(1).isAvailable(), equalTo(true));
+	}
+
+
+	@Test
+	public void testLosingHedgedCallIsNotInterrupted() throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			client.refreshBlockCounts();
+			client.enableHedging(executor, 0.5);
+			primary.delay = 300;
+			// The original call goes to each node in turn, so one of two is hedged.
+			client.getBlock("hash");
+			client.getBlock("hash");
+			assertThat(client.getHedgesIssued(), equalTo(1L));
+			assertThat(client.getHedgesWon(), equalTo(1L));
+			Thread.sleep(400);
+			assertThat(primary.interrupted, equalTo(false));
+			assertThat(client.getNodes().get(0).isAvailable(), equalTo(true));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+	@Test
+	public void testSetUrlIsIgnored() throws Exception {
+		client.setUrl("http://localhost:8332");
+	}
+
+
+	/**
+	 * A node answering getBlockCount with a fixed block count, and anything
+	 * else with null, recording the calls made.
+	 */
+	private static class FakeNode implements InvocationHandler {
+
+		private final List<String> calls = new CopyOnWriteArrayList<String>();
+		private volatile boolean failing = false;
+		private volatile long delay = 0;
+		private volatile boolean interrupted = false;
+
+		private BitcoindClient client() {
+			return (BitcoindClient) Proxy.newProxyInstance(BitcoindClient.class.getClassLoader(),
+					new Class<?>[] {BitcoindClient.class}, this);
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			calls.add(method.getName());
+			if (delay > 0 && !method.getName().equals("getBlockCount")) {
+				try {
+					Thread.sleep(delay);
+				} catch (InterruptedException e) {
+					interrupted = true;
+					throw new IllegalStateException("Connection closed.");
+				}
+			}
+			if (failing) throw new IllegalStateException("Connection refused.");
+			if (method.getName().equals("getBlockCount")) {
+				return new ObjectMapper().readValue("{\"result\":100,\"error\":null,\"id\":null}", LongResponse.class);
+			}
+			return null;
+		}
+
+	}
+
+
+}
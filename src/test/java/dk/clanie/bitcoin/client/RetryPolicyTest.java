@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+
+import org.junit.Test;
+import org.springframework.web.client.ResourceAccessException;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dk.clanie.bitcoin.client.response.BitcoindErrorResponse;
+import dk.clanie.bitcoin.exception.BitcoinExceptionRegistry;
+import dk.clanie.bitcoin.exception.BitcoinHttpException;
+
+/**
+ * Tests deciding which calls to retry with {@link RetryPolicy}.
+ * 
+ * @author Claus Nielsen
+ */
+public class RetryPolicyTest {
+
+	private final RetryPolicy retryPolicy = new RetryPolicy();
+
+
+	@Test
+	public void testConnectFailuresAreAlwaysRetried() throws Exception {
+		assertTrue(retryPolicy.shouldRetry(new ResourceAccessException("I/O error", new ConnectException()), false, 1));
+	}
+
+
+	@Test
+	public void testTimeoutsAreRetriedForIdempotentMethodsOnly() throws Exception {
+		ResourceAccessException timeout = new ResourceAccessException("I/O error", new SocketTimeoutException());
+		assertTrue(retryPolicy.shouldRetry(timeout, true, 1));
+		assertThat(retryPolicy.shouldRetry(timeout, false, 1), equalTo(false));
+	}
+
+
+	@Test
+	public void testServerErrorsAreRetriedButOtherHttpErrorsAreNot() throws Exception {
+		assertTrue(retryPolicy.shouldRetry(new BitcoinHttpException(503, "Service Unavailable"), true, 1));
+		assertThat(retryPolicy.shouldRetry(new BitcoinHttpException(401, "Unauthorized"), true, 1), equalTo(false));
+	}
+
+
+	@Test
+	public void testParseFailuresAreNotRetried() throws Exception {
+		ResourceAccessException parseFailure = new ResourceAccessException("I/O error", new JsonParseException("Unexpected character", null));
+		assertThat(retryPolicy.shouldRetry(parseFailure, true, 1), equalTo(false));
+	}
+
+
+	@Test
+	public void testOnlyWarmupErrorResponsesAreRetried() throws Exception {
+		assertTrue(retryPolicy.shouldRetry(errorResponse(-28, "Loading block index..."), false, 1));
+		assertThat(retryPolicy.shouldRetry(errorResponse(-5, "Invalid Bitcoin address"), true, 1), equalTo(false));
+	}
+
+
+	@Test
+	public void testAttemptsAreLimited() throws Exception {
+		retryPolicy.setMaxAttempts(2);
+		ResourceAccessException connectFailure = new ResourceAccessException("I/O error", new ConnectException());
+		assertTrue(retryPolicy.shouldRetry(connectFailure, true, 1));
+		assertThat(retryPolicy.shouldRetry(connectFailure, true, 2), equalTo(false));
+	}
+
+
+	private RuntimeException errorResponse(int code, String message) throws Exception {
+		BitcoindErrorResponse errorResponse = new ObjectMapper().readValue(
+				"{\"result\":null,\"error\":{\"code\":" + code + ",\"message\":\"" + message + "\"},\"id\":1}",
+				BitcoindErrorResponse.class);
+		return BitcoinExceptionRegistry.getInstance().createException(errorResponse, false);
+	}
+
+
+}
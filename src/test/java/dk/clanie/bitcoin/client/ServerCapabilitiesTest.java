@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link ServerCapabilities}.
+ *
+ * @author Claus Nielsen
+ */
+public class ServerCapabilitiesTest {
+
+	/**
+	 * Output of help on bitcoind 0.7.2 with an unencrypted wallet.
+	 */
+	static final String HELP_0_7 =
+			"addmultisigaddress <nrequired> <'[\"key\",\"key\"]'> [account]\n" +
+			"backupwallet <destination>\n" +
+			"createrawtransaction [{\"txid\":txid,\"vout\":n},...] {address:amount,...}\n" +
+			"decoderawtransaction <hex string>\n" +
+			"dumpprivkey <bitcoinaddress>\n" +
+			"encryptwallet <passphrase>\n" +
+			"getaccount <bitcoinaddress>\n" +
+			"getaccountaddress <account>\n" +
+			"getaddressesbyaccount <account>\n" +
+			"getbalance [account] [minconf=1]\n" +
+			"getblock <hash>\n" +
+			"getblockcount\n" +
+			"getblockhash <index>\n" +
+			"getblocktemplate [params]\n" +
+			"getconnectioncount\n" +
+			"getdifficulty\n" +
+			"getgenerate\n" +
+			"gethashespersec\n" +
+			"getinfo\n" +
+			"getmininginfo\n" +
+			"getnewaddress [account]\n" +
+			"getpeerinfo\n" +
+			"getrawmempool\n" +
+			"getrawtransaction <txid> [verbose=0]\n" +
+			"getreceivedbyaccount <account> [minconf=1]\n" +
+			"getreceivedbyaddress <bitcoinaddress> [minconf=1]\n" +
+			"gettransaction <txid>\n" +
+			"getwork [data]\n" +
+			"help [command]\n" +
+			"importprivkey <bitcoinprivkey> [label] [rescan=true]\n" +
+			"keypoolrefill\n" +
+			"listaccounts [minconf=1]\n" +
+			"listreceivedbyaccount [minconf=1] [includeempty=false]\n" +
+			"listreceivedbyaddress [minconf=1] [includeempty=false]\n" +
+			"listsinceblock [blockhash] [target-confirmations]\n" +
+			"listtransactions [account] [count=10] [from=0]\n" +
+			"listunspent [minconf=1] [maxconf=9999999]  [\"address\",...]\n" +
+			"move <fromaccount> <toaccount> <amount> [minconf=1] [comment]\n" +
+			"sendfrom <fromaccount> <tobitcoinaddress> <amount> [minconf=1] [comment] [comment-to]\n" +
+			"sendmany <fromaccount> {address:amount,...} [minconf=1] [comment]\n" +
+			"sendrawtransaction <hex string>\n" +
+			"sendtoaddress <bitcoinaddress> <amount> [comment] [comment-to]\n" +
+			"setaccount <bitcoinaddress> <account>\n" +
+			"setgenerate <generate> [genproclimit]\n" +
+			"settxfee <amount>\n" +
+			"signmessage <bitcoinaddress> <message>\n" +
+			"signrawtransaction <hex string> [{\"txid\":txid,\"vout\":n,\"scriptPubKey\":hex},...] [<privatekey1>,...] [sighashtype=\"ALL\"]\n" +
+			"stop\n" +
+			"submitblock <hex data> [optional-params-obj]\n" +
+			"validateaddress <bitcoinaddress>\n" +
+			"verifymessage <bitcoinaddress> <signature> <message>";
+
+	/**
+	 * Output of help on bitcoind 0.8.5 with an encrypted wallet.
+	 */
+	static final String HELP_0_8 =
+			"addmultisigaddress <nrequired> <'[\"key\",\"key\"]'> [account]\n" +
+			"addnode <node> <add|remove|onetry>\n" +
+			"backupwallet <destination>\n" +
+			"createmultisig <nrequired> <'[\"key\",\"key\"]'>\n" +
+			"createrawtransaction [{\"txid\":txid,\"vout\":n},...] {address:amount,...}\n" +
+			"decoderawtransaction <hex string>\n" +
+			"dumpprivkey <bitcoinaddress>\n" +
+			"getaccount <bitcoinaddress>\n" +
+			"getaccountaddress <account>\n" +
+			"getaddednodeinfo <dns> [node]\n" +
+			"getaddressesbyaccount <account>\n" +
+			"getbalance [account] [minconf=1]\n" +
+			"getbestblockhash\n" +
+			"getblock <hash> [verbose=true]\n" +
+			"getblockcount\n" +
+			"getblockhash <index>\n" +
+			"getblocktemplate [params]\n" +
+			"getconnectioncount\n" +
+			"getdifficulty\n" +
+			"getgenerate\n" +
+			"gethashespersec\n" +
+			"getinfo\n" +
+			"getmininginfo\n" +
+			"getnewaddress [account]\n" +
+			"getpeerinfo\n" +
+			"getrawmempool\n" +
+			"getrawtransaction <txid> [verbose=0]\n" +
+			"getreceivedbyaccount <account> [minconf=1]\n" +
+			"getreceivedbyaddress <bitcoinaddress> [minconf=1]\n" +
+			"gettransaction <txid>\n" +
+			"gettxout <txid> <n> [includemempool=true]\n" +
+			"gettxoutsetinfo\n" +
+			"getwork [data]\n" +
+			"help [command]\n" +
+			"importprivkey <bitcoinprivkey> [label] [rescan=true]\n" +
+			"keypoolrefill\n" +
+			"listaccounts [minconf=1]\n" +
+			"listaddressgroupings\n" +
+			"listlockunspent\n" +
+			"listreceivedbyaccount [minconf=1] [includeempty=false]\n" +
+			"listreceivedbyaddress [minconf=1] [includeempty=false]\n" +
+			"listsinceblock [blockhash] [target-confirmations]\n" +
+			"listtransactions [account] [count=10] [from=0]\n" +
+			"listunspent [minconf=1] [maxconf=9999999]  [\"address\",...]\n" +
+			"lockunspent unlock? [array-of-Objects]\n" +
+			"move <fromaccount> <toaccount> <amount> [minconf=1] [comment]\n" +
+			"sendfrom <fromaccount> <tobitcoinaddress> <amount> [minconf=1] [comment] [comment-to]\n" +
+			"sendmany <fromaccount> {address:amount,...} [minconf=1] [comment]\n" +
+			"sendrawtransaction <hex string>\n" +
+			"sendtoaddress <bitcoinaddress> <amount> [comment] [comment-to]\n" +
+			"setaccount <bitcoinaddress> <account>\n" +
+			"setgenerate <generate> [genproclimit]\n" +
+			"settxfee <amount>\n" +
+			"signmessage <bitcoinaddress> <message>\n" +
+			"signrawtransaction <hex string> [{\"txid\":txid,\"vout\":n,\"scriptPubKey\":hex,\"redeemScript\":hex},...] [<privatekey1>,...] [sighashtype=\"ALL\"]\n" +
+			"stop\n" +
+			"submitblock <hex data> [optional-params-obj]\n" +
+			"validateaddress <bitcoinaddress>\n" +
+			"verifychain [check level] [num blocks]\n" +
+			"verifymessage <bitcoinaddress> <signature> <message>\n" +
+			"walletlock\n" +
+			"walletpassphrase <passphrase> <timeout>\n" +
+			"walletpassphrasechange <oldpassphrase> <newpassphrase>";
+
+
+	@Test
+	public void testParseHelp_0_7() throws Exception {
+		Set<String> methods = ServerCapabilities.parseHelp(HELP_0_7);
+		assertThat(methods.size(), equalTo(51));
+		assertTrue(methods.contains("addmultisigaddress"));
+		assertTrue(methods.contains("getblocktemplate"));
+		assertTrue(methods.contains("listunspent"));
+		assertTrue(methods.contains("signrawtransaction"));
+		assertFalse(methods.contains("lockunspent"));
+		assertFalse(methods.contains("gettxout"));
+		assertFalse(methods.contains("getbestblockhash"));
+	}
+
+
+	@Test
+	public void testParseHelp_0_8() throws Exception {
+		Set<String> methods = ServerCapabilities.parseHelp(HELP_0_8);
+		assertThat(methods.size(), equalTo(63));
+		assertTrue(methods.contains("addnode"));
+		assertTrue(methods.contains("gettxout"));
+		assertTrue(methods.contains("listlockunspent"));
+		assertTrue(methods.contains("lockunspent"));
+		assertTrue(methods.contains("walletpassphrase"));
+		assertFalse(methods.contains("encryptwallet"));
+	}
+
+
+	@Test
+	public void testParseHelpIgnoresBlankLinesAndCarriageReturns() throws Exception {
+		Set<String> methods = ServerCapabilities.parseHelp("getblockcount\r\n\r\n  GetInfo\r\nstop");
+		assertThat(methods.size(), equalTo(3));
+		assertTrue(methods.contains("getblockcount"));
+		assertTrue(methods.contains("getinfo"));
+		assertTrue(methods.contains("stop"));
+	}
+
+
+	@Test
+	public void testParseHelpOfNull() throws Exception {
+		assertTrue(ServerCapabilities.parseHelp(null).isEmpty());
+	}
+
+
+	@Test
+	public void testWalletEncryptionMethodsAreAlwaysSupported() throws Exception {
+		ServerCapabilities unencrypted = new ServerCapabilities(ServerCapabilities.parseHelp(HELP_0_7), 70200, 60002, false);
+		assertTrue(unencrypted.isSupported("walletpassphrase"));
+		assertTrue(unencrypted.isSupported("walletlock"));
+		assertFalse(unencrypted.isSupported("lockunspent"));
+
+		ServerCapabilities encrypted = new ServerCapabilities(ServerCapabilities.parseHelp(HELP_0_8), 80500, 70001, false);
+		assertTrue(encrypted.isSupported("encryptwallet"));
+		assertTrue(encrypted.isSupported("lockunspent"));
+	}
+
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import dk.clanie.bitcoin.exception.BitcoinException;
+
+/**
+ * Tests coalescing calls with {@link SingleFlight}.
+ * 
+ * @author Claus Nielsen
+ */
+public class SingleFlightTest {
+
+	private final SingleFlight singleFlight = new SingleFlight();
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+	private final AtomicInteger calls = new AtomicInteger();
+	private final CountDownLatch release = new CountDownLatch(1);
+
+
+	@After
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+
+	@Test
+	public void testIdenticalCallsAreCoalesced() throws Exception {
+		singleFlight.enable("getinfo");
+		Future<Object> first = executor.submit(call("getinfo", "key"));
+		awaitCalls(1);
+		Future<Object> second = executor.submit(call("getinfo", "key"));
+		awaitCollapsed("getinfo", 1);
+		release.countDown();
+
+		assertTrue(first.get(5, TimeUnit.SECONDS) == second.get(5, TimeUnit.SECONDS));
+		assertThat(calls.get(), equalTo(1));
+	}
+
+
+	@Test
+	public void testCallsWithEqualArrayParametersAreCoalesced() throws Exception {
+		singleFlight.enable("listunspent");
+		Object firstKey = BitcoindParams.callKey("listunspent",
+				Arrays.<Object>asList(1, 9999999, new String[] {"addr1", "addr2"}), Object.class);
+		Object secondKey = BitcoindParams.callKey("listunspent",
+				Arrays.<Object>asList(1, 9999999, new String[] {"addr1", "addr2"}), Object.class);
+		Future<Object> first = executor.submit(call("listunspent", firstKey));
+		awaitCalls(1);
+		Future<Object> second = executor.submit(call("listunspent", secondKey));
+		awaitCollapsed("listunspent", 1);
+		release.countDown();
+
+		assertTrue(first.get(5, TimeUnit.SECONDS) == second.get(5, TimeUnit.SECONDS));
+		assertThat(calls.get(), equalTo(1));
+	}
+
+
+	@Test
+	public void testDifferentCallsAreNotCoalesced() throws Exception {
+		singleFlight.enable("getblockhash");
+		Future<Object> first = executor.submit(call("getblockhash", "1"));
+		Future<Object> second = executor.submit(call("getblockhash", "2"));
+		awaitCalls(2);
+		release.countDown();
+
+		first.get(5, TimeUnit.SECONDS);
+		second.get(5, TimeUnit.SECONDS);
+		assertThat(singleFlight.getCollapsed().get("getblockhash"), equalTo(0L));
+	}
+
+
+	@Test
+	public void testFailureIsSharedByCoalescedCalls() throws Exception {
+		singleFlight.enable("getinfo");
+		final BitcoinException failure = new BitcoinException("Failed");
+		Callable<Object> failing = new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return singleFlight.execute("getinfo", "key", new SingleFlight.Call<Object>() {
+					@Override
+					public Object call() {
+						calls.incrementAndGet();
+						await(release);
+						throw failure;
+					}
+				});
+			}
+		};
+		Future<Object> first = executor.submit(failing);
+		awaitCalls(1);
+		Future<Object> second = executor.submit(failing);
+		awaitCollapsed("getinfo", 1);
+		release.countDown();
+
+		for (Future<Object> future : Arrays.asList(first, second)) {
+			try {
+				future.get(5, TimeUnit.SECONDS);
+				fail("Expected BitcoinException");
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() == failure);
+			}
+		}
+	}
+
+
+	@Test
+	public void testNonIdempotentMethodsCantBeEnabled() throws Exception {
+		try {
+			singleFlight.enable("sendtoaddress");
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+		assertThat(singleFlight.isEnabled("sendtoaddress"), equalTo(false));
+	}
+
+
+	private Callable<Object> call(final String method, final Object key) {
+		return new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return singleFlight.execute(method, key, new SingleFlight.Call<Object>() {
+					@Override
+					public Object call() {
+						calls.incrementAndGet();
+						await(release);
+						return new Object();
+					}
+				});
+			}
+		};
+	}
+
+
+	private void awaitCalls(int expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (calls.get() < expected && System.currentTimeMillis() < deadline) Thread.sleep(1);
+		assertThat(calls.get(), equalTo(expected));
+	}
+
+
+	private void awaitCollapsed(String method, long expected) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (singleFlight.getCollapsed().get(method) < expected && System.currentTimeMillis() < deadline) Thread.sleep(1);
+		assertThat(singleFlight.getCollapsed().get(method), equalTo(expected));
+	}
+
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+}
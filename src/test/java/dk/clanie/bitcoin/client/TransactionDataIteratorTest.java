@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import dk.clanie.bitcoin.Sha256Hash;
+import dk.clanie.bitcoin.client.TransactionDataIterator.Source;
+import dk.clanie.bitcoin.client.response.TransactionData;
+
+/**
+ * Tests {@link TransactionDataIterator}.
+ * 
+ * @author Claus Nielsen
+ */
+public class TransactionDataIteratorTest {
+
+
+	@Test
+	public void testIteratesTransactionsFromGivenExecutor() throws Exception {
+		final AtomicBoolean executed = new AtomicBoolean();
+		Executor executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				executed.set(true);
+				new ThreadExecutor().execute(command);
+			}
+		};
+		TransactionDataIterator i = new TransactionDataIterator(2, executor, new Source() {
+			@Override
+			public Sha256Hash stream(TransactionDataConsumer consumer) {
+				for (int n = 0; n < 5; n++) consumer.accept(new TransactionData());
+				return null;
+			}
+		});
+		int count = 0;
+		try {
+			while (i.hasNext()) {
+				i.next();
+				count++;
+			}
+		} finally {
+			i.close();
+		}
+		assertTrue(executed.get());
+		assertThat(count, equalTo(5));
+	}
+
+
+	@Test
+	public void testCloseStopsTheCall() throws Exception {
+		final CountDownLatch stopped = new CountDownLatch(1);
+		TransactionDataIterator i = new TransactionDataIterator(2, new ThreadExecutor(), new Source() {
+			@Override
+			public Sha256Hash stream(TransactionDataConsumer consumer) {
+				try {
+					while (true) consumer.accept(new TransactionData());
+				} finally {
+					stopped.countDown();
+				}
+			}
+		});
+		i.next();
+		i.close();
+		assertTrue(stopped.await(5, TimeUnit.SECONDS));
+	}
+
+
+	@Test
+	public void testRejectedCallIsThrownByHasNext() throws Exception {
+		Executor executor = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException("Shut down");
+			}
+		};
+		TransactionDataIterator i = new TransactionDataIterator(2, executor, new Source() {
+			@Override
+			public Sha256Hash stream(TransactionDataConsumer consumer) {
+				return null;
+			}
+		});
+		try {
+			i.hasNext();
+			fail("Expected RejectedExecutionException");
+		} catch (RejectedExecutionException e) {
+			// Expected.
+		}
+	}
+
+
+	private static class ThreadExecutor implements Executor {
+		@Override
+		public void execute(Runnable command) {
+			Thread thread = new Thread(command);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+
+}
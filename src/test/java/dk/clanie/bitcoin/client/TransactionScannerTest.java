@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dk.clanie.bitcoin.client.response.ListTransactionsResponse;
+
+/**
+ * Tests {@link TransactionScanner}, including transactions arriving during
+ * the scan.
+ * 
+ * @author Claus Nielsen
+ */
+public class TransactionScannerTest {
+
+	private final FakeWallet wallet = new FakeWallet();
+
+
+	@Test
+	public void testScansWholeHistoryNewestFirst() throws Exception {
+		wallet.receive(1, 10);
+		assertThat(scan(3), equalTo(txIds(10, 1)));
+		assertThat(wallet.offsets, equalTo(list(0, 3, 6, 9)));
+	}
+
+
+	@Test
+	public void testTransactionsPushedOntoNextPageAreSkipped() throws Exception {
+		wallet.receive(1, 10);
+		// Two transactions arrive before the second page is fetched, and one
+		// more before the third.
+		wallet.arrivals.put(2, new int[] {11, 12});
+		wallet.arrivals.put(3, new int[] {13});
+
+		TransactionScanner scanner = new TransactionScanner(wallet.client(), "*", 3);
+		try {
+			assertThat(txIds(scanner), equalTo(txIds(10, 1)));
+			assertThat(scanner.getSkipped(), equalTo(3L));
+		} finally {
+			scanner.close();
+		}
+	}
+
+
+	@Test
+	public void testTransactionsPushedPastWholePageAreSkipped() throws Exception {
+		wallet.receive(1, 10);
+		wallet.arrivals.put(2, new int[] {11, 12, 13, 14});
+
+		TransactionScanner scanner = new TransactionScanner(wallet.client(), "*", 3);
+		try {
+			assertThat(txIds(scanner), equalTo(txIds(10, 1)));
+			assertThat(scanner.getSkipped(), equalTo(4L));
+		} finally {
+			scanner.close();
+		}
+	}
+
+
+	@Test
+	public void testIdenticalEntriesOnDifferentPagesAreAllReturned() throws Exception {
+		// Transaction 5 pays the same amount to the same address three
+		// times, which gives identical entries at offsets 4, 6 and 7 - none
+		// of them split by a page boundary.
+		wallet.receive(1, 3);
+		wallet.receive(5, 5);
+		wallet.receive(5, 5);
+		wallet.receive(6, 6);
+		wallet.receive(5, 5);
+		wallet.receive(7, 10);
+		assertThat(scan(3), equalTo(list(10, 9, 8, 7, 5, 6, 5, 5, 3, 2, 1)));
+	}
+
+
+	private List<Integer> scan(int pageSize) {
+		TransactionScanner scanner = new TransactionScanner(wallet.client(), "*", pageSize);
+		try {
+			List<Integer> txIds = txIds(scanner);
+			assertThat(scanner.getSkipped(), equalTo(0L));
+			return txIds;
+		} finally {
+			scanner.close();
+		}
+	}
+
+
+	private static List<Integer> txIds(TransactionScanner scanner) {
+		List<Integer> txIds = new ArrayList<Integer>();
+		while (scanner.hasNext()) txIds.add(Integer.parseInt(scanner.next().getTxId().toString(), 16));
+		return txIds;
+	}
+
+
+	private static List<Integer> txIds(int from, int to) {
+		List<Integer> txIds = new ArrayList<Integer>();
+		for (int txId = from; txId >= to; txId--) txIds.add(txId);
+		return txIds;
+	}
+
+
+	private static List<Integer> list(Integer ... values) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (Integer value : values) list.add(value);
+		return list;
+	}
+
+
+	/**
+	 * A wallet served by a fake BitcoindClient, answering listTransactions.
+	 */
+	private static class FakeWallet implements InvocationHandler {
+
+		private static final ObjectMapper objectMapper = new ObjectMapper();
+
+		// Transaction ids, oldest first.
+		private final List<Integer> history = new ArrayList<Integer>();
+		// Transactions arriving before the n'th call, counting from 1.
+		private final Map<Integer, int[]> arrivals = new HashMap<Integer, int[]>();
+		private final List<Integer> offsets = new ArrayList<Integer>();
+
+
+		private BitcoindClient client() {
+			return (BitcoindClient) Proxy.newProxyInstance(BitcoindClient.class.getClassLoader(),
+					new Class<?>[] {BitcoindClient.class}, this);
+		}
+
+
+		/**
+		 * Receives transactions with the given ids.
+		 */
+		private synchronized void receive(int from, int to) {
+			for (int txId = from; txId <= to; txId++) history.add(txId);
+		}
+
+
+		@Override
+		public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			if (!method.getName().equals("listTransactions")) throw new UnsupportedOperationException(method.getName());
+			int count = ((Integer) args[1]).intValue();
+			int from = ((Integer) args[2]).intValue();
+			offsets.add(from);
+			int[] arrived = arrivals.get(offsets.size());
+			if (arrived != null) {
+				for (int txId : arrived) history.add(txId);
+			}
+			StringBuilder json = new StringBuilder("{\"result\":[");
+			int end = Math.max(0, history.size() - from);
+			for (int i = Math.max(0, end - count); i < end; i++) {
+				if (json.charAt(json.length() - 1) != '[') json.append(',');
+				json.append("{\"account\":\"\",\"address\":\"mwswEtw6t2ziSjsfip62FPg84NXGsJ5H2o\",\"category\":\"receive\",\"amount\":0.1,")
+						.append("\"txid\":\"").append(String.format("%064x", history.get(i))).append("\",\"time\":1364398885}");
+			}
+			json.append("],\"error\":null,\"id\":null}");
+			return objectMapper.readValue(json.toString(), ListTransactionsResponse.class);
+		}
+
+	}
+
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import dk.clanie.bitcoin.client.response.GetBlockResponse;
+import dk.clanie.bitcoin.client.response.GetBlockResult;
+
+/**
+ * Tests {@link BlockCache}.
+ * 
+ * @author Claus Nielsen
+ */
+public class BlockCacheTest {
+
+	private static final String HASH_100 = "000000007bc154e0fa7ea32218a72fe2c1bb9f86cf8c9ebf9a715ed27fdb229a";
+	private static final String HASH_101 = "00000000e47349de5a0193abc5a2fe0be81cb1d1987e45ab85f3289d54cddc4d";
+
+	private static final ObjectReader READER = new ObjectMapper().reader(GetBlockResponse.class);
+
+	private final BlockCache blockCache = new BlockCache(1000000);
+
+
+	@Test
+	public void testCachedBlockIsReturnedWithCurrentConfirmations() throws Exception {
+		blockCache.put(response(HASH_100, 100, 6, null));
+
+		BlockCache.Block block = blockCache.get(HASH_100);
+		assertThat(block.getHeight(), equalTo(100L));
+		GetBlockResult result = block.toResponse(110, READER).getResult();
+		assertThat(result.getConfirmations(), equalTo(11));
+		assertThat(result.getHash().toString(), equalTo(HASH_100));
+	}
+
+
+	@Test
+	public void testCachedBlockKeepsTheScaleOfTheDifficulty() throws Exception {
+		GetBlockResponse uncached = READER.readValue("{\"result\":{\"hash\":\"" + HASH_100
+				+ "\",\"height\":100,\"confirmations\":6,\"difficulty\":1.00000000},\"error\":null,\"id\":null}");
+		blockCache.put(uncached);
+
+		GetBlockResult result = blockCache.get(HASH_100).toResponse(105, READER).getResult();
+		assertThat(result.getDifficulty(), equalTo(uncached.getResult().getDifficulty()));
+		assertThat(result.getDifficulty().toString(), equalTo("1.00000000"));
+	}
+
+
+	@Test
+	public void testBlocksWithTooFewConfirmationsAreNotCached() throws Exception {
+		blockCache.put(response(HASH_100, 100, 5, null));
+		assertThat(blockCache.get(HASH_100), equalTo(null));
+	}
+
+
+	@Test
+	public void testNextBlockHashIsLinkedWhenNextBlockIsCached() throws Exception {
+		blockCache.put(response(HASH_100, 100, 7, null));
+		blockCache.put(response(HASH_101, 101, 6, HASH_100));
+		assertThat(blockCache.get(HASH_100).getNextBlockHash().toString(), equalTo(HASH_101));
+	}
+
+
+	@Test
+	public void testReorganizationRemovesBlocksAboveFork() throws Exception {
+		blockCache.put(response(HASH_100, 100, 7, null));
+		blockCache.put(response(HASH_101, 101, 6, HASH_100));
+
+		blockCache.tipChanged(new TipChangeEvent(101, "ab", 101, "cd", 100));
+		assertThat(blockCache.get(HASH_101), equalTo(null));
+		assertThat(blockCache.get(HASH_100).getNextBlockHash(), equalTo(null));
+	}
+
+
+	private static GetBlockResponse response(String hash, long height, int confirmations, String previousBlockHash) throws Exception {
+		String previous = previousBlockHash == null ? "" : ",\"previousblockhash\":\"" + previousBlockHash + "\"";
+		return READER.readValue("{\"result\":{\"hash\":\"" + hash + "\",\"height\":" + height
+				+ ",\"confirmations\":" + confirmations + previous + "},\"error\":null,\"id\":null}");
+	}
+
+
+}
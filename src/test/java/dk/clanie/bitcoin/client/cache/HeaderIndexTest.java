@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import dk.clanie.bitcoin.client.FakeChain;
+
+/**
+ * Tests {@link HeaderIndex}, including reorganizations.
+ * 
+ * @author Claus Nielsen
+ */
+public class HeaderIndexTest {
+
+	private final FakeChain chain = new FakeChain(3000);
+	private final HeaderIndex headerIndex = new HeaderIndex(chain.client());
+
+
+	@Test
+	public void testUpdateIndexesWholeChainInBatches() throws Exception {
+		headerIndex.update();
+		assertThat(headerIndex.size(), equalTo(3000));
+		assertThat(chain.getCalls(), equalTo(Arrays.asList("getBlockCount", "executeBatch(1000)", "executeBatch(1000)", "executeBatch(1000)")));
+		for (int height = 0; height < 3000; height++) {
+			assertThat(headerIndex.getHash(height), equalTo(chain.getHash(height)));
+			assertThat(headerIndex.getHeight(chain.getHash(height)), equalTo((long) height));
+		}
+		assertThat(headerIndex.getHash(3000), equalTo(null));
+	}
+
+
+	@Test
+	public void testUpdateChecksOnlyLastBlockWithoutReorganization() throws Exception {
+		headerIndex.update();
+		chain.extend(5);
+		chain.clearCalls();
+
+		headerIndex.update();
+		assertThat(chain.getCalls(), equalTo(Arrays.asList("getBlockCount", "executeBatch(1)", "executeBatch(5)")));
+		assertThat(headerIndex.size(), equalTo(3005));
+	}
+
+
+	@Test
+	public void testTipChangeTruncatesOrphanedBlocks() throws Exception {
+		headerIndex.update();
+		String orphaned = chain.getHash(2995);
+		chain.reorganize(2990, 12);
+
+		headerIndex.tipChanged(new TipChangeEvent(3002, chain.getHash(3002), 2999, orphaned, 2990));
+		assertThat(headerIndex.size(), equalTo(3003));
+		assertThat(headerIndex.getHeight(orphaned), equalTo(-1L));
+		for (int height = 2980; height <= 3002; height++) {
+			assertThat(headerIndex.getHeight(chain.getHash(height)), equalTo((long) height));
+		}
+	}
+
+
+	@Test
+	public void testUpdateWalksBackPastBlocksOrphanedUnnoticed() throws Exception {
+		headerIndex.update();
+		String orphaned = chain.getHash(2999);
+		chain.reorganize(2979, 21);
+		chain.clearCalls();
+
+		headerIndex.update();
+		// Checks the last 1, 2, 4, 8 and 16 blocks before finding the fork.
+		assertThat(chain.getCalls(), equalTo(Arrays.asList("getBlockCount",
+				"executeBatch(1)", "executeBatch(2)", "executeBatch(4)", "executeBatch(8)", "executeBatch(16)", "executeBatch(21)")));
+		assertThat(headerIndex.size(), equalTo(3001));
+		assertThat(headerIndex.getHeight(orphaned), equalTo(-1L));
+		assertThat(headerIndex.getHash(2979), equalTo(chain.getHash(2979)));
+		assertThat(headerIndex.getHash(3000), equalTo(chain.getHash(3000)));
+	}
+
+
+	@Test
+	public void testTruncateKeepsRemainingBlocksFindable() throws Exception {
+		headerIndex.update();
+		headerIndex.truncate(1234);
+		assertThat(headerIndex.size(), equalTo(1234));
+		for (int height = 0; height < 3000; height++) {
+			long expected = height < 1234 ? height : -1;
+			assertThat(headerIndex.getHeight(chain.getHash(height)), equalTo(expected));
+		}
+	}
+
+
+}
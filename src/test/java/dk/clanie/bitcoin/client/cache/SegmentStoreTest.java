@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link SegmentStore}, including recovery after a crash.
+ * 
+ * @author Claus Nielsen
+ */
+public class SegmentStoreTest {
+
+	private File directory;
+
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = File.createTempFile("segment-store", "");
+		directory.delete();
+	}
+
+
+	@After
+	public void deleteDirectory() {
+		File[] files = directory.listFiles();
+		if (files != null) for (File file : files) file.delete();
+		directory.delete();
+	}
+
+
+	@Test
+	public void testValuesAndRemovalsSurviveReopening() throws Exception {
+		SegmentStore store = new SegmentStore(directory, 4096);
+		store.put("a", 100, bytes("alpha"));
+		store.put("b", 101, bytes("beta"));
+		store.put("a", 102, bytes("alpha 2"));
+		store.remove("b");
+		store.close();
+
+		store = new SegmentStore(directory, 4096);
+		assertThat(store.getCount(), equalTo(1));
+		assertThat(new String(store.get("a").getValue(), "US-ASCII"), equalTo("alpha 2"));
+		assertThat(store.get("a").getHeight(), equalTo(102L));
+		assertThat(store.get("b"), equalTo(null));
+		store.close();
+	}
+
+
+	@Test
+	public void testRecoveryStopsAtCorruptRecordAndAppendsFromThere() throws Exception {
+		SegmentStore store = new SegmentStore(directory, 4096);
+		store.put("a", 100, bytes("alpha"));
+		long validBytes = store.getBytes();
+		store.put("b", 101, bytes("beta"));
+		store.close();
+
+		// Simulate a torn write by corrupting the last record's value.
+		RandomAccessFile file = new RandomAccessFile(new File(directory, "segment-00000000.log"), "rw");
+		try {
+			file.seek(store.getBytes() - 1);
+			file.write('X');
+		} finally {
+			file.close();
+		}
+
+		store = new SegmentStore(directory, 4096);
+		assertThat(store.getBytes(), equalTo(validBytes));
+		assertTrue(store.contains("a"));
+		assertThat(store.contains("b"), equalTo(false));
+		store.put("c", 102, bytes("gamma"));
+		store.close();
+
+		store = new SegmentStore(directory, 4096);
+		assertThat(store.getCount(), equalTo(2));
+		assertThat(new String(store.get("c").getValue(), "US-ASCII"), equalTo("gamma"));
+		store.close();
+	}
+
+
+	@Test
+	public void testRecordsSpanSegments() throws Exception {
+		SegmentStore store = new SegmentStore(directory, 1024);
+		for (int i = 0; i < 20; i++) store.put("key" + i, i, new byte[200]);
+		store.close();
+
+		store = new SegmentStore(directory, 1024);
+		assertThat(store.getCount(), equalTo(20));
+		assertThat(store.get("key19").getValue().length, equalTo(200));
+		store.close();
+	}
+
+
+	@Test
+	public void testRemoveAbove() throws Exception {
+		SegmentStore store = new SegmentStore(directory, 4096);
+		for (int i = 0; i < 10; i++) store.put("key" + i, 100 + i, bytes("value"));
+		store.removeAbove(104);
+		assertThat(store.getCount(), equalTo(5));
+		assertTrue(store.contains("key4"));
+		assertThat(store.contains("key5"), equalTo(false));
+		store.close();
+	}
+
+
+	@Test
+	public void testClosedStoreCantBeUsed() throws Exception {
+		SegmentStore store = new SegmentStore(directory, 4096);
+		store.put("a", 100, bytes("alpha"));
+		store.close();
+		try {
+			store.get("a");
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// Expected.
+		}
+		try {
+			store.put("b", 101, bytes("beta"));
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			// Expected.
+		}
+	}
+
+
+	private static byte[] bytes(String value) throws IOException {
+		return value.getBytes("US-ASCII");
+	}
+
+
+}
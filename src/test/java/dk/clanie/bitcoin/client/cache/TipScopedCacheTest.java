@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link TipScopedCache}.
+ * 
+ * @author Claus Nielsen
+ */
+public class TipScopedCacheTest {
+
+	private final TipScopedCache tipScopedCache = new TipScopedCache(2);
+
+
+	@Test
+	public void testResultIsCachedUntilInvalidated() throws Exception {
+		tipScopedCache.put("a", "result", tipScopedCache.getGeneration());
+		assertThat(tipScopedCache.<String>get("a"), equalTo("result"));
+
+		tipScopedCache.tipChanged(new TipChangeEvent(101, "ab", 100, "cd", -1));
+		assertThat(tipScopedCache.<String>get("a"), equalTo(null));
+		assertThat(tipScopedCache.getInvalidations(), equalTo(1L));
+	}
+
+
+	@Test
+	public void testResultOfCallMadeBeforeInvalidationIsNotCached() throws Exception {
+		long generation = tipScopedCache.getGeneration();
+		tipScopedCache.invalidate();
+
+		tipScopedCache.put("a", "stale", generation);
+		assertThat(tipScopedCache.<String>get("a"), equalTo(null));
+
+		tipScopedCache.put("a", "fresh", tipScopedCache.getGeneration());
+		assertThat(tipScopedCache.<String>get("a"), equalTo("fresh"));
+	}
+
+
+	@Test
+	public void testNoMoreResultsAreCachedWhenFull() throws Exception {
+		long generation = tipScopedCache.getGeneration();
+		tipScopedCache.put("a", "1", generation);
+		tipScopedCache.put("b", "2", generation);
+		tipScopedCache.put("c", "3", generation);
+		assertThat(tipScopedCache.size(), equalTo(2));
+		assertThat(tipScopedCache.<String>get("c"), equalTo(null));
+
+		tipScopedCache.invalidate();
+		tipScopedCache.put("c", "3", tipScopedCache.getGeneration());
+		assertThat(tipScopedCache.<String>get("c"), equalTo("3"));
+	}
+
+
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import dk.clanie.bitcoin.client.FakeChain;
+
+/**
+ * Tests {@link TipWatcher}, including finding forks on reorganizations.
+ * 
+ * @author Claus Nielsen
+ */
+public class TipWatcherTest {
+
+	private final FakeChain chain = new FakeChain(200);
+	private final TipWatcher tipWatcher = new TipWatcher(chain.client(), 0);
+	private final List<TipChangeEvent> events = new CopyOnWriteArrayList<TipChangeEvent>();
+
+
+	@Before
+	public void setUp() throws Exception {
+		tipWatcher.addListener(new TipListener() {
+			@Override
+			public void tipChanged(TipChangeEvent event) {
+				events.add(event);
+			}
+		});
+	}
+
+
+	@Test
+	public void testListenersAreNotifiedOnlyWhenTipChanges() throws Exception {
+		tipWatcher.poll();
+		tipWatcher.poll();
+		assertThat(events.size(), equalTo(1));
+		assertThat(events.get(0).getHeight(), equalTo(199L));
+		assertThat(events.get(0).getHash(), equalTo(chain.getHash(199)));
+		assertThat(events.get(0).isReorganization(), equalTo(false));
+	}
+
+
+	@Test
+	public void testNewBlocksAreNoReorganization() throws Exception {
+		tipWatcher.poll();
+		chain.extend(3);
+
+		tipWatcher.poll();
+		TipChangeEvent event = events.get(1);
+		assertThat(event.getHeight(), equalTo(202L));
+		assertThat(event.getPreviousHeight(), equalTo(199L));
+		assertThat(event.getForkHeight(), equalTo(-1L));
+	}
+
+
+	@Test
+	public void testReorganizationReportsForkHeight() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			tipWatcher.poll();
+			chain.extend(1);
+		}
+		chain.reorganize(200, 3);
+
+		tipWatcher.poll();
+		TipChangeEvent event = events.get(3);
+		assertThat(event.getHeight(), equalTo(203L));
+		assertThat(event.getPreviousHeight(), equalTo(201L));
+		assertThat(event.getForkHeight(), equalTo(200L));
+		assertThat(event.isReorganization(), equalTo(true));
+		assertThat(tipWatcher.getHash(), equalTo(chain.getHash(203)));
+	}
+
+
+	@Test
+	public void testReorganizationToShorterChainReportsForkHeight() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			tipWatcher.poll();
+			chain.extend(1);
+		}
+		tipWatcher.poll();
+		chain.reorganize(200, 1);
+
+		tipWatcher.poll();
+		TipChangeEvent event = events.get(4);
+		assertThat(event.getHeight(), equalTo(201L));
+		assertThat(event.getPreviousHeight(), equalTo(202L));
+		assertThat(event.getForkHeight(), equalTo(200L));
+	}
+
+
+	@Test
+	public void testForkIsReportedAtLastKnownCommonBlockWhenTipsWereSkipped() throws Exception {
+		tipWatcher.poll();
+		chain.extend(4);
+		tipWatcher.poll();
+		chain.reorganize(201, 3);
+
+		// Heights 199 and 203 are remembered, 203 is orphaned.
+		tipWatcher.poll();
+		TipChangeEvent event = events.get(2);
+		assertThat(event.getHeight(), equalTo(204L));
+		assertThat(event.getForkHeight(), equalTo(199L));
+	}
+
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.cache;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import dk.clanie.bitcoin.client.response.GetRawTransactionResponse;
+import dk.clanie.bitcoin.client.response.GetRawTransactionResult;
+import dk.clanie.bitcoin.client.response.StringResponse;
+
+/**
+ * Tests {@link TransactionCache}.
+ * 
+ * @author Claus Nielsen
+ */
+public class TransactionCacheTest {
+
+	private static final String TX_ID = "4a5e1e4baab89f3a32518a88c31bc87f618f76673e2cc77ab2127b7afdeda33b";
+	private static final String BLOCK_HASH = "000000000019d6689c085ae165831e934ff763ae46a2a6c172b3f1b60a8ce26f";
+
+	private static final ObjectReader READER = new ObjectMapper().reader(GetRawTransactionResponse.class);
+
+	private final TransactionCache transactionCache = new TransactionCache(1000000);
+
+
+	@Test
+	public void testCachedTransactionIsReturnedWithCurrentConfirmations() throws Exception {
+		transactionCache.put(response(TX_ID, 6), 100);
+
+		TransactionCache.Transaction transaction = transactionCache.get(TX_ID);
+		assertThat(transaction.getBlockHeight(), equalTo(100L));
+		assertThat(transaction.getHex(), equalTo("01000000"));
+		GetRawTransactionResult result = transaction.toResponse(120, READER).getResult();
+		assertThat(result.getConfirmations(), equalTo(21));
+		assertThat(result.getHex(), equalTo("01000000"));
+		assertThat(result.getBlockHash().toString(), equalTo(BLOCK_HASH));
+	}
+
+
+	@Test
+	public void testCachedTransactionKeepsTheScaleOfAmounts() throws Exception {
+		GetRawTransactionResponse uncached = response(TX_ID, 6);
+		transactionCache.put(uncached, 100);
+
+		GetRawTransactionResult result = transactionCache.get(TX_ID).toResponse(120, READER).getResult();
+		assertThat(result.getTxOutputs()[0].getValue(), equalTo(uncached.getResult().getTxOutputs()[0].getValue()));
+		assertThat(result.getTxOutputs()[0].getValue().toString(), equalTo("50.00000000"));
+	}
+
+
+	@Test
+	public void testHexResponse() throws Exception {
+		StringResponse response = TransactionCache.hexResponse("01000000");
+		assertThat(response.getResult(), equalTo("01000000"));
+		assertThat(response.getError(), equalTo(null));
+		assertThat(response.getId(), equalTo(null));
+	}
+
+
+	@Test
+	public void testTransactionsWithTooFewConfirmationsAreNotCached() throws Exception {
+		transactionCache.put(response(TX_ID, 5), 100);
+		assertThat(transactionCache.get(TX_ID), equalTo(null));
+		assertThat(transactionCache.getMisses(), equalTo(1L));
+	}
+
+
+	@Test
+	public void testReorganizationRemovesTransactionsAboveFork() throws Exception {
+		String other = "0e3e2357e806b6cdb1f70b54c3a3a17b6714ee1f0e68bebb44a74b1efd512098";
+		transactionCache.put(response(TX_ID, 6), 100);
+		transactionCache.put(response(other, 6), 101);
+
+		transactionCache.tipChanged(new TipChangeEvent(102, "ab", 102, "cd", 100));
+		assertThat(transactionCache.get(TX_ID).getBlockHeight(), equalTo(100L));
+		assertThat(transactionCache.get(other), equalTo(null));
+	}
+
+
+	private static GetRawTransactionResponse response(String txId, int confirmations) throws Exception {
+		return READER.readValue("{\"result\":{\"hex\":\"01000000\",\"txid\":\"" + txId + "\","
+				+ "\"vout\":[{\"value\":50.00000000,\"n\":0}],\"blockhash\":\""
+				+ BLOCK_HASH + "\",\"confirmations\":" + confirmations + "},\"error\":null,\"id\":null}");
+	}
+
+
+}
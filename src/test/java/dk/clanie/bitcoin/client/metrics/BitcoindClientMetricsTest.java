@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.metrics;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link BitcoindClientMetrics}.
+ * 
+ * @author Claus Nielsen
+ */
+public class BitcoindClientMetricsTest {
+
+
+	@Test
+	public void testNameDefaultsWhenNull() throws Exception {
+		MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+		BitcoindClientMetrics metrics = new BitcoindClientMetrics(mBeanServer, null);
+		metrics.forMethod("getblockcount");
+		ObjectName objectName = new ObjectName(BitcoindClientMetrics.DOMAIN + ":type=BitcoindClient,name="
+				+ ObjectName.quote(BitcoindClientMetrics.DEFAULT_NAME) + ",method=" + ObjectName.quote("getblockcount"));
+		try {
+			assertTrue(mBeanServer.isRegistered(objectName));
+		} finally {
+			metrics.unregister();
+		}
+		assertThat(mBeanServer.isRegistered(objectName), equalTo(false));
+	}
+
+
+	@Test
+	public void testFailedCallsCountBytes() throws Exception {
+		MethodMetrics metrics = new BitcoindClientMetrics().forMethod("getblock");
+		metrics.failed(metrics.started(), -5, 100, 80);
+		metrics.completed(metrics.started(), 100, 300);
+		assertThat(metrics.getRequestBytes(), equalTo(200L));
+		assertThat(metrics.getResponseBytes(), equalTo(380L));
+		assertThat(metrics.getErrorsByCode().get(-5), equalTo(1L));
+	}
+
+
+}
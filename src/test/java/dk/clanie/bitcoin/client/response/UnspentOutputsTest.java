@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.client.response;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+
+import dk.clanie.bitcoin.Satoshi;
+
+/**
+ * Tests {@link UnspentOutputs}.
+ * 
+ * @author Claus Nielsen
+ */
+public class UnspentOutputsTest {
+
+
+	@Test
+	public void testRead() throws Exception {
+		UnspentOutputs outputs = read(new long[] {100000000L, 5000L}, new int[] {6, 0});
+		assertThat(outputs.size(), equalTo(2));
+		assertThat(outputs.getTxId(1).toString(), equalTo(txId(1)));
+		assertThat(outputs.getVout(1), equalTo(1));
+		assertThat(outputs.getAmountSatoshis(0), equalTo(100000000L));
+		assertThat(outputs.getConfirmations(0), equalTo(6));
+		assertThat(outputs.getScriptPubKey(1), equalTo("76a914"));
+		assertTrue(outputs.getScriptPubKey(0) == outputs.getScriptPubKey(1));
+		assertThat(outputs.getTotalSatoshis(), equalTo(100005000L));
+	}
+
+
+	@Test
+	public void testSortByAmount() throws Exception {
+		UnspentOutputs outputs = read(new long[] {300, 100, 200}, new int[] {1, 2, 3});
+		assertVouts(outputs.sortByAmount(false), 1, 2, 0);
+		assertVouts(outputs.sortByAmount(true), 0, 2, 1);
+		// The view shares the columns, but not the order.
+		assertVouts(outputs, 0, 1, 2);
+		assertThat(outputs.sortByAmount(true).getAmountSatoshis(0), equalTo(300L));
+		assertThat(outputs.sortByAmount(true).getTxId(0).toString(), equalTo(txId(0)));
+	}
+
+
+	@Test
+	public void testSortByConfirmations() throws Exception {
+		UnspentOutputs outputs = read(new long[] {1, 2, 3, 4}, new int[] {10, 0, 101, 3});
+		assertVouts(outputs.sortByConfirmations(false), 1, 3, 0, 2);
+		assertVouts(outputs.sortByConfirmations(true), 2, 0, 3, 1);
+	}
+
+
+	@Test
+	public void testSortIsStable() throws Exception {
+		UnspentOutputs outputs = read(new long[] {5, 7, 5, 7, 5}, new int[] {1, 3, 2, 1, 3});
+		assertVouts(outputs.sortByAmount(false), 0, 2, 4, 1, 3);
+		assertVouts(outputs.sortByAmount(true), 1, 3, 0, 2, 4);
+		// Sorting by confirmations first orders equal amounts by confirmations.
+		assertVouts(outputs.sortByConfirmations(true).sortByAmount(true), 1, 3, 4, 2, 0);
+	}
+
+
+	@Test
+	public void testSortLarge() throws Exception {
+		Random random = new Random(42);
+		int size = 1000;
+		long[] amounts = new long[size];
+		int[] confirmations = new int[size];
+		for (int i = 0; i < size; i++) {
+			amounts[i] = random.nextInt(50);
+			confirmations[i] = random.nextInt(50);
+		}
+		UnspentOutputs outputs = read(amounts, confirmations);
+		assertSorted(outputs.sortByAmount(false), false, false);
+		assertSorted(outputs.sortByAmount(true), false, true);
+		assertSorted(outputs.sortByConfirmations(false), true, false);
+		assertSorted(outputs.sortByConfirmations(true), true, true);
+	}
+
+
+	@Test
+	public void testFilterAndSort() throws Exception {
+		UnspentOutputs outputs = read(new long[] {500, 100, 900, 300, 700}, new int[] {0, 6, 6, 120, 6});
+		UnspentOutputs mature = outputs.filter(200, Long.MAX_VALUE, 1, Integer.MAX_VALUE).sortByAmount(true);
+		assertVouts(mature, 2, 4, 3);
+		assertThat(mature.getTotalSatoshis(), equalTo(1900L));
+		assertVouts(mature.filter(0, 800, 0, 100).sortByAmount(false), 4);
+		assertThat(outputs.filter(1000, 2000, 0, 0).sortByAmount(true).size(), equalTo(0));
+	}
+
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testSortedViewChecksIndex() throws Exception {
+		read(new long[] {1, 2, 3}, new int[] {1, 2, 3}).filter(2, 3, 0, 10).sortByAmount(false).getVout(2);
+	}
+
+
+	/**
+	 * Asserts that the stable sort order holds: by the key, and by vout
+	 * (ie. the original order) for equal keys.
+	 */
+	private static void assertSorted(UnspentOutputs outputs, boolean byConfirmations, boolean descending) {
+		for (int i = 1; i < outputs.size(); i++) {
+			long a = byConfirmations ? outputs.getConfirmations(i - 1) : outputs.getAmountSatoshis(i - 1);
+			long b = byConfirmations ? outputs.getConfirmations(i) : outputs.getAmountSatoshis(i);
+			if (descending) assertTrue(a >= b);
+			else assertTrue(a <= b);
+			if (a == b) assertTrue(outputs.getVout(i - 1) < outputs.getVout(i));
+		}
+	}
+
+
+	private static void assertVouts(UnspentOutputs outputs, int... vouts) {
+		assertThat(outputs.size(), equalTo(vouts.length));
+		for (int i = 0; i < vouts.length; i++) {
+			assertThat("Output " + i, outputs.getVout(i), equalTo(vouts[i]));
+		}
+	}
+
+
+	/**
+	 * Reads outputs numbered by vout, so the vouts show the original order.
+	 */
+	private static UnspentOutputs read(long[] amounts, int[] confirmations) throws Exception {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < amounts.length; i++) {
+			if (i > 0) json.append(',');
+			json.append("{\"txid\":\"").append(txId(i))
+					.append("\",\"vout\":").append(i)
+					.append(",\"scriptPubKey\":\"76a914\"")
+					.append(",\"amount\":").append(Satoshi.toString(amounts[i]))
+					.append(",\"confirmations\":").append(confirmations[i])
+					.append('}');
+		}
+		json.append(']');
+		JsonParser parser = new JsonFactory().createParser(json.toString());
+		parser.nextToken();
+		return UnspentOutputs.read(parser);
+	}
+
+
+	private static String txId(int i) {
+		return String.format("%064x", i + 1);
+	}
+
+
+}
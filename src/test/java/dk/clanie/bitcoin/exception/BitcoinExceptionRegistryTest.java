@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.exception;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dk.clanie.bitcoin.client.response.BitcoindErrorResponse;
+import dk.clanie.bitcoin.exception.client.BitcoinClientException;
+import dk.clanie.bitcoin.exception.server.BitcoinServerException;
+import dk.clanie.bitcoin.exception.server.InvalidAddressException;
+
+/**
+ * Tests creating exceptions with {@link BitcoinExceptionRegistry}.
+ * 
+ * @author Claus Nielsen
+ */
+public class BitcoinExceptionRegistryTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+
+	@Test
+	public void testRegisteredCodeGetsItsException() throws Exception {
+		BitcoinException e = new BitcoinExceptionRegistry().createException(errorResponse(-5, "Invalid Bitcoin address"), false);
+		assertThat(e, instanceOf(InvalidAddressException.class));
+		assertThat(e.getErrorCode(), equalTo(-5));
+		assertThat(e.getMessage(), equalTo("Invalid Bitcoin address"));
+	}
+
+
+	@Test
+	public void testUnregisteredCodeDependsOnHttpStatus() throws Exception {
+		BitcoinExceptionRegistry registry = new BitcoinExceptionRegistry();
+		assertThat(registry.createException(errorResponse(-4, "Wallet backup failed!"), true), instanceOf(BitcoinClientException.class));
+		assertThat(registry.createException(errorResponse(-4, "Wallet backup failed!"), false), instanceOf(BitcoinServerException.class));
+	}
+
+
+	@Test
+	public void testStackTraceCanBeDisabledPerCode() throws Exception {
+		BitcoinExceptionRegistry registry = new BitcoinExceptionRegistry();
+		registry.setStackTraceEnabled(-5, false);
+		assertThat(registry.createException(errorResponse(-5, "Invalid Bitcoin address"), false).getStackTrace().length, equalTo(0));
+		assertTrue(registry.createException(errorResponse(-4, "Wallet backup failed!"), false).getStackTrace().length > 0);
+	}
+
+
+	@Test
+	public void testToStringExcludesInternalState() throws Exception {
+		String string = new BitcoinExceptionRegistry().createException(errorResponse(-5, "Invalid Bitcoin address"), false).toString();
+		assertTrue(string.contains("errorResponse"));
+		assertTrue(!string.contains("constructed"));
+	}
+
+
+	private BitcoindErrorResponse errorResponse(int code, String message) throws Exception {
+		return objectMapper.readValue("{\"result\":null,\"error\":{\"code\":" + code + ",\"message\":\"" + message + "\"},\"id\":1}",
+				BitcoindErrorResponse.class);
+	}
+
+
+}
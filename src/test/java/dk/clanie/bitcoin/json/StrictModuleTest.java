@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2013, Claus Nielsen, cn@cn-consult.dk
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along
+ * with this program; if not, write to the Free Software Foundation, Inc.,
+ * 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+ */
+package dk.clanie.bitcoin.json;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import dk.clanie.bitcoin.client.response.GetInfoResponse;
+import dk.clanie.bitcoin.client.response.GetInfoResult;
+
+/**
+ * Tests {@link StrictModule}.
+ * 
+ * @author Claus Nielsen
+ */
+public class StrictModuleTest {
+
+	private static final String RESPONSE = "{\"result\":{\"version\":80100,\"blocks\":63307,\"newfield\":\"x\"},\"error\":null,\"id\":null}";
+
+
+	@Test
+	public void testUnknownFieldsAreCapturedByDefault() throws Exception {
+		GetInfoResult result = new ObjectMapper().readValue(RESPONSE, GetInfoResponse.class).getResult();
+		assertThat(result.getOtherFields().size(), equalTo(1));
+		assertThat(result.getOtherFields().get("newfield"), equalTo((Object) "x"));
+	}
+
+
+	@Test
+	public void testUnknownFieldsAreSkippedInStrictMode() throws Exception {
+		ObjectMapper objectMapper = new ObjectMapper();
+		objectMapper.registerModule(new StrictModule());
+
+		GetInfoResponse response = objectMapper.readValue(RESPONSE, GetInfoResponse.class);
+		GetInfoResult result = response.getResult();
+		assertThat(result.getVersion(), equalTo(80100));
+		assertThat(result.getBlocks(), equalTo(63307));
+		assertThat(result.getOtherFields().size(), equalTo(0));
+		assertThat(response.getOtherFields().size(), equalTo(0));
+	}
+
+
+	@Test
+	public void testSerializingDoesNotAllocateOtherFields() throws Exception {
+		ObjectMapper objectMapper = new ObjectMapper();
+		objectMapper.registerModule(new StrictModule());
+		GetInfoResult result = objectMapper.readValue(RESPONSE, GetInfoResponse.class).getResult();
+
+		objectMapper.valueToTree(result);
+		assertThat(ReflectionTestUtils.getField(result, "otherFields"), equalTo(null));
+	}
+
+
+}